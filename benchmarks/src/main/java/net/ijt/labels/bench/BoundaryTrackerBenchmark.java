@@ -0,0 +1,127 @@
+/**
+ * 
+ */
+package net.ijt.labels.bench;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ij.process.ImageProcessor;
+import inra.ijpb.geometry.Polygon2D;
+import net.ijt.labels.BoundaryTracker;
+import net.ijt.labels.BoundaryTracker.VertexLocation;
+
+/**
+ * Measures the throughput of the sequential boundary tracking algorithm, for
+ * various kinds of label maps, vertex locations, connectivities and pixel
+ * types.
+ * 
+ * In addition to the number of images processed per second, the "pixels" and
+ * "steps" secondary results give the number of pixels and the number of
+ * boundary steps processed per second. The allocation rate is obtained by
+ * running the benchmarks with the GC profiler ("-prof gc").
+ * 
+ * @author dlegland
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BoundaryTrackerBenchmark
+{
+    @Param({"BLOBS", "CELLS", "VORONOI", "NOISE"})
+    public LabelMaps.Pattern pattern;
+    
+    @Param({"CORNER", "EDGE_CENTER", "PIXEL"})
+    public VertexLocation location;
+    
+    @Param({"4", "8"})
+    public int connectivity;
+    
+    @Param({"8", "16", "32"})
+    public int bitDepth;
+    
+    @Param({"1024"})
+    public int size;
+    
+    ImageProcessor image;
+    
+    BoundaryTracker tracker;
+    
+    /**
+     * The number of boundary steps of the image, i.e. the number of
+     * positions visited when tracking all the boundaries.
+     */
+    long stepCount;
+    
+    /**
+     * Counters of the processed pixels and boundary steps, reported by JMH
+     * as rates.
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters
+    {
+        public long pixels;
+        public long steps;
+        
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            pixels = 0;
+            steps = 0;
+        }
+    }
+    
+    @Setup
+    public void setup()
+    {
+        image = LabelMaps.create(pattern, size, size, bitDepth, 42);
+        tracker = new BoundaryTracker(connectivity, location);
+        stepCount = countSteps(tracker.process(image));
+    }
+    
+    /**
+     * Returns the number of vertices of the polygons, that corresponds to the
+     * number of boundary steps when collinear vertices are kept.
+     */
+    static long countSteps(Map<Integer, ArrayList<Polygon2D>> boundaries)
+    {
+        long count = 0;
+        for (ArrayList<Polygon2D> polygons : boundaries.values())
+        {
+            for (Polygon2D poly : polygons)
+            {
+                count += poly.vertexNumber();
+            }
+        }
+        return count;
+    }
+    
+    @Benchmark
+    public Map<Integer, ArrayList<Polygon2D>> process(Counters counters)
+    {
+        Map<Integer, ArrayList<Polygon2D>> boundaries = tracker.process(image);
+        counters.pixels += image.getPixelCount();
+        counters.steps += stepCount;
+        return boundaries;
+    }
+}
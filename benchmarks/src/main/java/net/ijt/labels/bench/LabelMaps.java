@@ -0,0 +1,236 @@
+/**
+ * 
+ */
+package net.ijt.labels.bench;
+
+import java.util.Random;
+
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+/**
+ * Generates synthetic label maps used as input of the benchmarks.
+ * 
+ * All the label maps are generated from a seed, so that successive runs of
+ * the benchmarks process the same images. When the number of regions exceeds
+ * the capacity of the pixel type, labels are reused cyclically.
+ * 
+ * @author dlegland
+ *
+ */
+public class LabelMaps
+{
+    /**
+     * The different kinds of label maps.
+     */
+    public enum Pattern
+    {
+        /** A few large disks over a background. */
+        BLOBS,
+        /** Many small rectangular cells, separated by background. */
+        CELLS,
+        /** A Voronoi tessellation without background. */
+        VORONOI,
+        /** A Voronoi tessellation with a fraction of pixels set to random labels. */
+        NOISE;
+    }
+    
+    /**
+     * Creates a new label map.
+     * 
+     * @param pattern
+     *            the kind of label map to generate
+     * @param sizeX
+     *            the width of the image
+     * @param sizeY
+     *            the height of the image
+     * @param bitDepth
+     *            the bit depth of the image: 8, 16 or 32
+     * @param seed
+     *            the seed of the random generator
+     * @return a new label map
+     */
+    public static ImageProcessor create(Pattern pattern, int sizeX, int sizeY, int bitDepth, long seed)
+    {
+        ImageProcessor image = createProcessor(sizeX, sizeY, bitDepth);
+        Random random = new Random(seed);
+        switch (pattern)
+        {
+        case BLOBS:
+            fillBlobs(image, 20, random);
+            break;
+        case CELLS:
+            fillCells(image, 12, random);
+            break;
+        case VORONOI:
+            fillVoronoi(image, 32, random);
+            break;
+        case NOISE:
+            fillVoronoi(image, 32, random);
+            addNoise(image, 0.1, 16, random);
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown pattern: " + pattern);
+        }
+        return image;
+    }
+    
+    private static ImageProcessor createProcessor(int sizeX, int sizeY, int bitDepth)
+    {
+        switch (bitDepth)
+        {
+        case 8:
+            return new ByteProcessor(sizeX, sizeY);
+        case 16:
+            return new ShortProcessor(sizeX, sizeY);
+        case 32:
+            return new FloatProcessor(sizeX, sizeY);
+        default:
+            throw new IllegalArgumentException("Bit depth must be 8, 16 or 32, not " + bitDepth);
+        }
+    }
+    
+    /**
+     * Converts a region index into a label that can be represented by the
+     * image, starting from 1.
+     */
+    private static int label(ImageProcessor image, int index)
+    {
+        int maxLabel = image.getBitDepth() == 8 ? 255 : image.getBitDepth() == 16 ? 65535 : Integer.MAX_VALUE;
+        return 1 + index % maxLabel;
+    }
+    
+    /**
+     * Draws disks with random centers and radii, each disk having its own
+     * label.
+     */
+    private static void fillBlobs(ImageProcessor image, int nBlobs, Random random)
+    {
+        int sizeX = image.getWidth();
+        int sizeY = image.getHeight();
+        double maxRadius = Math.min(sizeX, sizeY) / 6.0;
+        for (int i = 0; i < nBlobs; i++)
+        {
+            double xc = random.nextDouble() * sizeX;
+            double yc = random.nextDouble() * sizeY;
+            double r = maxRadius * (0.3 + 0.7 * random.nextDouble());
+            int lbl = label(image, i);
+            
+            int y0 = (int) Math.max(0, Math.floor(yc - r));
+            int y1 = (int) Math.min(sizeY - 1, Math.ceil(yc + r));
+            int x0 = (int) Math.max(0, Math.floor(xc - r));
+            int x1 = (int) Math.min(sizeX - 1, Math.ceil(xc + r));
+            for (int y = y0; y <= y1; y++)
+            {
+                for (int x = x0; x <= x1; x++)
+                {
+                    double dx = x + 0.5 - xc;
+                    double dy = y + 0.5 - yc;
+                    if (dx * dx + dy * dy <= r * r)
+                    {
+                        image.setf(x, y, lbl);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Tiles the image with square cells of the specified size, each cell
+     * containing a rectangle with a random size and a one-pixel margin.
+     */
+    private static void fillCells(ImageProcessor image, int cellSize, Random random)
+    {
+        int sizeX = image.getWidth();
+        int sizeY = image.getHeight();
+        int index = 0;
+        for (int y0 = 0; y0 < sizeY; y0 += cellSize)
+        {
+            for (int x0 = 0; x0 < sizeX; x0 += cellSize)
+            {
+                int w = 2 + random.nextInt(cellSize - 2);
+                int h = 2 + random.nextInt(cellSize - 2);
+                int lbl = label(image, index++);
+                for (int y = y0 + 1; y < Math.min(y0 + h, sizeY); y++)
+                {
+                    for (int x = x0 + 1; x < Math.min(x0 + w, sizeX); x++)
+                    {
+                        image.setf(x, y, lbl);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Computes a Voronoi tessellation from germs located randomly within each
+     * square of a regular grid with the specified spacing.
+     */
+    private static void fillVoronoi(ImageProcessor image, int spacing, Random random)
+    {
+        int sizeX = image.getWidth();
+        int sizeY = image.getHeight();
+        int nx = (sizeX + spacing - 1) / spacing;
+        int ny = (sizeY + spacing - 1) / spacing;
+        double[] germX = new double[nx * ny];
+        double[] germY = new double[nx * ny];
+        for (int j = 0; j < ny; j++)
+        {
+            for (int i = 0; i < nx; i++)
+            {
+                germX[j * nx + i] = (i + random.nextDouble()) * spacing;
+                germY[j * nx + i] = (j + random.nextDouble()) * spacing;
+            }
+        }
+        
+        for (int y = 0; y < sizeY; y++)
+        {
+            int j0 = y / spacing;
+            for (int x = 0; x < sizeX; x++)
+            {
+                int i0 = x / spacing;
+                
+                // the closest germ is within the neighbor grid squares
+                int closest = 0;
+                double minDist = Double.POSITIVE_INFINITY;
+                for (int j = Math.max(j0 - 1, 0); j <= Math.min(j0 + 1, ny - 1); j++)
+                {
+                    for (int i = Math.max(i0 - 1, 0); i <= Math.min(i0 + 1, nx - 1); i++)
+                    {
+                        double dx = x + 0.5 - germX[j * nx + i];
+                        double dy = y + 0.5 - germY[j * nx + i];
+                        double dist = dx * dx + dy * dy;
+                        if (dist < minDist)
+                        {
+                            minDist = dist;
+                            closest = j * nx + i;
+                        }
+                    }
+                }
+                image.setf(x, y, label(image, closest));
+            }
+        }
+    }
+    
+    /**
+     * Replaces a fraction of the pixels by a label chosen among the first
+     * labels, or by the background.
+     */
+    private static void addNoise(ImageProcessor image, double fraction, int nLabels, Random random)
+    {
+        int sizeX = image.getWidth();
+        int sizeY = image.getHeight();
+        for (int y = 0; y < sizeY; y++)
+        {
+            for (int x = 0; x < sizeX; x++)
+            {
+                if (random.nextDouble() < fraction)
+                {
+                    image.setf(x, y, random.nextInt(nLabels + 1));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * 
+ */
+package net.ijt.labels.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ij.process.ImageProcessor;
+import net.ijt.labels.BoundaryTracker;
+import net.ijt.labels.BoundaryTracker.VertexLocation;
+import net.ijt.labels.PerLabelBoundaryTracker;
+import net.ijt.labels.PolygonRois;
+import net.ijt.labels.RegionBoundaries;
+import net.ijt.labels.RunLengthBoundaryExtractor;
+import net.ijt.labels.TiledBoundaryTracker;
+import net.ijt.labels.TopologyExtractor;
+import net.ijt.labels.bench.BoundaryTrackerBenchmark.Counters;
+
+/**
+ * Measures the throughput of the conversion performed by the
+ * RegionBoundaryPolygons plugin, for each of the methods proposed in the
+ * dialog, including the creation of the ImageJ ROIs. Only the interaction
+ * with the user and with the RoiManager are not measured.
+ * 
+ * @author dlegland
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RegionBoundaryPolygonsBenchmark
+{
+    /**
+     * The methods proposed by the plugin.
+     */
+    public enum Method
+    {
+        SEQUENTIAL,
+        PARALLEL_TILES,
+        PARALLEL_LABELS,
+        RUN_LENGTH,
+        SHARED_ARCS;
+    }
+    
+    @Param({"SEQUENTIAL", "PARALLEL_TILES", "PARALLEL_LABELS", "RUN_LENGTH", "SHARED_ARCS"})
+    public Method method;
+    
+    @Param({"BLOBS", "CELLS", "VORONOI", "NOISE"})
+    public LabelMaps.Pattern pattern;
+    
+    @Param({"CORNER"})
+    public VertexLocation location;
+    
+    @Param({"4"})
+    public int connectivity;
+    
+    @Param({"16"})
+    public int bitDepth;
+    
+    @Param({"1024"})
+    public int size;
+    
+    ImageProcessor image;
+    
+    long stepCount;
+    
+    @Setup
+    public void setup()
+    {
+        image = LabelMaps.create(pattern, size, size, bitDepth, 42);
+        stepCount = BoundaryTrackerBenchmark.countSteps(new BoundaryTracker(connectivity, location).process(image));
+    }
+    
+    /**
+     * Computes the boundaries as within the plugin, for the selected method.
+     */
+    private RegionBoundaries computeBoundaries()
+    {
+        switch (method)
+        {
+        case PARALLEL_TILES:
+            return RegionBoundaries.fromMap(new TiledBoundaryTracker(connectivity, location).process(image));
+        case PARALLEL_LABELS:
+            return RegionBoundaries.fromMap(new PerLabelBoundaryTracker(connectivity, location).process(image));
+        case RUN_LENGTH:
+            return RegionBoundaries.fromMap(new RunLengthBoundaryExtractor(connectivity, location).process(image));
+        case SHARED_ARCS:
+            // vertices of shared arcs are always located on corners
+            return RegionBoundaries.fromMap(new TopologyExtractor(connectivity).process(image).toPolygons());
+        default:
+            return new BoundaryTracker(connectivity, location).processBoundaries(image);
+        }
+    }
+    
+    @Benchmark
+    public void process(Counters counters, Blackhole blackhole)
+    {
+        blackhole.consume(PolygonRois.createRois(computeBoundaries(), "r%03d"));
+        counters.pixels += image.getPixelCount();
+        counters.steps += stepCount;
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * 
+ */
+package net.ijt.labels.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ij.gui.Roi;
+import ij.plugin.frame.RoiManager;
+import ij.process.ImageProcessor;
+import net.ijt.labels.BoundaryTracker;
+import net.ijt.labels.BoundaryTracker.VertexLocation;
+import net.ijt.labels.PolygonRois;
+
+/**
+ * Measures the time needed for adding the ROIs computed from a label map to
+ * a ROI Manager, either one by one, or by opening a RoiSet file as done by
+ * the plugin. The ROI Manager is a window, so this benchmark can not run on
+ * a headless system.
+ * 
+ * @author dlegland
+ *
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RoiManagerBenchmark
+{
+    /**
+     * The ways to add ROIs to the manager.
+     */
+    public enum Method
+    {
+        ADD_ROI,
+        ROI_SET;
+    }
+    
+    @Param({"ADD_ROI", "ROI_SET"})
+    public Method method;
+    
+    @Param({"NOISE"})
+    public LabelMaps.Pattern pattern;
+    
+    @Param({"128", "256", "512"})
+    public int size;
+    
+    Roi[] rois;
+    
+    RoiManager manager;
+    
+    @Setup
+    public void setup()
+    {
+        ImageProcessor image = LabelMaps.create(pattern, size, size, 16, 42);
+        rois = PolygonRois.createRois(new BoundaryTracker(4, VertexLocation.CORNER).process(image), "r%05d");
+    }
+    
+    @Setup(Level.Invocation)
+    public void createManager()
+    {
+        manager = new RoiManager(true);
+    }
+    
+    @TearDown(Level.Invocation)
+    public void closeManager()
+    {
+        manager.reset();
+        manager.close();
+    }
+    
+    @Benchmark
+    public int addRois()
+    {
+        if (method == Method.ROI_SET)
+        {
+            PolygonRois.addToRoiManager(rois, manager);
+        }
+        else
+        {
+            for (Roi roi : rois)
+            {
+                manager.addRoi(roi);
+            }
+        }
+        return manager.getCount();
+    }
+}
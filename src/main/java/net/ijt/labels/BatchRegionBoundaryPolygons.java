@@ -0,0 +1,91 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import java.io.File;
+import java.io.IOException;
+
+import ij.IJ;
+import ij.gui.GenericDialog;
+import ij.plugin.PlugIn;
+
+/**
+ * Computes the boundaries of the regions within all the label images of a
+ * directory, and saves the polygons of each image into a RoiSet file.
+ * 
+ * The plugin does not use the current image nor the ROI Manager. All the
+ * options are read from the dialog, and are recorded by the macro recorder,
+ * so that the plugin can be run from a macro in headless mode:
+ * 
+ * <pre>{@code
+ * run("Region Boundary Polygons (Batch)", "input=/data/labels output=/data/rois connectivity=C4 threads=16 memory=8000");
+ * }</pre>
+ * 
+ * @see DirectoryBoundaryExtractor
+ * 
+ * @author dlegland
+ *
+ */
+public class BatchRegionBoundaryPolygons implements PlugIn
+{
+    @Override
+    public void run(String arg)
+    {
+        // create the dialog, with operator options
+        GenericDialog gd = new GenericDialog("Label Maps To Rois (Batch)");
+        gd.addDirectoryField("Input Directory", "");
+        gd.addDirectoryField("Output Directory", "");
+        gd.addChoice("Connectivity:", new String[] {"C4", "C8"}, "C4");
+        gd.addChoice("Vertex Location:", new String[] {"Corners", "Edge Middles", "Pixel Centers"}, "Corners");
+        gd.addCheckbox("Remove Collinear Vertices", false);
+        gd.addNumericField("Simplification Tolerance", 0, 2, 6, "pixels");
+        gd.addChoice("Simplification Method:", new String[] {"Douglas-Peucker", "Visvalingam-Whyatt"}, "Visvalingam-Whyatt");
+        gd.addStringField("Name Pattern", "r%03d");
+        gd.addNumericField("Threads", Runtime.getRuntime().availableProcessors(), 0);
+        gd.addNumericField("Memory Limit", IJ.maxMemory() / 2 >> 20, 0, 8, "MB");
+        
+        // wait for user input
+        gd.showDialog();
+        // If cancel was clicked, do nothing
+        if (gd.wasCanceled())
+            return;
+        
+        // parse options
+        File inputDir = new File(gd.getNextString());
+        File outputDir = new File(gd.getNextString());
+        int conn = gd.getNextChoiceIndex() == 0 ? 4 : 8;
+        int locIndex = gd.getNextChoiceIndex();
+        BoundaryTracker.VertexLocation loc = BoundaryTracker.VertexLocation.CORNER;
+        if (locIndex == 1) loc = BoundaryTracker.VertexLocation.EDGE_CENTER;
+        if (locIndex == 2) loc = BoundaryTracker.VertexLocation.PIXEL;
+        boolean removeCollinear = gd.getNextBoolean();
+        double tolerance = gd.getNextNumber();
+        PolygonSimplifier.Method simplifyMethod = PolygonSimplifier.Method.values()[gd.getNextChoiceIndex()];
+        String pattern = gd.getNextString();
+        int threadCount = (int) gd.getNextNumber();
+        long memoryLimit = (long) gd.getNextNumber() << 20;
+        
+        DirectoryBoundaryExtractor extractor = new DirectoryBoundaryExtractor(conn, loc);
+        extractor.setRemoveCollinearVertices(removeCollinear);
+        if (tolerance > 0)
+        {
+            extractor.setSimplifier(new PolygonSimplifier(tolerance, simplifyMethod));
+        }
+        extractor.setNamePattern(pattern);
+        extractor.setThreadCount(threadCount);
+        extractor.setMemoryLimit(memoryLimit);
+        
+        try
+        {
+            long t0 = System.nanoTime();
+            int count = extractor.process(inputDir, outputDir);
+            double seconds = (System.nanoTime() - t0) * 1e-9;
+            IJ.log(String.format("Processed %d images in %.1f s", count, seconds));
+        }
+        catch (IOException ex)
+        {
+            IJ.error("Label Maps To Rois (Batch)", ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import inra.ijpb.geometry.Polygon2D;
+
+/**
+ * Reads the polygons written by a <code>BinaryPolygonWriter</code>.
+ * 
+ * Only the index of the file is read when the reader is created. Polygons are
+ * read on demand, either by their position within the index or by their
+ * label, without reading the other polygons.
+ * 
+ * @see BinaryPolygonWriter
+ * 
+ * @author dlegland
+ *
+ */
+public class BinaryPolygonReader implements Closeable
+{
+    /**
+     * The channel of the file.
+     */
+    final FileChannel channel;
+    
+    /**
+     * The factor applied to coordinates to obtain integers.
+     */
+    final int scale;
+    
+    /**
+     * The label, the position and the length of the record of each polygon,
+     * sorted by label.
+     */
+    final int[] labels;
+    final long[] offsets;
+    final int[] lengths;
+    
+    /**
+     * Opens a file, and reads its index.
+     * 
+     * @param file
+     *            the file to read
+     * @throws IOException
+     *             if the file could not be read, or is not a valid polygon
+     *             file
+     */
+    public BinaryPolygonReader(File file) throws IOException
+    {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try
+        {
+            ByteBuffer header = read(0, BinaryPolygonWriter.HEADER_SIZE);
+            if (header.getInt() != BinaryPolygonWriter.MAGIC || header.getInt() != BinaryPolygonWriter.VERSION)
+            {
+                throw new IOException("Not a polygon file: " + file.getName());
+            }
+            this.scale = header.getInt();
+            
+            long footerOffset = channel.size() - BinaryPolygonWriter.FOOTER_SIZE;
+            ByteBuffer footer = read(footerOffset, BinaryPolygonWriter.FOOTER_SIZE);
+            long indexOffset = footer.getLong();
+            int count = footer.getInt();
+            if (footer.getInt() != BinaryPolygonWriter.MAGIC)
+            {
+                throw new IOException("Incomplete polygon file: " + file.getName());
+            }
+            
+            ByteBuffer index = read(indexOffset, count * BinaryPolygonWriter.ENTRY_SIZE);
+            this.labels = new int[count];
+            this.offsets = new long[count];
+            this.lengths = new int[count];
+            for (int i = 0; i < count; i++)
+            {
+                labels[i] = index.getInt();
+                offsets[i] = index.getLong();
+                lengths[i] = index.getInt();
+            }
+        }
+        catch (IOException | RuntimeException ex)
+        {
+            channel.close();
+            throw ex;
+        }
+    }
+    
+    /**
+     * @return the number of polygons within the file.
+     */
+    public int polygonNumber()
+    {
+        return labels.length;
+    }
+    
+    /**
+     * @param index
+     *            the index of the polygon, between 0 and the number of
+     *            polygons
+     * @return the label of the polygon
+     */
+    public int getLabel(int index)
+    {
+        return labels[index];
+    }
+    
+    /**
+     * @return the labels of the regions, in increasing order.
+     */
+    public int[] getLabels()
+    {
+        int[] result = new int[labels.length];
+        int n = 0;
+        for (int i = 0; i < labels.length; i++)
+        {
+            if (i == 0 || labels[i] != labels[i - 1])
+            {
+                result[n++] = labels[i];
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+    
+    /**
+     * Reads a single polygon.
+     * 
+     * @param index
+     *            the index of the polygon, between 0 and the number of
+     *            polygons
+     * @return the polygon
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    public Polygon2D readPolygon(int index) throws IOException
+    {
+        ByteBuffer record = read(offsets[index], lengths[index]);
+        int n = getVarInt(record);
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        int x = 0;
+        int y = 0;
+        for (int i = 0; i < n; i++)
+        {
+            x += unzigzag(getVarInt(record));
+            y += unzigzag(getVarInt(record));
+            xs[i] = (double) x / scale;
+            ys[i] = (double) y / scale;
+        }
+        return new Polygon2D(xs, ys);
+    }
+    
+    /**
+     * Reads the polygons of a region, in the order they were written.
+     * 
+     * @param label
+     *            the label of the region
+     * @return the polygons of the region, or an empty list if the label is not
+     *         present within the file
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    public ArrayList<Polygon2D> readPolygons(int label) throws IOException
+    {
+        // find the first polygon with the label
+        int lo = 0;
+        int hi = labels.length;
+        while (lo < hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if (labels[mid] < label)
+            {
+                lo = mid + 1;
+            }
+            else
+            {
+                hi = mid;
+            }
+        }
+        
+        ArrayList<Polygon2D> polygons = new ArrayList<Polygon2D>(1);
+        for (int i = lo; i < labels.length && labels[i] == label; i++)
+        {
+            polygons.add(readPolygon(i));
+        }
+        return polygons;
+    }
+    
+    /**
+     * Reads all the polygons of the file.
+     * 
+     * @return the polygons of each region, indexed by region label
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    public Map<Integer, ArrayList<Polygon2D>> readAll() throws IOException
+    {
+        Map<Integer, ArrayList<Polygon2D>> boundaries = new HashMap<>();
+        for (int label : getLabels())
+        {
+            boundaries.put(label, readPolygons(label));
+        }
+        return boundaries;
+    }
+    
+    @Override
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+    
+    /**
+     * Reads a number of bytes at the specified position of the file.
+     */
+    private ByteBuffer read(long position, int length) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+            {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+    
+    private static final int getVarInt(ByteBuffer buffer)
+    {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do
+        {
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        }
+        while (b < 0);
+        return value;
+    }
+    
+    private static final int unzigzag(int value)
+    {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import java.awt.geom.Point2D;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import inra.ijpb.geometry.Polygon2D;
+import net.ijt.labels.BoundaryTracker.VertexLocation;
+
+/**
+ * Writes polygons into a compact binary file, with integer coordinates
+ * encoded as variable-length differences between consecutive vertices.
+ * 
+ * All values are stored in little-endian order. The file starts with a
+ * header of 16 bytes: the magic number "LPLY", the version of the format, the
+ * scale of the coordinates, and a reserved integer. Coordinates are stored as
+ * integers equal to the vertex coordinates multiplied by the scale, that is 1
+ * for vertices located on pixel corners, and 2 for the other vertex
+ * locations.
+ * 
+ * Each polygon is stored as a record made of the number of vertices, followed
+ * by the differences between the coordinates of each vertex and of the
+ * previous vertex (the first vertex being compared to the origin). Numbers are
+ * encoded as variable-length integers (7 bits per byte), and differences are
+ * zigzag-encoded, so that most vertices use only two bytes.
+ * 
+ * The records are followed by an index that allows random access to the
+ * polygons of a given label: for each polygon, sorted by label, the label, the
+ * position of the record within the file, and the length of the record. The
+ * file ends with the position of the index, the number of polygons, and the
+ * magic number.
+ * 
+ * @see BinaryPolygonReader
+ * 
+ * @author dlegland
+ *
+ */
+public class BinaryPolygonWriter extends PolygonWriter
+{
+    /**
+     * The magic number found at the beginning and at the end of the files,
+     * corresponding to "LPLY" in little-endian order.
+     */
+    static final int MAGIC = 0x594C504C;
+    
+    /**
+     * The version of the format.
+     */
+    static final int VERSION = 1;
+    
+    /**
+     * The size of the header, in bytes.
+     */
+    static final int HEADER_SIZE = 16;
+    
+    /**
+     * The size of the end of the file, after the index, in bytes.
+     */
+    static final int FOOTER_SIZE = 16;
+    
+    /**
+     * The size of an entry of the index, in bytes.
+     */
+    static final int ENTRY_SIZE = 16;
+    
+    /**
+     * The factor applied to coordinates to obtain integers.
+     */
+    final int scale;
+    
+    /**
+     * The label, the position and the length of the record of each polygon,
+     * in the order of writing. Only the first <code>count</code> elements are
+     * valid.
+     */
+    int[] labels = new int[64];
+    long[] offsets = new long[64];
+    int[] lengths = new int[64];
+    int count = 0;
+    
+    /**
+     * Creates a new writer for polygons whose vertices are located on pixel
+     * corners.
+     * 
+     * @param file
+     *            the file to write into
+     * @throws IOException
+     *             if the file could not be opened
+     */
+    public BinaryPolygonWriter(File file) throws IOException
+    {
+        this(file, VertexLocation.CORNER);
+    }
+    
+    /**
+     * Creates a new writer for polygons whose vertices have the specified
+     * location.
+     * 
+     * @param file
+     *            the file to write into
+     * @param loc
+     *            the location of the vertices, used to choose the scale of
+     *            the coordinates
+     * @throws IOException
+     *             if the file could not be opened
+     */
+    public BinaryPolygonWriter(File file, VertexLocation loc) throws IOException
+    {
+        super(file);
+        this.scale = loc == VertexLocation.CORNER ? 1 : 2;
+        
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(scale).putInt(0);
+    }
+    
+    /**
+     * Writes a polygon into the file.
+     * 
+     * @param label
+     *            the label of the region
+     * @param polygon
+     *            the polygon to write
+     * @throws IOException
+     *             if an I/O error occurs
+     * @throws IllegalArgumentException
+     *             if a coordinate multiplied by the scale is not an integer
+     */
+    @Override
+    public void writePolygon(int label, Polygon2D polygon) throws IOException
+    {
+        if (count == labels.length)
+        {
+            int capacity = count * 2;
+            labels = Arrays.copyOf(labels, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+        long start = position();
+        
+        int n = polygon.vertexNumber();
+        ensureRemaining(5);
+        putVarInt(n);
+        int x0 = 0;
+        int y0 = 0;
+        for (int i = 0; i < n; i++)
+        {
+            Point2D p = polygon.getVertex(i);
+            int x = toInteger(p.getX());
+            int y = toInteger(p.getY());
+            ensureRemaining(10);
+            putVarInt(zigzag(x - x0));
+            putVarInt(zigzag(y - y0));
+            x0 = x;
+            y0 = y;
+        }
+        
+        labels[count] = label;
+        offsets[count] = start;
+        lengths[count] = (int) (position() - start);
+        count++;
+    }
+    
+    /**
+     * Writes the index sorted by label, and the end of the file.
+     */
+    @Override
+    void writeEnd() throws IOException
+    {
+        // sort by label, keeping the order of writing for each label
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++)
+        {
+            keys[i] = ((long) labels[i] << 32) | i;
+        }
+        Arrays.sort(keys);
+        
+        long indexOffset = position();
+        for (long key : keys)
+        {
+            int i = (int) key;
+            ensureRemaining(ENTRY_SIZE);
+            buffer.putInt(labels[i]).putLong(offsets[i]).putInt(lengths[i]);
+        }
+        ensureRemaining(FOOTER_SIZE);
+        buffer.putLong(indexOffset).putInt(count).putInt(MAGIC);
+    }
+    
+    private int toInteger(double coord)
+    {
+        double value = coord * scale;
+        int result = (int) Math.round(value);
+        if (result != value)
+        {
+            throw new IllegalArgumentException("Coordinate can not be stored as integer: " + coord);
+        }
+        return result;
+    }
+    
+    private void putVarInt(int value)
+    {
+        while ((value & ~0x7F) != 0)
+        {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+    
+    private static final int zigzag(int value)
+    {
+        return (value << 1) ^ (value >> 31);
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+/**
+ * A visit mask that uses one bit for each pixel of the image, packed into an
+ * array of long integers.
+ * 
+ * As only positions with DOWN direction are marked, a single bit per pixel is
+ * sufficient. This mask requires eight times less memory than a mask using
+ * one byte per pixel, and can be used for images with more than
+ * <code>Integer.MAX_VALUE</code> pixels.
+ * 
+ * @author dlegland
+ *
+ */
+class BitVisitMask extends VisitMask
+{
+    /**
+     * The array of flags, 64 pixels for each element.
+     */
+    long[] words;
+    
+    /**
+     * Creates a new visit mask for the specified number of pixels.
+     * 
+     * @param pixelCount
+     *            the number of pixels within the image
+     */
+    public BitVisitMask(long pixelCount)
+    {
+        long wordCount = (pixelCount + 63) >>> 6;
+        if (wordCount > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException("Too many pixels for a bit mask: " + pixelCount);
+        }
+        this.words = new long[(int) wordCount];
+    }
+    
+    @Override
+    public boolean isVisited(long index)
+    {
+        return (words[(int) (index >>> 6)] & (1L << index)) != 0;
+    }
+    
+    @Override
+    public void setVisited(long index)
+    {
+        words[(int) (index >>> 6)] |= 1L << index;
+    }
+    
+    @Override
+    public long getMemoryUsage()
+    {
+        return 8L * words.length;
+    }
+}
@@ -0,0 +1,222 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+
+import ij.ImagePlus;
+import ij.process.ImageProcessor;
+
+/**
+ * A cache of the boundaries computed for the images processed by the plugin,
+ * that allows to convert the same boundaries into polygons with different
+ * options without tracking them again.
+ * 
+ * Boundaries are stored as closed chains of positions, that do not depend on
+ * the vertex location. Entries are identified by the ID of the image, the
+ * index of the slice, the connectivity, and a checksum of the pixel values,
+ * so that modified images are processed again. When the number of entries or
+ * the total number of positions exceeds the limits, the least recently used
+ * entries are removed.
+ * 
+ * @author dlegland
+ *
+ */
+class BoundaryCache
+{
+    /**
+     * The maximum number of entries within the cache.
+     */
+    final int maxEntries;
+    
+    /**
+     * The maximum number of positions within the chains of all the entries.
+     */
+    final long maxPositions;
+    
+    /**
+     * The number of positions within the chains of all the entries.
+     */
+    long positionCount = 0;
+    
+    /**
+     * The entries, iterated from the least recently used to the most
+     * recently used.
+     */
+    final LinkedHashMap<String, List<BoundaryChain>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    
+    /**
+     * Creates a new cache.
+     * 
+     * @param maxEntries
+     *            the maximum number of entries within the cache
+     * @param maxPositions
+     *            the maximum number of positions within the chains of all the
+     *            entries
+     */
+    public BoundaryCache(int maxEntries, long maxPositions)
+    {
+        this.maxEntries = maxEntries;
+        this.maxPositions = maxPositions;
+    }
+    
+    /**
+     * Creates the key identifying the boundaries of an image.
+     * 
+     * @param imagePlus
+     *            the image
+     * @param image
+     *            the processor containing the labels
+     * @param conn
+     *            the connectivity used for computing boundaries
+     * @return the key of the boundaries within the cache
+     */
+    public static String createKey(ImagePlus imagePlus, ImageProcessor image, int conn)
+    {
+        return imagePlus.getID() + ":" + imagePlus.getCurrentSlice() + ":" + conn + ":"
+                + image.getWidth() + "x" + image.getHeight() + ":" + checksum(image);
+    }
+    
+    /**
+     * Computes a checksum of the pixel values of an image processor, used for
+     * detecting modifications of the image between two runs. The checksum
+     * combines the CRC-32 and the Adler-32 checksums of the pixel values, so
+     * that modifications within 32 consecutive bits are always detected, and
+     * other modifications result in the same checksum with a probability
+     * close to 2^-64.
+     * 
+     * @param image
+     *            the image processor
+     * @return a checksum of the pixel values, as an hexadecimal string
+     */
+    static String checksum(ImageProcessor image)
+    {
+        CRC32 crc = new CRC32();
+        Adler32 adler = new Adler32();
+        
+        Object pixels = image.getPixels();
+        if (pixels instanceof byte[])
+        {
+            byte[] array = (byte[]) pixels;
+            crc.update(array, 0, array.length);
+            adler.update(array, 0, array.length);
+            return String.format("%08x%08x", crc.getValue(), adler.getValue());
+        }
+        
+        // other types are converted to bytes row by row
+        int sizeX = image.getWidth();
+        int[] row = new int[sizeX];
+        int bytesPerPixel = pixels instanceof short[] ? 2 : 4;
+        byte[] bytes = new byte[bytesPerPixel * sizeX];
+        for (int y = 0; y < image.getHeight(); y++)
+        {
+            if (pixels instanceof short[])
+            {
+                short[] array = (short[]) pixels;
+                int offset = y * sizeX;
+                for (int x = 0; x < sizeX; x++)
+                {
+                    short value = array[offset + x];
+                    bytes[2 * x] = (byte) value;
+                    bytes[2 * x + 1] = (byte) (value >> 8);
+                }
+            }
+            else
+            {
+                BoundaryTracker.readRow(image, y, row);
+                for (int x = 0; x < sizeX; x++)
+                {
+                    int value = row[x];
+                    bytes[4 * x] = (byte) value;
+                    bytes[4 * x + 1] = (byte) (value >> 8);
+                    bytes[4 * x + 2] = (byte) (value >> 16);
+                    bytes[4 * x + 3] = (byte) (value >> 24);
+                }
+            }
+            crc.update(bytes, 0, bytes.length);
+            adler.update(bytes, 0, bytes.length);
+        }
+        return String.format("%08x%08x", crc.getValue(), adler.getValue());
+    }
+    
+    /**
+     * Returns the boundaries stored for a key, and marks them as recently
+     * used.
+     * 
+     * @param key
+     *            the key of the boundaries
+     * @return the closed chains, or null if the key is not within the cache
+     */
+    public synchronized List<BoundaryChain> get(String key)
+    {
+        return entries.get(key);
+    }
+    
+    /**
+     * Stores the boundaries computed for a key, and removes the least
+     * recently used entries if the cache is full. Boundaries larger than the
+     * cache are not stored.
+     * 
+     * @param key
+     *            the key of the boundaries
+     * @param chains
+     *            the closed chains, that must not be modified afterwards
+     */
+    public synchronized void put(String key, List<BoundaryChain> chains)
+    {
+        long count = countPositions(chains);
+        if (count > maxPositions)
+        {
+            return;
+        }
+        
+        List<BoundaryChain> previous = entries.put(key, chains);
+        if (previous != null)
+        {
+            positionCount -= countPositions(previous);
+        }
+        positionCount += count;
+        
+        // remove least recently used entries, keeping the new one
+        Iterator<Map.Entry<String, List<BoundaryChain>>> iter = entries.entrySet().iterator();
+        while (entries.size() > maxEntries || positionCount > maxPositions)
+        {
+            Map.Entry<String, List<BoundaryChain>> eldest = iter.next();
+            positionCount -= countPositions(eldest.getValue());
+            iter.remove();
+        }
+    }
+    
+    /**
+     * Removes all the entries of the cache.
+     */
+    public synchronized void clear()
+    {
+        entries.clear();
+        positionCount = 0;
+    }
+    
+    /**
+     * @return the number of entries within the cache.
+     */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+    
+    private static final long countPositions(List<BoundaryChain> chains)
+    {
+        long count = 0;
+        for (BoundaryChain chain : chains)
+        {
+            count += chain.size;
+        }
+        return count;
+    }
+}
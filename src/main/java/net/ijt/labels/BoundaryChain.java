@@ -0,0 +1,380 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import inra.ijpb.geometry.Polygon2D;
+import net.ijt.labels.BoundaryTracker.VertexLocation;
+
+/**
+ * A sequence of successive boundary positions, each position being encoded as
+ * a primitive long containing the linear index of the reference pixel and the
+ * index of the direction.
+ * 
+ * Chains are used by the algorithms that build boundaries from several
+ * fragments. Once closed, a chain can be converted into a polygon for any
+ * vertex location.
+ * 
+ * @author dlegland
+ *
+ */
+class BoundaryChain
+{
+    /**
+     * The label of the region on the left side of the chain.
+     */
+    int label;
+    
+    /**
+     * The encoded positions. Only the <code>size</code> elements starting at
+     * index <code>start</code> are valid.
+     */
+    long[] positions;
+    
+    /**
+     * The index of the first position within the array, allowing to insert
+     * new positions at the beginning of the chain.
+     */
+    int start = 0;
+    
+    /**
+     * The number of positions within this chain.
+     */
+    int size = 0;
+    
+    /**
+     * For open chains, the encoded position that follows the last position
+     * of the chain.
+     */
+    long exit = -1;
+    
+    /**
+     * Flag used during stitching, to indicate the chain was already
+     * concatenated to another one.
+     */
+    boolean used = false;
+    
+    /**
+     * Creates a new empty chain for the specified label.
+     * 
+     * @param label
+     *            the label of the region the chain is the boundary of
+     */
+    public BoundaryChain(int label)
+    {
+        this(label, 32);
+    }
+    
+    /**
+     * Creates a new empty chain for the specified label and initial capacity.
+     * 
+     * @param label
+     *            the label of the region the chain is the boundary of
+     * @param capacity
+     *            the initial number of positions
+     */
+    public BoundaryChain(int label, int capacity)
+    {
+        this.label = label;
+        this.positions = new long[Math.max(capacity, 4)];
+    }
+    
+    /**
+     * Encodes a position into a single long.
+     * 
+     * @param index
+     *            the linear index of the reference pixel
+     * @param dir
+     *            the index of the direction
+     * @return the encoded position
+     */
+    static final long encode(long index, int dir)
+    {
+        return (index << 2) | dir;
+    }
+    
+    /**
+     * Adds a position at the end of the chain.
+     * 
+     * @param pos
+     *            the encoded position
+     */
+    public void add(long pos)
+    {
+        if (start + size == positions.length)
+        {
+            reallocate(0, size + (size >> 1) + 1);
+        }
+        positions[start + size] = pos;
+        size++;
+    }
+    
+    /**
+     * Adds a position at the beginning of the chain.
+     * 
+     * @param pos
+     *            the encoded position
+     */
+    public void addFirst(long pos)
+    {
+        if (start == 0)
+        {
+            reallocate((size >> 1) + 1, size);
+        }
+        positions[--start] = pos;
+        size++;
+    }
+    
+    /**
+     * Appends all the positions of another chain at the end of this chain.
+     * 
+     * @param chain
+     *            the chain to append
+     */
+    public void append(BoundaryChain chain)
+    {
+        if (start + size + chain.size > positions.length)
+        {
+            reallocate(0, Math.max(size + chain.size, size + (size >> 1)));
+        }
+        System.arraycopy(chain.positions, chain.start, positions, start + size, chain.size);
+        size += chain.size;
+    }
+    
+    /**
+     * Inserts all the positions of another chain at the beginning of this
+     * chain.
+     * 
+     * @param chain
+     *            the chain to insert
+     */
+    public void prepend(BoundaryChain chain)
+    {
+        if (start < chain.size)
+        {
+            reallocate(Math.max(chain.size, size >> 1), size);
+        }
+        start -= chain.size;
+        System.arraycopy(chain.positions, chain.start, positions, start, chain.size);
+        size += chain.size;
+    }
+    
+    /**
+     * Allocates a new array for storing positions, with the specified free
+     * space before and after the current positions.
+     */
+    private void reallocate(int before, int after)
+    {
+        long[] res = new long[before + size + after];
+        System.arraycopy(positions, start, res, before, size);
+        positions = res;
+        start = before;
+    }
+    
+    /**
+     * @return the first position of the chain.
+     */
+    public long first()
+    {
+        return positions[start];
+    }
+    
+    /**
+     * @return the last position of the chain.
+     */
+    public long last()
+    {
+        return positions[start + size - 1];
+    }
+    
+    /**
+     * Computes the total number of positions of the chains of a list,
+     * starting from the specified index.
+     * 
+     * @param chains
+     *            the list of chains
+     * @param from
+     *            the index of the first chain to count
+     * @return the total number of positions
+     */
+    static long totalSize(List<BoundaryChain> chains, int from)
+    {
+        long size = 0;
+        for (int i = from; i < chains.size(); i++)
+        {
+            size += chains.get(i).size;
+        }
+        return size;
+    }
+    
+    /**
+     * Rotates the positions of a closed chain such that the first position is
+     * the position with DOWN direction with the smallest linear index. This
+     * corresponds to the position the boundary is discovered from when
+     * scanning the image in raster order.
+     */
+    public void rotateToFirstDown()
+    {
+        long minPos = Long.MAX_VALUE;
+        int first = 0;
+        for (int i = 0; i < size; i++)
+        {
+            long pos = positions[start + i];
+            if ((pos & 0x03) == BoundaryTracker.DIR_DOWN && pos < minPos)
+            {
+                minPos = pos;
+                first = i;
+            }
+        }
+        
+        if (first > 0)
+        {
+            long[] res = new long[size];
+            System.arraycopy(positions, start + first, res, 0, size - first);
+            System.arraycopy(positions, start, res, size - first, first);
+            positions = res;
+            start = 0;
+        }
+    }
+    
+    /**
+     * Converts this chain into a polygon.
+     * 
+     * @param sizeX
+     *            the width of the image, used to decode positions
+     * @param loc
+     *            the location of the vertices with respect to positions
+     * @return the polygon corresponding to this chain.
+     */
+    public Polygon2D toPolygon(int sizeX, VertexLocation loc)
+    {
+        return toPolygon(sizeX, loc, false);
+    }
+    
+    /**
+     * Converts this chain into a polygon, keeping only the corners of the
+     * polygon if requested.
+     * 
+     * @param sizeX
+     *            the width of the image, used to decode positions
+     * @param loc
+     *            the location of the vertices with respect to positions
+     * @param removeCollinear
+     *            if true, the vertices located on a straight line between
+     *            their neighbors are removed
+     * @return the polygon corresponding to this chain.
+     */
+    public Polygon2D toPolygon(int sizeX, VertexLocation loc, boolean removeCollinear)
+    {
+        return toVertexBuffer(sizeX, loc, removeCollinear).toPolygon();
+    }
+    
+    /**
+     * Computes the vertices corresponding to this chain.
+     * 
+     * @param sizeX
+     *            the width of the image, used to decode positions
+     * @param loc
+     *            the location of the vertices with respect to positions
+     * @param removeCollinear
+     *            if true, the vertices located on a straight line between
+     *            their neighbors are removed
+     * @return a buffer containing the vertices of this chain.
+     */
+    public VertexBuffer toVertexBuffer(int sizeX, VertexLocation loc, boolean removeCollinear)
+    {
+        VertexBuffer vertices = new VertexBuffer(removeCollinear ? 16 : size);
+        vertices.removeCollinear = removeCollinear;
+        for (int i = 0; i < size; i++)
+        {
+            long pos = positions[start + i];
+            int dir = (int) (pos & 0x03);
+            long index = pos >>> 2;
+            vertices.add((index % sizeX) + loc.dx[dir], (index / sizeX) + loc.dy[dir]);
+        }
+        return vertices;
+    }
+    
+    /**
+     * Converts a list of closed chains into polygons, grouped by label. The
+     * order of the chains is kept within each group.
+     * 
+     * @param rings
+     *            the closed chains
+     * @param source
+     *            the label image the chains were computed from
+     * @param loc
+     *            the location of the vertices with respect to positions
+     * @param removeCollinear
+     *            if true, the vertices located on a straight line between
+     *            their neighbors are removed
+     * @param simplifier
+     *            the simplifier applied to the polygons, or null
+     * @param progress
+     *            the progress of the extraction, checked after each polygon
+     *            and reported at regular intervals
+     * @return the polygons of each label
+     */
+    static Map<Integer, ArrayList<Polygon2D>> toPolygons(List<BoundaryChain> rings, LabelSource source,
+            VertexLocation loc, boolean removeCollinear, PolygonSimplifier simplifier, ExtractionProgress progress)
+    {
+        int sizeX = source.getWidth();
+        
+        Polygon2D[] polygons;
+        if (simplifier == null)
+        {
+            polygons = new Polygon2D[rings.size()];
+            for (int i = 0; i < polygons.length; i++)
+            {
+                polygons[i] = rings.get(i).toPolygon(sizeX, loc, removeCollinear);
+                reportProgress(progress, i);
+            }
+        }
+        else
+        {
+            // junction vertices must not be removed before simplification
+            List<VertexBuffer> buffers = new ArrayList<VertexBuffer>(rings.size());
+            for (int i = 0; i < rings.size(); i++)
+            {
+                buffers.add(rings.get(i).toVertexBuffer(sizeX, loc, false));
+                reportProgress(progress, i);
+            }
+            polygons = simplifier.createPolygons(buffers, source, loc, progress);
+        }
+        
+        Map<Integer, ArrayList<Polygon2D>> boundaries = new HashMap<>();
+        for (int i = 0; i < polygons.length; i++)
+        {
+            int label = rings.get(i).label;
+            ArrayList<Polygon2D> list = boundaries.get(label);
+            if (list == null)
+            {
+                list = new ArrayList<Polygon2D>(4);
+                boundaries.put(label, list);
+            }
+            list.add(polygons[i]);
+        }
+        return boundaries;
+    }
+    
+    /**
+     * Checks the progress after the conversion of the chain with the
+     * specified index, and reports it after each group of chains.
+     */
+    private static final void reportProgress(ExtractionProgress progress, int index)
+    {
+        if ((index + 1) % ExtractionProgress.REPORT_INTERVAL == 0)
+        {
+            progress.report(0, 0);
+        }
+        else
+        {
+            progress.check();
+        }
+    }
+}
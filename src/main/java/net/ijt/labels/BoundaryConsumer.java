@@ -0,0 +1,29 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import inra.ijpb.geometry.Polygon2D;
+
+/**
+ * Receives the boundaries computed by a streaming boundary extraction
+ * algorithm, as soon as they are complete.
+ * 
+ * @see StreamingBoundaryExtractor
+ * 
+ * @author dlegland
+ *
+ */
+@FunctionalInterface
+public interface BoundaryConsumer
+{
+    /**
+     * Called each time the boundary of a region is complete.
+     * 
+     * @param label
+     *            the label of the region
+     * @param polygon
+     *            the polygon corresponding to the boundary
+     */
+    public void boundaryClosed(int label, Polygon2D polygon);
+}
@@ -4,13 +4,19 @@
 package net.ijt.labels;
 
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
 
 import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
 import inra.ijpb.geometry.Polygon2D;
 
 /**
@@ -32,17 +38,52 @@ public class BoundaryTracker
      * current pixel.
      */
     VertexLocation vertexLocation = VertexLocation.EDGE_CENTER;
+    
+    /**
+     * If true, only the corners of the boundaries are kept, and vertices
+     * located on a straight line between their neighbors are removed.
+     */
+    boolean removeCollinear = false;
+    
+    /**
+     * The simplifier applied to the polygons, or null if polygons are not
+     * simplified.
+     */
+    PolygonSimplifier simplifier = null;
+    
+    /**
+     * The number of bytes used by the visit mask during the last call to the
+     * process method.
+     */
+    long visitMaskMemory = 0;
+    
+    /**
+     * If true, the geometric measures of the regions are computed while the
+     * boundaries are tracked.
+     */
+    boolean computeMeasures = false;
+    
+    /**
+     * The measures computed during the last call to the process method, or
+     * null if measures were not computed.
+     */
+    RegionMeasures measures = null;
+    
+    /**
+     * The monitor notified after each row is scanned, or null.
+     */
+    ProgressMonitor monitor = null;
+    
+    /**
+     * The maximum duration of an extraction, in nanoseconds, or 0 if the
+     * duration is not limited.
+     */
+    long timeout = 0;
 
     enum Direction
     {
         RIGHT
         {
-            @Override
-            public int[][] coordsShifts()
-            {
-                return new int[][] {{1, 0}, {1, 1}};
-            }
-            
             @Override
             public Point getVertex(Position pos)
             {
@@ -70,12 +111,6 @@ public class BoundaryTracker
         
         UP
         {
-            @Override
-            public int[][] coordsShifts()
-            {
-                return new int[][] {{0, -1}, {1, -1}};
-            }
-            
             @Override
             public Point getVertex(Position pos)
             {
@@ -103,12 +138,6 @@ public class BoundaryTracker
         
         LEFT
         {
-            @Override
-            public int[][] coordsShifts()
-            {
-                return new int[][] {{-1, 0}, {-1, -1}};
-            }
-            
             @Override
             public Point getVertex(Position pos)
             {
@@ -136,12 +165,6 @@ public class BoundaryTracker
         
         DOWN
         {
-            @Override
-            public int[][] coordsShifts()
-            {
-                return new int[][] {{0, +1}, {-1, 1}};
-            }
-            
             @Override
             public Point getVertex(Position pos)
             {
@@ -176,9 +199,14 @@ public class BoundaryTracker
          * current direction. The second coordinate will be the pixel in the
          * opposite current 2-by-2 configuration.
          * 
+         * The returned array is shared by all calls and must not be modified.
+         * 
          * @return a 2-by-2 array corresponding to a pair of coordinates shifts.
          */
-        public abstract int[][] coordsShifts();
+        public int[][] coordsShifts()
+        {
+            return COORDS_SHIFTS[ordinal()];
+        }
         
         public abstract Point getVertex(Position pos);
         
@@ -273,13 +301,61 @@ public class BoundaryTracker
         }
     }
     
-    enum VertexLocation
+    /**
+     * The location of polygon vertices with respect to the boundary pixels:
+     * on pixel corners, on the middle of pixel edges, or on pixel centers.
+     */
+    public enum VertexLocation
     {
-        CORNER,
-        EDGE_CENTER,
-        PIXEL;
+        CORNER(new double[] {0.0, 1.0, 1.0, 0.0}, new double[] {1.0, 1.0, 0.0, 0.0}),
+        EDGE_CENTER(new double[] {0.5, 1.0, 0.5, 0.0}, new double[] {1.0, 0.5, 0.0, 0.5}),
+        PIXEL(new double[] {0.5, 0.5, 0.5, 0.5}, new double[] {0.5, 0.5, 0.5, 0.5});
+        
+        /**
+         * The shifts of the vertex with respect to the upper-left corner of
+         * the reference pixel, indexed by direction.
+         */
+        final double[] dx;
+        final double[] dy;
+        
+        private VertexLocation(double[] dx, double[] dy)
+        {
+            this.dx = dx;
+            this.dy = dy;
+        }
     }
     
+    /**
+     * The directions, indexed by their ordinal. The index of a direction is
+     * also the index of the bit used to mark visited positions.
+     */
+    static final Direction[] DIRECTIONS = Direction.values();
+    
+    // shifts of the pixel in the continuation of each direction
+    static final int[] NEXT_DX = new int[] {1, 0, -1, 0};
+    static final int[] NEXT_DY = new int[] {0, -1, 0, 1};
+    
+    // shifts of the pixel in diagonal position within the 2-by-2 configuration
+    static final int[] DIAG_DX = new int[] {1, 1, -1, -1};
+    static final int[] DIAG_DY = new int[] {1, -1, -1, 1};
+    
+    // the pair of coordinates shifts returned by Direction.coordsShifts()
+    static final int[][][] COORDS_SHIFTS = new int[][][] {
+        {{1, 0}, {1, 1}}, 
+        {{0, -1}, {1, -1}}, 
+        {{-1, 0}, {-1, -1}}, 
+        {{0, 1}, {-1, 1}}};
+    
+    /**
+     * The index of the DOWN direction, used for starting boundaries.
+     */
+    static final int DIR_DOWN = 3;
+    
+    // the codes of the moves computed by the tracking algorithm
+    static final int TURN_LEFT = 0;
+    static final int FORWARD = 1;
+    static final int TURN_RIGHT = 2;
+    
     /**
      * Default empty constructor, using Connectivity 4.
      */
@@ -320,6 +396,108 @@ public class BoundaryTracker
         this.vertexLocation = loc;
     }
     
+    /**
+     * Chooses whether the vertices located on a straight line between their
+     * neighbors are removed while boundaries are computed, keeping only the
+     * corners of the polygons.
+     * 
+     * @param removeCollinear
+     *            true if collinear vertices must be removed
+     */
+    public void setRemoveCollinearVertices(boolean removeCollinear)
+    {
+        this.removeCollinear = removeCollinear;
+    }
+    
+    /**
+     * Changes the simplifier applied to the polygons. Simplification keeps the
+     * vertices at the junctions between regions, so that the boundaries
+     * shared by adjacent regions remain consistent.
+     * 
+     * @param simplifier
+     *            the simplifier to apply, or null to keep all the vertices
+     */
+    public void setSimplifier(PolygonSimplifier simplifier)
+    {
+        this.simplifier = simplifier;
+    }
+    
+    /**
+     * Chooses whether the area, the perimeter, the centroid, the bounds and
+     * the number of vertices of each region are computed while the
+     * boundaries are tracked, without additional pass over the vertices.
+     * 
+     * @param computeMeasures
+     *            true if measures must be computed
+     * @see #getMeasures()
+     */
+    public void setComputeMeasures(boolean computeMeasures)
+    {
+        this.computeMeasures = computeMeasures;
+    }
+    
+    /**
+     * Returns the measures of the regions computed during the last call to
+     * the <code>process</code> or <code>processRegions</code> methods.
+     * 
+     * @return the measures of the regions, or null if measures were not
+     *         computed
+     * @see #setComputeMeasures(boolean)
+     */
+    public RegionMeasures getMeasures()
+    {
+        return measures;
+    }
+    
+    /**
+     * Changes the monitor notified of the progress of the extractions. The
+     * extractions of a subset of the regions, and the updates, report the
+     * rows of the bounding boxes of the regions. The monitor is also called
+     * while polygons are simplified, after all the rows have been scanned.
+     * The extraction is aborted with a <code>CancellationException</code>
+     * when the monitor returns false.
+     * 
+     * @param monitor
+     *            the monitor to notify after each row is scanned, or null
+     */
+    public void setProgressMonitor(ProgressMonitor monitor)
+    {
+        this.monitor = monitor;
+    }
+    
+    /**
+     * Limits the duration of the extractions. When an extraction runs longer
+     * than the timeout, it is aborted with a
+     * <code>CancellationException</code>, and the memory used to keep track
+     * of visited positions is released.
+     * 
+     * @param timeout
+     *            the maximum duration of an extraction, or 0 for no limit
+     * @param unit
+     *            the unit of the timeout
+     */
+    public void setTimeout(long timeout, TimeUnit unit)
+    {
+        if (timeout < 0)
+        {
+            throw new IllegalArgumentException("Timeout must be positive or zero");
+        }
+        this.timeout = unit.toNanos(timeout);
+    }
+    
+    /**
+     * Returns the memory used to keep track of visited positions during the
+     * last call to the <code>process</code> method. Depending on the size of
+     * the image and on the density of boundaries, positions are stored using
+     * one byte per pixel, one bit per pixel, or a set of visited pixels.
+     * 
+     * @return the number of bytes used by the visit mask
+     */
+    public long getVisitMaskMemory()
+    {
+        return visitMaskMemory;
+    }
+    
     /**
      * Tracks the boundary that starts at the current position by iterating on
      * successive neighbor positions, and returns the set of boundary points.
@@ -343,97 +521,136 @@ public class BoundaryTracker
     public ArrayList<Point2D> trackBoundary(ImageProcessor array, int x0,
             int y0, Direction initialDirection)
     {
-        // retrieve image size
-        int sizeX = array.getWidth();
-        int sizeY = array.getHeight();
-        
-        // initialize result array
-        ArrayList<Point2D> vertices = new ArrayList<Point2D>();
-        
-        // initialize tracking algo state
-        int value = (int) array.getf(x0, y0);
-        Position pos0 = new Position(x0, y0, initialDirection);
-        Position pos = new Position(x0, y0, initialDirection);
-        
-        // iterate over boundary until we come back at initial position
-        do
-        {
-            vertices.add(pos.getVertex(pos, vertexLocation));
-            
-            // compute position of the two other points in current 2-by-2 configuration
-            int[][] shifts = pos.direction.coordsShifts();
-            // the pixel in the continuation of current direction
-            int xn = pos.x + shifts[0][0];
-            int yn = pos.y + shifts[0][1];
-            // the pixel in the diagonal position within current configuration
-            int xd = pos.x + shifts[1][0];
-            int yd = pos.y + shifts[1][1];
-            
-            // determine configuration of the two pixels in current direction
-            // initialize with false, to manage the case of configuration on the
-            // border. In any cases, assume that reference pixel in current
-            // position belongs to the array.
-            boolean b0 = false;
-            if (xn >= 0 && xn < sizeX && yn >= 0 && yn < sizeY)
-            {
-                b0 = ((int) array.getf(xn, yn)) == value;
-            }
-            boolean b1 = false;
-            if (xd >= 0 && xd < sizeX && yd >= 0 && yd < sizeY)
-            {
-                b1 = ((int) array.getf(xd, yd)) == value;
-            }
-            
-            // Depending on the values of the two other pixels in configuration,
-            // update the current position
-            if (!b0 && (!b1 || conn == 4))
-            {
-                // corner configuration -> +90 direction
-                pos = pos.direction.turnLeft(pos);
-            } 
-            else if (b1 && (b0 || conn == 8))
-            {
-                // reentrant corner configuration -> -90 direction
-                pos = pos.direction.turnRight(pos);
-            } 
-            else if (b0 && !b1)
-            {
-                // straight border configuration -> same direction
-                pos = pos.direction.forward(pos);
-            } 
-            else
-            {
-                throw new RuntimeException("Should not reach this part...");
-            }
-        } while (!pos0.equals(pos));
-        
-        return vertices;
+        VertexBuffer vertices = new VertexBuffer();
+        vertices.removeCollinear = removeCollinear;
+        trackBoundary(array, null, x0, y0, initialDirection, vertices);
+        return vertices.toPointList();
     }
     
     public Map<Integer, ArrayList<Polygon2D>> process(ImageProcessor array)
+    {
+        return process(new ImageProcessorLabelSource(array));
+    }
+    
+    /**
+     * Computes the boundaries of all the regions within a label source.
+     * 
+     * @param source
+     *            the source of labels
+     * @return the boundaries of each region, indexed by region label
+     */
+    public Map<Integer, ArrayList<Polygon2D>> process(LabelSource source)
+    {
+        Map<Integer, ArrayList<Polygon2D>> boundaries = new HashMap<>();
+        process(source, (label, poly) -> addPolygon(boundaries, label, poly));
+        return boundaries;
+    }
+    
+    /**
+     * Computes the boundaries of all the regions within a label source, and
+     * sends each polygon to a consumer as soon as it is computed, without
+     * keeping the polygons in memory. Polygons are sent in the order of the
+     * start of their boundary in raster order. When polygons are simplified,
+     * the boundaries of all the regions are kept until the end of the
+     * tracking, and the polygons are sent once they are all simplified.
+     * 
+     * @param source
+     *            the source of labels
+     * @param consumer
+     *            the consumer of the polygons
+     */
+    public void process(LabelSource source, BoundaryConsumer consumer)
+    {
+        processSource(source, consumer, null, new ExtractionProgress(monitor, timeout, source.getHeight()));
+    }
+    
+    /**
+     * Computes the boundaries of all the regions within a label image, and
+     * stores them within arrays of primitive values.
+     * 
+     * @see #processBoundaries(LabelSource)
+     * 
+     * @param array
+     *            the array containing the labels
+     * @return the boundaries of the regions, sorted by label
+     */
+    public RegionBoundaries processBoundaries(ImageProcessor array)
+    {
+        return processBoundaries(new ImageProcessorLabelSource(array));
+    }
+    
+    /**
+     * Computes the boundaries of all the regions within a label source, and
+     * stores them within arrays of primitive values. The vertices are copied
+     * into the result without creating intermediate polygons, and regions are
+     * sorted by label.
+     * 
+     * @param source
+     *            the source of labels
+     * @return the boundaries of the regions, sorted by label
+     */
+    public RegionBoundaries processBoundaries(LabelSource source)
+    {
+        return processBoundaries(source, new ExtractionProgress(monitor, timeout, source.getHeight()));
+    }
+    
+    /**
+     * Computes the boundaries of all the regions within a label source, and
+     * reports the progress to an extraction progress that can be shared by
+     * several label sources.
+     */
+    RegionBoundaries processBoundaries(LabelSource source, ExtractionProgress progress)
+    {
+        RegionBoundaries result = new RegionBoundaries();
+        processSource(source, null, result, progress);
+        result.finish();
+        return result;
+    }
+    
+    /**
+     * Computes the boundaries of all the regions within a label source, and
+     * either sends them to the consumer, or adds them to the result when the
+     * consumer is null.
+     */
+    private void processSource(LabelSource source, BoundaryConsumer consumer, RegionBoundaries result,
+            ExtractionProgress progress)
     {
         // retrieve image size
-        int sizeX = array.getWidth();
-        int sizeY = array.getHeight();
+        int sizeX = source.getWidth();
+        int sizeY = source.getHeight();
         
-        ByteProcessor maskArray = new ByteProcessor(sizeX, sizeY);
+        // keep track of the boundary positions already visited
+        VisitMask mask = VisitMask.create(source);
         
-        Map<Integer, ArrayList<Polygon2D>> boundaries = new HashMap<>();
+        // finds the transitions between labels within each row
+        TransitionScanner scanner = TransitionScanner.create(source);
+        
+        // buffer for the vertices of the current boundary, reused for each boundary
+        VertexBuffer vertices = new VertexBuffer();
+        
+        // when polygons are simplified, keep the vertices of all boundaries,
+        // as junction vertices must not be removed before simplification
+        ArrayList<VertexBuffer> rings = new ArrayList<VertexBuffer>();
+        ArrayList<Integer> ringLabels = new ArrayList<Integer>();
+        vertices.removeCollinear = removeCollinear && simplifier == null;
+        
+        // accumulate the measures of the regions while tracking
+        RegionMeasures measures = computeMeasures ? new RegionMeasures() : null;
+        vertices.measure = computeMeasures;
         
         // iterate over all image pixels
         for (int y = 0; y < sizeY; y++)
         {
+            int boundaryCount = 0;
+            long vertexCount = 0;
+            scanner.setRow(y);
+            long offset = (long) y * sizeX;
             int currentLabel = 0;
             
-            for (int x = 0; x < sizeX; x++)
+            // jump from one transition between two labels to the next one
+            for (int x = scanner.nextTransition(0, 0); x < sizeX; x = scanner.nextTransition(x + 1, currentLabel))
             {
-                int label = (int) array.getf(x, y);
-
-                // first check if this is a transition between two labels
-                if (label == currentLabel)
-                {
-                    continue;
-                }
+                int label = scanner.getLabel(x);
                 currentLabel = label;
                 
                 // do not process background values
@@ -442,147 +659,1277 @@ public class BoundaryTracker
                     continue;
                 }
                 // if the boundary was already tracked, no need to work again
-                if ((maskArray.get(x, y) & 0x08) > 0)
+                if (mask.isVisited(offset + x))
                 {
                     continue;
                 }
                 
                 // ok, we are at a transition that can be used to initialize a new boundary
                 // -> track the boundary, and convert to polygon object
-                ArrayList<Point2D> vertices = trackBoundary(array, maskArray, x, y, Direction.DOWN);
-                Polygon2D poly = createPolygon(vertices);
-                
-                // update map from labels to array of polygons
-                ArrayList<Polygon2D> polygons = boundaries.get(label);
-                if (polygons == null)
-                {
-                    polygons = new ArrayList<Polygon2D>(4);
-                }
-                polygons.add(poly);
-                boundaries.put(label, polygons);
+                vertices.clear();
+                trackBoundary(source, mask, x, y, Direction.DOWN, vertices);
+                addBoundary(label, vertices, consumer, result, rings, ringLabels, measures);
+                boundaryCount++;
+                vertexCount += vertices.size();
             }
+            progress.addRows(1, boundaryCount, vertexCount);
         }
         
-        return boundaries;
+        finishBoundaries(source, consumer, result, rings, ringLabels, measures, progress);
+        visitMaskMemory = mask.getMemoryUsage();
     }
     
     /**
-     * Tracks the boundary that starts at the current position by iterating on
-     * successive neighbor positions, and returns the set of boundary points.
+     * Computes the boundaries of a subset of the regions within a label
+     * image.
      * 
-     * The positions are defined by two coordinates and a direction. The initial
-     * position must correspond to a transition into a region, and the resulting
-     * boundary will surround this region.
+     * @see #process(LabelSource, LabelIndex, int[])
      * 
      * @param array
-     *            the array containing binary or label representing the
-     *            region(s)
-     * @param maskArray
-     *            an array the same size as <code>array</code> containing a
-     *            4-bits values that indicates which directions of current pixel
-     *            have been visited.
-     * @param x0
-     *            the x-coordinate of the start position
-     * @param y0
-     *            the y-coordinate of the start position
-     * @param initialDirection
-     *            the direction of the start position
-     * @return the list of points that form the boundary starting at specified
-     *         position
+     *            the array containing the labels
+     * @param index
+     *            the index of the regions within the array
+     * @param labels
+     *            the labels of the regions to process
+     * @return the boundaries of each region, indexed by region label
      */
-    private ArrayList<Point2D> trackBoundary(ImageProcessor array, ImageProcessor maskArray, int x0,
-            int y0, Direction initialDirection)
+    public Map<Integer, ArrayList<Polygon2D>> process(ImageProcessor array, LabelIndex index, int[] labels)
     {
-        // retrieve image size
-        int sizeX = array.getWidth();
-        int sizeY = array.getHeight();
+        return process(new ImageProcessorLabelSource(array), index, labels);
+    }
+    
+    /**
+     * Computes the boundaries of a subset of the regions within a label
+     * source. Only the bounding boxes of the requested labels are scanned,
+     * and the memory used for keeping track of visited positions depends on
+     * the size of the boundaries only. The result is the same as the one of
+     * the <code>process</code> method, restricted to the requested labels.
+     * 
+     * @param source
+     *            the source of labels
+     * @param index
+     *            the index of the regions within the source, that can be
+     *            reused for several calls
+     * @param labels
+     *            the labels of the regions to process. Labels not present
+     *            within the image and the background label are ignored.
+     * @return the boundaries of each region, indexed by region label
+     */
+    public Map<Integer, ArrayList<Polygon2D>> process(LabelSource source, LabelIndex index, int[] labels)
+    {
+        int sizeX = source.getWidth();
+        if (sizeX != index.getWidth() || source.getHeight() != index.getHeight())
+        {
+            throw new IllegalArgumentException("Label index must have the same size as the label source");
+        }
         
-        // initialize result array
-        ArrayList<Point2D> vertices = new ArrayList<Point2D>();
+        // the number of visited positions is small compared to the image size
+        VisitMask mask = new SparseVisitMask(256, (long) sizeX * source.getHeight());
         
-        // initialize tracking algo state
-        int value = (int) array.getf(x0, y0);
-        Position pos0 = new Position(x0, y0, initialDirection);
-        Position pos = new Position(x0, y0, initialDirection);
+        Map<Integer, ArrayList<Polygon2D>> boundaries = new HashMap<>();
+        BoundaryConsumer consumer = (lbl, poly) -> addPolygon(boundaries, lbl, poly);
+        VertexBuffer vertices = new VertexBuffer();
+        ArrayList<VertexBuffer> rings = new ArrayList<VertexBuffer>();
+        ArrayList<Integer> ringLabels = new ArrayList<Integer>();
+        vertices.removeCollinear = removeCollinear && simplifier == null;
+        RegionMeasures measures = computeMeasures ? new RegionMeasures() : null;
+        vertices.measure = computeMeasures;
         
-        // iterate over boundary until we come back at initial position
-        do
+        // process each label once
+        int[] sortedLabels = labels.clone();
+        Arrays.sort(sortedLabels);
+        int rowCount = 0;
+        for (int k = 0; k < sortedLabels.length; k++)
         {
-            // update vertices
-            vertices.add(pos.getVertex(pos, vertexLocation));
-            
-            // mark the current pixel with integer that depends on position
-            int mask = maskArray.get(pos.x, pos.y);
-            switch (pos.direction)
-            {
-            case RIGHT: mask = mask | 0x01; break;
-            case UP:    mask = mask | 0x02; break;
-            case LEFT:  mask = mask | 0x04; break;
-            case DOWN:  mask = mask | 0x08; break;
-            }
-            maskArray.set(pos.x, pos.y, mask);
-            
-            // compute position of the two other points in current 2-by-2 configuration
-            int[][] shifts = pos.direction.coordsShifts();
-            // the pixel in the continuation of current direction
-            int xn = pos.x + shifts[0][0];
-            int yn = pos.y + shifts[0][1];
-            // the pixel in the diagonal position within current configuration
-            int xd = pos.x + shifts[1][0];
-            int yd = pos.y + shifts[1][1];
-            
-            // determine configuration of the two pixels in current direction
-            // initialize with false, to manage the case of configuration on the
-            // border. In any cases, assume that reference pixel in current
-            // position belongs to the array.
-            boolean b0 = false;
-            if (xn >= 0 && xn < sizeX && yn >= 0 && yn < sizeY)
+            int i = index.indexOf(sortedLabels[k]);
+            if (sortedLabels[k] != 0 && i >= 0 && (k == 0 || sortedLabels[k] != sortedLabels[k - 1]))
             {
-                b0 = ((int) array.getf(xn, yn)) == value;
+                rowCount += index.yMax[i] - index.yMin[i] + 1;
             }
-            boolean b1 = false;
-            if (xd >= 0 && xd < sizeX && yd >= 0 && yd < sizeY)
+        }
+        
+        // the progress is reported for the rows of the bounding boxes
+        ExtractionProgress progress = new ExtractionProgress(monitor, timeout, rowCount);
+        for (int k = 0; k < sortedLabels.length; k++)
+        {
+            int label = sortedLabels[k];
+            int i = index.indexOf(label);
+            if (label == 0 || i < 0 || (k > 0 && label == sortedLabels[k - 1]))
             {
-                b1 = ((int) array.getf(xd, yd)) == value;
+                continue;
             }
             
-            // Depending on the values of the two other pixels in configuration,
-            // update the current position
-            if (!b0 && (!b1 || conn == 4))
+            // iterate over the pixels within the bounding box of the label
+            int x0 = index.xMin[i];
+            int x1 = index.xMax[i];
+            for (int y = index.yMin[i]; y <= index.yMax[i]; y++)
             {
-                // corner configuration -> +90 direction
-                pos = pos.direction.turnLeft(pos);
-            } 
-            else if (b1 && (b0 || conn == 8))
-            {
-                // reentrant corner configuration -> -90 direction
-                pos = pos.direction.turnRight(pos);
-            } 
-            else if (b0 && !b1)
-            {
-                // straight border configuration -> same direction
-                pos = pos.direction.forward(pos);
-            } 
-            else
-            {
-                throw new RuntimeException("Should not reach this part...");
+                int boundaryCount = 0;
+                long vertexCount = 0;
+                long offset = (long) y * sizeX;
+                boolean inside = x0 > 0 && source.getLabel(x0 - 1, y) == label;
+                for (int x = x0; x <= x1; x++)
+                {
+                    // check if this is a transition into the region
+                    boolean previous = inside;
+                    inside = source.getLabel(x, y) == label;
+                    if (!inside || previous || mask.isVisited(offset + x))
+                    {
+                        continue;
+                    }
+                    
+                    vertices.clear();
+                    trackBoundary(source, mask, x, y, Direction.DOWN, vertices);
+                    addBoundary(label, vertices, consumer, null, rings, ringLabels, measures);
+                    boundaryCount++;
+                    vertexCount += vertices.size();
+                }
+                progress.addRows(1, boundaryCount, vertexCount);
             }
-        } while (!pos0.equals(pos));
+        }
         
-        return vertices;
+        finishBoundaries(source, consumer, null, rings, ringLabels, measures, progress);
+        visitMaskMemory = mask.getMemoryUsage();
+        return boundaries;
     }
     
-    private static final Polygon2D createPolygon(ArrayList<Point2D> vertices)
+    /**
+     * Computes the boundaries of the regions within a label image that
+     * intersect a rectangle.
+     * 
+     * @see #process(LabelSource, LabelIndex, Rectangle)
+     * 
+     * @param array
+     *            the array containing the labels
+     * @param index
+     *            the index of the regions within the array
+     * @param rect
+     *            the rectangle containing the regions to process
+     * @return the boundaries of each region, indexed by region label
+     */
+    public Map<Integer, ArrayList<Polygon2D>> process(ImageProcessor array, LabelIndex index, Rectangle rect)
+    {
+        return process(new ImageProcessorLabelSource(array), index, rect);
+    }
+    
+    /**
+     * Computes the boundaries of the regions within a label source that
+     * intersect a rectangle. The labels are read from the pixels within the
+     * rectangle, and the complete boundaries of the corresponding regions
+     * are computed, including the parts outside of the rectangle.
+     * 
+     * @param source
+     *            the source of labels
+     * @param index
+     *            the index of the regions within the source, that can be
+     *            reused for several calls
+     * @param rect
+     *            the rectangle containing the regions to process
+     * @return the boundaries of each region, indexed by region label
+     */
+    public Map<Integer, ArrayList<Polygon2D>> process(LabelSource source, LabelIndex index, Rectangle rect)
+    {
+        Rectangle bounds = rect.intersection(new Rectangle(0, 0, source.getWidth(), source.getHeight()));
+        if (bounds.isEmpty())
+        {
+            return process(source, index, new int[0]);
+        }
+        
+        // collect the labels within the rectangle, without duplicates
+        int[] labels = new int[16];
+        int count = 0;
+        int previous = 0;
+        for (int y = bounds.y; y < bounds.y + bounds.height; y++)
+        {
+            for (int x = bounds.x; x < bounds.x + bounds.width; x++)
+            {
+                int label = source.getLabel(x, y);
+                if (label == previous)
+                {
+                    continue;
+                }
+                previous = label;
+                if (count == labels.length)
+                {
+                    labels = Arrays.copyOf(labels, count * 2);
+                }
+                labels[count++] = label;
+            }
+        }
+        
+        // duplicate labels are ignored by the processing of label subsets
+        return process(source, index, Arrays.copyOf(labels, count));
+    }
+    
+    /**
+     * Updates the boundaries computed for a label image after some regions
+     * were modified. The boundaries of the specified labels are computed
+     * again, and the other boundaries are reused.
+     * 
+     * When measures are computed, the measures of the specified labels are
+     * merged into the measures of the last call to a process or update
+     * method of this tracker, that must have computed the previous
+     * boundaries, so that the <code>getMeasures</code> method returns the
+     * measures of all the regions. If no measures were computed before, only
+     * the measures of the specified labels are returned.
+     * 
+     * @param previous
+     *            the boundaries computed before the modification, that are
+     *            not modified
+     * @param source
+     *            the modified source of labels
+     * @param index
+     *            the index of the regions within the modified source
+     * @param labels
+     *            the labels of the regions whose pixels were modified,
+     *            including the labels removed from the image
+     * @return the boundaries of each region, indexed by region label
+     */
+    public Map<Integer, ArrayList<Polygon2D>> update(Map<Integer, ArrayList<Polygon2D>> previous,
+            LabelSource source, LabelIndex index, int[] labels)
+    {
+        RegionMeasures previousMeasures = this.measures;
+        
+        Map<Integer, ArrayList<Polygon2D>> boundaries = new HashMap<>(previous);
+        for (int label : labels)
+        {
+            boundaries.remove(label);
+        }
+        boundaries.putAll(process(source, index, labels));
+        
+        // keep the measures of the regions that were not computed again
+        if (this.measures != null && previousMeasures != null)
+        {
+            this.measures = RegionMeasures.merge(previousMeasures, this.measures, labels);
+        }
+        return boundaries;
+    }
+    
+    /**
+     * Updates the boundaries computed for a label image after the pixels
+     * within a rectangle were modified. The index is updated, and the
+     * boundaries of the regions whose bounding box touches the rectangle are
+     * computed again. As simplification depends on the labels around the
+     * boundaries, the rectangle is enlarged by one pixel. The other
+     * boundaries are reused without any computation. Measures are merged as
+     * for the update of a list of labels.
+     * 
+     * The result is the same as the one obtained by processing the whole
+     * modified image.
+     * 
+     * @param previous
+     *            the boundaries computed before the modification, that are
+     *            not modified
+     * @param source
+     *            the modified source of labels
+     * @param index
+     *            the index of the regions computed before the modification,
+     *            that is updated by this method
+     * @param dirty
+     *            the rectangle containing the modified pixels
+     * @return the boundaries of each region, indexed by region label
+     */
+    public Map<Integer, ArrayList<Polygon2D>> update(Map<Integer, ArrayList<Polygon2D>> previous,
+            LabelSource source, LabelIndex index, Rectangle dirty)
+    {
+        index.update(source, dirty);
+        Rectangle rect = new Rectangle(dirty.x - 1, dirty.y - 1, dirty.width + 2, dirty.height + 2);
+        return update(previous, source, index, index.labelsIntersecting(rect));
+    }
+    
+    /**
+     * Converts the boundary within a vertex buffer into a polygon sent to the
+     * consumer, or copies the vertices into the result if the consumer is
+     * null, or keeps a copy of the vertices when polygons are simplified,
+     * and updates the measures of the region.
+     */
+    private void addBoundary(int label, VertexBuffer vertices,
+            BoundaryConsumer consumer, RegionBoundaries result,
+            ArrayList<VertexBuffer> rings, ArrayList<Integer> ringLabels, RegionMeasures measures)
+    {
+        if (measures != null)
+        {
+            measures.addBoundary(label, vertices);
+        }
+        if (simplifier != null)
+        {
+            rings.add(vertices.copy());
+            ringLabels.add(label);
+            return;
+        }
+        if (consumer == null)
+        {
+            result.add(label, vertices);
+            if (measures != null)
+            {
+                measures.addVertexCount(label, vertices.size());
+            }
+            return;
+        }
+        Polygon2D poly = vertices.toPolygon();
+        consumer.boundaryClosed(label, poly);
+        if (measures != null)
+        {
+            measures.addVertexCount(label, poly.vertexNumber());
+        }
+    }
+    
+    /**
+     * Simplifies the boundaries kept during tracking and sends them to the
+     * consumer, if necessary, and stores the measures computed during
+     * tracking.
+     */
+    private void finishBoundaries(LabelSource source,
+            BoundaryConsumer consumer, RegionBoundaries result,
+            ArrayList<VertexBuffer> rings, ArrayList<Integer> ringLabels, RegionMeasures measures,
+            ExtractionProgress progress)
+    {
+        // simplify all the boundaries in parallel
+        if (simplifier != null)
+        {
+            Polygon2D[] polygons = simplifier.createPolygons(rings, source, vertexLocation, progress);
+            for (int i = 0; i < polygons.length; i++)
+            {
+                if (consumer == null)
+                {
+                    result.add(ringLabels.get(i), polygons[i]);
+                }
+                else
+                {
+                    consumer.boundaryClosed(ringLabels.get(i), polygons[i]);
+                }
+                if (measures != null)
+                {
+                    measures.addVertexCount(ringLabels.get(i), polygons[i].vertexNumber());
+                }
+            }
+        }
+        
+        if (measures != null)
+        {
+            measures.finish();
+        }
+        this.measures = measures;
+    }
+    
+    /**
+     * Computes the boundaries of all the regions within a label image, and
+     * groups them into region parts made of an outer boundary and of the
+     * boundaries of its holes.
+     * 
+     * @see #processRegions(LabelSource)
+     * 
+     * @param array
+     *            the array containing the labels
+     * @return the parts of each region, indexed by region label
+     */
+    public Map<Integer, ArrayList<RegionPolygon>> processRegions(ImageProcessor array)
+    {
+        return processRegions(new ImageProcessorLabelSource(array));
+    }
+    
+    /**
+     * Computes the boundaries of all the regions within a label source, and
+     * groups them into region parts made of an outer boundary and of the
+     * boundaries of its holes.
+     * 
+     * Boundaries are classified while the image is scanned, without any
+     * geometric test. Each boundary starts at its first position with DOWN
+     * direction in raster order. For an outer boundary, this is the first
+     * pixel of the connected component, so the pixel above (for
+     * 4-connectivity) or above left (for 8-connectivity) belongs to another
+     * region. For a hole boundary, the start pixel is on the right of the
+     * first row of the hole, and this pixel belongs to the same component.
+     * The component of a hole is found from the boundary of the nearest
+     * pixels of the same label on the left of the hole, within the same row,
+     * which was tracked before.
+     * 
+     * The outer boundaries are listed in the order of the polygons returned
+     * by the <code>process</code> method, as are the holes of each part.
+     * 
+     * @param source
+     *            the source of labels
+     * @return the parts of each region, indexed by region label
+     */
+    public Map<Integer, ArrayList<RegionPolygon>> processRegions(LabelSource source)
+    {
+        // retrieve image size
+        int sizeX = source.getWidth();
+        int sizeY = source.getHeight();
+        
+        // keep track of the boundary each visited position belongs to
+        RingVisitMask mask = new RingVisitMask((long) (VisitMask.estimateStartDensity(source) * sizeX * sizeY));
+        
+        // buffers for the labels of the current and of the previous rows
+        int[] labels = new int[sizeX];
+        int[] prevLabels = new int[sizeX];
+        
+        // buffer for the vertices of the current boundary, reused for each boundary
+        VertexBuffer vertices = new VertexBuffer();
+        vertices.removeCollinear = removeCollinear && simplifier == null;
+        
+        // accumulate the measures of the regions while tracking
+        RegionMeasures measures = computeMeasures ? new RegionMeasures() : null;
+        vertices.measure = computeMeasures;
+        
+        // the boundaries, with their label and the index of the outer
+        // boundary of the holes (-1 for outer boundaries)
+        ArrayList<Polygon2D> polygons = new ArrayList<Polygon2D>();
+        ArrayList<VertexBuffer> rings = new ArrayList<VertexBuffer>();
+        ArrayList<Integer> ringLabels = new ArrayList<Integer>();
+        ArrayList<Integer> ringParents = new ArrayList<Integer>();
+        
+        // iterate over all image pixels
+        ExtractionProgress progress = new ExtractionProgress(monitor, timeout, sizeY);
+        for (int y = 0; y < sizeY; y++)
+        {
+            int boundaryCount = ringLabels.size();
+            long vertexCount = 0;
+            int[] tmp = prevLabels;
+            prevLabels = labels;
+            labels = tmp;
+            source.readRow(y, labels);
+            long offset = (long) y * sizeX;
+            int currentLabel = 0;
+            
+            for (int x = 0; x < sizeX; x++)
+            {
+                int label = labels[x];
+                
+                // first check if this is a transition between two labels
+                if (label == currentLabel)
+                {
+                    continue;
+                }
+                currentLabel = label;
+                
+                // do not process background values or visited boundaries
+                if (label == 0 || mask.isVisited(offset + x))
+                {
+                    continue;
+                }
+                
+                // identify hole boundaries from the pixels above the start
+                int parent = -1;
+                int xAbove = conn == 4 ? x : x - 1;
+                if (y > 0 && xAbove >= 0 && prevLabels[xAbove] == label)
+                {
+                    // the boundary of the nearest run with the same label on
+                    // the left belongs to the same component
+                    int x1 = x - 1;
+                    while (x1 >= 0 && labels[x1] != label)
+                    {
+                        x1--;
+                    }
+                    while (x1 > 0 && labels[x1 - 1] == label)
+                    {
+                        x1--;
+                    }
+                    if (x1 >= 0)
+                    {
+                        int ring = mask.getRing(offset + x1);
+                        parent = ringParents.get(ring) == -1 ? ring : ringParents.get(ring);
+                    }
+                }
+                
+                // track the boundary, and convert to polygon object
+                mask.setCurrentRing(ringLabels.size());
+                vertices.clear();
+                trackBoundary(source, mask, x, y, Direction.DOWN, vertices);
+                if (measures != null)
+                {
+                    measures.addBoundary(label, vertices);
+                }
+                if (simplifier != null)
+                {
+                    rings.add(vertices.copy());
+                }
+                else
+                {
+                    polygons.add(vertices.toPolygon());
+                }
+                ringLabels.add(label);
+                ringParents.add(parent);
+                vertexCount += vertices.size();
+            }
+            progress.addRows(1, ringLabels.size() - boundaryCount, vertexCount);
+        }
+        
+        // simplify all the boundaries in parallel
+        if (simplifier != null)
+        {
+            polygons.addAll(Arrays.asList(simplifier.createPolygons(rings, source, vertexLocation, progress)));
+        }
+        
+        // group the holes with their outer boundary
+        Map<Integer, ArrayList<RegionPolygon>> regions = new HashMap<>();
+        RegionPolygon[] parts = new RegionPolygon[polygons.size()];
+        for (int i = 0; i < parts.length; i++)
+        {
+            if (measures != null)
+            {
+                measures.addVertexCount(ringLabels.get(i), polygons.get(i).vertexNumber());
+            }
+            
+            int parent = ringParents.get(i);
+            if (parent != -1)
+            {
+                parts[parent].addHole(polygons.get(i));
+                continue;
+            }
+            
+            parts[i] = new RegionPolygon(polygons.get(i));
+            ArrayList<RegionPolygon> list = regions.get(ringLabels.get(i));
+            if (list == null)
+            {
+                list = new ArrayList<RegionPolygon>(4);
+                regions.put(ringLabels.get(i), list);
+            }
+            list.add(parts[i]);
+        }
+        
+        if (measures != null)
+        {
+            measures.finish();
+        }
+        this.measures = measures;
+        visitMaskMemory = mask.getMemoryUsage();
+        return regions;
+    }
+    
+    private static final void addPolygon(Map<Integer, ArrayList<Polygon2D>> boundaries, int label, Polygon2D poly)
+    {
+        ArrayList<Polygon2D> polygons = boundaries.get(label);
+        if (polygons == null)
+        {
+            polygons = new ArrayList<Polygon2D>(4);
+            boundaries.put(label, polygons);
+        }
+        polygons.add(poly);
+    }
+    
+    /**
+     * Reads the labels of a row of the image into the specified buffer,
+     * using direct access to the pixel array for the standard processor
+     * types.
+     * 
+     * @param array
+     *            the array containing the labels
+     * @param y
+     *            the index of the row to read
+     * @param labels
+     *            the buffer to fill, with as many elements as the image width
+     */
+    static final void readRow(ImageProcessor array, int y, int[] labels)
+    {
+        int sizeX = array.getWidth();
+        int offset = y * sizeX;
+        if (array instanceof ByteProcessor)
+        {
+            byte[] pixels = (byte[]) array.getPixels();
+            for (int x = 0; x < sizeX; x++)
+            {
+                labels[x] = pixels[offset + x] & 0x00FF;
+            }
+        }
+        else if (array instanceof ShortProcessor)
+        {
+            short[] pixels = (short[]) array.getPixels();
+            for (int x = 0; x < sizeX; x++)
+            {
+                labels[x] = pixels[offset + x] & 0x00FFFF;
+            }
+        }
+        else if (array instanceof FloatProcessor)
+        {
+            float[] pixels = (float[]) array.getPixels();
+            for (int x = 0; x < sizeX; x++)
+            {
+                labels[x] = (int) pixels[offset + x];
+            }
+        }
+        else if (array instanceof ColorProcessor)
+        {
+            int[] pixels = (int[]) array.getPixels();
+            for (int x = 0; x < sizeX; x++)
+            {
+                labels[x] = pixels[offset + x] & 0x00FFFFFF;
+            }
+        }
+        else
+        {
+            for (int x = 0; x < sizeX; x++)
+            {
+                labels[x] = (int) array.getf(x, y);
+            }
+        }
+    }
+    
+    /**
+     * Tracks the boundary that starts at the current position within a label
+     * source. Sources backed by an image processor use the kernel specialized
+     * for the type of the processor.
+     * 
+     * @param source
+     *            the source of labels
+     * @param mask
+     *            the mask used to mark the visited positions with DOWN
+     *            direction. Can be null.
+     * @param x0
+     *            the x-coordinate of the start position
+     * @param y0
+     *            the y-coordinate of the start position
+     * @param initialDirection
+     *            the direction of the start position
+     * @param vertices
+     *            the buffer to populate with the vertices of the boundary
+     */
+    void trackBoundary(LabelSource source, VisitMask mask, int x0,
+            int y0, Direction initialDirection, VertexBuffer vertices)
+    {
+        if (source instanceof ImageProcessorLabelSource)
+        {
+            trackBoundary(((ImageProcessorLabelSource) source).getProcessor(), mask, x0, y0, initialDirection, vertices);
+            return;
+        }
+        trackBoundaryGeneric(source, mask, x0, y0, initialDirection, vertices);
+    }
+    
+    /**
+     * Tracks the boundary that starts at the current position, using a kernel
+     * specialized for the type of the array whenever possible.
+     * 
+     * @param array
+     *            the array containing binary or label representing the
+     *            region(s)
+     * @param mask
+     *            the mask used to mark the visited positions with DOWN
+     *            direction. Can be null.
+     * @param x0
+     *            the x-coordinate of the start position
+     * @param y0
+     *            the y-coordinate of the start position
+     * @param initialDirection
+     *            the direction of the start position
+     * @param vertices
+     *            the buffer to populate with the vertices of the boundary
+     */
+    void trackBoundary(ImageProcessor array, VisitMask mask, int x0,
+            int y0, Direction initialDirection, VertexBuffer vertices)
+    {
+        int sizeX = array.getWidth();
+        int sizeY = array.getHeight();
+        if (array instanceof ByteProcessor)
+        {
+            trackBoundary((byte[]) array.getPixels(), sizeX, sizeY, mask, x0, y0, initialDirection, vertices);
+            return;
+        }
+        if (array instanceof ShortProcessor)
+        {
+            trackBoundary((short[]) array.getPixels(), sizeX, sizeY, mask, x0, y0, initialDirection, vertices);
+            return;
+        }
+        if (array instanceof FloatProcessor)
+        {
+            trackBoundary((float[]) array.getPixels(), sizeX, sizeY, mask, x0, y0, initialDirection, vertices);
+            return;
+        }
+        if (array instanceof ColorProcessor)
+        {
+            trackBoundary((int[]) array.getPixels(), sizeX, sizeY, mask, x0, y0, initialDirection, vertices);
+            return;
+        }
+        trackBoundaryGeneric(new ImageProcessorLabelSource(array), mask, x0, y0, initialDirection, vertices);
+    }
+    
+    /**
+     * Tracks a boundary within an array of 8-bits labels.
+     * 
+     * Within the tracking loop, the current position is stored as a linear
+     * index into the pixel array. Neighbor pixels are read directly from the
+     * array. The loop is split into runs of positions whose distance to the
+     * image border guarantees that the neighbors are within the image, and
+     * are read without any bounds check, and single positions near the
+     * border, processed as if the image were surrounded by background.
+     */
+    private void trackBoundary(byte[] pixels, int sizeX, int sizeY,
+            VisitMask mask, int x0, int y0, Direction initialDirection, VertexBuffer vertices)
+    {
+        // shifts of vertex coordinates with respect to reference pixel
+        double[] vertexDX = vertexLocation.dx;
+        double[] vertexDY = vertexLocation.dy;
+        
+        // shifts of linear index for the two pixels within 2-by-2 configuration
+        int[] nextOffsets = nextOffsets(sizeX);
+        int[] diagOffsets = diagOffsets(sizeX);
+        int xmax = sizeX - 1;
+        int ymax = sizeY - 1;
+        
+        // initialize tracking algo state
+        int x = x0;
+        int y = y0;
+        int index = y0 * sizeX + x0;
+        int dir0 = initialDirection.ordinal();
+        int dir = dir0;
+        int value = pixels[index] & 0x00FF;
+        
+        // iterate over boundary until we come back at initial position
+        do
+        {
+            // the number of positions, starting from the current one, that are
+            // within the image interior, as each move shifts the position by at
+            // most one pixel along each axis
+            int safeSteps = Math.min(Math.min(x, xmax - x), Math.min(y, ymax - y));
+            
+            // interior positions: neighbors are read without bounds check
+            for (; safeSteps > 0; safeSteps--)
+            {
+                vertices.add(x + vertexDX[dir], y + vertexDY[dir]);
+                if (dir == DIR_DOWN && mask != null)
+                {
+                    mask.setVisited(index);
+                }
+                
+                // determine configuration of the two pixels in current direction
+                boolean b0 = (pixels[index + nextOffsets[dir]] & 0x00FF) == value;
+                boolean b1 = (pixels[index + diagOffsets[dir]] & 0x00FF) == value;
+                
+                // update the current position
+                switch (nextMove(b0, b1, conn))
+                {
+                    case TURN_LEFT:
+                        dir = (dir + 1) & 0x03;
+                        break;
+                    case FORWARD:
+                        x += NEXT_DX[dir];
+                        y += NEXT_DY[dir];
+                        index += nextOffsets[dir];
+                        break;
+                    case TURN_RIGHT:
+                        x += DIAG_DX[dir];
+                        y += DIAG_DY[dir];
+                        index += diagOffsets[dir];
+                        dir = (dir + 3) & 0x03;
+                        break;
+                }
+                if (x == x0 && y == y0 && dir == dir0)
+                {
+                    return;
+                }
+            }
+            
+            // position that may be on the image border, where the neighbors
+            // outside of the image are considered as background
+            vertices.add(x + vertexDX[dir], y + vertexDY[dir]);
+            if (dir == DIR_DOWN && mask != null)
+            {
+                mask.setVisited(index);
+            }
+            boolean b0 = contains(x + NEXT_DX[dir], y + NEXT_DY[dir], sizeX, sizeY)
+                    && (pixels[index + nextOffsets[dir]] & 0x00FF) == value;
+            boolean b1 = contains(x + DIAG_DX[dir], y + DIAG_DY[dir], sizeX, sizeY)
+                    && (pixels[index + diagOffsets[dir]] & 0x00FF) == value;
+            
+            // update the current position
+            switch (nextMove(b0, b1, conn))
+            {
+                case TURN_LEFT:
+                    dir = (dir + 1) & 0x03;
+                    break;
+                case FORWARD:
+                    x += NEXT_DX[dir];
+                    y += NEXT_DY[dir];
+                    index += nextOffsets[dir];
+                    break;
+                case TURN_RIGHT:
+                    x += DIAG_DX[dir];
+                    y += DIAG_DY[dir];
+                    index += diagOffsets[dir];
+                    dir = (dir + 3) & 0x03;
+                    break;
+            }
+        } while (x != x0 || y != y0 || dir != dir0);
+    }
+    
+    /**
+     * Tracks a boundary within an array of 16-bits labels.
+     * 
+     * @see #trackBoundary(byte[], int, int, VisitMask, int, int, Direction, VertexBuffer)
+     */
+    private void trackBoundary(short[] pixels, int sizeX, int sizeY,
+            VisitMask mask, int x0, int y0, Direction initialDirection, VertexBuffer vertices)
+    {
+        // shifts of vertex coordinates with respect to reference pixel
+        double[] vertexDX = vertexLocation.dx;
+        double[] vertexDY = vertexLocation.dy;
+        
+        // shifts of linear index for the two pixels within 2-by-2 configuration
+        int[] nextOffsets = nextOffsets(sizeX);
+        int[] diagOffsets = diagOffsets(sizeX);
+        int xmax = sizeX - 1;
+        int ymax = sizeY - 1;
+        
+        // initialize tracking algo state
+        int x = x0;
+        int y = y0;
+        int index = y0 * sizeX + x0;
+        int dir0 = initialDirection.ordinal();
+        int dir = dir0;
+        int value = pixels[index] & 0x00FFFF;
+        
+        // iterate over boundary until we come back at initial position
+        do
+        {
+            // the number of positions, starting from the current one, that are
+            // within the image interior, as each move shifts the position by at
+            // most one pixel along each axis
+            int safeSteps = Math.min(Math.min(x, xmax - x), Math.min(y, ymax - y));
+            
+            // interior positions: neighbors are read without bounds check
+            for (; safeSteps > 0; safeSteps--)
+            {
+                vertices.add(x + vertexDX[dir], y + vertexDY[dir]);
+                if (dir == DIR_DOWN && mask != null)
+                {
+                    mask.setVisited(index);
+                }
+                
+                // determine configuration of the two pixels in current direction
+                boolean b0 = (pixels[index + nextOffsets[dir]] & 0x00FFFF) == value;
+                boolean b1 = (pixels[index + diagOffsets[dir]] & 0x00FFFF) == value;
+                
+                // update the current position
+                switch (nextMove(b0, b1, conn))
+                {
+                    case TURN_LEFT:
+                        dir = (dir + 1) & 0x03;
+                        break;
+                    case FORWARD:
+                        x += NEXT_DX[dir];
+                        y += NEXT_DY[dir];
+                        index += nextOffsets[dir];
+                        break;
+                    case TURN_RIGHT:
+                        x += DIAG_DX[dir];
+                        y += DIAG_DY[dir];
+                        index += diagOffsets[dir];
+                        dir = (dir + 3) & 0x03;
+                        break;
+                }
+                if (x == x0 && y == y0 && dir == dir0)
+                {
+                    return;
+                }
+            }
+            
+            // position that may be on the image border, where the neighbors
+            // outside of the image are considered as background
+            vertices.add(x + vertexDX[dir], y + vertexDY[dir]);
+            if (dir == DIR_DOWN && mask != null)
+            {
+                mask.setVisited(index);
+            }
+            boolean b0 = contains(x + NEXT_DX[dir], y + NEXT_DY[dir], sizeX, sizeY)
+                    && (pixels[index + nextOffsets[dir]] & 0x00FFFF) == value;
+            boolean b1 = contains(x + DIAG_DX[dir], y + DIAG_DY[dir], sizeX, sizeY)
+                    && (pixels[index + diagOffsets[dir]] & 0x00FFFF) == value;
+            
+            // update the current position
+            switch (nextMove(b0, b1, conn))
+            {
+                case TURN_LEFT:
+                    dir = (dir + 1) & 0x03;
+                    break;
+                case FORWARD:
+                    x += NEXT_DX[dir];
+                    y += NEXT_DY[dir];
+                    index += nextOffsets[dir];
+                    break;
+                case TURN_RIGHT:
+                    x += DIAG_DX[dir];
+                    y += DIAG_DY[dir];
+                    index += diagOffsets[dir];
+                    dir = (dir + 3) & 0x03;
+                    break;
+            }
+        } while (x != x0 || y != y0 || dir != dir0);
+    }
+    
+    /**
+     * Tracks a boundary within an array of floating point labels. Label values
+     * are obtained by casting pixel values to integer.
+     * 
+     * @see #trackBoundary(byte[], int, int, VisitMask, int, int, Direction, VertexBuffer)
+     */
+    private void trackBoundary(float[] pixels, int sizeX, int sizeY,
+            VisitMask mask, int x0, int y0, Direction initialDirection, VertexBuffer vertices)
+    {
+        // shifts of vertex coordinates with respect to reference pixel
+        double[] vertexDX = vertexLocation.dx;
+        double[] vertexDY = vertexLocation.dy;
+        
+        // shifts of linear index for the two pixels within 2-by-2 configuration
+        int[] nextOffsets = nextOffsets(sizeX);
+        int[] diagOffsets = diagOffsets(sizeX);
+        int xmax = sizeX - 1;
+        int ymax = sizeY - 1;
+        
+        // initialize tracking algo state
+        int x = x0;
+        int y = y0;
+        int index = y0 * sizeX + x0;
+        int dir0 = initialDirection.ordinal();
+        int dir = dir0;
+        int value = (int) pixels[index];
+        
+        // iterate over boundary until we come back at initial position
+        do
+        {
+            // the number of positions, starting from the current one, that are
+            // within the image interior, as each move shifts the position by at
+            // most one pixel along each axis
+            int safeSteps = Math.min(Math.min(x, xmax - x), Math.min(y, ymax - y));
+            
+            // interior positions: neighbors are read without bounds check
+            for (; safeSteps > 0; safeSteps--)
+            {
+                vertices.add(x + vertexDX[dir], y + vertexDY[dir]);
+                if (dir == DIR_DOWN && mask != null)
+                {
+                    mask.setVisited(index);
+                }
+                
+                // determine configuration of the two pixels in current direction
+                boolean b0 = ((int) pixels[index + nextOffsets[dir]]) == value;
+                boolean b1 = ((int) pixels[index + diagOffsets[dir]]) == value;
+                
+                // update the current position
+                switch (nextMove(b0, b1, conn))
+                {
+                    case TURN_LEFT:
+                        dir = (dir + 1) & 0x03;
+                        break;
+                    case FORWARD:
+                        x += NEXT_DX[dir];
+                        y += NEXT_DY[dir];
+                        index += nextOffsets[dir];
+                        break;
+                    case TURN_RIGHT:
+                        x += DIAG_DX[dir];
+                        y += DIAG_DY[dir];
+                        index += diagOffsets[dir];
+                        dir = (dir + 3) & 0x03;
+                        break;
+                }
+                if (x == x0 && y == y0 && dir == dir0)
+                {
+                    return;
+                }
+            }
+            
+            // position that may be on the image border, where the neighbors
+            // outside of the image are considered as background
+            vertices.add(x + vertexDX[dir], y + vertexDY[dir]);
+            if (dir == DIR_DOWN && mask != null)
+            {
+                mask.setVisited(index);
+            }
+            boolean b0 = contains(x + NEXT_DX[dir], y + NEXT_DY[dir], sizeX, sizeY)
+                    && ((int) pixels[index + nextOffsets[dir]]) == value;
+            boolean b1 = contains(x + DIAG_DX[dir], y + DIAG_DY[dir], sizeX, sizeY)
+                    && ((int) pixels[index + diagOffsets[dir]]) == value;
+            
+            // update the current position
+            switch (nextMove(b0, b1, conn))
+            {
+                case TURN_LEFT:
+                    dir = (dir + 1) & 0x03;
+                    break;
+                case FORWARD:
+                    x += NEXT_DX[dir];
+                    y += NEXT_DY[dir];
+                    index += nextOffsets[dir];
+                    break;
+                case TURN_RIGHT:
+                    x += DIAG_DX[dir];
+                    y += DIAG_DY[dir];
+                    index += diagOffsets[dir];
+                    dir = (dir + 3) & 0x03;
+                    break;
+            }
+        } while (x != x0 || y != y0 || dir != dir0);
+    }
+    
+    /**
+     * Tracks a boundary within an array of RGB labels. Label values are given
+     * by the 24 bits of the color, ignoring the alpha channel.
+     * 
+     * @see #trackBoundary(byte[], int, int, VisitMask, int, int, Direction, VertexBuffer)
+     */
+    private void trackBoundary(int[] pixels, int sizeX, int sizeY,
+            VisitMask mask, int x0, int y0, Direction initialDirection, VertexBuffer vertices)
+    {
+        // shifts of vertex coordinates with respect to reference pixel
+        double[] vertexDX = vertexLocation.dx;
+        double[] vertexDY = vertexLocation.dy;
+        
+        // shifts of linear index for the two pixels within 2-by-2 configuration
+        int[] nextOffsets = nextOffsets(sizeX);
+        int[] diagOffsets = diagOffsets(sizeX);
+        int xmax = sizeX - 1;
+        int ymax = sizeY - 1;
+        
+        // initialize tracking algo state
+        int x = x0;
+        int y = y0;
+        int index = y0 * sizeX + x0;
+        int dir0 = initialDirection.ordinal();
+        int dir = dir0;
+        int value = pixels[index] & 0x00FFFFFF;
+        
+        // iterate over boundary until we come back at initial position
+        do
+        {
+            // the number of positions, starting from the current one, that are
+            // within the image interior, as each move shifts the position by at
+            // most one pixel along each axis
+            int safeSteps = Math.min(Math.min(x, xmax - x), Math.min(y, ymax - y));
+            
+            // interior positions: neighbors are read without bounds check
+            for (; safeSteps > 0; safeSteps--)
+            {
+                vertices.add(x + vertexDX[dir], y + vertexDY[dir]);
+                if (dir == DIR_DOWN && mask != null)
+                {
+                    mask.setVisited(index);
+                }
+                
+                // determine configuration of the two pixels in current direction
+                boolean b0 = (pixels[index + nextOffsets[dir]] & 0x00FFFFFF) == value;
+                boolean b1 = (pixels[index + diagOffsets[dir]] & 0x00FFFFFF) == value;
+                
+                // update the current position
+                switch (nextMove(b0, b1, conn))
+                {
+                    case TURN_LEFT:
+                        dir = (dir + 1) & 0x03;
+                        break;
+                    case FORWARD:
+                        x += NEXT_DX[dir];
+                        y += NEXT_DY[dir];
+                        index += nextOffsets[dir];
+                        break;
+                    case TURN_RIGHT:
+                        x += DIAG_DX[dir];
+                        y += DIAG_DY[dir];
+                        index += diagOffsets[dir];
+                        dir = (dir + 3) & 0x03;
+                        break;
+                }
+                if (x == x0 && y == y0 && dir == dir0)
+                {
+                    return;
+                }
+            }
+            
+            // position that may be on the image border, where the neighbors
+            // outside of the image are considered as background
+            vertices.add(x + vertexDX[dir], y + vertexDY[dir]);
+            if (dir == DIR_DOWN && mask != null)
+            {
+                mask.setVisited(index);
+            }
+            boolean b0 = contains(x + NEXT_DX[dir], y + NEXT_DY[dir], sizeX, sizeY)
+                    && (pixels[index + nextOffsets[dir]] & 0x00FFFFFF) == value;
+            boolean b1 = contains(x + DIAG_DX[dir], y + DIAG_DY[dir], sizeX, sizeY)
+                    && (pixels[index + diagOffsets[dir]] & 0x00FFFFFF) == value;
+            
+            // update the current position
+            switch (nextMove(b0, b1, conn))
+            {
+                case TURN_LEFT:
+                    dir = (dir + 1) & 0x03;
+                    break;
+                case FORWARD:
+                    x += NEXT_DX[dir];
+                    y += NEXT_DY[dir];
+                    index += nextOffsets[dir];
+                    break;
+                case TURN_RIGHT:
+                    x += DIAG_DX[dir];
+                    y += DIAG_DY[dir];
+                    index += diagOffsets[dir];
+                    dir = (dir + 3) & 0x03;
+                    break;
+            }
+        } while (x != x0 || y != y0 || dir != dir0);
+    }
+    
+    /**
+     * Tracks the boundary that starts at the current position by iterating on
+     * successive neighbor positions, and returns the set of boundary points.
+     * 
+     * This version works for any label source, and is used as fallback when
+     * no specialized kernel exists for the array type.
+     * 
+     * The positions are defined by two coordinates and a direction. The initial
+     * position must correspond to a transition into a region, and the resulting
+     * boundary will surround this region.
+     * 
+     * @param source
+     *            the source of labels
+     * @param mask
+     *            the mask used to mark the visited positions with DOWN
+     *            direction. Can be null.
+     * @param x0
+     *            the x-coordinate of the start position
+     * @param y0
+     *            the y-coordinate of the start position
+     * @param initialDirection
+     *            the direction of the start position
+     * @param vertices
+     *            the buffer to populate with the vertices of the boundary
+     */
+    private void trackBoundaryGeneric(LabelSource source, VisitMask mask, int x0,
+            int y0, Direction initialDirection, VertexBuffer vertices)
+    {
+        // retrieve image size
+        int sizeX = source.getWidth();
+        int sizeY = source.getHeight();
+        
+        // shifts of vertex coordinates with respect to reference pixel
+        double[] vertexDX = vertexLocation.dx;
+        double[] vertexDY = vertexLocation.dy;
+        
+        // initialize tracking algo state
+        int x = x0;
+        int y = y0;
+        int dir0 = initialDirection.ordinal();
+        int dir = dir0;
+        int value = source.getLabel(x0, y0);
+        
+        // iterate over boundary until we come back at initial position
+        do
+        {
+            // update vertices
+            vertices.add(x + vertexDX[dir], y + vertexDY[dir]);
+            
+            // mark the positions that can be used to start a boundary
+            if (dir == DIR_DOWN && mask != null)
+            {
+                mask.setVisited((long) y * sizeX + x);
+            }
+            
+            // the pixel in the continuation of current direction
+            int xn = x + NEXT_DX[dir];
+            int yn = y + NEXT_DY[dir];
+            // the pixel in the diagonal position within current configuration
+            int xd = x + DIAG_DX[dir];
+            int yd = y + DIAG_DY[dir];
+            
+            // determine configuration of the two pixels in current direction
+            // initialize with false, to manage the case of configuration on the
+            // border. In any cases, assume that reference pixel in current
+            // position belongs to the array.
+            boolean b0 = false;
+            if (contains(xn, yn, sizeX, sizeY))
+            {
+                b0 = source.getLabel(xn, yn) == value;
+            }
+            boolean b1 = false;
+            if (contains(xd, yd, sizeX, sizeY))
+            {
+                b1 = source.getLabel(xd, yd) == value;
+            }
+            
+            // Depending on the values of the two other pixels in configuration,
+            // update the current position
+            switch (nextMove(b0, b1, conn))
+            {
+                case TURN_LEFT:
+                    dir = (dir + 1) & 0x03;
+                    break;
+                case FORWARD:
+                    x = xn;
+                    y = yn;
+                    break;
+                case TURN_RIGHT:
+                    x = xd;
+                    y = yd;
+                    dir = (dir + 3) & 0x03;
+                    break;
+            }
+        } while (x != x0 || y != y0 || dir != dir0);
+    }
+    
+    /**
+     * Determines the move to apply to the current position, depending on the
+     * configuration of the two other pixels within the current 2-by-2
+     * configuration.
+     * 
+     * @param b0
+     *            true if the pixel in the continuation of current direction
+     *            belongs to the region
+     * @param b1
+     *            true if the pixel in the diagonal position belongs to the
+     *            region
+     * @param conn
+     *            the connectivity, either 4 or 8
+     * @return the code of the move: TURN_LEFT, FORWARD or TURN_RIGHT
+     */
+    static final int nextMove(boolean b0, boolean b1, int conn)
+    {
+        if (!b0 && (!b1 || conn == 4))
+        {
+            // corner configuration -> +90 direction
+            return TURN_LEFT;
+        } 
+        else if (b1 && (b0 || conn == 8))
+        {
+            // reentrant corner configuration -> -90 direction
+            return TURN_RIGHT;
+        } 
+        else if (b0 && !b1)
+        {
+            // straight border configuration -> same direction
+            return FORWARD;
+        } 
+        else
+        {
+            throw new RuntimeException("Should not reach this part...");
+        }
+    }
+    
+    static final boolean contains(int x, int y, int sizeX, int sizeY)
+    {
+        return x >= 0 && x < sizeX && y >= 0 && y < sizeY;
+    }
+    
+    /**
+     * Computes the shifts of linear index of the pixel in the continuation of
+     * each direction.
+     */
+    private static final int[] nextOffsets(int sizeX)
+    {
+        int[] offsets = new int[4];
+        for (int d = 0; d < 4; d++)
+        {
+            offsets[d] = NEXT_DY[d] * sizeX + NEXT_DX[d];
+        }
+        return offsets;
+    }
+    
+    /**
+     * Computes the shifts of linear index of the pixel in diagonal position
+     * within the 2-by-2 configuration, for each direction.
+     */
+    private static final int[] diagOffsets(int sizeX)
     {
-        int n = vertices.size();
-        double[] vx = new double[n];
-        double[] vy = new double[n];
-        for (int i = 0; i < n; i++)
+        int[] offsets = new int[4];
+        for (int d = 0; d < 4; d++)
         {
-            Point2D p = vertices.get(i);
-            vx[i] = p.getX();
-            vy[i] = p.getY();
+            offsets[d] = DIAG_DY[d] * sizeX + DIAG_DX[d];
         }
-        return new Polygon2D(vx, vy);
+        return offsets;
     }
 }
@@ -0,0 +1,47 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+/**
+ * A visit mask that uses one byte for each pixel of the image.
+ * 
+ * @author dlegland
+ *
+ */
+class ByteVisitMask extends VisitMask
+{
+    /**
+     * The array of flags, one for each pixel.
+     */
+    byte[] flags;
+    
+    /**
+     * Creates a new visit mask for the specified number of pixels.
+     * 
+     * @param pixelCount
+     *            the number of pixels within the image
+     */
+    public ByteVisitMask(int pixelCount)
+    {
+        this.flags = new byte[pixelCount];
+    }
+    
+    @Override
+    public boolean isVisited(long index)
+    {
+        return flags[(int) index] != 0;
+    }
+    
+    @Override
+    public void setVisited(long index)
+    {
+        flags[(int) index] = 1;
+    }
+    
+    @Override
+    public long getMemoryUsage()
+    {
+        return flags.length;
+    }
+}
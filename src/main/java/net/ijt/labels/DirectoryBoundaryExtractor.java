@@ -0,0 +1,401 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.gui.Roi;
+import ij.io.FileInfo;
+import ij.io.Opener;
+import net.ijt.labels.BoundaryTracker.VertexLocation;
+
+/**
+ * Computes the boundaries of the regions within all the label images of a
+ * directory, and writes the polygons of each image into a RoiSet file.
+ * 
+ * Images are processed concurrently by a pool of threads, each image being
+ * processed by a single thread. The memory required by each image is
+ * estimated from the size and the bit depth stored within the header of its
+ * file, and an image is processed only when
+ * the total estimated memory of the images being processed stays within the
+ * memory limit. Uncompressed TIFF files are memory-mapped, other files are
+ * opened with ImageJ. This class does not display any window, and can be used
+ * in headless mode.
+ * 
+ * @author dlegland
+ *
+ */
+public class DirectoryBoundaryExtractor
+{
+    /**
+     * The extensions of the files that are processed.
+     */
+    static final String[] EXTENSIONS = new String[] {".tif", ".tiff", ".png", ".gif", ".pgm"};
+    
+    /**
+     * The ratio between the estimated memory used for processing an image
+     * and the size of its pixels, accounting for the labels, the visit mask
+     * and the polygons.
+     */
+    static final int MEMORY_PER_PIXEL_BYTE = 3;
+    
+    /**
+     * The connectivity to use for tracking boundaries.
+     */
+    int conn = 4;
+    
+    /**
+     * The location of the polygon vertices.
+     */
+    VertexLocation vertexLocation = VertexLocation.CORNER;
+    
+    /**
+     * If true, only the corners of the boundaries are kept.
+     */
+    boolean removeCollinear = false;
+    
+    /**
+     * The simplifier applied to the polygons, or null.
+     */
+    PolygonSimplifier simplifier = null;
+    
+    /**
+     * The pattern used to create the names of the ROIs from the labels.
+     */
+    String namePattern = "r%03d";
+    
+    /**
+     * The number of images processed concurrently.
+     */
+    int threadCount = Runtime.getRuntime().availableProcessors();
+    
+    /**
+     * The maximum estimated memory used by the images processed
+     * concurrently, in bytes.
+     */
+    long memoryLimit = Runtime.getRuntime().maxMemory() / 2;
+    
+    /**
+     * Creates a new extractor using 4-connectivity and vertices located on
+     * pixel corners.
+     */
+    public DirectoryBoundaryExtractor()
+    {
+    }
+    
+    /**
+     * Creates a new extractor with the specified connectivity and location
+     * of vertices.
+     * 
+     * @param conn
+     *            the connectivity to use (must be either 4 or 8)
+     * @param loc
+     *            the location of the vertices
+     */
+    public DirectoryBoundaryExtractor(int conn, VertexLocation loc)
+    {
+        if (conn != 4 && conn != 8)
+        {
+            throw new IllegalArgumentException(
+                    "Connectivity must be either 4 or 8");
+        }
+        this.conn = conn;
+        this.vertexLocation = loc;
+    }
+    
+    /**
+     * @param removeCollinear
+     *            true if collinear vertices must be removed
+     */
+    public void setRemoveCollinearVertices(boolean removeCollinear)
+    {
+        this.removeCollinear = removeCollinear;
+    }
+    
+    /**
+     * @param simplifier
+     *            the simplifier to apply, or null to keep all the vertices
+     */
+    public void setSimplifier(PolygonSimplifier simplifier)
+    {
+        this.simplifier = simplifier;
+    }
+    
+    /**
+     * @param namePattern
+     *            the pattern used to create the names of the ROIs from the
+     *            labels, for example "r%03d"
+     */
+    public void setNamePattern(String namePattern)
+    {
+        this.namePattern = namePattern;
+    }
+    
+    /**
+     * @param threadCount
+     *            the number of images processed concurrently
+     */
+    public void setThreadCount(int threadCount)
+    {
+        this.threadCount = Math.max(threadCount, 1);
+    }
+    
+    /**
+     * Changes the limit of the memory used by the images processed
+     * concurrently. An image whose estimated memory exceeds the limit is
+     * processed alone.
+     * 
+     * @param memoryLimit
+     *            the maximum estimated memory, in bytes
+     */
+    public void setMemoryLimit(long memoryLimit)
+    {
+        this.memoryLimit = memoryLimit;
+    }
+    
+    /**
+     * Processes all the label images within a directory. For each image, a
+     * RoiSet file with the same name followed by "-RoiSet.zip" is written
+     * into the output directory. Images that can not be processed are
+     * reported in the ImageJ log, and do not stop the processing of the
+     * other images.
+     * 
+     * @param inputDir
+     *            the directory containing the label images
+     * @param outputDir
+     *            the directory to write the RoiSet files into, created if
+     *            necessary
+     * @return the number of images successfully processed
+     * @throws IOException
+     *             if the input directory can not be read, or the output
+     *             directory can not be created
+     */
+    public int process(File inputDir, File outputDir) throws IOException
+    {
+        File[] files = inputDir.listFiles(file -> file.isFile() && isImageFile(file));
+        if (files == null)
+        {
+            throw new IOException("Could not read directory: " + inputDir);
+        }
+        Arrays.sort(files);
+        if (!outputDir.isDirectory() && !outputDir.mkdirs())
+        {
+            throw new IOException("Could not create directory: " + outputDir);
+        }
+        
+        // the memory limit, in megabytes, shared by the running images
+        int permits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, memoryLimit >> 20));
+        Semaphore memory = new Semaphore(permits, true);
+        
+        AtomicInteger successCount = new AtomicInteger(0);
+        AtomicInteger finishedCount = new AtomicInteger(0);
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        for (File file : files)
+        {
+            int cost = (int) Math.min(permits, Math.max(1, estimateMemory(file) >> 20));
+            executor.execute(() -> {
+                memory.acquireUninterruptibly(cost);
+                try
+                {
+                    processFile(file, outputDir);
+                    successCount.incrementAndGet();
+                }
+                catch (Throwable ex)
+                {
+                    // also report errors such as OutOfMemoryError, that
+                    // would be lost otherwise
+                    IJ.log("Could not process " + file.getName() + ": " + ex);
+                }
+                finally
+                {
+                    memory.release(cost);
+                    IJ.showProgress(finishedCount.incrementAndGet(), files.length);
+                }
+            });
+        }
+        
+        executor.shutdown();
+        try
+        {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        catch (InterruptedException ex)
+        {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        return successCount.get();
+    }
+    
+    /**
+     * Computes the boundaries of the regions within a single label image,
+     * and writes the polygons into a RoiSet file.
+     * 
+     * @param file
+     *            the file containing the label image
+     * @param outputDir
+     *            the directory to write the RoiSet file into
+     * @return the RoiSet file
+     * @throws IOException
+     *             if the image could not be read or the RoiSet could not be
+     *             written
+     */
+    public File processFile(File file, File outputDir) throws IOException
+    {
+        LabelSource source = openLabels(file);
+        
+        BoundaryTracker tracker = new BoundaryTracker(conn, vertexLocation);
+        tracker.setRemoveCollinearVertices(removeCollinear);
+        tracker.setSimplifier(simplifier);
+        RegionBoundaries boundaries = tracker.processBoundaries(source);
+        
+        Roi[] rois = PolygonRois.createRois(boundaries, namePattern);
+        File output = new File(outputDir, baseName(file) + "-RoiSet.zip");
+        PolygonRois.saveRoiSet(rois, output);
+        return output;
+    }
+    
+    /**
+     * Opens the labels within a file, using a memory-mapped source for
+     * uncompressed TIFF files.
+     */
+    private static final LabelSource openLabels(File file) throws IOException
+    {
+        String name = file.getName().toLowerCase();
+        if (name.endsWith(".tif") || name.endsWith(".tiff"))
+        {
+            try
+            {
+                return MappedLabelSource.openTiff(file);
+            }
+            catch (IOException ex)
+            {
+                // compressed or unsupported layout: open with ImageJ
+            }
+        }
+        
+        ImagePlus imagePlus = IJ.openImage(file.getPath());
+        if (imagePlus == null)
+        {
+            throw new IOException("Could not open image file: " + file.getName());
+        }
+        return new ImageProcessorLabelSource(imagePlus.getProcessor());
+    }
+    
+    /**
+     * Estimates the memory required for processing the image within a file,
+     * from the size and the bit depth of the image read within the header of
+     * the file. If the header can not be read, the size of the file is used
+     * instead of the size of the pixels.
+     * 
+     * @param file
+     *            the file containing the label image
+     * @return the estimated memory, in bytes
+     */
+    static long estimateMemory(File file)
+    {
+        long pixelBytes = readPixelBytes(file);
+        return MEMORY_PER_PIXEL_BYTE * (pixelBytes > 0 ? pixelBytes : file.length());
+    }
+    
+    /**
+     * Computes the size of the pixels of the images within a file, as they
+     * are stored in memory by ImageJ, from the header of the file.
+     * 
+     * @param file
+     *            the file containing the label image
+     * @return the size of the pixels, in bytes, or -1 if the header could not
+     *         be read
+     */
+    static long readPixelBytes(File file)
+    {
+        String name = file.getName().toLowerCase();
+        if (name.endsWith(".tif") || name.endsWith(".tiff"))
+        {
+            FileInfo[] infos = Opener.getTiffFileInfo(file.getPath());
+            if (infos == null)
+            {
+                return -1;
+            }
+            long bytes = 0;
+            for (FileInfo info : infos)
+            {
+                bytes += (long) info.width * info.height * info.getBytesPerPixel() * Math.max(info.nImages, 1);
+            }
+            return bytes;
+        }
+        
+        // other formats are read with the image readers of the JDK
+        try (ImageInputStream stream = ImageIO.createImageInputStream(file))
+        {
+            Iterator<ImageReader> readers = stream != null ? ImageIO.getImageReaders(stream) : null;
+            if (readers == null || !readers.hasNext())
+            {
+                return -1;
+            }
+            ImageReader reader = readers.next();
+            try
+            {
+                reader.setInput(stream, true, true);
+                long pixelCount = (long) reader.getWidth(0) * reader.getHeight(0);
+                
+                // ImageJ stores color images as 32-bit integers
+                ImageTypeSpecifier type = reader.getRawImageType(0);
+                int bits = type != null ? type.getColorModel().getPixelSize() : 32;
+                return pixelCount * (bits <= 8 ? 1 : (bits <= 16 ? 2 : 4));
+            }
+            finally
+            {
+                reader.dispose();
+            }
+        }
+        catch (IOException ex)
+        {
+            return -1;
+        }
+    }
+    
+    /**
+     * Checks if a file has the extension of an image file that can be
+     * processed.
+     * 
+     * @param file
+     *            the file to check
+     * @return true if the file is an image file
+     */
+    static boolean isImageFile(File file)
+    {
+        String name = file.getName().toLowerCase();
+        for (String ext : EXTENSIONS)
+        {
+            if (name.endsWith(ext))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static final String baseName(File file)
+    {
+        String name = file.getName();
+        int index = name.lastIndexOf('.');
+        return index > 0 ? name.substring(0, index) : name;
+    }
+}
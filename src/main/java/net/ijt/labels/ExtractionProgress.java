@@ -0,0 +1,205 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of the progress of a single boundary extraction, notifies the
+ * progress monitor, and aborts the extraction when it was canceled or when it
+ * exceeded the timeout.
+ * 
+ * The rows of the image are reported while they are scanned. The steps that
+ * follow the scan, such as the tracking of the boundaries of each label or
+ * the simplification of the polygons, report their progress by groups of
+ * boundaries, and call the <code>check</code> method for each boundary.
+ * 
+ * The methods can be called from several threads without locking. Counts are
+ * accumulated within atomic values, and the monitor is called by a single
+ * thread at a time: a thread that reports progress while another one notifies
+ * the monitor does not wait, and the notifying thread calls the monitor again
+ * with the updated counts.
+ * 
+ * @see ProgressMonitor
+ * 
+ * @author dlegland
+ *
+ */
+class ExtractionProgress
+{
+    /**
+     * The number of boundaries processed between two reports, during the
+     * steps that follow the scan of the rows.
+     */
+    static final int REPORT_INTERVAL = 64;
+    
+    /**
+     * The monitor to notify, or null.
+     */
+    final ProgressMonitor monitor;
+    
+    /**
+     * The maximum duration of the extraction, in nanoseconds, or 0.
+     */
+    final long timeout;
+    
+    /**
+     * The time the extraction started, in nanoseconds.
+     */
+    final long startTime;
+    
+    /**
+     * The total number of rows to scan.
+     */
+    final int rowCount;
+    
+    /**
+     * The progress reported to the monitor.
+     */
+    final AtomicInteger rowsScanned = new AtomicInteger(0);
+    final AtomicLong boundaryCount = new AtomicLong(0);
+    final AtomicLong vertexCount = new AtomicLong(0);
+    
+    /**
+     * True while a thread is notifying the monitor.
+     */
+    final AtomicBoolean notifying = new AtomicBoolean(false);
+    
+    /**
+     * True when the progress changed since the monitor was last notified.
+     */
+    volatile boolean pending = false;
+    
+    /**
+     * Becomes true when the monitor returned false, so that the threads
+     * still running stop at their next check.
+     */
+    volatile boolean canceled = false;
+    
+    /**
+     * Creates the progress of an extraction starting now.
+     * 
+     * @param monitor
+     *            the monitor to notify, or null
+     * @param timeout
+     *            the maximum duration of the extraction, in nanoseconds, or 0
+     *            for no limit
+     * @param rowCount
+     *            the total number of rows to scan
+     */
+    ExtractionProgress(ProgressMonitor monitor, long timeout, int rowCount)
+    {
+        this.monitor = monitor;
+        this.timeout = timeout;
+        this.startTime = System.nanoTime();
+        this.rowCount = rowCount;
+    }
+    
+    /**
+     * Reports rows that have been scanned, together with the boundaries
+     * found within these rows, and notifies the monitor.
+     * 
+     * @param rows
+     *            the number of rows scanned since the last call
+     * @param boundaries
+     *            the number of boundaries found since the last call
+     * @param vertices
+     *            the number of vertices of these boundaries
+     * @throws CancellationException
+     *             if the extraction was canceled or exceeded the timeout
+     */
+    void addRows(int rows, long boundaries, long vertices)
+    {
+        rowsScanned.addAndGet(rows);
+        report(boundaries, vertices);
+    }
+    
+    /**
+     * Reports boundaries computed by the caller since its last report, and
+     * notifies the monitor.
+     * 
+     * @param boundaries
+     *            the number of boundaries computed since the last call
+     * @param vertices
+     *            the number of vertices of these boundaries
+     * @throws CancellationException
+     *             if the extraction was canceled or exceeded the timeout
+     */
+    void report(long boundaries, long vertices)
+    {
+        boundaryCount.addAndGet(boundaries);
+        vertexCount.addAndGet(vertices);
+        notifyMonitor();
+        check();
+    }
+    
+    /**
+     * Checks whether the extraction must be aborted, without notifying the
+     * monitor. This method can be called for each boundary.
+     * 
+     * @throws CancellationException
+     *             if the extraction was canceled or exceeded the timeout
+     */
+    void check()
+    {
+        if (canceled)
+        {
+            throw new CancellationException("Boundary extraction was canceled");
+        }
+        if (timeout > 0 && System.nanoTime() - startTime > timeout)
+        {
+            throw new CancellationException("Boundary extraction exceeded the timeout");
+        }
+    }
+    
+    /**
+     * Notifies the monitor, unless another thread is doing it, in which case
+     * that thread notifies the monitor again once it has finished.
+     */
+    private void notifyMonitor()
+    {
+        if (monitor == null)
+        {
+            return;
+        }
+        pending = true;
+        while (pending && !canceled && notifying.compareAndSet(false, true))
+        {
+            try
+            {
+                pending = false;
+                if (!monitor.progress(rowsScanned.get(), rowCount, boundaryCount.get(), vertexCount.get()))
+                {
+                    canceled = true;
+                }
+            }
+            finally
+            {
+                notifying.set(false);
+            }
+        }
+    }
+    
+    /**
+     * Rethrows the cause of the failure of a task when the task was aborted
+     * by a cancellation, so that callers receive the same exception as for a
+     * sequential extraction.
+     * 
+     * @param ex
+     *            the exception thrown when retrieving the result of a task
+     * @throws CancellationException
+     *             if the task was aborted by a cancellation
+     */
+    static void rethrowCancellation(ExecutionException ex)
+    {
+        if (ex.getCause() instanceof CancellationException)
+        {
+            throw (CancellationException) ex.getCause();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import java.awt.geom.Point2D;
+import java.io.File;
+import java.io.IOException;
+
+import inra.ijpb.geometry.Polygon2D;
+
+/**
+ * Writes polygons into a GeoJSON file, as a feature collection.
+ * 
+ * Each region part written with the <code>writeRegion</code> method is
+ * written as a feature with a "label" property and a polygon geometry, made
+ * of the outer boundary followed by the boundaries of the holes. Polygons
+ * received as a boundary consumer are written as soon as they are received,
+ * as polygons made of a single ring, so that holes are written as filled
+ * polygons: use the <code>processRegions</code> method of
+ * <code>BoundaryTracker</code> and the <code>writeAllRegions</code> method to
+ * keep the holes. Regions with several parts are written as several
+ * features with the same label.
+ * 
+ * Coordinates are pixel coordinates, with the y-axis oriented downwards, as
+ * stated by the "yAxisDirection" member of the feature collection. Rings are
+ * oriented as required by RFC 7946 for these coordinates: the outer
+ * boundaries have a positive signed area (counter-clockwise), and the holes
+ * have a negative one (clockwise).
+ * 
+ * @author dlegland
+ *
+ */
+public class GeoJsonPolygonWriter extends PolygonWriter
+{
+    /**
+     * The maximum number of characters needed to write a number.
+     */
+    static final int MAX_NUMBER_LENGTH = 32;
+    
+    /**
+     * The number of features written so far.
+     */
+    long count = 0;
+    
+    /**
+     * Creates a new writer into the specified file.
+     * 
+     * @param file
+     *            the file to write into
+     * @throws IOException
+     *             if the file could not be opened
+     */
+    public GeoJsonPolygonWriter(File file) throws IOException
+    {
+        super(file);
+        putAscii("{\"type\":\"FeatureCollection\",\"yAxisDirection\":\"down\",\"features\":[\n");
+    }
+    
+    @Override
+    public void writePolygon(int label, Polygon2D polygon) throws IOException
+    {
+        startFeature(label);
+        putRing(polygon, true);
+        endFeature();
+    }
+    
+    @Override
+    public void writeRegion(int label, RegionPolygon region) throws IOException
+    {
+        startFeature(label);
+        putRing(region.getOuterBoundary(), true);
+        for (Polygon2D hole : region.getHoles())
+        {
+            putAscii(",");
+            putRing(hole, false);
+        }
+        endFeature();
+    }
+    
+    private void startFeature(int label) throws IOException
+    {
+        if (count > 0)
+        {
+            putAscii(",\n");
+        }
+        putAscii("{\"type\":\"Feature\",\"properties\":{\"label\":");
+        putNumber(label);
+        putAscii("},\"geometry\":{\"type\":\"Polygon\",\"coordinates\":[");
+    }
+    
+    private void endFeature() throws IOException
+    {
+        putAscii("]}}");
+        count++;
+    }
+    
+    /**
+     * Puts the coordinates of a ring into the buffer, closed by repeating the
+     * first vertex, and with the specified orientation.
+     */
+    private void putRing(Polygon2D polygon, boolean counterClockwise) throws IOException
+    {
+        int n = polygon.vertexNumber();
+        boolean reverse = n > 2 && isCounterClockwise(polygon) != counterClockwise;
+        ensureRemaining(2);
+        buffer.put((byte) '[');
+        for (int i = 0; i <= n && n > 0; i++)
+        {
+            Point2D p = polygon.getVertex(reverse ? (n - i) % n : i % n);
+            ensureRemaining(2 * MAX_NUMBER_LENGTH + 4);
+            if (i > 0)
+            {
+                buffer.put((byte) ',');
+            }
+            buffer.put((byte) '[');
+            putNumber(p.getX());
+            buffer.put((byte) ',');
+            putNumber(p.getY());
+            buffer.put((byte) ']');
+        }
+        putAscii("]");
+    }
+    
+    @Override
+    void writeEnd() throws IOException
+    {
+        putAscii("\n]}\n");
+    }
+    
+    /**
+     * Puts a string containing only ASCII characters into the buffer.
+     */
+    private void putAscii(String text) throws IOException
+    {
+        ensureRemaining(text.length());
+        for (int i = 0; i < text.length(); i++)
+        {
+            buffer.put((byte) text.charAt(i));
+        }
+    }
+    
+    /**
+     * Puts the text representation of a number into the buffer, that must
+     * have room for at least <code>MAX_NUMBER_LENGTH</code> bytes. Integer
+     * values are written without decimal part.
+     */
+    private void putNumber(double value) throws IOException
+    {
+        ensureRemaining(MAX_NUMBER_LENGTH);
+        long integer = (long) value;
+        if (integer != value)
+        {
+            String text = Double.toString(value);
+            for (int i = 0; i < text.length(); i++)
+            {
+                buffer.put((byte) text.charAt(i));
+            }
+            return;
+        }
+        
+        if (integer < 0)
+        {
+            buffer.put((byte) '-');
+            integer = -integer;
+        }
+        // write digits from the most significant one
+        long divisor = 1;
+        while (integer / divisor >= 10)
+        {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10)
+        {
+            buffer.put((byte) ('0' + (integer / divisor) % 10));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+/**
+ * Adapts an ImageJ <code>ImageProcessor</code> to the
+ * <code>LabelSource</code> interface.
+ * 
+ * Labels are read from the pixel array for the standard processor types, and
+ * computed from the float value of the pixels otherwise.
+ * 
+ * @author dlegland
+ *
+ */
+public class ImageProcessorLabelSource implements LabelSource
+{
+    /**
+     * The processor containing the labels.
+     */
+    final ImageProcessor array;
+    
+    /**
+     * The width of the image, used to compute pixel indices.
+     */
+    final int sizeX;
+    
+    /**
+     * Creates a new label source from an image processor.
+     * 
+     * @param array
+     *            the processor containing the labels
+     */
+    public ImageProcessorLabelSource(ImageProcessor array)
+    {
+        this.array = array;
+        this.sizeX = array.getWidth();
+    }
+    
+    /**
+     * @return the processor containing the labels.
+     */
+    public ImageProcessor getProcessor()
+    {
+        return array;
+    }
+    
+    @Override
+    public int getWidth()
+    {
+        return sizeX;
+    }
+    
+    @Override
+    public int getHeight()
+    {
+        return array.getHeight();
+    }
+    
+    @Override
+    public int getLabel(int x, int y)
+    {
+        int index = y * sizeX + x;
+        if (array instanceof ByteProcessor)
+        {
+            return ((byte[]) array.getPixels())[index] & 0x00FF;
+        }
+        else if (array instanceof ShortProcessor)
+        {
+            return ((short[]) array.getPixels())[index] & 0x00FFFF;
+        }
+        else if (array instanceof FloatProcessor)
+        {
+            return (int) ((float[]) array.getPixels())[index];
+        }
+        else if (array instanceof ColorProcessor)
+        {
+            return ((int[]) array.getPixels())[index] & 0x00FFFFFF;
+        }
+        return (int) array.getf(x, y);
+    }
+    
+    @Override
+    public void readRow(int y, int[] labels)
+    {
+        BoundaryTracker.readRow(array, y, labels);
+    }
+}
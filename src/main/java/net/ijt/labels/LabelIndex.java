@@ -0,0 +1,342 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+import ij.process.ImageProcessor;
+
+/**
+ * An index of the regions within a label image, that stores the bounding box
+ * of each label.
+ * 
+ * The index is computed with a single pass over the image, and can be reused
+ * for extracting the boundaries of a subset of the labels, by scanning only
+ * the bounding boxes of these labels. After a local modification of the
+ * image, the index can be updated from the modified area only. The bounding
+ * boxes may then become larger than the regions, which does not change the
+ * computed boundaries.
+ * 
+ * @see BoundaryTracker#process(LabelSource, LabelIndex, int[])
+ * 
+ * @author dlegland
+ *
+ */
+public class LabelIndex
+{
+    /**
+     * The labels of the regions, in increasing order.
+     */
+    int[] labels;
+    
+    /**
+     * The bounds of each region, as the indices of the first and of the last
+     * columns and rows containing the label.
+     */
+    int[] xMin;
+    int[] xMax;
+    int[] yMin;
+    int[] yMax;
+    
+    /**
+     * The size of the image.
+     */
+    final int sizeX;
+    final int sizeY;
+    
+    /**
+     * Computes the index of the regions within a label image.
+     * 
+     * @param array
+     *            the array containing the labels
+     */
+    public LabelIndex(ImageProcessor array)
+    {
+        this(new ImageProcessorLabelSource(array));
+    }
+    
+    /**
+     * Computes the index of the regions within a label source. The
+     * background label 0 is not indexed.
+     * 
+     * @param source
+     *            the source of labels
+     */
+    public LabelIndex(LabelSource source)
+    {
+        this.sizeX = source.getWidth();
+        this.sizeY = source.getHeight();
+        
+        // the row of each label within the growing arrays, stored within an
+        // open addressing table as row + 1, zero indicating an empty slot
+        int[] table = new int[64];
+        int capacity = 16;
+        labels = new int[capacity];
+        xMin = new int[capacity];
+        xMax = new int[capacity];
+        yMin = new int[capacity];
+        yMax = new int[capacity];
+        int count = 0;
+        
+        // jump from one run of identical labels to the next one, skipping
+        // the runs of background
+        TransitionScanner scanner = TransitionScanner.create(source);
+        for (int y = 0; y < sizeY; y++)
+        {
+            scanner.setRow(y);
+            int x = scanner.nextTransition(0, 0);
+            while (x < sizeX)
+            {
+                int label = scanner.getLabel(x);
+                int x0 = x;
+                x = scanner.nextTransition(x + 1, label);
+                if (label == 0)
+                {
+                    continue;
+                }
+                
+                // update the bounds once for each run
+                int slot = findSlot(table, label);
+                int i = table[slot] - 1;
+                if (i >= 0)
+                {
+                    xMin[i] = Math.min(xMin[i], x0);
+                    xMax[i] = Math.max(xMax[i], x - 1);
+                    yMax[i] = y;
+                    continue;
+                }
+                
+                if (count == capacity)
+                {
+                    capacity *= 2;
+                    labels = Arrays.copyOf(labels, capacity);
+                    xMin = Arrays.copyOf(xMin, capacity);
+                    xMax = Arrays.copyOf(xMax, capacity);
+                    yMin = Arrays.copyOf(yMin, capacity);
+                    yMax = Arrays.copyOf(yMax, capacity);
+                }
+                labels[count] = label;
+                xMin[count] = x0;
+                xMax[count] = x - 1;
+                yMin[count] = y;
+                yMax[count] = y;
+                table[slot] = ++count;
+                
+                // keep the load factor of the table below one half
+                if (2 * count > table.length)
+                {
+                    table = new int[table.length * 2];
+                    for (int k = 0; k < count; k++)
+                    {
+                        table[findSlot(table, labels[k])] = k + 1;
+                    }
+                }
+            }
+        }
+        
+        sortByLabel(count);
+    }
+    
+    /**
+     * Returns the slot of a label within an open addressing table of label
+     * rows, or the empty slot where the label can be inserted.
+     */
+    private int findSlot(int[] table, int label)
+    {
+        int mask = table.length - 1;
+        int h = label * 0x9E3779B9;
+        int i = (h ^ (h >>> 16)) & mask;
+        while (table[i] != 0 && labels[table[i] - 1] != label)
+        {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+    
+    /**
+     * Sorts the arrays by increasing label, and trims them to the number of
+     * labels.
+     */
+    private void sortByLabel(int count)
+    {
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++)
+        {
+            keys[i] = ((long) labels[i] << 32) | i;
+        }
+        Arrays.sort(keys);
+        
+        int[][] arrays = new int[][] {labels, xMin, xMax, yMin, yMax};
+        for (int k = 0; k < arrays.length; k++)
+        {
+            int[] sorted = new int[count];
+            for (int i = 0; i < count; i++)
+            {
+                sorted[i] = arrays[k][(int) keys[i]];
+            }
+            arrays[k] = sorted;
+        }
+        labels = arrays[0];
+        xMin = arrays[1];
+        xMax = arrays[2];
+        yMin = arrays[3];
+        yMax = arrays[4];
+    }
+    
+    /**
+     * Updates the index after the labels within a rectangle were modified.
+     * The bounding boxes are extended to contain the new pixels of each
+     * label, and new labels are added to the index. Bounding boxes are not
+     * reduced, and labels that were removed from the image are kept.
+     * 
+     * @param source
+     *            the modified source of labels
+     * @param rect
+     *            the rectangle containing the modified pixels
+     */
+    public void update(LabelSource source, Rectangle rect)
+    {
+        Rectangle bounds = rect.intersection(new Rectangle(0, 0, sizeX, sizeY));
+        int previous = 0;
+        int i = -1;
+        for (int y = bounds.y; y < bounds.y + bounds.height; y++)
+        {
+            for (int x = bounds.x; x < bounds.x + bounds.width; x++)
+            {
+                int label = source.getLabel(x, y);
+                if (label == 0)
+                {
+                    continue;
+                }
+                if (label != previous || i < 0)
+                {
+                    previous = label;
+                    i = indexOf(label);
+                }
+                
+                if (i < 0)
+                {
+                    i = insert(-i - 1, label, x, y);
+                    continue;
+                }
+                xMin[i] = Math.min(xMin[i], x);
+                xMax[i] = Math.max(xMax[i], x);
+                yMin[i] = Math.min(yMin[i], y);
+                yMax[i] = Math.max(yMax[i], y);
+            }
+        }
+    }
+    
+    /**
+     * Inserts a new label at the specified position, with a bounding box
+     * containing a single pixel, and returns the position.
+     */
+    private int insert(int pos, int label, int x, int y)
+    {
+        int count = labels.length;
+        int[][] arrays = new int[][] {labels, xMin, xMax, yMin, yMax};
+        int[] values = new int[] {label, x, x, y, y};
+        for (int k = 0; k < arrays.length; k++)
+        {
+            int[] res = new int[count + 1];
+            System.arraycopy(arrays[k], 0, res, 0, pos);
+            res[pos] = values[k];
+            System.arraycopy(arrays[k], pos, res, pos + 1, count - pos);
+            arrays[k] = res;
+        }
+        labels = arrays[0];
+        xMin = arrays[1];
+        xMax = arrays[2];
+        yMin = arrays[3];
+        yMax = arrays[4];
+        return pos;
+    }
+    
+    /**
+     * Returns the labels whose bounding box intersects a rectangle.
+     * 
+     * @param rect
+     *            the rectangle
+     * @return the labels whose bounding box intersects the rectangle, in
+     *         increasing order
+     */
+    public int[] labelsIntersecting(Rectangle rect)
+    {
+        int[] res = new int[labels.length];
+        int count = 0;
+        for (int i = 0; i < labels.length; i++)
+        {
+            if (xMin[i] < rect.x + rect.width && xMax[i] >= rect.x
+                    && yMin[i] < rect.y + rect.height && yMax[i] >= rect.y)
+            {
+                res[count++] = labels[i];
+            }
+        }
+        return Arrays.copyOf(res, count);
+    }
+    
+    /**
+     * @return the width of the indexed image.
+     */
+    public int getWidth()
+    {
+        return sizeX;
+    }
+    
+    /**
+     * @return the height of the indexed image.
+     */
+    public int getHeight()
+    {
+        return sizeY;
+    }
+    
+    /**
+     * @return the number of labels within the index.
+     */
+    public int size()
+    {
+        return labels.length;
+    }
+    
+    /**
+     * @return the labels of the regions, in increasing order.
+     */
+    public int[] getLabels()
+    {
+        return labels;
+    }
+    
+    /**
+     * Returns the position of a label within the index.
+     * 
+     * @param label
+     *            the label of a region
+     * @return the position of the label, or a negative value if the label is
+     *         not present within the image
+     */
+    public int indexOf(int label)
+    {
+        return Arrays.binarySearch(labels, label);
+    }
+    
+    /**
+     * Returns the bounding box of the pixels with the specified label.
+     * 
+     * @param label
+     *            the label of a region
+     * @return the bounding box of the region, or null if the label is not
+     *         present within the image
+     */
+    public Rectangle getBounds(int label)
+    {
+        int i = indexOf(label);
+        if (i < 0)
+        {
+            return null;
+        }
+        return new Rectangle(xMin[i], yMin[i], xMax[i] - xMin[i] + 1, yMax[i] - yMin[i] + 1);
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+/**
+ * A source of labels, organized as a two-dimensional array of integer values.
+ * 
+ * Label sources make it possible to compute the boundaries of regions within
+ * label images that are not stored as ImageJ processors, for example images
+ * read directly from files.
+ * 
+ * @see ImageProcessorLabelSource
+ * @see MappedLabelSource
+ * 
+ * @author dlegland
+ *
+ */
+public interface LabelSource
+{
+    /**
+     * @return the number of columns of the label array.
+     */
+    public int getWidth();
+    
+    /**
+     * @return the number of rows of the label array.
+     */
+    public int getHeight();
+    
+    /**
+     * Returns the label at the specified position.
+     * 
+     * @param x
+     *            the x-coordinate of the position, between 0 and width-1
+     * @param y
+     *            the y-coordinate of the position, between 0 and height-1
+     * @return the label at the specified position
+     */
+    public int getLabel(int x, int y);
+    
+    /**
+     * Reads all the labels of a row into the specified buffer. The default
+     * implementation calls the <code>getLabel</code> method for each
+     * position, and can be overridden by implementations that provide faster
+     * access.
+     * 
+     * @param y
+     *            the index of the row to read
+     * @param labels
+     *            the buffer to fill, with at least as many elements as the
+     *            width of the label array
+     */
+    public default void readRow(int y, int[] labels)
+    {
+        int sizeX = getWidth();
+        for (int x = 0; x < sizeX; x++)
+        {
+            labels[x] = getLabel(x, y);
+        }
+    }
+}
@@ -0,0 +1,462 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import inra.ijpb.geometry.Polygon2D;
+
+/**
+ * The planar topology of a label image, made of the nodes located at the
+ * junctions between regions, and of the arcs joining the nodes.
+ * 
+ * Each arc is the part of the boundary between two regions, and is stored
+ * only once. The boundary of each region is represented by one or several
+ * rings, each ring being a sequence of references to arcs. A reference is
+ * either the index of the arc, when the arc is traversed from its start node
+ * to its end node, or the bitwise complement of this index (a negative
+ * value), when the arc is traversed in the opposite direction. Polygons can
+ * be created from rings on demand.
+ * 
+ * Vertices are located on pixel corners. The region on the left side of a
+ * ring is the region the ring is the boundary of.
+ * 
+ * @see TopologyExtractor
+ * 
+ * @author dlegland
+ *
+ */
+public class LabelTopology
+{
+    /**
+     * A part of boundary shared by two regions, joining two nodes.
+     */
+    public static class Arc
+    {
+        /**
+         * The label of the region on the left side of the arc.
+         */
+        final int leftLabel;
+        
+        /**
+         * The label of the region on the right side of the arc.
+         */
+        final int rightLabel;
+        
+        /**
+         * The index of the start node.
+         */
+        int startNode;
+        
+        /**
+         * The index of the end node.
+         */
+        int endNode;
+        
+        /**
+         * The coordinates of the vertices, including the two nodes.
+         */
+        double[] xCoords;
+        double[] yCoords;
+        
+        /**
+         * The directions of the first and of the last pixel edges of the
+         * arc, used to link arcs at nodes.
+         */
+        int startDir;
+        int endDir;
+        
+        /**
+         * The smallest index of the pixels on the left (resp. right) side of
+         * the downward pixel edges of the arc, when the arc is traversed in
+         * direct (resp. reverse) order, or -1 if there is no such edge. This
+         * identifies the start of the boundaries computed by BoundaryTracker.
+         */
+        long firstDown = -1;
+        long firstDownReverse = -1;
+        
+        /**
+         * The indices of the vertices corresponding to the downward edges
+         * identified by <code>firstDown</code> and
+         * <code>firstDownReverse</code>.
+         */
+        int firstDownVertex;
+        int firstDownReverseVertex;
+        
+        Arc(int leftLabel, int rightLabel)
+        {
+            this.leftLabel = leftLabel;
+            this.rightLabel = rightLabel;
+        }
+        
+        /**
+         * @return the label of the region on the left side of the arc.
+         */
+        public int getLeftLabel()
+        {
+            return leftLabel;
+        }
+        
+        /**
+         * @return the label of the region on the right side of the arc.
+         */
+        public int getRightLabel()
+        {
+            return rightLabel;
+        }
+        
+        /**
+         * @return the index of the start node.
+         */
+        public int getStartNode()
+        {
+            return startNode;
+        }
+        
+        /**
+         * @return the index of the end node.
+         */
+        public int getEndNode()
+        {
+            return endNode;
+        }
+        
+        /**
+         * @return the number of vertices of the arc, including the two
+         *         nodes.
+         */
+        public int vertexNumber()
+        {
+            return xCoords.length;
+        }
+        
+        /**
+         * @param index
+         *            the index of the vertex
+         * @return the x-coordinate of the vertex
+         */
+        public double getX(int index)
+        {
+            return xCoords[index];
+        }
+        
+        /**
+         * @param index
+         *            the index of the vertex
+         * @return the y-coordinate of the vertex
+         */
+        public double getY(int index)
+        {
+            return yCoords[index];
+        }
+    }
+    
+    /**
+     * A closed boundary of a region, as a sequence of arc references.
+     */
+    public static class Ring
+    {
+        /**
+         * The label of the region.
+         */
+        final int label;
+        
+        /**
+         * The references to the arcs of the ring.
+         */
+        final int[] arcs;
+        
+        /**
+         * The index of the first vertex of the polygon within the first arc,
+         * in the order the arc is traversed.
+         */
+        final int startVertex;
+        
+        Ring(int label, int[] arcs, int startVertex)
+        {
+            this.label = label;
+            this.arcs = arcs;
+            this.startVertex = startVertex;
+        }
+        
+        /**
+         * @return the label of the region this ring is the boundary of.
+         */
+        public int getLabel()
+        {
+            return label;
+        }
+        
+        /**
+         * @return the number of arcs of this ring.
+         */
+        public int arcNumber()
+        {
+            return arcs.length;
+        }
+        
+        /**
+         * @param index
+         *            the position of the arc within the ring
+         * @return the reference to the arc, as the arc index, or its bitwise
+         *         complement if the arc is traversed in reverse order
+         */
+        public int getArc(int index)
+        {
+            return arcs[index];
+        }
+    }
+    
+    /**
+     * Returns the index of the arc corresponding to an arc reference.
+     * 
+     * @param ref
+     *            an arc reference, as stored within rings
+     * @return the index of the arc
+     */
+    public static int arcIndex(int ref)
+    {
+        return ref >= 0 ? ref : ~ref;
+    }
+    
+    /**
+     * Checks if an arc reference corresponds to an arc traversed from its end
+     * node to its start node.
+     * 
+     * @param ref
+     *            an arc reference, as stored within rings
+     * @return true if the arc is traversed in reverse order
+     */
+    public static boolean isReversed(int ref)
+    {
+        return ref < 0;
+    }
+    
+    /**
+     * The size of the label image.
+     */
+    final int sizeX;
+    final int sizeY;
+    
+    /**
+     * The coordinates of the nodes. Only the first <code>nodeCount</code>
+     * elements are valid.
+     */
+    int[] nodeX = new int[16];
+    int[] nodeY = new int[16];
+    int nodeCount = 0;
+    
+    /**
+     * The arcs, indexed by their reference.
+     */
+    final ArrayList<Arc> arcs = new ArrayList<Arc>();
+    
+    /**
+     * The rings of each region, in the order of the polygons computed by
+     * BoundaryTracker.
+     */
+    final Map<Integer, ArrayList<Ring>> rings = new HashMap<>();
+    
+    /**
+     * Creates a new empty topology for an image with the specified size.
+     * 
+     * @param sizeX
+     *            the width of the image
+     * @param sizeY
+     *            the height of the image
+     */
+    LabelTopology(int sizeX, int sizeY)
+    {
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+    }
+    
+    /**
+     * Adds a new node, and returns its index.
+     */
+    int addNode(int x, int y)
+    {
+        if (nodeCount == nodeX.length)
+        {
+            int capacity = nodeCount + (nodeCount >> 1);
+            nodeX = Arrays.copyOf(nodeX, capacity);
+            nodeY = Arrays.copyOf(nodeY, capacity);
+        }
+        nodeX[nodeCount] = x;
+        nodeY[nodeCount] = y;
+        return nodeCount++;
+    }
+    
+    void addRing(Ring ring)
+    {
+        ArrayList<Ring> list = rings.get(ring.label);
+        if (list == null)
+        {
+            list = new ArrayList<Ring>(4);
+            rings.put(ring.label, list);
+        }
+        list.add(ring);
+    }
+    
+    /**
+     * @return the width of the image the topology was computed from.
+     */
+    public int getWidth()
+    {
+        return sizeX;
+    }
+    
+    /**
+     * @return the height of the image the topology was computed from.
+     */
+    public int getHeight()
+    {
+        return sizeY;
+    }
+    
+    /**
+     * @return the number of nodes.
+     */
+    public int nodeNumber()
+    {
+        return nodeCount;
+    }
+    
+    /**
+     * @param index
+     *            the index of the node
+     * @return the x-coordinate of the node
+     */
+    public int getNodeX(int index)
+    {
+        return nodeX[index];
+    }
+    
+    /**
+     * @param index
+     *            the index of the node
+     * @return the y-coordinate of the node
+     */
+    public int getNodeY(int index)
+    {
+        return nodeY[index];
+    }
+    
+    /**
+     * @return the number of arcs.
+     */
+    public int arcNumber()
+    {
+        return arcs.size();
+    }
+    
+    /**
+     * @param index
+     *            the index of the arc
+     * @return the arc with the specified index
+     */
+    public Arc getArc(int index)
+    {
+        return arcs.get(index);
+    }
+    
+    /**
+     * @return the labels of the regions, in increasing order.
+     */
+    public int[] getLabels()
+    {
+        int[] labels = new int[rings.size()];
+        int i = 0;
+        for (int label : rings.keySet())
+        {
+            labels[i++] = label;
+        }
+        Arrays.sort(labels);
+        return labels;
+    }
+    
+    /**
+     * Returns the rings that form the boundary of a region.
+     * 
+     * @param label
+     *            the label of the region
+     * @return the rings of the region, or an empty list if the label is not
+     *         present within the image
+     */
+    public List<Ring> getRings(int label)
+    {
+        ArrayList<Ring> list = rings.get(label);
+        if (list == null)
+        {
+            return new ArrayList<Ring>(0);
+        }
+        return list;
+    }
+    
+    /**
+     * Creates the polygon corresponding to a ring, by concatenating the
+     * vertices of its arcs.
+     * 
+     * @param ring
+     *            the ring to convert
+     * @return the polygon corresponding to the ring
+     */
+    public Polygon2D createPolygon(Ring ring)
+    {
+        // each arc contributes all its vertices except its end node
+        int n = 0;
+        for (int ref : ring.arcs)
+        {
+            n += arcs.get(arcIndex(ref)).vertexNumber() - 1;
+        }
+        
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        int count = 0;
+        int first = ring.startVertex;
+        for (int k = 0; k <= ring.arcs.length; k++)
+        {
+            int ref = ring.arcs[k % ring.arcs.length];
+            Arc arc = arcs.get(arcIndex(ref));
+            int m = arc.vertexNumber() - 1;
+            
+            // the first arc is split at the start vertex of the polygon
+            int from = k == 0 ? first : 0;
+            int to = k == ring.arcs.length ? first : m;
+            for (int i = from; i < to; i++)
+            {
+                int j = ref >= 0 ? i : m - i;
+                xs[count] = arc.xCoords[j];
+                ys[count] = arc.yCoords[j];
+                count++;
+            }
+        }
+        return new Polygon2D(xs, ys);
+    }
+    
+    /**
+     * Creates the polygons of all the regions. The result is the same as the
+     * one obtained with BoundaryTracker and vertices located on corners.
+     * 
+     * @return the polygons of each region, indexed by region label
+     */
+    public Map<Integer, ArrayList<Polygon2D>> toPolygons()
+    {
+        Map<Integer, ArrayList<Polygon2D>> boundaries = new HashMap<>();
+        for (Map.Entry<Integer, ArrayList<Ring>> entry : rings.entrySet())
+        {
+            ArrayList<Polygon2D> polygons = new ArrayList<Polygon2D>(entry.getValue().size());
+            for (Ring ring : entry.getValue())
+            {
+                polygons.add(createPolygon(ring));
+            }
+            boundaries.put(entry.getKey(), polygons);
+        }
+        return boundaries;
+    }
+}
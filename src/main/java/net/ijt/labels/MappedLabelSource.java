@@ -0,0 +1,343 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A label source that reads labels directly from a file mapped into memory.
+ * 
+ * Supported files are uncompressed raw files, and uncompressed single-channel
+ * TIFF files organized either in strips or in tiles (including BigTIFF files).
+ * Labels can be stored as unsigned 8-bit or 16-bit integers, as signed 32-bit
+ * integers, or as 32-bit floating point values. Unsigned 32-bit TIFF files are
+ * read as signed integers, so that labels greater than
+ * <code>Integer.MAX_VALUE</code> are returned as negative labels.
+ * 
+ * The file is mapped by chunks of at most one gigabyte, so that files larger
+ * than the capacity of a single buffer can be processed. Pixel values are not
+ * copied into the Java heap, and are loaded by the operating system when they
+ * are accessed.
+ * 
+ * <pre>{@code
+ * LabelSource source = MappedLabelSource.openTiff(new File("labels.tif"));
+ * Map<Integer, ArrayList<Polygon2D>> boundaries = new BoundaryTracker().process(source);
+ * }</pre>
+ * 
+ * @author dlegland
+ *
+ */
+public class MappedLabelSource implements LabelSource
+{
+    /**
+     * The data types that can be used to store labels.
+     */
+    public enum PixelType
+    {
+        UINT8(1),
+        UINT16(2),
+        INT32(4),
+        FLOAT32(4);
+        
+        final int byteCount;
+        
+        PixelType(int byteCount)
+        {
+            this.byteCount = byteCount;
+        }
+        
+        /**
+         * @return the number of bytes used to store one label.
+         */
+        public int getByteCount()
+        {
+            return byteCount;
+        }
+    }
+    
+    /**
+     * The default number of bytes between the beginnings of two consecutive
+     * chunks.
+     */
+    static final long DEFAULT_CHUNK_SIZE = 1L << 30;
+    
+    int sizeX;
+    int sizeY;
+    
+    /**
+     * The data type of the labels.
+     */
+    PixelType pixelType;
+    
+    /**
+     * The size of the blocks the labels are organized in. The whole image for
+     * raw files, the strips or the tiles for TIFF files.
+     */
+    int blockWidth;
+    int blockHeight;
+    
+    /**
+     * The number of blocks along the x direction.
+     */
+    int blocksAcross;
+    
+    /**
+     * The position of each block within the file, in raster order.
+     */
+    long[] blockOffsets;
+    
+    /**
+     * The mapped chunks of the file. Consecutive chunks overlap, such that a
+     * row of a block is always fully contained in a single chunk.
+     */
+    ByteBuffer[] chunks;
+    
+    /**
+     * The number of bytes between the beginnings of two consecutive chunks.
+     */
+    long chunkSize;
+    
+    /**
+     * Opens a raw file containing labels stored in raster order.
+     * 
+     * @param file
+     *            the file to open
+     * @param sizeX
+     *            the number of columns of the label image
+     * @param sizeY
+     *            the number of rows of the label image
+     * @param pixelType
+     *            the data type of the labels
+     * @param order
+     *            the byte order used to store multi-byte labels
+     * @param headerSize
+     *            the number of bytes before the first label
+     * @return a new label source reading labels from the file
+     * @throws IOException
+     *             if the file can not be mapped, or if it is too short to
+     *             contain all the labels
+     */
+    public static MappedLabelSource openRaw(File file, int sizeX, int sizeY, PixelType pixelType, ByteOrder order,
+            long headerSize) throws IOException
+    {
+        return new MappedLabelSource(file, sizeX, sizeY, pixelType, order, sizeX, sizeY, new long[] { headerSize },
+                DEFAULT_CHUNK_SIZE);
+    }
+    
+    /**
+     * Opens an uncompressed TIFF file, and maps the first image of the file.
+     * 
+     * @param file
+     *            the file to open
+     * @return a new label source reading labels from the file
+     * @throws IOException
+     *             if the file can not be read, or if its format is not
+     *             supported
+     */
+    public static MappedLabelSource openTiff(File file) throws IOException
+    {
+        TiffLayout layout;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            layout = TiffLayout.read(channel);
+        }
+        return new MappedLabelSource(file, layout.sizeX, layout.sizeY, layout.pixelType, layout.order,
+                layout.blockWidth, layout.blockHeight, layout.blockOffsets, DEFAULT_CHUNK_SIZE);
+    }
+    
+    /**
+     * Creates a new label source from the layout of labels within a file.
+     * 
+     * @param file
+     *            the file to map
+     * @param sizeX
+     *            the number of columns of the label image
+     * @param sizeY
+     *            the number of rows of the label image
+     * @param pixelType
+     *            the data type of the labels
+     * @param order
+     *            the byte order used to store multi-byte labels
+     * @param blockWidth
+     *            the number of columns of each block
+     * @param blockHeight
+     *            the number of rows of each block
+     * @param blockOffsets
+     *            the position of each block within the file, in raster order
+     * @param chunkSize
+     *            the number of bytes between the beginnings of two
+     *            consecutive chunks
+     * @throws IOException
+     *             if the file can not be mapped, or if it is too short to
+     *             contain all the blocks
+     */
+    MappedLabelSource(File file, int sizeX, int sizeY, PixelType pixelType, ByteOrder order,
+            int blockWidth, int blockHeight, long[] blockOffsets, long chunkSize) throws IOException
+    {
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.pixelType = pixelType;
+        this.blockWidth = blockWidth;
+        this.blockHeight = blockHeight;
+        this.blocksAcross = (sizeX + blockWidth - 1) / blockWidth;
+        this.blockOffsets = blockOffsets;
+        this.chunkSize = chunkSize;
+        
+        int blocksDown = (sizeY + blockHeight - 1) / blockHeight;
+        long blockCount = (long) blocksAcross * blocksDown;
+        if (blockOffsets.length < blockCount)
+        {
+            throw new IllegalArgumentException("Requires the offsets of " + blockCount + " blocks");
+        }
+        
+        // overlap between chunks, such that a block row is in a single chunk
+        long overlap = (long) blockWidth * pixelType.byteCount;
+        if (chunkSize + overlap > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException("Blocks are too wide to be mapped");
+        }
+        
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            long fileSize = channel.size();
+            checkBlocks(fileSize, blocksDown);
+            int chunkCount = (int) ((fileSize + chunkSize - 1) / chunkSize);
+            this.chunks = new ByteBuffer[chunkCount];
+            for (int i = 0; i < chunkCount; i++)
+            {
+                long start = i * chunkSize;
+                long length = Math.min(chunkSize + overlap, fileSize - start);
+                chunks[i] = channel.map(MapMode.READ_ONLY, start, length).order(order);
+            }
+        }
+    }
+    
+    /**
+     * Checks that the labels of each block are located within the file, so
+     * that truncated files are detected before labels are read.
+     * 
+     * @param fileSize
+     *            the number of bytes of the file
+     * @param blocksDown
+     *            the number of rows of blocks
+     * @throws IOException
+     *             if a block is located outside of the file
+     */
+    private void checkBlocks(long fileSize, int blocksDown) throws IOException
+    {
+        for (int by = 0; by < blocksDown; by++)
+        {
+            // the last block row and column may be partially filled
+            int rowCount = Math.min(blockHeight, sizeY - by * blockHeight);
+            for (int bx = 0; bx < blocksAcross; bx++)
+            {
+                int columnCount = Math.min(blockWidth, sizeX - bx * blockWidth);
+                long offset = blockOffsets[by * blocksAcross + bx];
+                long end = offset + ((long) (rowCount - 1) * blockWidth + columnCount) * pixelType.byteCount;
+                if (offset < 0 || end > fileSize)
+                {
+                    throw new IOException("File is too short: block " + (by * blocksAcross + bx) + " ends at byte "
+                            + end + ", but the file has " + fileSize + " bytes");
+                }
+            }
+        }
+    }
+    
+    /**
+     * @return the data type of the labels.
+     */
+    public PixelType getPixelType()
+    {
+        return pixelType;
+    }
+    
+    @Override
+    public int getWidth()
+    {
+        return sizeX;
+    }
+    
+    @Override
+    public int getHeight()
+    {
+        return sizeY;
+    }
+    
+    @Override
+    public int getLabel(int x, int y)
+    {
+        long pos = blockOffsets[(y / blockHeight) * blocksAcross + x / blockWidth]
+                + ((long) (y % blockHeight) * blockWidth + (x % blockWidth)) * pixelType.byteCount;
+        int chunk = (int) (pos / chunkSize);
+        return readLabel(chunks[chunk], (int) (pos - chunk * chunkSize));
+    }
+    
+    @Override
+    public void readRow(int y, int[] labels)
+    {
+        int blockRow = y / blockHeight;
+        long rowShift = (long) (y % blockHeight) * blockWidth * pixelType.byteCount;
+        for (int bx = 0; bx < blocksAcross; bx++)
+        {
+            // the segment of the row within current block
+            int x0 = bx * blockWidth;
+            int x1 = Math.min(x0 + blockWidth, sizeX);
+            long pos = blockOffsets[blockRow * blocksAcross + bx] + rowShift;
+            int chunk = (int) (pos / chunkSize);
+            ByteBuffer buffer = chunks[chunk];
+            int index = (int) (pos - chunk * chunkSize);
+            
+            switch (pixelType)
+            {
+            case UINT8:
+                for (int x = x0; x < x1; x++, index++)
+                {
+                    labels[x] = buffer.get(index) & 0x00FF;
+                }
+                break;
+            case UINT16:
+                for (int x = x0; x < x1; x++, index += 2)
+                {
+                    labels[x] = buffer.getShort(index) & 0x00FFFF;
+                }
+                break;
+            case INT32:
+                for (int x = x0; x < x1; x++, index += 4)
+                {
+                    labels[x] = buffer.getInt(index);
+                }
+                break;
+            case FLOAT32:
+                for (int x = x0; x < x1; x++, index += 4)
+                {
+                    labels[x] = (int) buffer.getFloat(index);
+                }
+                break;
+            }
+        }
+    }
+    
+    private int readLabel(ByteBuffer buffer, int index)
+    {
+        switch (pixelType)
+        {
+        case UINT8:
+            return buffer.get(index) & 0x00FF;
+        case UINT16:
+            return buffer.getShort(index) & 0x00FFFF;
+        case INT32:
+            return buffer.getInt(index);
+        case FLOAT32:
+            return (int) buffer.getFloat(index);
+        default:
+            throw new RuntimeException("Unknown pixel type: " + pixelType);
+        }
+    }
+}
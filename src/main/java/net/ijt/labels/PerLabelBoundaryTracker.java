@@ -0,0 +1,455 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import ij.process.ImageProcessor;
+import inra.ijpb.geometry.Polygon2D;
+import net.ijt.labels.BoundaryTracker.Direction;
+import net.ijt.labels.BoundaryTracker.VertexLocation;
+
+/**
+ * Computes the boundaries of the regions within a label image in two phases,
+ * allowing to track the boundaries of different labels in parallel.
+ * 
+ * The first phase scans the image and records the positions that can be used
+ * to start a boundary, i.e. the pixels whose left neighbor has a different
+ * label. The positions are stored within a primitive array, sorted by label
+ * and by position.
+ * 
+ * The second phase tracks the boundaries of each label in parallel. Each label
+ * uses its own visit mask, containing one flag for each start position of the
+ * label. Positions visited during the tracking of a boundary are marked such
+ * that each boundary is tracked only once.
+ * 
+ * The result is the same as the one obtained with the
+ * <code>BoundaryTracker</code> class.
+ * 
+ * @see BoundaryTracker
+ * 
+ * @author dlegland
+ *
+ */
+public class PerLabelBoundaryTracker
+{
+    /**
+     * The connectivity to use for tracking boundary. Should be either 4 or 8.
+     * Default is 4.
+     */
+    int conn = 4;
+    
+    /**
+     * Defines where the ROI vertices are located according to position of
+     * current pixel.
+     */
+    VertexLocation vertexLocation = VertexLocation.EDGE_CENTER;
+    
+    /**
+     * If true, only the corners of the boundaries are kept, and vertices
+     * located on a straight line between their neighbors are removed.
+     */
+    boolean removeCollinear = false;
+    
+    /**
+     * The simplifier applied to the polygons, or null if polygons are not
+     * simplified.
+     */
+    PolygonSimplifier simplifier = null;
+    
+    /**
+     * The pool used to run the tasks.
+     */
+    ForkJoinPool pool = ForkJoinPool.commonPool();
+    
+    /**
+     * The monitor notified after each row is scanned, or null.
+     */
+    ProgressMonitor monitor = null;
+    
+    /**
+     * The maximum duration of an extraction, in nanoseconds, or 0 if the
+     * duration is not limited.
+     */
+    long timeout = 0;
+    
+    /**
+     * Default empty constructor, using Connectivity 4.
+     */
+    public PerLabelBoundaryTracker()
+    {
+    }
+    
+    /**
+     * Constructor that allows to specify connectivity and location of vertices.
+     * 
+     * @param conn
+     *            the connectivity to use (must be either 4 or 8)
+     * @param loc
+     *            the location of the vertices with respect to boundary pixels
+     */
+    public PerLabelBoundaryTracker(int conn, VertexLocation loc)
+    {
+        if (conn != 4 && conn != 8)
+        {
+            throw new IllegalArgumentException(
+                    "Connectivity must be either 4 or 8");
+        }
+        this.conn = conn;
+        this.vertexLocation = loc;
+    }
+    
+    /**
+     * Chooses whether the vertices located on a straight line between their
+     * neighbors are removed while boundaries are computed, keeping only the
+     * corners of the polygons.
+     * 
+     * @param removeCollinear
+     *            true if collinear vertices must be removed
+     */
+    public void setRemoveCollinearVertices(boolean removeCollinear)
+    {
+        this.removeCollinear = removeCollinear;
+    }
+    
+    /**
+     * Changes the simplifier applied to the polygons. Simplification keeps the
+     * vertices at the junctions between regions, so that the boundaries
+     * shared by adjacent regions remain consistent.
+     * 
+     * @param simplifier
+     *            the simplifier to apply, or null to keep all the vertices
+     */
+    public void setSimplifier(PolygonSimplifier simplifier)
+    {
+        this.simplifier = simplifier;
+    }
+    
+    /**
+     * Changes the pool used to run the tasks.
+     * 
+     * @param pool
+     *            the pool to use for running the tasks
+     */
+    public void setPool(ForkJoinPool pool)
+    {
+        this.pool = pool;
+    }
+    
+    /**
+     * Changes the monitor notified of the progress of the extractions. The
+     * rows are reported during the first phase, and the monitor is called
+     * again while the boundaries of each label are tracked, with all the
+     * rows scanned. The extraction is aborted with a
+     * <code>CancellationException</code> when the monitor returns false.
+     * 
+     * @param monitor
+     *            the monitor to notify after each row is scanned, or null
+     */
+    public void setProgressMonitor(ProgressMonitor monitor)
+    {
+        this.monitor = monitor;
+    }
+    
+    /**
+     * Limits the duration of the extractions. When an extraction runs longer
+     * than the timeout, it is aborted with a
+     * <code>CancellationException</code>.
+     * 
+     * @param timeout
+     *            the maximum duration of an extraction, or 0 for no limit
+     * @param unit
+     *            the unit of the timeout
+     */
+    public void setTimeout(long timeout, TimeUnit unit)
+    {
+        if (timeout < 0)
+        {
+            throw new IllegalArgumentException("Timeout must be positive or zero");
+        }
+        this.timeout = unit.toNanos(timeout);
+    }
+    
+    public Map<Integer, ArrayList<Polygon2D>> process(ImageProcessor array)
+    {
+        // first phase: compute the index of start positions
+        ExtractionProgress progress = new ExtractionProgress(monitor, timeout, array.getHeight());
+        long[] starts = findStartPositions(array, progress);
+        
+        // identify the range of start positions of each label
+        int nStarts = starts.length;
+        int[] groupOffsets = new int[nStarts + 1];
+        int nGroups = 0;
+        for (int i = 0; i < nStarts; i++)
+        {
+            if (i == 0 || (starts[i] >> 32) != (starts[i - 1] >> 32))
+            {
+                groupOffsets[nGroups++] = i;
+            }
+        }
+        groupOffsets[nGroups] = nStarts;
+        
+        // second phase: track boundaries, grouping labels into tasks with
+        // similar numbers of start positions
+        BoundaryTracker tracker = new BoundaryTracker(conn, vertexLocation);
+        LabelSource source = new ImageProcessorLabelSource(array);
+        int taskSize = Math.max(nStarts / (8 * pool.getParallelism()), 1);
+        List<Callable<List<LabelBoundaries>>> tasks = new ArrayList<Callable<List<LabelBoundaries>>>();
+        int group0 = 0;
+        while (group0 < nGroups)
+        {
+            int group1 = group0 + 1;
+            while (group1 < nGroups && groupOffsets[group1] - groupOffsets[group0] < taskSize)
+            {
+                group1++;
+            }
+            
+            final int firstGroup = group0;
+            final int lastGroup = group1;
+            tasks.add(() -> {
+                List<LabelBoundaries> res = new ArrayList<LabelBoundaries>(lastGroup - firstGroup);
+                VertexBuffer vertices = new VertexBuffer();
+                // junction vertices must not be removed before simplification
+                vertices.removeCollinear = removeCollinear && simplifier == null;
+                long boundaryCount = 0;
+                long vertexCount = 0;
+                for (int g = firstGroup; g < lastGroup; g++)
+                {
+                    LabelBoundaries labelBoundaries = trackLabel(tracker, source, array, starts, groupOffsets[g],
+                            groupOffsets[g + 1], vertices, progress);
+                    res.add(labelBoundaries);
+                    boundaryCount += labelBoundaries.polygons.size();
+                    for (Polygon2D poly : labelBoundaries.polygons)
+                    {
+                        vertexCount += poly.vertexNumber();
+                    }
+                }
+                
+                // report the progress once for the whole group of labels
+                progress.report(boundaryCount, vertexCount);
+                return res;
+            });
+            group0 = group1;
+        }
+        
+        // collect results
+        Map<Integer, ArrayList<Polygon2D>> boundaries = new HashMap<>();
+        try
+        {
+            for (Future<List<LabelBoundaries>> future : pool.invokeAll(tasks))
+            {
+                for (LabelBoundaries res : future.get())
+                {
+                    boundaries.put(res.label, res.polygons);
+                }
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while tracking boundaries", ex);
+        }
+        catch (ExecutionException ex)
+        {
+            ExtractionProgress.rethrowCancellation(ex);
+            throw new RuntimeException("Error while tracking boundaries", ex.getCause());
+        }
+        
+        return boundaries;
+    }
+    
+    /**
+     * Scans the image to identify the positions that can be used to start a
+     * boundary. Each position is encoded within a long, containing the label
+     * in the upper 32 bits and the pixel index in the lower 32 bits.
+     * 
+     * @param array
+     *            the label image
+     * @param progress
+     *            the progress of the extraction, checked after each row and
+     *            reported at the end of each strip
+     * @return the sorted array of start positions
+     */
+    private long[] findStartPositions(ImageProcessor array, ExtractionProgress progress)
+    {
+        int sizeX = array.getWidth();
+        int sizeY = array.getHeight();
+        
+        // scan strips of rows in parallel
+        int height = Math.max(16, sizeY / (4 * pool.getParallelism()) + 1);
+        List<Callable<long[]>> tasks = new ArrayList<Callable<long[]>>();
+        for (int y0 = 0; y0 < sizeY; y0 += height)
+        {
+            final int ys = y0;
+            final int ye = Math.min(y0 + height, sizeY);
+            tasks.add(() -> {
+                int[] labels = new int[sizeX];
+                long[] res = new long[Math.max(ye - ys, 16)];
+                int n = 0;
+                for (int y = ys; y < ye; y++)
+                {
+                    BoundaryTracker.readRow(array, y, labels);
+                    int currentLabel = 0;
+                    for (int x = 0; x < sizeX; x++)
+                    {
+                        int label = labels[x];
+                        if (label == currentLabel)
+                        {
+                            continue;
+                        }
+                        currentLabel = label;
+                        if (label == 0)
+                        {
+                            continue;
+                        }
+                        if (n == res.length)
+                        {
+                            res = Arrays.copyOf(res, n * 2);
+                        }
+                        res[n++] = ((long) label << 32) | (y * sizeX + x);
+                    }
+                    progress.check();
+                }
+                progress.addRows(ye - ys, 0, 0);
+                return Arrays.copyOf(res, n);
+            });
+        }
+        
+        // concatenate results of each strip
+        long[] starts;
+        try
+        {
+            List<Future<long[]>> futures = pool.invokeAll(tasks);
+            int n = 0;
+            for (Future<long[]> future : futures)
+            {
+                n += future.get().length;
+            }
+            starts = new long[n];
+            n = 0;
+            for (Future<long[]> future : futures)
+            {
+                long[] res = future.get();
+                System.arraycopy(res, 0, starts, n, res.length);
+                n += res.length;
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while scanning image", ex);
+        }
+        catch (ExecutionException ex)
+        {
+            ExtractionProgress.rethrowCancellation(ex);
+            throw new RuntimeException("Error while scanning image", ex.getCause());
+        }
+        
+        // sort by label, then by position
+        Arrays.parallelSort(starts);
+        return starts;
+    }
+    
+    /**
+     * Tracks all the boundaries of a single label, and checks the progress
+     * after each boundary.
+     */
+    private LabelBoundaries trackLabel(BoundaryTracker tracker, LabelSource source, ImageProcessor array,
+            long[] starts, int from, int to, VertexBuffer vertices, ExtractionProgress progress)
+    {
+        int sizeX = array.getWidth();
+        int label = (int) (starts[from] >> 32);
+        LabelVisitMask mask = new LabelVisitMask(starts, from, to);
+        
+        ArrayList<Polygon2D> polygons = new ArrayList<Polygon2D>(4);
+        for (int i = from; i < to; i++)
+        {
+            if (mask.visited[i - from])
+            {
+                continue;
+            }
+            
+            int index = (int) starts[i];
+            vertices.clear();
+            tracker.trackBoundary(array, mask, index % sizeX, index / sizeX, Direction.DOWN, vertices);
+            if (simplifier != null)
+            {
+                polygons.add(simplifier.createPolygon(vertices, source, vertexLocation));
+            }
+            else
+            {
+                polygons.add(vertices.toPolygon());
+            }
+            progress.check();
+        }
+        return new LabelBoundaries(label, polygons);
+    }
+    
+    /**
+     * A visit mask restricted to the start positions of a single label.
+     */
+    private static final class LabelVisitMask extends VisitMask
+    {
+        long[] starts;
+        int from;
+        int to;
+        boolean[] visited;
+        
+        LabelVisitMask(long[] starts, int from, int to)
+        {
+            this.starts = starts;
+            this.from = from;
+            this.to = to;
+            this.visited = new boolean[to - from];
+        }
+        
+        private int find(long index)
+        {
+            long key = (starts[from] & 0xFFFFFFFF00000000L) | index;
+            return Arrays.binarySearch(starts, from, to, key) - from;
+        }
+        
+        @Override
+        public boolean isVisited(long index)
+        {
+            return visited[find(index)];
+        }
+        
+        @Override
+        public void setVisited(long index)
+        {
+            visited[find(index)] = true;
+        }
+        
+        @Override
+        public long getMemoryUsage()
+        {
+            return visited.length;
+        }
+    }
+    
+    /**
+     * The boundaries of a single label.
+     */
+    private static final class LabelBoundaries
+    {
+        int label;
+        ArrayList<Polygon2D> polygons;
+        
+        LabelBoundaries(int label, ArrayList<Polygon2D> polygons)
+        {
+            this.label = label;
+            this.polygons = polygons;
+        }
+    }
+}
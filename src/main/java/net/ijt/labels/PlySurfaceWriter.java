@@ -0,0 +1,286 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Writes the boundary surface of each region into a binary PLY file.
+ * 
+ * Each voxel face is written as a quadrilateral. When vertices are welded,
+ * the corners shared by several faces of a region are written only once, and
+ * the faces refer to them by index. As faces are received by increasing
+ * z-coordinate, only the indices of the vertices within the two planes of the
+ * current faces are kept in memory.
+ * 
+ * The vertices and the faces of each region are first written into two
+ * temporary files, that are concatenated after the header when the writer is
+ * closed.
+ * 
+ * @author dlegland
+ *
+ */
+public class PlySurfaceWriter extends SurfaceWriter
+{
+    /**
+     * The number of bytes of each vertex: three float coordinates.
+     */
+    static final int VERTEX_SIZE = 12;
+    
+    /**
+     * The number of bytes of each face: the number of vertices, and four
+     * vertex indices.
+     */
+    static final int FACE_SIZE = 17;
+    
+    /**
+     * The content written for a region, with the indices of the vertices
+     * already written.
+     */
+    static class PlyLabelFile extends LabelFile
+    {
+        /**
+         * The final file of the region.
+         */
+        final File plyFile;
+        
+        /**
+         * The z-coordinate of the faces being written, and the indices of
+         * the vertices within the planes at this z-coordinate and at the next
+         * one.
+         */
+        int plane = -1;
+        VertexIndexMap current = new VertexIndexMap();
+        VertexIndexMap next = new VertexIndexMap();
+        
+        PlyLabelFile(int label, File plyFile)
+        {
+            super(label, new File(plyFile.getPath() + ".vertices"), new File(plyFile.getPath() + ".faces"));
+            this.plyFile = plyFile;
+        }
+        
+        /**
+         * Updates the planes of the vertex indices for faces at the specified
+         * z-coordinate, that is never smaller than the previous one.
+         */
+        void moveToPlane(int z)
+        {
+            if (z == plane + 1)
+            {
+                VertexIndexMap tmp = current;
+                current = next;
+                next = tmp;
+                next.clear();
+            }
+            else if (z != plane)
+            {
+                current.clear();
+                next.clear();
+            }
+            plane = z;
+        }
+    }
+    
+    /**
+     * A map from the coordinates of the vertices within a plane to their
+     * indices, using open addressing.
+     */
+    static final class VertexIndexMap
+    {
+        long[] keys = emptyKeys(16);
+        int[] values = new int[16];
+        int size = 0;
+        
+        /**
+         * Returns the index of a vertex, or -1 if the vertex is not within
+         * the map.
+         */
+        int get(long key)
+        {
+            int mask = keys.length - 1;
+            for (int i = hash(key) & mask; keys[i] != -1; i = (i + 1) & mask)
+            {
+                if (keys[i] == key)
+                {
+                    return values[i];
+                }
+            }
+            return -1;
+        }
+        
+        void put(long key, int value)
+        {
+            if (2 * (size + 1) > keys.length)
+            {
+                long[] oldKeys = keys;
+                int[] oldValues = values;
+                keys = emptyKeys(2 * oldKeys.length);
+                values = new int[2 * oldKeys.length];
+                size = 0;
+                for (int i = 0; i < oldKeys.length; i++)
+                {
+                    if (oldKeys[i] != -1)
+                    {
+                        put(oldKeys[i], oldValues[i]);
+                    }
+                }
+            }
+            
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            while (keys[i] != -1)
+            {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+            size++;
+        }
+        
+        void clear()
+        {
+            if (size > 0)
+            {
+                Arrays.fill(keys, -1);
+                size = 0;
+            }
+        }
+        
+        private static final int hash(long key)
+        {
+            return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+        }
+        
+        private static final long[] emptyKeys(int capacity)
+        {
+            long[] keys = new long[capacity];
+            Arrays.fill(keys, -1);
+            return keys;
+        }
+    }
+    
+    /**
+     * If true, the vertices shared by several faces are written once.
+     */
+    boolean weldVertices = true;
+    
+    /**
+     * Creates a new writer into the specified directory.
+     * 
+     * @param directory
+     *            the directory to write the files into, created if necessary
+     * @param pattern
+     *            the pattern used to create the name of the files from the
+     *            label, for example "r%03d", without extension
+     * @throws IOException
+     *             if the directory could not be created
+     */
+    public PlySurfaceWriter(File directory, String pattern) throws IOException
+    {
+        super(directory, pattern);
+    }
+    
+    /**
+     * Chooses whether the vertices shared by several faces of a region are
+     * written only once. Welding requires the faces to be received by
+     * increasing z-coordinate, as done by <code>VoxelSurfaceExtractor</code>.
+     * 
+     * @param weldVertices
+     *            true if shared vertices must be written only once
+     */
+    public void setWeldVertices(boolean weldVertices)
+    {
+        this.weldVertices = weldVertices;
+    }
+    
+    @Override
+    LabelFile createLabelFile(int label, String name)
+    {
+        return new PlyLabelFile(label, new File(directory, name + ".ply"));
+    }
+    
+    @Override
+    void addFace(LabelFile file, int axis, int x, int y, int z, boolean reversed)
+    {
+        PlyLabelFile plyFile = (PlyLabelFile) file;
+        if (weldVertices)
+        {
+            plyFile.moveToPlane(z);
+        }
+        int[][] shifts = CORNER_SHIFTS[axis];
+        
+        ByteBuffer faces = file.buffer(1, FACE_SIZE);
+        faces.put((byte) 4);
+        for (int k = 0; k < 4; k++)
+        {
+            int[] shift = shifts[reversed ? 3 - k : k];
+            int vx = x + shift[0];
+            int vy = y + shift[1];
+            int vz = z + shift[2];
+            
+            // retrieve the index of the vertex within its plane
+            VertexIndexMap map = vz == z ? plyFile.current : plyFile.next;
+            long key = ((long) vy << 32) | vx;
+            int index = weldVertices ? map.get(key) : -1;
+            if (index < 0)
+            {
+                index = (int) file.vertexCount++;
+                ByteBuffer vertices = file.buffer(0, VERTEX_SIZE);
+                vertices.putFloat(vx).putFloat(vy).putFloat(vz);
+                if (weldVertices)
+                {
+                    map.put(key, index);
+                }
+            }
+            faces.putInt(index);
+        }
+        file.faceCount++;
+    }
+    
+    @Override
+    void finishFile(LabelFile file) throws IOException
+    {
+        PlyLabelFile plyFile = (PlyLabelFile) file;
+        String header = "ply\n"
+                + "format binary_little_endian 1.0\n"
+                + "comment label " + file.label + "\n"
+                + "element vertex " + file.vertexCount + "\n"
+                + "property float x\n"
+                + "property float y\n"
+                + "property float z\n"
+                + "element face " + file.faceCount + "\n"
+                + "property list uchar int vertex_indices\n"
+                + "end_header\n";
+        
+        // concatenate the header, the vertices and the faces
+        try (FileChannel channel = FileChannel.open(plyFile.plyFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            ByteBuffer buffer = ByteBuffer.wrap(header.getBytes(StandardCharsets.US_ASCII));
+            while (buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+            for (File part : file.files)
+            {
+                try (FileChannel partChannel = FileChannel.open(part.toPath(), StandardOpenOption.READ))
+                {
+                    long size = partChannel.size();
+                    long position = 0;
+                    while (position < size)
+                    {
+                        position += partChannel.transferTo(position, size - position, channel);
+                    }
+                }
+                part.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,315 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import java.awt.geom.Point2D;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import ij.ImagePlus;
+import ij.gui.PolygonRoi;
+import ij.gui.Roi;
+import ij.io.RoiEncoder;
+import ij.plugin.frame.RoiManager;
+import inra.ijpb.geometry.Polygon2D;
+
+/**
+ * Converts the polygons computed from a label image into ImageJ ROIs, and
+ * outputs large numbers of ROIs efficiently.
+ * 
+ * ROIs are created in parallel, and are either written directly into a RoiSet
+ * file, or added to the ROI Manager by opening such a file, to avoid updating
+ * the manager for each ROI.
+ * 
+ * @author dlegland
+ *
+ */
+public class PolygonRois
+{
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private PolygonRois()
+    {
+    }
+    
+    /**
+     * Creates the ROIs corresponding to the polygons of each region, ordered
+     * by increasing label. ROIs are named with the name pattern applied to
+     * the label. When a region has several polygons, names are suffixed by
+     * the index of the polygon.
+     * 
+     * @param boundaries
+     *            the polygons of each region, indexed by region label
+     * @param pattern
+     *            the pattern used to create the name of the ROIs from the
+     *            label, for example "r%03d"
+     * @return the array of named ROIs
+     */
+    public static Roi[] createRois(Map<Integer, ArrayList<Polygon2D>> boundaries, String pattern)
+    {
+        int[] labels = new int[boundaries.size()];
+        int count = 0;
+        for (int label : boundaries.keySet())
+        {
+            labels[count++] = label;
+        }
+        Arrays.sort(labels);
+        
+        // list the polygons in the order of the ROIs
+        int roiCount = 0;
+        for (int label : labels)
+        {
+            roiCount += boundaries.get(label).size();
+        }
+        Polygon2D[] polygons = new Polygon2D[roiCount];
+        int[] roiLabels = new int[roiCount];
+        int[] roiIndices = new int[roiCount];
+        int index = 0;
+        for (int label : labels)
+        {
+            ArrayList<Polygon2D> list = boundaries.get(label);
+            for (int i = 0; i < list.size(); i++)
+            {
+                polygons[index] = list.get(i);
+                roiLabels[index] = label;
+                roiIndices[index] = list.size() == 1 ? -1 : i;
+                index++;
+            }
+        }
+        
+        // create the named ROIs in parallel
+        Roi[] rois = new Roi[roiCount];
+        IntStream.range(0, roiCount).parallel().forEach(i -> {
+            PolygonRoi roi = createPolygonRoi(polygons[i]);
+            String name = String.format(pattern, roiLabels[i]);
+            roi.setName(roiIndices[i] < 0 ? name : name + "-" + roiIndices[i]);
+            rois[i] = roi;
+        });
+        return rois;
+    }
+    
+    /**
+     * Creates the ROIs corresponding to the boundaries of each region,
+     * ordered by increasing label, without creating intermediate polygons.
+     * ROIs are named the same way as with the map of polygons.
+     * 
+     * @param boundaries
+     *            the boundaries of the regions
+     * @param pattern
+     *            the pattern used to create the name of the ROIs from the
+     *            label, for example "r%03d"
+     * @return the array of named ROIs
+     */
+    public static Roi[] createRois(RegionBoundaries boundaries, String pattern)
+    {
+        // boundaries are already sorted by label
+        int roiCount = boundaries.polygonNumber();
+        int[] roiRegions = new int[roiCount];
+        int[] roiIndices = new int[roiCount];
+        int index = 0;
+        for (int i = 0; i < boundaries.size(); i++)
+        {
+            int n = boundaries.polygonNumber(i);
+            for (int j = 0; j < n; j++)
+            {
+                roiRegions[index] = i;
+                roiIndices[index] = n == 1 ? -1 : j;
+                index++;
+            }
+        }
+        
+        // create the named ROIs in parallel, from the flat coordinate arrays
+        Roi[] rois = new Roi[roiCount];
+        IntStream.range(0, roiCount).parallel().forEach(k -> {
+            int ring = boundaries.ringOrder[k];
+            int from = boundaries.vertexOffsets[ring];
+            int nv = boundaries.vertexOffsets[ring + 1] - from;
+            float[] vx = new float[nv];
+            float[] vy = new float[nv];
+            for (int i = 0; i < nv; i++)
+            {
+                vx[i] = (float) boundaries.xCoords[from + i];
+                vy[i] = (float) boundaries.yCoords[from + i];
+            }
+            PolygonRoi roi = new PolygonRoi(vx, vy, nv, Roi.POLYGON);
+            String name = String.format(pattern, boundaries.getLabel(roiRegions[k]));
+            roi.setName(roiIndices[k] < 0 ? name : name + "-" + roiIndices[k]);
+            rois[k] = roi;
+        });
+        return rois;
+    }
+    
+    /**
+     * Creates the ROIs corresponding to the boundaries of each slice, ordered
+     * by slice and by increasing label. Each ROI is associated with the
+     * position of its slice: the channel, slice and frame for hyperstacks,
+     * or the index within the stack otherwise. When the stack has several
+     * slices, names are prefixed by the index of the slice, for example
+     * "0012-r003".
+     * 
+     * @param boundaries
+     *            the boundaries of each slice, in the order of the slices
+     * @param pattern
+     *            the pattern used to create the name of the ROIs from the
+     *            label, for example "r%03d"
+     * @param imagePlus
+     *            the image containing the stack, used to compute the
+     *            hyperstack positions
+     * @return the array of named ROIs
+     */
+    public static Roi[] createRois(RegionBoundaries[] boundaries, String pattern, ImagePlus imagePlus)
+    {
+        boolean hyperStack = imagePlus.isHyperStack();
+        ArrayList<Roi> rois = new ArrayList<Roi>();
+        for (int i = 0; i < boundaries.length; i++)
+        {
+            int index = i + 1;
+            int[] position = hyperStack ? imagePlus.convertIndexToPosition(index) : null;
+            String prefix = boundaries.length > 1 ? String.format("%04d-", index) : "";
+            for (Roi roi : createRois(boundaries[i], pattern))
+            {
+                if (hyperStack)
+                {
+                    roi.setPosition(position[0], position[1], position[2]);
+                }
+                else
+                {
+                    roi.setPosition(index);
+                }
+                roi.setName(prefix + roi.getName());
+                rois.add(roi);
+            }
+        }
+        return rois.toArray(new Roi[rois.size()]);
+    }
+    
+    /**
+     * Creates a polygonal ROI with the vertices of a polygon.
+     * 
+     * @param poly
+     *            the polygon
+     * @return the corresponding ROI
+     */
+    public static PolygonRoi createPolygonRoi(Polygon2D poly)
+    {
+        int nv = poly.vertexNumber();
+        float[] vx = new float[nv];
+        float[] vy = new float[nv];
+        for (int i = 0; i < nv; i++)
+        {
+            Point2D p = poly.getVertex(i);
+            vx[i] = (float) p.getX();
+            vy[i] = (float) p.getY();
+        }
+        return new PolygonRoi(vx, vy, nv, Roi.POLYGON);
+    }
+    
+    /**
+     * Adds ROIs to a ROI Manager. Adding ROIs one by one updates the list of
+     * the manager and checks the uniqueness of the name for each ROI, so the
+     * ROIs are written into a temporary RoiSet file that is opened by the
+     * manager in a single operation. If the temporary file can not be
+     * written, the ROIs are added one by one, while the window of the manager
+     * is hidden.
+     * 
+     * @param rois
+     *            the ROIs to add
+     * @param rm
+     *            the ROI Manager
+     */
+    public static void addToRoiManager(Roi[] rois, RoiManager rm)
+    {
+        if (rois.length == 0)
+        {
+            return;
+        }
+        
+        File file = null;
+        try
+        {
+            file = File.createTempFile("RoiSet", ".zip");
+            saveRoiSet(rois, file);
+            rm.runCommand("Open", file.getPath());
+            return;
+        }
+        catch (IOException ex)
+        {
+            // add the ROIs one by one
+        }
+        finally
+        {
+            if (file != null)
+            {
+                file.delete();
+            }
+        }
+        
+        boolean visible = rm.isVisible();
+        if (visible)
+        {
+            rm.setVisible(false);
+        }
+        try
+        {
+            for (Roi roi : rois)
+            {
+                rm.addRoi(roi);
+            }
+        }
+        finally
+        {
+            if (visible)
+            {
+                rm.setVisible(true);
+            }
+        }
+    }
+    
+    /**
+     * Writes ROIs into a RoiSet file, that can be opened with the ROI
+     * Manager. Each ROI is stored as a zip entry named after the ROI. As zip
+     * entries must have unique names, duplicate names are suffixed by an
+     * index, as done by the ROI Manager: "r003", "r003-2", "r003-3"...
+     * 
+     * @param rois
+     *            the ROIs to write
+     * @param file
+     *            the zip file to create
+     * @throws IOException
+     *             if the file could not be written
+     */
+    public static void saveRoiSet(Roi[] rois, File file) throws IOException
+    {
+        HashSet<String> names = new HashSet<String>(rois.length * 2);
+        try (ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file))))
+        {
+            DataOutputStream out = new DataOutputStream(zos);
+            RoiEncoder encoder = new RoiEncoder(out);
+            for (Roi roi : rois)
+            {
+                String name = roi.getName();
+                String entryName = name;
+                for (int i = 2; !names.add(entryName); i++)
+                {
+                    entryName = name + "-" + i;
+                }
+                
+                zos.putNextEntry(new ZipEntry(entryName + ".roi"));
+                encoder.write(roi);
+                out.flush();
+            }
+        }
+    }
+}
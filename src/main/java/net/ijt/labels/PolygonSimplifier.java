@@ -0,0 +1,723 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import inra.ijpb.geometry.Polygon2D;
+import net.ijt.labels.BoundaryTracker.VertexLocation;
+
+/**
+ * Simplifies the polygons computed from the boundaries of regions, by
+ * removing the vertices that are close to the simplified boundary.
+ * 
+ * Two algorithms are available. The Douglas-Peucker algorithm keeps the
+ * vertices located at a distance greater than the tolerance from the
+ * simplified polygon. The Visvalingam-Whyatt algorithm iteratively removes
+ * the vertex that forms the triangle with smallest area with its two
+ * neighbors, until all triangles have an area greater than the square of the
+ * tolerance.
+ * 
+ * The Visvalingam-Whyatt algorithm uses a priority queue of triangle areas,
+ * and runs in O(n log n) for an arc with n vertices. The Douglas-Peucker
+ * algorithm recursively splits arcs at their farthest vertex, and runs in
+ * O(n log n) when splits are balanced, but in O(n<sup>2</sup>) in the worst
+ * case, for example for spiral-shaped boundaries. The Visvalingam-Whyatt
+ * algorithm is therefore used by default.
+ * 
+ * When polygons are computed from a label image, vertices located at the
+ * junction of three or more regions are kept, and the boundary parts between
+ * two junctions are simplified independently of the direction they are
+ * traversed in. The parts of boundaries shared by two adjacent regions are
+ * therefore simplified the same way within the two polygons. When vertices are
+ * located on pixel corners, no gap or overlap is created between adjacent
+ * regions. Note that the simplified boundaries are not checked for
+ * intersections.
+ * 
+ * @author dlegland
+ *
+ */
+public class PolygonSimplifier
+{
+    /**
+     * The available simplification algorithms.
+     */
+    public enum Method
+    {
+        /**
+         * Keeps the vertices farther than the tolerance from the simplified
+         * boundary. Quadratic in the worst case.
+         */
+        DOUGLAS_PEUCKER,
+        
+        /**
+         * Removes the vertices forming small triangles with their neighbors.
+         * Runs in O(n log n).
+         */
+        VISVALINGAM_WHYATT;
+    }
+    
+    /**
+     * The distance tolerance, in pixels.
+     */
+    double tolerance;
+    
+    /**
+     * The simplification algorithm.
+     */
+    Method method = Method.VISVALINGAM_WHYATT;
+    
+    /**
+     * Creates a new simplifier based on the Visvalingam-Whyatt algorithm.
+     * 
+     * @param tolerance
+     *            the distance tolerance, in pixels
+     */
+    public PolygonSimplifier(double tolerance)
+    {
+        this(tolerance, Method.VISVALINGAM_WHYATT);
+    }
+    
+    /**
+     * Creates a new simplifier.
+     * 
+     * @param tolerance
+     *            the distance tolerance, in pixels
+     * @param method
+     *            the simplification algorithm
+     */
+    public PolygonSimplifier(double tolerance, Method method)
+    {
+        if (tolerance < 0)
+        {
+            throw new IllegalArgumentException("Tolerance must be positive");
+        }
+        this.tolerance = tolerance;
+        this.method = method;
+    }
+    
+    /**
+     * Simplifies a closed polygon given by its vertex coordinates. The arrays
+     * are modified in place: the vertices kept by the simplification are
+     * moved to the beginning of the arrays, in their original order.
+     * 
+     * @param xs
+     *            the x-coordinates of the vertices
+     * @param ys
+     *            the y-coordinates of the vertices
+     * @param n
+     *            the number of vertices
+     * @param anchors
+     *            the vertices that must be kept, or null
+     * @return the number of vertices of the simplified polygon
+     */
+    public int simplify(double[] xs, double[] ys, int n, boolean[] anchors)
+    {
+        if (n < 4)
+        {
+            return n;
+        }
+        
+        // identify the vertices that split the boundary into arcs
+        int[] splits = new int[n];
+        int splitCount = 0;
+        if (anchors != null)
+        {
+            for (int i = 0; i < n; i++)
+            {
+                if (anchors[i])
+                {
+                    splits[splitCount++] = i;
+                }
+            }
+        }
+        if (splitCount == 0)
+        {
+            splits[splitCount++] = lowestVertex(xs, ys, n);
+        }
+        
+        // simplify each arc independently
+        boolean[] keep = new boolean[n];
+        for (int k = 0; k < splitCount; k++)
+        {
+            int start = splits[k];
+            int end = k < splitCount - 1 ? splits[k + 1] : splits[0] + n;
+            keep[start] = true;
+            simplifyBetween(xs, ys, n, start, end, keep);
+        }
+        
+        return compact(xs, ys, n, keep);
+    }
+    
+    /**
+     * Simplifies an open polyline given by its vertex coordinates. The first
+     * and the last vertices are always kept. As for polygons, the arrays are
+     * modified in place.
+     * 
+     * @param xs
+     *            the x-coordinates of the vertices
+     * @param ys
+     *            the y-coordinates of the vertices
+     * @param n
+     *            the number of vertices
+     * @return the number of vertices of the simplified polyline
+     */
+    public int simplifyPolyline(double[] xs, double[] ys, int n)
+    {
+        return compact(xs, ys, n, polylineMask(xs, ys, n));
+    }
+    
+    /**
+     * Computes the vertices of an open polyline kept by the simplification.
+     */
+    boolean[] polylineMask(double[] xs, double[] ys, int n)
+    {
+        boolean[] keep = new boolean[n];
+        if (n > 0)
+        {
+            keep[0] = true;
+            keep[n - 1] = true;
+            simplifyBetween(xs, ys, n, 0, n - 1, keep);
+        }
+        return keep;
+    }
+    
+    /**
+     * Moves the kept vertices to the beginning of the arrays, and returns
+     * their number.
+     */
+    private static int compact(double[] xs, double[] ys, int n, boolean[] keep)
+    {
+        int count = 0;
+        for (int i = 0; i < n; i++)
+        {
+            if (keep[i])
+            {
+                xs[count] = xs[i];
+                ys[count] = ys[i];
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Simplifies the arc between two kept vertices. When both extremities
+     * have the same coordinates, the arc is split at the vertex the farthest
+     * from its extremity.
+     */
+    private void simplifyBetween(double[] xs, double[] ys, int n, int start, int end, boolean[] keep)
+    {
+        if (end - start > 2 && xs[start % n] == xs[end % n] && ys[start % n] == ys[end % n])
+        {
+            int mid = farthestVertex(xs, ys, n, start, end);
+            keep[mid % n] = true;
+            simplifyArc(xs, ys, n, start, mid, keep);
+            simplifyArc(xs, ys, n, mid, end, keep);
+        }
+        else
+        {
+            simplifyArc(xs, ys, n, start, end, keep);
+        }
+    }
+    
+    /**
+     * Simplifies the arc between the vertices with indices start and end.
+     * Indices greater than n correspond to vertices after the end of the
+     * array, that are considered modulo n.
+     */
+    private void simplifyArc(double[] xs, double[] ys, int n, int start, int end, boolean[] keep)
+    {
+        if (end - start < 2)
+        {
+            return;
+        }
+        if (method == Method.DOUGLAS_PEUCKER)
+        {
+            douglasPeucker(xs, ys, n, start, end, keep);
+        }
+        else
+        {
+            visvalingamWhyatt(xs, ys, n, start, end, keep);
+        }
+        keepArcShape(xs, ys, n, start, end, keep);
+    }
+    
+    /**
+     * Ensures an arc that is not a straight line is not replaced by a single
+     * segment, by keeping its vertex the farthest from the chord. This avoids
+     * degenerate polygons, and only depends on the arc, so that adjacent
+     * regions still share the same simplified boundaries.
+     */
+    private static void keepArcShape(double[] xs, double[] ys, int n, int start, int end, boolean[] keep)
+    {
+        for (int index = start + 1; index < end; index++)
+        {
+            if (keep[index % n])
+            {
+                return;
+            }
+        }
+        
+        int index = farthestFromChord(xs, ys, n, start, end);
+        if (index >= 0 && chordDistance(xs, ys, index % n, start % n, end % n) > 0)
+        {
+            keep[index % n] = true;
+        }
+    }
+    
+    private void douglasPeucker(double[] xs, double[] ys, int n, int start, int end, boolean[] keep)
+    {
+        // use an explicit stack of sub-arcs, to avoid deep recursion
+        int[] stack = new int[64];
+        int stackSize = 0;
+        stack[stackSize++] = start;
+        stack[stackSize++] = end;
+        
+        while (stackSize > 0)
+        {
+            int j = stack[--stackSize];
+            int i = stack[--stackSize];
+            
+            int index = farthestFromChord(xs, ys, n, i, j);
+            if (index < 0)
+            {
+                continue;
+            }
+            int k = index % n;
+            double dist = chordDistance(xs, ys, k, i % n, j % n);
+            if (dist <= tolerance)
+            {
+                continue;
+            }
+            keep[k] = true;
+            
+            if (stackSize + 4 > stack.length)
+            {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            stack[stackSize++] = i;
+            stack[stackSize++] = index;
+            stack[stackSize++] = index;
+            stack[stackSize++] = j;
+        }
+    }
+    
+    private void visvalingamWhyatt(double[] xs, double[] ys, int n, int start, int end, boolean[] keep)
+    {
+        // the vertices of the arc, with links to their neighbors within the arc
+        int m = end - start + 1;
+        int[] prev = new int[m];
+        int[] next = new int[m];
+        for (int i = 0; i < m; i++)
+        {
+            prev[i] = i - 1;
+            next[i] = i + 1;
+        }
+        
+        // a binary heap of interior vertices, sorted by triangle area
+        double[] areas = new double[m];
+        int[] heap = new int[m];
+        int[] heapPos = new int[m];
+        int heapSize = 0;
+        for (int i = 1; i < m - 1; i++)
+        {
+            areas[i] = triangleArea(xs, ys, n, start + i - 1, start + i, start + i + 1);
+            heap[heapSize] = i;
+            heapPos[i] = heapSize;
+            heapSize++;
+        }
+        for (int i = heapSize / 2 - 1; i >= 0; i--)
+        {
+            siftDown(heap, heapPos, heapSize, i, areas, xs, ys, n, start);
+        }
+        
+        double threshold = tolerance * tolerance;
+        double lastArea = 0;
+        while (heapSize > 0)
+        {
+            int i = heap[0];
+            if (areas[i] > threshold)
+            {
+                break;
+            }
+            lastArea = Math.max(lastArea, areas[i]);
+            
+            // remove vertex from heap and from arc
+            heapSize--;
+            if (heapSize > 0)
+            {
+                heap[0] = heap[heapSize];
+                heapPos[heap[0]] = 0;
+                siftDown(heap, heapPos, heapSize, 0, areas, xs, ys, n, start);
+            }
+            int p = prev[i];
+            int q = next[i];
+            next[p] = q;
+            prev[q] = p;
+            
+            // update the areas of the neighbors, keeping the removal order
+            for (int t = 0; t < 2; t++)
+            {
+                int v = t == 0 ? p : q;
+                if (v == 0 || v == m - 1)
+                {
+                    continue;
+                }
+                double area = triangleArea(xs, ys, n, start + prev[v], start + v, start + next[v]);
+                double oldArea = areas[v];
+                areas[v] = Math.max(area, lastArea);
+                if (areas[v] < oldArea)
+                {
+                    siftUp(heap, heapPos, heapPos[v], areas, xs, ys, n, start);
+                }
+                else
+                {
+                    siftDown(heap, heapPos, heapSize, heapPos[v], areas, xs, ys, n, start);
+                }
+            }
+        }
+        
+        // keep the remaining vertices
+        for (int i = next[0]; i < m - 1; i = next[i])
+        {
+            keep[(start + i) % n] = true;
+        }
+    }
+    
+    /**
+     * Compares two vertices of an arc within the heap. Ties between areas are
+     * broken using vertex coordinates, making the result independent of the
+     * direction of the arc.
+     */
+    private static boolean lessThan(int i, int j, double[] areas, double[] xs, double[] ys, int n, int start)
+    {
+        if (areas[i] != areas[j])
+        {
+            return areas[i] < areas[j];
+        }
+        return compareVertices(xs, ys, (start + i) % n, (start + j) % n) < 0;
+    }
+    
+    private static void siftUp(int[] heap, int[] heapPos, int pos, double[] areas, double[] xs, double[] ys, int n,
+            int start)
+    {
+        int v = heap[pos];
+        while (pos > 0)
+        {
+            int parent = (pos - 1) / 2;
+            if (!lessThan(v, heap[parent], areas, xs, ys, n, start))
+            {
+                break;
+            }
+            heap[pos] = heap[parent];
+            heapPos[heap[pos]] = pos;
+            pos = parent;
+        }
+        heap[pos] = v;
+        heapPos[v] = pos;
+    }
+    
+    private static void siftDown(int[] heap, int[] heapPos, int heapSize, int pos, double[] areas, double[] xs,
+            double[] ys, int n, int start)
+    {
+        int v = heap[pos];
+        while (true)
+        {
+            int child = 2 * pos + 1;
+            if (child >= heapSize)
+            {
+                break;
+            }
+            if (child + 1 < heapSize && lessThan(heap[child + 1], heap[child], areas, xs, ys, n, start))
+            {
+                child++;
+            }
+            if (!lessThan(heap[child], v, areas, xs, ys, n, start))
+            {
+                break;
+            }
+            heap[pos] = heap[child];
+            heapPos[heap[pos]] = pos;
+            pos = child;
+        }
+        heap[pos] = v;
+        heapPos[v] = pos;
+    }
+    
+    /**
+     * Finds the vertex strictly between start and end that is the farthest
+     * from the segment joining the vertices start and end. Ties are broken
+     * using vertex coordinates. Returns -1 if there is no vertex between
+     * start and end.
+     */
+    private static int farthestFromChord(double[] xs, double[] ys, int n, int start, int end)
+    {
+        int i0 = start % n;
+        int i1 = end % n;
+        int best = -1;
+        double maxDist = -1;
+        for (int index = start + 1; index < end; index++)
+        {
+            int k = index % n;
+            double dist = chordDistance(xs, ys, k, i0, i1);
+            if (dist > maxDist || (dist == maxDist && compareVertices(xs, ys, k, best % n) < 0))
+            {
+                maxDist = dist;
+                best = index;
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * Returns the index of the vertex with smallest y-coordinate, and with
+     * smallest x-coordinate in case of ties.
+     */
+    private static int lowestVertex(double[] xs, double[] ys, int n)
+    {
+        int best = 0;
+        for (int i = 1; i < n; i++)
+        {
+            if (compareVertices(xs, ys, i, best) < 0)
+            {
+                best = i;
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * Returns the index of the vertex strictly between start and end that is
+     * the farthest from the vertex start, using vertex coordinates to break
+     * ties.
+     */
+    private static int farthestVertex(double[] xs, double[] ys, int n, int start, int end)
+    {
+        int i0 = start % n;
+        int best = start + 1;
+        double maxDist = -1;
+        for (int index = start + 1; index < end; index++)
+        {
+            int k = index % n;
+            double dx = xs[k] - xs[i0];
+            double dy = ys[k] - ys[i0];
+            double dist = dx * dx + dy * dy;
+            if (dist > maxDist || (dist == maxDist && compareVertices(xs, ys, k, best % n) < 0))
+            {
+                maxDist = dist;
+                best = index;
+            }
+        }
+        return best;
+    }
+    
+    private static int compareVertices(double[] xs, double[] ys, int i, int j)
+    {
+        if (ys[i] != ys[j])
+        {
+            return ys[i] < ys[j] ? -1 : 1;
+        }
+        return Double.compare(xs[i], xs[j]);
+    }
+    
+    /**
+     * Computes the distance between the vertex k and the segment joining the
+     * vertices i0 and i1. The extremities of the segment are sorted to ensure
+     * the same result is obtained whatever the direction of the arc.
+     */
+    private static double chordDistance(double[] xs, double[] ys, int k, int i0, int i1)
+    {
+        if (compareVertices(xs, ys, i1, i0) < 0)
+        {
+            int tmp = i0;
+            i0 = i1;
+            i1 = tmp;
+        }
+        return segmentDistance(xs[k], ys[k], xs[i0], ys[i0], xs[i1], ys[i1]);
+    }
+    
+    /**
+     * Computes the distance between the point (x,y) and the segment joining
+     * the points (x1,y1) and (x2,y2).
+     */
+    private static double segmentDistance(double x, double y, double x1, double y1, double x2, double y2)
+    {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double len2 = dx * dx + dy * dy;
+        double t = len2 > 0 ? ((x - x1) * dx + (y - y1) * dy) / len2 : 0;
+        t = Math.max(0, Math.min(1, t));
+        double ex = x - (x1 + t * dx);
+        double ey = y - (y1 + t * dy);
+        return Math.hypot(ex, ey);
+    }
+    
+    private static double triangleArea(double[] xs, double[] ys, int n, int i0, int i1, int i2)
+    {
+        i0 %= n;
+        i1 %= n;
+        i2 %= n;
+        if (compareVertices(xs, ys, i2, i0) < 0)
+        {
+            int tmp = i0;
+            i0 = i2;
+            i2 = tmp;
+        }
+        double cross = (xs[i1] - xs[i0]) * (ys[i2] - ys[i0]) - (ys[i1] - ys[i0]) * (xs[i2] - xs[i0]);
+        return Math.abs(cross) / 2;
+    }
+    
+    /**
+     * Identifies the vertices of a boundary that are located at the junction
+     * of three or more regions, or at the contact of two diagonal pixels of
+     * the same region. Such vertices must be kept by the simplification so
+     * that adjacent regions share the same simplified boundaries.
+     * 
+     * @param source
+     *            the label image the boundary was computed from
+     * @param xs
+     *            the x-coordinates of the vertices
+     * @param ys
+     *            the y-coordinates of the vertices
+     * @param n
+     *            the number of vertices
+     * @param loc
+     *            the location of the vertices with respect to boundary pixels
+     * @return an array of flags indicating the vertices to keep
+     */
+    static boolean[] findJunctions(LabelSource source, double[] xs, double[] ys, int n, VertexLocation loc)
+    {
+        boolean[] anchors = new boolean[n];
+        if (loc == VertexLocation.PIXEL)
+        {
+            // pixel centers are not shared by adjacent regions
+            return anchors;
+        }
+        
+        for (int i = 0; i < n; i++)
+        {
+            double x = xs[i];
+            double y = ys[i];
+            int cx = (int) Math.floor(x);
+            int cy = (int) Math.floor(y);
+            if (x == cx && y == cy)
+            {
+                // vertex on a pixel corner
+                anchors[i] = isJunction(source, cx, cy);
+            }
+            else if (x == cx)
+            {
+                // vertex in the middle of a vertical edge
+                anchors[i] = isJunction(source, cx, cy) || isJunction(source, cx, cy + 1);
+            }
+            else
+            {
+                // vertex in the middle of a horizontal edge
+                anchors[i] = isJunction(source, cx, cy) || isJunction(source, cx + 1, cy);
+            }
+        }
+        return anchors;
+    }
+    
+    /**
+     * Checks if the corner with the specified coordinates is shared by three
+     * or more regions, considering the outside of the image as a region, or
+     * by two regions in diagonal configuration. The corners of the image are
+     * also considered as junctions, to keep the image bounds unchanged.
+     */
+    private static boolean isJunction(LabelSource source, int x, int y)
+    {
+        if ((x == 0 || x == source.getWidth()) && (y == 0 || y == source.getHeight()))
+        {
+            return true;
+        }
+        
+        long a = labelOrOutside(source, x - 1, y - 1);
+        long b = labelOrOutside(source, x, y - 1);
+        long c = labelOrOutside(source, x - 1, y);
+        long d = labelOrOutside(source, x, y);
+        return isJunction(a, b, c, d);
+    }
+    
+    /**
+     * Checks if a corner is a junction from the labels of the four pixels
+     * around it, in the order upper-left, upper-right, lower-left and
+     * lower-right. The outside of the image is represented by
+     * <code>Long.MIN_VALUE</code>.
+     */
+    static boolean isJunction(long a, long b, long c, long d)
+    {
+        int count = 1;
+        if (b != a) count++;
+        if (c != a && c != b) count++;
+        if (d != a && d != b && d != c) count++;
+        return count >= 3 || (count == 2 && a == d && b == c);
+    }
+    
+    static long labelOrOutside(LabelSource source, int x, int y)
+    {
+        if (x < 0 || y < 0 || x >= source.getWidth() || y >= source.getHeight())
+        {
+            return Long.MIN_VALUE;
+        }
+        return source.getLabel(x, y);
+    }
+    
+    /**
+     * Simplifies the boundary stored within a vertex buffer, keeping the
+     * junctions with adjacent regions, and creates the polygon.
+     * 
+     * @param vertices
+     *            the vertices of the boundary
+     * @param source
+     *            the label image the boundary was computed from
+     * @param loc
+     *            the location of the vertices with respect to boundary pixels
+     * @return the simplified polygon
+     */
+    Polygon2D createPolygon(VertexBuffer vertices, LabelSource source, VertexLocation loc)
+    {
+        int n = vertices.size();
+        double[] xs = Arrays.copyOf(vertices.xCoords, n);
+        double[] ys = Arrays.copyOf(vertices.yCoords, n);
+        boolean[] anchors = findJunctions(source, xs, ys, n, loc);
+        int count = simplify(xs, ys, n, anchors);
+        return new Polygon2D(Arrays.copyOf(xs, count), Arrays.copyOf(ys, count));
+    }
+    
+    /**
+     * Simplifies a collection of boundaries in parallel.
+     * 
+     * @param boundaries
+     *            the vertices of each boundary
+     * @param source
+     *            the label image the boundaries were computed from
+     * @param loc
+     *            the location of the vertices with respect to boundary pixels
+     * @param progress
+     *            the progress of the extraction, checked after each polygon,
+     *            and reported after each block of polygons
+     * @return the simplified polygons, in the same order as the boundaries
+     */
+    Polygon2D[] createPolygons(List<VertexBuffer> boundaries, LabelSource source, VertexLocation loc,
+            ExtractionProgress progress)
+    {
+        // process blocks of polygons, reporting the progress once per block
+        Polygon2D[] polygons = new Polygon2D[boundaries.size()];
+        int blockSize = ExtractionProgress.REPORT_INTERVAL;
+        IntStream.range(0, (polygons.length + blockSize - 1) / blockSize).parallel().forEach(b -> {
+            int end = Math.min((b + 1) * blockSize, polygons.length);
+            for (int i = b * blockSize; i < end; i++)
+            {
+                polygons[i] = createPolygon(boundaries.get(i), source, loc);
+                progress.check();
+            }
+            progress.report(0, 0);
+        });
+        return polygons;
+    }
+}
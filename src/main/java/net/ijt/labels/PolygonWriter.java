@@ -0,0 +1,273 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import java.awt.geom.Point2D;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import inra.ijpb.geometry.Polygon2D;
+
+/**
+ * Base class for writers that stream polygons into a file, one polygon at a
+ * time, so that the polygons of a label image never need to be all kept in
+ * memory.
+ * 
+ * Writers are boundary consumers, and can be given directly to
+ * <code>BoundaryTracker</code> or to <code>StreamingBoundaryExtractor</code>.
+ * Bytes are accumulated into a direct buffer, that is written to the file
+ * channel when it is full. Writers must be closed to complete the file.
+ * 
+ * <pre>{@code
+ * try (PolygonWriter writer = new GeoJsonPolygonWriter(new File("labels.geojson")))
+ * {
+ *     new BoundaryTracker().process(source, writer);
+ * }
+ * }</pre>
+ * 
+ * @see BinaryPolygonWriter
+ * @see GeoJsonPolygonWriter
+ * @see WkbPolygonWriter
+ * 
+ * @author dlegland
+ *
+ */
+public abstract class PolygonWriter implements BoundaryConsumer, Closeable
+{
+    /**
+     * The size of the buffer used to write into the file, in bytes.
+     */
+    static final int BUFFER_SIZE = 1 << 16;
+    
+    /**
+     * The channel of the file.
+     */
+    final FileChannel channel;
+    
+    /**
+     * The buffer containing the bytes not yet written to the channel.
+     */
+    final ByteBuffer buffer;
+    
+    /**
+     * Creates a new writer into the specified file, that is created or
+     * truncated.
+     * 
+     * @param file
+     *            the file to write into
+     * @throws IOException
+     *             if the file could not be opened
+     */
+    PolygonWriter(File file) throws IOException
+    {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    }
+    
+    /**
+     * Writes a polygon into the file. Exceptions thrown during writing are
+     * rethrown as unchecked exceptions.
+     * 
+     * @param label
+     *            the label of the region
+     * @param polygon
+     *            the polygon corresponding to the boundary
+     */
+    @Override
+    public void boundaryClosed(int label, Polygon2D polygon)
+    {
+        try
+        {
+            writePolygon(label, polygon);
+        }
+        catch (IOException ex)
+        {
+            throw new UncheckedIOException(ex);
+        }
+    }
+    
+    /**
+     * Writes a polygon into the file.
+     * 
+     * @param label
+     *            the label of the region
+     * @param polygon
+     *            the polygon to write
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    public abstract void writePolygon(int label, Polygon2D polygon) throws IOException;
+    
+    /**
+     * Writes all the polygons of a map, in the order of increasing labels.
+     * 
+     * @param boundaries
+     *            the polygons of each region, indexed by region label
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    public void writeAll(Map<Integer, ArrayList<Polygon2D>> boundaries) throws IOException
+    {
+        int[] labels = new int[boundaries.size()];
+        int i = 0;
+        for (int label : boundaries.keySet())
+        {
+            labels[i++] = label;
+        }
+        Arrays.sort(labels);
+        
+        for (int label : labels)
+        {
+            for (Polygon2D polygon : boundaries.get(label))
+            {
+                writePolygon(label, polygon);
+            }
+        }
+    }
+    
+    /**
+     * Writes a connected part of a region, made of an outer boundary and of
+     * the boundaries of its holes. The default implementation writes each
+     * boundary as a separate polygon, and is overridden by the formats that
+     * can represent polygons with holes.
+     * 
+     * @param label
+     *            the label of the region
+     * @param region
+     *            the part of the region to write
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    public void writeRegion(int label, RegionPolygon region) throws IOException
+    {
+        writePolygon(label, region.getOuterBoundary());
+        for (Polygon2D hole : region.getHoles())
+        {
+            writePolygon(label, hole);
+        }
+    }
+    
+    /**
+     * Writes all the region parts of a map, as computed by the
+     * <code>processRegions</code> method of <code>BoundaryTracker</code>, in
+     * the order of increasing labels.
+     * 
+     * @param regions
+     *            the parts of each region, indexed by region label
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    public void writeAllRegions(Map<Integer, ArrayList<RegionPolygon>> regions) throws IOException
+    {
+        int[] labels = new int[regions.size()];
+        int i = 0;
+        for (int label : regions.keySet())
+        {
+            labels[i++] = label;
+        }
+        Arrays.sort(labels);
+        
+        for (int label : labels)
+        {
+            for (RegionPolygon region : regions.get(label))
+            {
+                writeRegion(label, region);
+            }
+        }
+    }
+    
+    /**
+     * Checks the orientation of a polygon, from the sign of its area computed
+     * with the coordinates written into the file.
+     * 
+     * @param polygon
+     *            the polygon
+     * @return true if the signed area of the polygon is positive, that is if
+     *         the polygon is counter-clockwise for a y-axis oriented upwards
+     */
+    static final boolean isCounterClockwise(Polygon2D polygon)
+    {
+        int n = polygon.vertexNumber();
+        double area2 = 0;
+        for (int i = 0; i < n; i++)
+        {
+            Point2D p1 = polygon.getVertex(i);
+            Point2D p2 = polygon.getVertex((i + 1) % n);
+            area2 += p1.getX() * p2.getY() - p2.getX() * p1.getY();
+        }
+        return area2 > 0;
+    }
+    
+    /**
+     * Ensures that the buffer can hold the specified number of bytes, by
+     * writing its content to the channel if necessary.
+     * 
+     * @param byteCount
+     *            the number of bytes to put into the buffer, at most the size
+     *            of the buffer
+     */
+    final void ensureRemaining(int byteCount) throws IOException
+    {
+        if (buffer.remaining() < byteCount)
+        {
+            flushBuffer();
+        }
+    }
+    
+    /**
+     * Writes the content of the buffer to the channel, and clears the buffer.
+     */
+    final void flushBuffer() throws IOException
+    {
+        buffer.flip();
+        while (buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+    
+    /**
+     * @return the position within the file of the next byte to write.
+     */
+    final long position() throws IOException
+    {
+        return channel.position() + buffer.position();
+    }
+    
+    /**
+     * Called before the file is closed, to write the end of the file. The
+     * default implementation does nothing.
+     */
+    void writeEnd() throws IOException
+    {
+    }
+    
+    /**
+     * Completes the file, and closes it.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            writeEnd();
+            flushBuffer();
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+/**
+ * Receives the progress of a boundary extraction, and allows to cancel it.
+ * 
+ * The extraction classes that process rows in parallel call the monitor from
+ * several threads, but never at the same time.
+ * 
+ * @see BoundaryTracker#setProgressMonitor(ProgressMonitor)
+ * @see TiledBoundaryTracker#setProgressMonitor(ProgressMonitor)
+ * @see PerLabelBoundaryTracker#setProgressMonitor(ProgressMonitor)
+ * @see RunLengthBoundaryExtractor#setProgressMonitor(ProgressMonitor)
+ * @see TopologyExtractor#setProgressMonitor(ProgressMonitor)
+ * @see StackBoundaryExtractor#setProgressMonitor(ProgressMonitor)
+ * 
+ * @author dlegland
+ *
+ */
+@FunctionalInterface
+public interface ProgressMonitor
+{
+    /**
+     * Called each time a row of the image has been scanned, and regularly
+     * during the steps that follow the scan, such as the simplification of
+     * the polygons, with an unchanged number of rows. As this method is
+     * called often, it should return quickly.
+     * 
+     * @param rowsScanned
+     *            the number of rows scanned so far
+     * @param rowCount
+     *            the total number of rows to scan
+     * @param boundaryCount
+     *            the number of boundaries tracked so far
+     * @param vertexCount
+     *            the number of vertices of the boundaries tracked so far
+     * @return true to continue the extraction, false to cancel it
+     */
+    public boolean progress(int rowsScanned, int rowCount, long boundaryCount, long vertexCount);
+}
@@ -0,0 +1,423 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import java.awt.geom.Point2D;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import inra.ijpb.geometry.Polygon2D;
+
+/**
+ * The boundaries of the regions within a label image, stored within arrays
+ * of primitive values.
+ * 
+ * The vertices of all the boundaries are stored within two flat arrays of
+ * coordinates, in the order the boundaries were computed. The labels of the
+ * regions are stored in increasing order, together with the offsets of
+ * their boundaries, so that regions are iterated in the order of their
+ * labels, and the boundaries of a region are found by binary search. Regions
+ * are identified either by their label, or by their index within the sorted
+ * array of labels.
+ * 
+ * Polygons are created on demand. The <code>asMap</code> method provides a
+ * read-only view of the boundaries with the same type as the result of the
+ * <code>process</code> methods of the boundary extraction classes.
+ * 
+ * <pre>{@code
+ * RegionBoundaries boundaries = new BoundaryTracker(4).processBoundaries(source);
+ * for (int i = 0; i < boundaries.size(); i++)
+ * {
+ *     int label = boundaries.getLabel(i);
+ *     Polygon2D poly = boundaries.getPolygon(i, 0);
+ * }
+ * }</pre>
+ * 
+ * @see BoundaryTracker#processBoundaries(LabelSource)
+ * 
+ * @author dlegland
+ *
+ */
+public class RegionBoundaries
+{
+    /**
+     * The label of each boundary, and the offset of the first vertex of each
+     * boundary within the coordinate arrays, in the order the boundaries were
+     * added. Only the first <code>ringCount</code> elements are valid, and
+     * the offset array has one more element that contains the number of
+     * vertices.
+     */
+    int[] ringLabels = new int[64];
+    int[] vertexOffsets = new int[65];
+    int ringCount = 0;
+    
+    /**
+     * The coordinates of the vertices of all the boundaries. Only the first
+     * <code>vertexCount</code> elements are valid.
+     */
+    double[] xCoords = new double[1024];
+    double[] yCoords = new double[1024];
+    int vertexCount = 0;
+    
+    /**
+     * The labels of the regions, in increasing order.
+     */
+    int[] labels;
+    
+    /**
+     * The indices of the boundaries sorted by label, the boundaries of a
+     * given label being kept in the order they were added.
+     */
+    int[] ringOrder;
+    
+    /**
+     * For each region, the position of its first boundary within the
+     * <code>ringOrder</code> array. This array has one more element that
+     * contains the number of boundaries.
+     */
+    int[] ringStarts;
+    
+    /**
+     * Creates a new empty container. Boundaries are added with the
+     * <code>add</code> methods, and the <code>finish</code> method must be
+     * called before accessing them.
+     */
+    RegionBoundaries()
+    {
+    }
+    
+    /**
+     * Creates the boundaries corresponding to a map of polygons.
+     * 
+     * @param boundaries
+     *            the polygons of each region, indexed by region label
+     * @return the boundaries stored within arrays of primitive values
+     */
+    public static RegionBoundaries fromMap(Map<Integer, ArrayList<Polygon2D>> boundaries)
+    {
+        RegionBoundaries result = new RegionBoundaries();
+        for (Map.Entry<Integer, ArrayList<Polygon2D>> entry : boundaries.entrySet())
+        {
+            for (Polygon2D polygon : entry.getValue())
+            {
+                result.add(entry.getKey(), polygon);
+            }
+        }
+        result.finish();
+        return result;
+    }
+    
+    /**
+     * Adds the boundary within a vertex buffer, that can be cleared and
+     * reused afterwards.
+     */
+    void add(int label, VertexBuffer vertices)
+    {
+        vertices.closeRing();
+        int n = vertices.size;
+        startRing(label, n);
+        System.arraycopy(vertices.xCoords, 0, xCoords, vertexCount, n);
+        System.arraycopy(vertices.yCoords, 0, yCoords, vertexCount, n);
+        vertexCount += n;
+    }
+    
+    /**
+     * Adds the boundary corresponding to a polygon.
+     */
+    void add(int label, Polygon2D polygon)
+    {
+        int n = polygon.vertexNumber();
+        startRing(label, n);
+        for (int i = 0; i < n; i++)
+        {
+            Point2D p = polygon.getVertex(i);
+            xCoords[vertexCount] = p.getX();
+            yCoords[vertexCount] = p.getY();
+            vertexCount++;
+        }
+    }
+    
+    /**
+     * Registers a new boundary, and ensures the coordinate arrays can hold
+     * its vertices.
+     */
+    private void startRing(int label, int vertexNumber)
+    {
+        if (ringCount == ringLabels.length)
+        {
+            int capacity = ringCount + (ringCount >> 1);
+            ringLabels = Arrays.copyOf(ringLabels, capacity);
+            vertexOffsets = Arrays.copyOf(vertexOffsets, capacity + 1);
+        }
+        if (vertexCount + vertexNumber > xCoords.length)
+        {
+            int capacity = Math.max(vertexCount + vertexNumber, xCoords.length + (xCoords.length >> 1));
+            xCoords = Arrays.copyOf(xCoords, capacity);
+            yCoords = Arrays.copyOf(yCoords, capacity);
+        }
+        ringLabels[ringCount] = label;
+        vertexOffsets[ringCount] = vertexCount;
+        vertexOffsets[ringCount + 1] = vertexCount + vertexNumber;
+        ringCount++;
+    }
+    
+    /**
+     * Sorts the boundaries by label, once all the boundaries have been added.
+     */
+    void finish()
+    {
+        // sort by label, keeping the order of addition for each label
+        long[] keys = new long[ringCount];
+        for (int i = 0; i < ringCount; i++)
+        {
+            keys[i] = ((long) ringLabels[i] << 32) | i;
+        }
+        Arrays.sort(keys);
+        
+        ringOrder = new int[ringCount];
+        int[] sortedLabels = new int[ringCount];
+        int[] starts = new int[ringCount + 1];
+        int n = 0;
+        for (int k = 0; k < ringCount; k++)
+        {
+            int ring = (int) keys[k];
+            ringOrder[k] = ring;
+            int label = ringLabels[ring];
+            if (n == 0 || sortedLabels[n - 1] != label)
+            {
+                sortedLabels[n] = label;
+                starts[n] = k;
+                n++;
+            }
+        }
+        starts[n] = ringCount;
+        labels = Arrays.copyOf(sortedLabels, n);
+        ringStarts = Arrays.copyOf(starts, n + 1);
+    }
+    
+    /**
+     * @return the number of regions.
+     */
+    public int size()
+    {
+        return labels.length;
+    }
+    
+    /**
+     * @return the number of boundaries of all the regions.
+     */
+    public int polygonNumber()
+    {
+        return ringCount;
+    }
+    
+    /**
+     * @return the labels of the regions, in increasing order.
+     */
+    public int[] getLabels()
+    {
+        return labels.clone();
+    }
+    
+    /**
+     * @param index
+     *            the index of the region, between 0 and the number of regions
+     * @return the label of the region
+     */
+    public int getLabel(int index)
+    {
+        return labels[index];
+    }
+    
+    /**
+     * Returns the index of a region.
+     * 
+     * @param label
+     *            the label of the region
+     * @return the index of the region, or a negative value if the label is
+     *         not present
+     */
+    public int indexOf(int label)
+    {
+        return Arrays.binarySearch(labels, label);
+    }
+    
+    /**
+     * @param index
+     *            the index of the region
+     * @return the number of boundaries of the region
+     */
+    public int polygonNumber(int index)
+    {
+        return ringStarts[index + 1] - ringStarts[index];
+    }
+    
+    /**
+     * @param index
+     *            the index of the region
+     * @param polygon
+     *            the index of the boundary within the boundaries of the
+     *            region
+     * @return the number of vertices of the boundary
+     */
+    public int vertexNumber(int index, int polygon)
+    {
+        int ring = ringOrder[ringStarts[index] + polygon];
+        return vertexOffsets[ring + 1] - vertexOffsets[ring];
+    }
+    
+    /**
+     * Creates the polygon corresponding to a boundary of a region.
+     * 
+     * @param index
+     *            the index of the region
+     * @param polygon
+     *            the index of the boundary within the boundaries of the
+     *            region
+     * @return a new polygon containing the vertices of the boundary
+     */
+    public Polygon2D getPolygon(int index, int polygon)
+    {
+        int ring = ringOrder[ringStarts[index] + polygon];
+        int from = vertexOffsets[ring];
+        int to = vertexOffsets[ring + 1];
+        return new Polygon2D(Arrays.copyOfRange(xCoords, from, to), Arrays.copyOfRange(yCoords, from, to));
+    }
+    
+    /**
+     * Creates the polygons corresponding to the boundaries of a region.
+     * 
+     * @param label
+     *            the label of the region
+     * @return the polygons of the region, or an empty list if the label is not
+     *         present
+     */
+    public ArrayList<Polygon2D> getPolygons(int label)
+    {
+        int index = indexOf(label);
+        if (index < 0)
+        {
+            return new ArrayList<Polygon2D>(0);
+        }
+        return createPolygons(index);
+    }
+    
+    private ArrayList<Polygon2D> createPolygons(int index)
+    {
+        int n = polygonNumber(index);
+        ArrayList<Polygon2D> polygons = new ArrayList<Polygon2D>(n);
+        for (int i = 0; i < n; i++)
+        {
+            polygons.add(getPolygon(index, i));
+        }
+        return polygons;
+    }
+    
+    /**
+     * Sends the polygons of all the regions to a consumer, in the order of
+     * increasing labels.
+     * 
+     * @param consumer
+     *            the consumer of the polygons
+     */
+    public void forEach(BoundaryConsumer consumer)
+    {
+        for (int i = 0; i < labels.length; i++)
+        {
+            for (int j = 0; j < polygonNumber(i); j++)
+            {
+                consumer.boundaryClosed(labels[i], getPolygon(i, j));
+            }
+        }
+    }
+    
+    /**
+     * Returns a read-only map view of the boundaries, iterated in the order
+     * of increasing labels. The lists of polygons are created each time they
+     * are accessed.
+     * 
+     * @return a map view of the polygons of each region, indexed by region
+     *         label
+     */
+    public Map<Integer, ArrayList<Polygon2D>> asMap()
+    {
+        return new MapView();
+    }
+    
+    /**
+     * A read-only map view of the boundaries.
+     */
+    private class MapView extends AbstractMap<Integer, ArrayList<Polygon2D>>
+    {
+        @Override
+        public int size()
+        {
+            return labels.length;
+        }
+        
+        @Override
+        public boolean containsKey(Object key)
+        {
+            return key instanceof Integer && indexOf((Integer) key) >= 0;
+        }
+        
+        @Override
+        public ArrayList<Polygon2D> get(Object key)
+        {
+            if (!(key instanceof Integer))
+            {
+                return null;
+            }
+            int index = indexOf((Integer) key);
+            return index < 0 ? null : createPolygons(index);
+        }
+        
+        @Override
+        public Set<Map.Entry<Integer, ArrayList<Polygon2D>>> entrySet()
+        {
+            return new AbstractSet<Map.Entry<Integer, ArrayList<Polygon2D>>>()
+            {
+                @Override
+                public int size()
+                {
+                    return labels.length;
+                }
+                
+                @Override
+                public Iterator<Map.Entry<Integer, ArrayList<Polygon2D>>> iterator()
+                {
+                    return new Iterator<Map.Entry<Integer, ArrayList<Polygon2D>>>()
+                    {
+                        int index = 0;
+                        
+                        @Override
+                        public boolean hasNext()
+                        {
+                            return index < labels.length;
+                        }
+                        
+                        @Override
+                        public Map.Entry<Integer, ArrayList<Polygon2D>> next()
+                        {
+                            if (index >= labels.length)
+                            {
+                                throw new NoSuchElementException();
+                            }
+                            Map.Entry<Integer, ArrayList<Polygon2D>> entry = new AbstractMap.SimpleImmutableEntry<>(
+                                    labels[index], createPolygons(index));
+                            index++;
+                            return entry;
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
@@ -3,19 +3,19 @@
  */
 package net.ijt.labels;
 
-import java.awt.geom.Point2D;
-import java.util.ArrayList;
-import java.util.Map;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CancellationException;
 
 import ij.IJ;
 import ij.ImagePlus;
 import ij.gui.GenericDialog;
-import ij.gui.PolygonRoi;
 import ij.gui.Roi;
+import ij.io.SaveDialog;
 import ij.plugin.PlugIn;
 import ij.plugin.frame.RoiManager;
 import ij.process.ImageProcessor;
-import inra.ijpb.geometry.Polygon2D;
 
 /**
  * Convert to outer boundary of the binary region present within the current
@@ -26,6 +26,13 @@ import inra.ijpb.geometry.Polygon2D;
  */
 public class RegionBoundaryPolygons implements PlugIn
 {
+    /**
+     * The boundaries computed during the previous runs of the plugin, at most
+     * eight images, and a number of positions using at most one eighth of
+     * the memory available to ImageJ.
+     */
+    static final BoundaryCache CACHE = new BoundaryCache(8, IJ.maxMemory() / 64);
+    
     @Override
     public void run(String arg)
     {
@@ -38,7 +45,18 @@ public class RegionBoundaryPolygons implements PlugIn
         GenericDialog gd = new GenericDialog("Label Maps To Rois");
         gd.addChoice("Connectivity:", new String[] {"C4", "C8"}, "C4");
         gd.addChoice("Vertex Location:", new String[] {"Corners", "Edge Middles", "Pixel Centers"}, "Corners");
+        gd.addCheckbox("Remove Collinear Vertices", false);
+        gd.addNumericField("Simplification Tolerance", 0, 2, 6, "pixels");
+        gd.addChoice("Simplification Method:", new String[] {"Douglas-Peucker", "Visvalingam-Whyatt"}, "Visvalingam-Whyatt");
         gd.addStringField("Name Pattern", "r%03d");
+        gd.addChoice("Method:", new String[] {"Sequential", "Parallel Tiles", "Parallel Labels", "Run Length", "Shared Arcs"}, "Sequential");
+        gd.addCheckbox("Reuse Boundaries From Previous Runs", false);
+        boolean isStack = imagePlus.getStackSize() > 1;
+        if (isStack)
+        {
+            gd.addCheckbox("Process All Slices", true);
+        }
+        gd.addChoice("Output:", new String[] {"ROI Manager", "RoiSet File"}, "ROI Manager");
         
         // wait for user input
         gd.showDialog();
@@ -52,55 +70,149 @@ public class RegionBoundaryPolygons implements PlugIn
         BoundaryTracker.VertexLocation loc = BoundaryTracker.VertexLocation.CORNER;
         if (locIndex == 1) loc = BoundaryTracker.VertexLocation.EDGE_CENTER;
         if (locIndex == 2) loc = BoundaryTracker.VertexLocation.PIXEL;
+        boolean removeCollinear = gd.getNextBoolean();
+        double tolerance = gd.getNextNumber();
+        PolygonSimplifier.Method simplifyMethod = PolygonSimplifier.Method.values()[gd.getNextChoiceIndex()];
         String pattern = gd.getNextString();
-        
-        // compute boundaries
-        BoundaryTracker tracker = new BoundaryTracker(conn, loc);
-        Map<Integer, ArrayList<Polygon2D>> boundaries = tracker.process(image);
-        
-        // retrieve RoiManager
-        RoiManager rm = RoiManager.getInstance();
-        if (rm == null)
+        int methodIndex = gd.getNextChoiceIndex();
+        boolean reuseBoundaries = gd.getNextBoolean();
+        boolean allSlices = isStack && gd.getNextBoolean();
+        int outputIndex = gd.getNextChoiceIndex();
+        PolygonSimplifier simplifier = null;
+        if (tolerance > 0)
         {
-            rm = new RoiManager();
+            simplifier = new PolygonSimplifier(tolerance, simplifyMethod);
         }
         
-        // populate RoiManager with PolygonRoi
-        for (int label : boundaries.keySet())
+        // report the progress every few rows, and abort when Escape is pressed
+        IJ.resetEscape();
+        ProgressMonitor monitor = (rowsScanned, rowCount, boundaryCount, vertexCount) -> {
+            if (rowsScanned % 64 == 0 || rowsScanned == rowCount)
+            {
+                IJ.showProgress(rowsScanned, rowCount);
+                IJ.showStatus("Boundaries: " + boundaryCount + ", vertices: " + vertexCount);
+            }
+            return !IJ.escapePressed();
+        };
+        
+        // compute boundaries, sorted by label
+        RegionBoundaries boundaries = null;
+        RegionBoundaries[] sliceBoundaries = null;
+        try
         {
-            ArrayList<Polygon2D> polygons = boundaries.get(label);
-            String name = String.format(pattern, label);
-            
-            if (polygons.size() == 1)
+            if (allSlices)
             {
-                PolygonRoi roi = createPolygonRoi(polygons.get(0));
-                roi.setName(name);
-                rm.addRoi(roi);
+                // process slices in parallel, each slice on a single thread
+                StackBoundaryExtractor extractor = new StackBoundaryExtractor(conn, loc);
+                extractor.setRemoveCollinearVertices(removeCollinear);
+                extractor.setSimplifier(simplifier);
+                extractor.setProgressMonitor(monitor);
+                sliceBoundaries = extractor.process(imagePlus.getStack());
             }
-            else
+            else if (reuseBoundaries)
             {
-                int index = 0;
-                for (Polygon2D poly : polygons)
+                // boundaries are computed once as chains of positions, that
+                // can be converted into polygons with any option
+                RunLengthBoundaryExtractor extractor = new RunLengthBoundaryExtractor(conn, loc);
+                extractor.setRemoveCollinearVertices(removeCollinear);
+                extractor.setSimplifier(simplifier);
+                extractor.setProgressMonitor(monitor);
+                ImageProcessorLabelSource source = new ImageProcessorLabelSource(image);
+                String key = BoundaryCache.createKey(imagePlus, image, conn);
+                List<BoundaryChain> chains = CACHE.get(key);
+                if (chains == null)
                 {
-                    PolygonRoi roi = createPolygonRoi(poly);
-                    roi.setName(name + "-" + (index++));
-                    rm.addRoi(roi);
+                    chains = extractor.computeChains(source);
+                    CACHE.put(key, chains);
                 }
+                boundaries = RegionBoundaries.fromMap(extractor.toPolygons(chains, source));
+            }
+            else if (methodIndex == 1)
+            {
+                TiledBoundaryTracker tracker = new TiledBoundaryTracker(conn, loc);
+                tracker.setRemoveCollinearVertices(removeCollinear);
+                tracker.setSimplifier(simplifier);
+                tracker.setProgressMonitor(monitor);
+                boundaries = RegionBoundaries.fromMap(tracker.process(image));
+            }
+            else if (methodIndex == 2)
+            {
+                PerLabelBoundaryTracker tracker = new PerLabelBoundaryTracker(conn, loc);
+                tracker.setRemoveCollinearVertices(removeCollinear);
+                tracker.setSimplifier(simplifier);
+                tracker.setProgressMonitor(monitor);
+                boundaries = RegionBoundaries.fromMap(tracker.process(image));
+            }
+            else if (methodIndex == 3)
+            {
+                RunLengthBoundaryExtractor extractor = new RunLengthBoundaryExtractor(conn, loc);
+                extractor.setRemoveCollinearVertices(removeCollinear);
+                extractor.setSimplifier(simplifier);
+                extractor.setProgressMonitor(monitor);
+                boundaries = RegionBoundaries.fromMap(extractor.process(image));
+            }
+            else if (methodIndex == 4)
+            {
+                // vertices of shared arcs are always located on corners
+                TopologyExtractor extractor = new TopologyExtractor(conn);
+                extractor.setRemoveCollinearVertices(removeCollinear);
+                extractor.setSimplifier(simplifier);
+                extractor.setProgressMonitor(monitor);
+                boundaries = RegionBoundaries.fromMap(extractor.process(image).toPolygons());
+            }
+            else
+            {
+                BoundaryTracker tracker = new BoundaryTracker(conn, loc);
+                tracker.setRemoveCollinearVertices(removeCollinear);
+                tracker.setSimplifier(simplifier);
+                tracker.setProgressMonitor(monitor);
+                boundaries = tracker.processBoundaries(image);
             }
         }
-    }
-    
-    private static final PolygonRoi createPolygonRoi(Polygon2D poly)
-    {
-        int nv = poly.vertexNumber();
-        float[] vx = new float[nv];        
-        float[] vy = new float[nv];
-        for (int i = 0; i < nv; i++)
+        catch (CancellationException ex)
+        {
+            IJ.showProgress(1.0);
+            IJ.showStatus("Label Maps To Rois: " + ex.getMessage());
+            return;
+        }
+        
+        // create the ROIs of all the polygons at once
+        Roi[] rois;
+        if (allSlices)
+        {
+            rois = PolygonRois.createRois(sliceBoundaries, pattern, imagePlus);
+        }
+        else
+        {
+            rois = PolygonRois.createRois(boundaries, pattern);
+        }
+        
+        if (outputIndex == 1)
+        {
+            SaveDialog sd = new SaveDialog("Save ROIs", imagePlus.getShortTitle() + "-RoiSet", ".zip");
+            if (sd.getFileName() == null)
+            {
+                return;
+            }
+            try
+            {
+                PolygonRois.saveRoiSet(rois, new File(sd.getDirectory(), sd.getFileName()));
+            }
+            catch (IOException ex)
+            {
+                IJ.error("Label Maps To Rois", "Could not write ROIs: " + ex.getMessage());
+            }
+            return;
+        }
+        
+        // retrieve RoiManager
+        RoiManager rm = RoiManager.getInstance();
+        if (rm == null)
         {
-            Point2D p = poly.getVertex(i);
-            vx[i] = (float) p.getX();
-            vy[i] = (float) p.getY();
+            rm = new RoiManager();
         }
-        return new PolygonRoi(vx, vy, nv, Roi.POLYGON);
+        
+        // populate RoiManager with PolygonRoi
+        PolygonRois.addToRoiManager(rois, rm);
     }
 }
@@ -0,0 +1,428 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import ij.measure.ResultsTable;
+
+/**
+ * A table of geometric measures computed for each region of a label image,
+ * while its boundaries are tracked.
+ * 
+ * Measures are stored in columns of primitive arrays, with one row for each
+ * label, sorted by increasing label. The area, the perimeter and the centroid
+ * are computed from the polygons with the vertex location used for tracking,
+ * by summing the contributions of the outer boundaries and of the holes of
+ * each region. When polygons are simplified, measures correspond to the
+ * boundaries before simplification.
+ * 
+ * @see BoundaryTracker#setComputeMeasures(boolean)
+ * 
+ * @author dlegland
+ *
+ */
+public class RegionMeasures
+{
+    /**
+     * The labels of the regions, in increasing order.
+     */
+    int[] labels;
+    
+    /**
+     * The area of each region.
+     */
+    double[] areas;
+    
+    /**
+     * The perimeter of each region, as the total length of its boundaries.
+     */
+    double[] perimeters;
+    
+    /**
+     * The coordinates of the centroid of each region.
+     */
+    double[] centroidX;
+    double[] centroidY;
+    
+    /**
+     * The bounds of the vertices of each region.
+     */
+    double[] xMin;
+    double[] xMax;
+    double[] yMin;
+    double[] yMax;
+    
+    /**
+     * The number of vertices of the polygons of each region.
+     */
+    int[] vertexCounts;
+    
+    /**
+     * The number of rows of the table.
+     */
+    int size = 0;
+    
+    /**
+     * The row of each label, used while measures are accumulated.
+     */
+    private Map<Integer, Integer> rows = new HashMap<>();
+    
+    /**
+     * Creates a new empty table.
+     */
+    RegionMeasures()
+    {
+        allocate(16);
+    }
+    
+    private void allocate(int capacity)
+    {
+        labels = new int[capacity];
+        areas = new double[capacity];
+        perimeters = new double[capacity];
+        centroidX = new double[capacity];
+        centroidY = new double[capacity];
+        xMin = new double[capacity];
+        xMax = new double[capacity];
+        yMin = new double[capacity];
+        yMax = new double[capacity];
+        vertexCounts = new int[capacity];
+    }
+    
+    private void grow()
+    {
+        int capacity = labels.length * 2;
+        labels = Arrays.copyOf(labels, capacity);
+        areas = Arrays.copyOf(areas, capacity);
+        perimeters = Arrays.copyOf(perimeters, capacity);
+        centroidX = Arrays.copyOf(centroidX, capacity);
+        centroidY = Arrays.copyOf(centroidY, capacity);
+        xMin = Arrays.copyOf(xMin, capacity);
+        xMax = Arrays.copyOf(xMax, capacity);
+        yMin = Arrays.copyOf(yMin, capacity);
+        yMax = Arrays.copyOf(yMax, capacity);
+        vertexCounts = Arrays.copyOf(vertexCounts, capacity);
+    }
+    
+    /**
+     * Returns the row of a label, creating a new row if necessary.
+     */
+    private int row(int label)
+    {
+        Integer row = rows.get(label);
+        if (row != null)
+        {
+            return row;
+        }
+        
+        if (size == labels.length)
+        {
+            grow();
+        }
+        labels[size] = label;
+        xMin[size] = Double.POSITIVE_INFINITY;
+        xMax[size] = Double.NEGATIVE_INFINITY;
+        yMin[size] = Double.POSITIVE_INFINITY;
+        yMax[size] = Double.NEGATIVE_INFINITY;
+        rows.put(label, size);
+        return size++;
+    }
+    
+    /**
+     * Adds the measures accumulated by a vertex buffer to the region with the
+     * specified label. Until the table is finished, the area and centroid
+     * columns contain the sums of twice the signed area and of the first
+     * moments multiplied by six.
+     * 
+     * @param label
+     *            the label of the region
+     * @param vertices
+     *            a buffer that accumulated the measures of a boundary
+     */
+    void addBoundary(int label, VertexBuffer vertices)
+    {
+        int row = row(label);
+        areas[row] += vertices.closedArea2();
+        centroidX[row] += vertices.closedMomentX();
+        centroidY[row] += vertices.closedMomentY();
+        perimeters[row] += vertices.closedPerimeter();
+        xMin[row] = Math.min(xMin[row], vertices.xMin);
+        xMax[row] = Math.max(xMax[row], vertices.xMax);
+        yMin[row] = Math.min(yMin[row], vertices.yMin);
+        yMax[row] = Math.max(yMax[row], vertices.yMax);
+    }
+    
+    /**
+     * Adds a number of vertices to the region with the specified label.
+     * 
+     * @param label
+     *            the label of the region
+     * @param count
+     *            the number of vertices of a polygon of the region
+     */
+    void addVertexCount(int label, int count)
+    {
+        vertexCounts[row(label)] += count;
+    }
+    
+    /**
+     * Computes the areas and the centroids from the accumulated sums, and
+     * sorts the rows by label. No boundary can be added afterwards.
+     */
+    void finish()
+    {
+        // the outer boundaries are oriented clockwise in image coordinates,
+        // so the signed area of the boundaries of a region is negative
+        for (int i = 0; i < size; i++)
+        {
+            double area2 = areas[i];
+            centroidX[i] = area2 != 0 ? centroidX[i] / (3 * area2) : Double.NaN;
+            centroidY[i] = area2 != 0 ? centroidY[i] / (3 * area2) : Double.NaN;
+            areas[i] = -area2 / 2;
+        }
+        
+        // sort the rows by increasing label
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++)
+        {
+            keys[i] = ((long) labels[i] << 32) | i;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++)
+        {
+            order[i] = (int) keys[i];
+        }
+        
+        labels = permute(labels, order);
+        areas = permute(areas, order);
+        perimeters = permute(perimeters, order);
+        centroidX = permute(centroidX, order);
+        centroidY = permute(centroidY, order);
+        xMin = permute(xMin, order);
+        xMax = permute(xMax, order);
+        yMin = permute(yMin, order);
+        yMax = permute(yMax, order);
+        vertexCounts = permute(vertexCounts, order);
+        rows = null;
+    }
+    
+    /**
+     * Merges the measures computed again for some regions into the measures
+     * computed for the whole image before these regions were modified. Both
+     * tables must be finished.
+     * 
+     * @param previous
+     *            the measures computed before the modification, that are not
+     *            modified
+     * @param updated
+     *            the measures of the regions computed again
+     * @param labels
+     *            the labels of the regions computed again, including the
+     *            labels removed from the image
+     * @return a new finished table, with the rows of the updated table and
+     *         the rows of the previous table whose label was not computed
+     *         again
+     */
+    static RegionMeasures merge(RegionMeasures previous, RegionMeasures updated, int[] labels)
+    {
+        int[] sortedLabels = labels.clone();
+        Arrays.sort(sortedLabels);
+        
+        RegionMeasures res = new RegionMeasures();
+        res.allocate(Math.max(previous.size + updated.size, 1));
+        res.rows = null;
+        
+        // merge the rows of the two tables, sorted by increasing label
+        int i = 0;
+        int j = 0;
+        while (i < previous.size || j < updated.size)
+        {
+            if (j == updated.size || (i < previous.size && previous.labels[i] < updated.labels[j]))
+            {
+                if (Arrays.binarySearch(sortedLabels, previous.labels[i]) < 0)
+                {
+                    res.copyRow(previous, i);
+                }
+                i++;
+            }
+            else
+            {
+                if (i < previous.size && previous.labels[i] == updated.labels[j])
+                {
+                    i++;
+                }
+                res.copyRow(updated, j++);
+            }
+        }
+        return res;
+    }
+    
+    private void copyRow(RegionMeasures table, int row)
+    {
+        labels[size] = table.labels[row];
+        areas[size] = table.areas[row];
+        perimeters[size] = table.perimeters[row];
+        centroidX[size] = table.centroidX[row];
+        centroidY[size] = table.centroidY[row];
+        xMin[size] = table.xMin[row];
+        xMax[size] = table.xMax[row];
+        yMin[size] = table.yMin[row];
+        yMax[size] = table.yMax[row];
+        vertexCounts[size] = table.vertexCounts[row];
+        size++;
+    }
+    
+    private static final int[] permute(int[] values, int[] order)
+    {
+        int[] res = new int[order.length];
+        for (int i = 0; i < order.length; i++)
+        {
+            res[i] = values[order[i]];
+        }
+        return res;
+    }
+    
+    private static final double[] permute(double[] values, int[] order)
+    {
+        double[] res = new double[order.length];
+        for (int i = 0; i < order.length; i++)
+        {
+            res[i] = values[order[i]];
+        }
+        return res;
+    }
+    
+    /**
+     * @return the number of regions within the table.
+     */
+    public int size()
+    {
+        return size;
+    }
+    
+    /**
+     * Returns the row of the table that corresponds to a label.
+     * 
+     * @param label
+     *            the label of a region
+     * @return the index of the row of the region, or a negative value if the
+     *         label is not present within the table
+     */
+    public int indexOf(int label)
+    {
+        return Arrays.binarySearch(labels, 0, size, label);
+    }
+    
+    /**
+     * @return the labels of the regions, in increasing order.
+     */
+    public int[] getLabels()
+    {
+        return labels;
+    }
+    
+    /**
+     * @return the area of each region.
+     */
+    public double[] getAreas()
+    {
+        return areas;
+    }
+    
+    /**
+     * @return the perimeter of each region.
+     */
+    public double[] getPerimeters()
+    {
+        return perimeters;
+    }
+    
+    /**
+     * @return the x-coordinate of the centroid of each region, or NaN for
+     *         regions with a null area.
+     */
+    public double[] getCentroidX()
+    {
+        return centroidX;
+    }
+    
+    /**
+     * @return the y-coordinate of the centroid of each region, or NaN for
+     *         regions with a null area.
+     */
+    public double[] getCentroidY()
+    {
+        return centroidY;
+    }
+    
+    /**
+     * @return the smallest x-coordinate of the vertices of each region.
+     */
+    public double[] getXMin()
+    {
+        return xMin;
+    }
+    
+    /**
+     * @return the largest x-coordinate of the vertices of each region.
+     */
+    public double[] getXMax()
+    {
+        return xMax;
+    }
+    
+    /**
+     * @return the smallest y-coordinate of the vertices of each region.
+     */
+    public double[] getYMin()
+    {
+        return yMin;
+    }
+    
+    /**
+     * @return the largest y-coordinate of the vertices of each region.
+     */
+    public double[] getYMax()
+    {
+        return yMax;
+    }
+    
+    /**
+     * @return the number of vertices of the polygons of each region.
+     */
+    public int[] getVertexCounts()
+    {
+        return vertexCounts;
+    }
+    
+    /**
+     * Converts this table into an ImageJ results table, with one row for
+     * each region.
+     * 
+     * @return a new results table
+     */
+    public ResultsTable toResultsTable()
+    {
+        ResultsTable table = new ResultsTable();
+        for (int i = 0; i < size; i++)
+        {
+            table.incrementCounter();
+            table.addLabel(Integer.toString(labels[i]));
+            table.addValue("Area", areas[i]);
+            table.addValue("Perimeter", perimeters[i]);
+            table.addValue("Centroid.X", centroidX[i]);
+            table.addValue("Centroid.Y", centroidY[i]);
+            table.addValue("Box.XMin", xMin[i]);
+            table.addValue("Box.XMax", xMax[i]);
+            table.addValue("Box.YMin", yMin[i]);
+            table.addValue("Box.YMax", yMax[i]);
+            table.addValue("VertexNumber", vertexCounts[i]);
+        }
+        return table;
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import inra.ijpb.geometry.Polygon2D;
+
+/**
+ * A connected part of a region, represented by its outer boundary and by the
+ * boundaries of the holes it contains.
+ * 
+ * Outer boundaries and hole boundaries are oriented in opposite directions,
+ * so that the region is always located on the same side of the boundaries.
+ * 
+ * @see BoundaryTracker#processRegions(LabelSource)
+ * 
+ * @author dlegland
+ *
+ */
+public class RegionPolygon
+{
+    /**
+     * The outer boundary of the region part.
+     */
+    final Polygon2D outerBoundary;
+    
+    /**
+     * The boundaries of the holes, in the order they were discovered.
+     */
+    final ArrayList<Polygon2D> holes = new ArrayList<Polygon2D>(0);
+    
+    /**
+     * Creates a new region part without holes.
+     * 
+     * @param outerBoundary
+     *            the outer boundary of the region part
+     */
+    public RegionPolygon(Polygon2D outerBoundary)
+    {
+        this.outerBoundary = outerBoundary;
+    }
+    
+    /**
+     * Adds the boundary of a hole to this region part.
+     * 
+     * @param hole
+     *            the boundary of the hole
+     */
+    public void addHole(Polygon2D hole)
+    {
+        this.holes.add(hole);
+    }
+    
+    /**
+     * @return the outer boundary of this region part.
+     */
+    public Polygon2D getOuterBoundary()
+    {
+        return outerBoundary;
+    }
+    
+    /**
+     * @return the boundaries of the holes within this region part.
+     */
+    public List<Polygon2D> getHoles()
+    {
+        return holes;
+    }
+    
+    /**
+     * @return the number of holes within this region part.
+     */
+    public int holeNumber()
+    {
+        return holes.size();
+    }
+}
@@ -0,0 +1,192 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import java.util.Arrays;
+
+/**
+ * A visit mask that also records, for each visited position, the index of
+ * the boundary it belongs to.
+ * 
+ * The index of the boundary being tracked is set before tracking starts, and
+ * is associated to each position marked as visited. Positions are stored
+ * within a hash table of primitive long integers, with the boundary indices
+ * stored in a parallel array.
+ * 
+ * @author dlegland
+ *
+ */
+class RingVisitMask extends VisitMask
+{
+    /**
+     * The value used to indicate empty slots, as pixel indices are positive.
+     */
+    private static final long EMPTY = -1;
+    
+    /**
+     * The largest length of the hash table.
+     */
+    static final int MAX_CAPACITY = 1 << 30;
+    
+    /**
+     * The hash table of pixel indices, using open addressing with linear
+     * probing.
+     */
+    long[] keys;
+    
+    /**
+     * The index of the boundary of each position within the table.
+     */
+    int[] rings;
+    
+    /**
+     * The number of visited positions within the table.
+     */
+    int size = 0;
+    
+    /**
+     * The bit mask used to compute slot indices, equal to the table length
+     * minus one.
+     */
+    int mask;
+    
+    /**
+     * The index of the boundary associated to the positions marked as
+     * visited.
+     */
+    int currentRing = 0;
+    
+    /**
+     * Creates a new visit mask with an initial capacity.
+     * 
+     * @param expectedCount
+     *            the expected number of visited positions
+     */
+    public RingVisitMask(long expectedCount)
+    {
+        // keep the load factor below one half
+        int capacity = 16;
+        while (capacity < 2 * expectedCount && capacity < MAX_CAPACITY)
+        {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+    
+    private void allocate(int capacity)
+    {
+        this.keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        this.rings = new int[capacity];
+        this.mask = capacity - 1;
+    }
+    
+    private int slot(long index)
+    {
+        long h = index * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+    
+    /**
+     * Changes the index of the boundary associated to the positions marked
+     * as visited from now on.
+     * 
+     * @param ring
+     *            the index of the boundary being tracked
+     */
+    public void setCurrentRing(int ring)
+    {
+        this.currentRing = ring;
+    }
+    
+    /**
+     * Returns the index of the boundary a visited position belongs to.
+     * 
+     * @param index
+     *            the linear index of the pixel
+     * @return the index of the boundary, or -1 if the position was not
+     *         visited
+     */
+    public int getRing(long index)
+    {
+        int i = slot(index);
+        while (keys[i] != EMPTY)
+        {
+            if (keys[i] == index)
+            {
+                return rings[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+    
+    @Override
+    public boolean isVisited(long index)
+    {
+        return getRing(index) != -1;
+    }
+    
+    @Override
+    public void setVisited(long index)
+    {
+        int i = slot(index);
+        while (keys[i] != EMPTY)
+        {
+            if (keys[i] == index)
+            {
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = index;
+        rings[i] = currentRing;
+        size++;
+        
+        if (2 * size > keys.length)
+        {
+            grow();
+        }
+    }
+    
+    /**
+     * Doubles the length of the hash table. When the table reached its
+     * largest length, it is filled up to three quarters.
+     */
+    private void grow()
+    {
+        if (keys.length >= MAX_CAPACITY)
+        {
+            if (4L * size > 3L * keys.length)
+            {
+                throw new IllegalStateException("Too many visited positions: " + size);
+            }
+            return;
+        }
+        
+        long[] oldKeys = keys;
+        int[] oldRings = rings;
+        allocate(oldKeys.length * 2);
+        for (int k = 0; k < oldKeys.length; k++)
+        {
+            long key = oldKeys[k];
+            if (key != EMPTY)
+            {
+                int i = slot(key);
+                while (keys[i] != EMPTY)
+                {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+                rings[i] = oldRings[k];
+            }
+        }
+    }
+    
+    @Override
+    public long getMemoryUsage()
+    {
+        return 12L * keys.length;
+    }
+}
@@ -0,0 +1,434 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import static net.ijt.labels.BoundaryTracker.DIAG_DX;
+import static net.ijt.labels.BoundaryTracker.DIAG_DY;
+import static net.ijt.labels.BoundaryTracker.FORWARD;
+import static net.ijt.labels.BoundaryTracker.NEXT_DX;
+import static net.ijt.labels.BoundaryTracker.NEXT_DY;
+import static net.ijt.labels.BoundaryTracker.TURN_LEFT;
+import static net.ijt.labels.BoundaryTracker.nextMove;
+
+import java.util.function.Consumer;
+
+/**
+ * Builds the boundaries of the regions within a label image by processing the
+ * rows of the image one after the other.
+ * 
+ * Boundaries are made of cracks, each crack being represented by a pixel and
+ * a direction, like the positions used by the boundary tracking algorithms.
+ * Each crack starts at a corner of the pixel grid and ends at another corner.
+ * When a new row is added, the cracks that end on the row of corners between
+ * the previous row and the new row are linked to the cracks that follow them,
+ * using the same rules as the boundary tracking algorithm. Linked cracks form
+ * open chains, that are concatenated until they form closed boundaries.
+ * 
+ * Rows are processed as sequences of runs of pixels with the same label.
+ * Between two label transitions, the boundary cracks are straight, and are
+ * added to the chains without examining each corner.
+ * 
+ * Only the chains that cross the current row of corners are kept in memory.
+ * Closed boundaries are sent to a consumer as soon as they are complete, with
+ * positions in arbitrary order.
+ * 
+ * @author dlegland
+ *
+ */
+class RowChainBuilder
+{
+    /**
+     * The direction indices used for identifying cracks.
+     */
+    static final int RIGHT = 0;
+    static final int UP = 1;
+    static final int LEFT = 2;
+    static final int DOWN = 3;
+    
+    /**
+     * The shift from the reference pixel of a crack to its start corner, for
+     * each direction.
+     */
+    static final int[] START_DX = new int[] { 0, 1, 1, 0 };
+    static final int[] START_DY = new int[] { 1, 1, 0, 0 };
+    
+    /**
+     * The width of the image.
+     */
+    final int sizeX;
+    
+    /**
+     * The connectivity used for linking cracks, either 4 or 8.
+     */
+    final int conn;
+    
+    /**
+     * The consumer of closed boundaries.
+     */
+    final Consumer<BoundaryChain> ringConsumer;
+    
+    /**
+     * The labels of the previous and of the current rows.
+     */
+    int[] prevRow;
+    int[] currRow;
+    
+    /**
+     * The positions of label transitions within the previous and the current
+     * rows, i.e. the indices x such that row[x] differs from row[x-1].
+     */
+    int[] prevChanges;
+    int[] currChanges;
+    int prevChangeCount = 0;
+    int currChangeCount = 0;
+    
+    /**
+     * The number of rows added so far.
+     */
+    int rowCount = 0;
+    
+    /**
+     * Indicates whether the previous and the current rows are within the
+     * image, when processing the current row of corners.
+     */
+    boolean hasPrev;
+    boolean hasCurr;
+    
+    /**
+     * The open chains, indexed by the crack at their beginning. The index of a
+     * crack is computed from its start corner, using the parity of the corner
+     * row, and from its direction.
+     */
+    BoundaryChain[] heads;
+    
+    /**
+     * The open chains, indexed by the crack at their end. The index of a crack
+     * is computed from its end corner, using the parity of the corner row, and
+     * from its direction.
+     */
+    BoundaryChain[] tails;
+    
+    /**
+     * Creates a new builder for images with the specified width.
+     * 
+     * @param sizeX
+     *            the width of the image
+     * @param conn
+     *            the connectivity to use (must be either 4 or 8)
+     * @param ringConsumer
+     *            the consumer of closed boundaries
+     */
+    public RowChainBuilder(int sizeX, int conn, Consumer<BoundaryChain> ringConsumer)
+    {
+        this.sizeX = sizeX;
+        this.conn = conn;
+        this.ringConsumer = ringConsumer;
+        
+        this.prevRow = new int[sizeX];
+        this.currRow = new int[sizeX];
+        this.prevChanges = new int[sizeX];
+        this.currChanges = new int[sizeX];
+        
+        this.heads = new BoundaryChain[2 * (sizeX + 1) * 4];
+        this.tails = new BoundaryChain[2 * (sizeX + 1) * 4];
+    }
+    
+    /**
+     * Adds a new row of labels, and links the boundary cracks located between
+     * the previous row and the new row.
+     * 
+     * @param labels
+     *            the labels of the new row
+     */
+    public void addRow(int[] labels)
+    {
+        // swap buffers
+        int[] tmp = prevRow;
+        prevRow = currRow;
+        currRow = tmp;
+        tmp = prevChanges;
+        prevChanges = currChanges;
+        currChanges = tmp;
+        prevChangeCount = currChangeCount;
+        
+        // copy labels, and identify label transitions
+        System.arraycopy(labels, 0, currRow, 0, sizeX);
+        int count = 0;
+        for (int x = 1; x < sizeX; x++)
+        {
+            if (currRow[x] != currRow[x - 1])
+            {
+                currChanges[count++] = x;
+            }
+        }
+        currChangeCount = count;
+        
+        hasPrev = rowCount > 0;
+        hasCurr = true;
+        processCornerRow(rowCount);
+        rowCount++;
+    }
+    
+    /**
+     * Processes the row of corners below the last row, closing all the
+     * remaining chains.
+     */
+    public void finish()
+    {
+        int[] tmp = prevRow;
+        prevRow = currRow;
+        currRow = tmp;
+        tmp = prevChanges;
+        prevChanges = currChanges;
+        currChanges = tmp;
+        prevChangeCount = currChangeCount;
+        currChangeCount = 0;
+        
+        hasPrev = rowCount > 0;
+        hasCurr = false;
+        processCornerRow(rowCount);
+    }
+    
+    /**
+     * Processes the corners located between the previous row and the current
+     * row, in increasing x order. Corners located at a label transition are
+     * processed individually, whereas the corners located between two
+     * transitions are processed in a single step.
+     */
+    private void processCornerRow(int y)
+    {
+        int ip = 0;
+        int ic = 0;
+        processCorner(0, y);
+        int xa = 0;
+        while (xa < sizeX)
+        {
+            // find the position of the next label transition, in either row
+            int xb = sizeX;
+            if (ip < prevChangeCount)
+            {
+                xb = prevChanges[ip];
+            }
+            if (ic < currChangeCount && currChanges[ic] < xb)
+            {
+                xb = currChanges[ic];
+            }
+            if (ip < prevChangeCount && prevChanges[ip] == xb)
+            {
+                ip++;
+            }
+            if (ic < currChangeCount && currChanges[ic] == xb)
+            {
+                ic++;
+            }
+            
+            if (xb > xa + 1)
+            {
+                processRun(xa, xb, y);
+            }
+            processCorner(xb, y);
+            xa = xb;
+        }
+    }
+    
+    /**
+     * Processes the corners strictly between xa and xb, where the labels of
+     * the previous and current rows are constant. Such corners can only link
+     * horizontal cracks going straight on.
+     */
+    private void processRun(int xa, int xb, int y)
+    {
+        int above = hasPrev ? prevRow[xa] : 0;
+        int below = hasCurr ? currRow[xa] : 0;
+        
+        // cracks along the bottom side of the region above, going right
+        if (hasPrev && above != 0 && (!hasCurr || below != above))
+        {
+            int slot = tailSlot(xa, y - 1, RIGHT);
+            BoundaryChain chain = tails[slot];
+            tails[slot] = null;
+            long offset = (long) (y - 1) * sizeX;
+            for (int x = xa + 1; x < xb; x++)
+            {
+                chain.add(BoundaryChain.encode(offset + x, RIGHT));
+            }
+            tails[tailSlot(xb - 1, y - 1, RIGHT)] = chain;
+        }
+        
+        // cracks along the top side of the region below, going left
+        if (hasCurr && below != 0 && (!hasPrev || below != above))
+        {
+            int slot = headSlot(xa, y, LEFT);
+            BoundaryChain chain = heads[slot];
+            heads[slot] = null;
+            long offset = (long) y * sizeX;
+            for (int x = xa + 1; x < xb; x++)
+            {
+                chain.addFirst(BoundaryChain.encode(offset + x, LEFT));
+            }
+            heads[headSlot(xb - 1, y, LEFT)] = chain;
+        }
+    }
+    
+    /**
+     * Processes a single corner, by linking each crack that ends at this
+     * corner to the crack that follows it.
+     */
+    private void processCorner(int x, int y)
+    {
+        // the four pixels around the corner
+        boolean inA = hasPrev && x > 0;
+        boolean inB = hasPrev && x < sizeX;
+        boolean inC = hasCurr && x > 0;
+        boolean inD = hasCurr && x < sizeX;
+        int a = inA ? prevRow[x - 1] : 0;
+        int b = inB ? prevRow[x] : 0;
+        int c = inC ? currRow[x - 1] : 0;
+        int d = inD ? currRow[x] : 0;
+        
+        // vertical crack of the upper-right pixel, going down
+        if (inB && b != 0 && (!inA || a != b))
+        {
+            link(x, y - 1, DOWN, b);
+        }
+        // horizontal crack of the upper-left pixel, going right
+        if (inA && a != 0 && (!inC || c != a))
+        {
+            link(x - 1, y - 1, RIGHT, a);
+        }
+        // vertical crack of the lower-left pixel, going up
+        if (inC && c != 0 && (!inD || d != c))
+        {
+            link(x - 1, y, UP, c);
+        }
+        // horizontal crack of the lower-right pixel, going left
+        if (inD && d != 0 && (!inB || b != d))
+        {
+            link(x, y, LEFT, d);
+        }
+    }
+    
+    /**
+     * Links the crack identified by pixel (x,y) and direction dir to the
+     * crack that follows it, by updating or concatenating open chains.
+     */
+    private void link(int x, int y, int dir, int label)
+    {
+        // identify next crack, using the same rules as boundary tracking
+        boolean b0 = isLabel(x + NEXT_DX[dir], y + NEXT_DY[dir], label);
+        boolean b1 = isLabel(x + DIAG_DX[dir], y + DIAG_DY[dir], label);
+        int x2 = x, y2 = y, dir2 = dir;
+        switch (nextMove(b0, b1, conn))
+        {
+        case TURN_LEFT:
+            dir2 = (dir + 1) & 0x03;
+            break;
+        case FORWARD:
+            x2 = x + NEXT_DX[dir];
+            y2 = y + NEXT_DY[dir];
+            break;
+        default:
+            x2 = x + DIAG_DX[dir];
+            y2 = y + DIAG_DY[dir];
+            dir2 = (dir + 3) & 0x03;
+            break;
+        }
+        
+        // retrieve the chain ending with current crack, or create it
+        int slot = tailSlot(x, y, dir);
+        BoundaryChain chain1 = tails[slot];
+        if (chain1 != null)
+        {
+            tails[slot] = null;
+        }
+        else
+        {
+            chain1 = new BoundaryChain(label);
+            chain1.add(BoundaryChain.encode((long) y * sizeX + x, dir));
+            heads[headSlot(x, y, dir)] = chain1;
+        }
+        
+        // retrieve the chain starting with next crack, or create it
+        slot = headSlot(x2, y2, dir2);
+        BoundaryChain chain2 = heads[slot];
+        if (chain2 != null)
+        {
+            heads[slot] = null;
+        }
+        else
+        {
+            chain2 = new BoundaryChain(label);
+            chain2.add(BoundaryChain.encode((long) y2 * sizeX + x2, dir2));
+            tails[tailSlot(x2, y2, dir2)] = chain2;
+        }
+        
+        if (chain1 == chain2)
+        {
+            // the boundary is closed
+            ringConsumer.accept(chain1);
+        }
+        else if (chain1.size >= chain2.size)
+        {
+            chain1.append(chain2);
+            tails[tailSlot(chain1.last())] = chain1;
+        }
+        else
+        {
+            chain2.prepend(chain1);
+            heads[headSlot(chain2.first())] = chain2;
+        }
+    }
+    
+    /**
+     * Checks if the pixel at the specified position belongs to the region
+     * with the specified label. The pixel must be in either the previous row
+     * or the current row.
+     */
+    private boolean isLabel(int x, int y, int label)
+    {
+        if (x < 0 || x >= sizeX)
+        {
+            return false;
+        }
+        if (y < rowCount)
+        {
+            return hasPrev && prevRow[x] == label;
+        }
+        return hasCurr && currRow[x] == label;
+    }
+    
+    /**
+     * Computes the index of a crack from its start corner.
+     */
+    private int headSlot(int x, int y, int dir)
+    {
+        int cx = x + START_DX[dir];
+        int cy = y + START_DY[dir];
+        return (((cy & 0x01) * (sizeX + 1) + cx) << 2) | dir;
+    }
+    
+    private int headSlot(long pos)
+    {
+        int dir = (int) (pos & 0x03);
+        long index = pos >>> 2;
+        return headSlot((int) (index % sizeX), (int) (index / sizeX), dir);
+    }
+    
+    /**
+     * Computes the index of a crack from its end corner.
+     */
+    private int tailSlot(int x, int y, int dir)
+    {
+        int cx = x + START_DX[dir] + NEXT_DX[dir];
+        int cy = y + START_DY[dir] + NEXT_DY[dir];
+        return (((cy & 0x01) * (sizeX + 1) + cx) << 2) | dir;
+    }
+    
+    private int tailSlot(long pos)
+    {
+        int dir = (int) (pos & 0x03);
+        long index = pos >>> 2;
+        return tailSlot((int) (index % sizeX), (int) (index / sizeX), dir);
+    }
+}
@@ -0,0 +1,251 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import ij.process.ImageProcessor;
+import inra.ijpb.geometry.Polygon2D;
+import net.ijt.labels.BoundaryTracker.VertexLocation;
+
+/**
+ * Computes the boundaries of the regions within a label image in a single pass
+ * over the rows of the image.
+ * 
+ * Instead of following each boundary pixel by pixel, the image is scanned
+ * row by row, and the boundary cracks found between two consecutive rows are
+ * linked into chains. Each row is processed as a sequence of runs of pixels
+ * with the same label, so that the cost of a row depends mostly on the number
+ * of label transitions. Each pixel is read only once, making this algorithm
+ * suited to large images with large regions.
+ * 
+ * The result is the same as the one obtained with the
+ * <code>BoundaryTracker</code> class: each boundary starts at the same vertex,
+ * and the boundaries of each region are ordered the same way.
+ * 
+ * @see BoundaryTracker
+ * 
+ * @author dlegland
+ *
+ */
+public class RunLengthBoundaryExtractor
+{
+    /**
+     * The connectivity to use for tracking boundary. Should be either 4 or 8.
+     * Default is 4.
+     */
+    int conn = 4;
+    
+    /**
+     * Defines where the ROI vertices are located according to position of
+     * current pixel. Default is the pixel corner, as boundaries are built
+     * from cracks between pixels.
+     */
+    VertexLocation vertexLocation = VertexLocation.CORNER;
+    
+    /**
+     * If true, only the corners of the boundaries are kept, and vertices
+     * located on a straight line between their neighbors are removed.
+     */
+    boolean removeCollinear = false;
+    
+    /**
+     * The simplifier applied to the polygons, or null if polygons are not
+     * simplified.
+     */
+    PolygonSimplifier simplifier = null;
+    
+    /**
+     * The monitor notified after each row is scanned, or null.
+     */
+    ProgressMonitor monitor = null;
+    
+    /**
+     * The maximum duration of an extraction, in nanoseconds, or 0 if the
+     * duration is not limited.
+     */
+    long timeout = 0;
+    
+    /**
+     * Default empty constructor, using Connectivity 4.
+     */
+    public RunLengthBoundaryExtractor()
+    {
+    }
+    
+    /**
+     * Constructor that allows to specify connectivity and location of vertices.
+     * 
+     * @param conn
+     *            the connectivity to use (must be either 4 or 8)
+     * @param loc
+     *            the location of the vertices with respect to boundary pixels
+     */
+    public RunLengthBoundaryExtractor(int conn, VertexLocation loc)
+    {
+        if (conn != 4 && conn != 8)
+        {
+            throw new IllegalArgumentException(
+                    "Connectivity must be either 4 or 8");
+        }
+        this.conn = conn;
+        this.vertexLocation = loc;
+    }
+    
+    /**
+     * Chooses whether the vertices located on a straight line between their
+     * neighbors are removed while boundaries are computed, keeping only the
+     * corners of the polygons.
+     * 
+     * @param removeCollinear
+     *            true if collinear vertices must be removed
+     */
+    public void setRemoveCollinearVertices(boolean removeCollinear)
+    {
+        this.removeCollinear = removeCollinear;
+    }
+    
+    /**
+     * Changes the simplifier applied to the polygons. Simplification keeps the
+     * vertices at the junctions between regions, so that the boundaries
+     * shared by adjacent regions remain consistent.
+     * 
+     * @param simplifier
+     *            the simplifier to apply, or null to keep all the vertices
+     */
+    public void setSimplifier(PolygonSimplifier simplifier)
+    {
+        this.simplifier = simplifier;
+    }
+    
+    /**
+     * Changes the monitor notified of the progress of the extractions. The
+     * monitor is also called while the chains are converted into polygons,
+     * after all the rows have been scanned. The extraction is aborted with a
+     * <code>CancellationException</code> when the monitor returns false.
+     * 
+     * @param monitor
+     *            the monitor to notify after each row is scanned, or null
+     */
+    public void setProgressMonitor(ProgressMonitor monitor)
+    {
+        this.monitor = monitor;
+    }
+    
+    /**
+     * Limits the duration of the extractions. When an extraction runs longer
+     * than the timeout, it is aborted with a
+     * <code>CancellationException</code>.
+     * 
+     * @param timeout
+     *            the maximum duration of an extraction, or 0 for no limit
+     * @param unit
+     *            the unit of the timeout
+     */
+    public void setTimeout(long timeout, TimeUnit unit)
+    {
+        if (timeout < 0)
+        {
+            throw new IllegalArgumentException("Timeout must be positive or zero");
+        }
+        this.timeout = unit.toNanos(timeout);
+    }
+    
+    public Map<Integer, ArrayList<Polygon2D>> process(ImageProcessor array)
+    {
+        return process(new ImageProcessorLabelSource(array));
+    }
+    
+    /**
+     * Computes the boundaries of all the regions within a label source.
+     * 
+     * @param source
+     *            the source of labels
+     * @return the boundaries of each region, indexed by region label
+     */
+    public Map<Integer, ArrayList<Polygon2D>> process(LabelSource source)
+    {
+        // convert to polygons
+        ExtractionProgress progress = new ExtractionProgress(monitor, timeout, source.getHeight());
+        List<BoundaryChain> rings = computeChains(source, progress);
+        return BoundaryChain.toPolygons(rings, source, vertexLocation, removeCollinear, simplifier, progress);
+    }
+    
+    /**
+     * Converts chains computed by the <code>computeChains</code> method into
+     * polygons, using the options of this extractor. The rows are reported
+     * to the monitor as already scanned.
+     * 
+     * @param rings
+     *            the closed chains computed from the label source
+     * @param source
+     *            the source of labels
+     * @return the boundaries of each region, indexed by region label
+     */
+    Map<Integer, ArrayList<Polygon2D>> toPolygons(List<BoundaryChain> rings, LabelSource source)
+    {
+        ExtractionProgress progress = new ExtractionProgress(monitor, timeout, source.getHeight());
+        progress.addRows(source.getHeight(), rings.size(), BoundaryChain.totalSize(rings, 0));
+        return BoundaryChain.toPolygons(rings, source, vertexLocation, removeCollinear, simplifier, progress);
+    }
+    
+    /**
+     * Computes the boundaries of all the regions within a label source, as
+     * closed chains of positions. The chains do not depend on the vertex
+     * location, and can be converted into polygons several times.
+     * 
+     * @param source
+     *            the source of labels
+     * @return the closed chains, in the order the boundaries are discovered
+     *         by a raster scan of the image
+     */
+    List<BoundaryChain> computeChains(LabelSource source)
+    {
+        return computeChains(source, new ExtractionProgress(monitor, timeout, source.getHeight()));
+    }
+    
+    private List<BoundaryChain> computeChains(LabelSource source, ExtractionProgress progress)
+    {
+        // retrieve image size
+        int sizeX = source.getWidth();
+        int sizeY = source.getHeight();
+        
+        // build boundaries by adding rows one after the other
+        final ArrayList<BoundaryChain> rings = new ArrayList<BoundaryChain>();
+        RowChainBuilder builder = new RowChainBuilder(sizeX, conn, ring -> rings.add(ring));
+        int[] row = new int[sizeX];
+        for (int y = 0; y < sizeY; y++)
+        {
+            int ringCount = rings.size();
+            source.readRow(y, row);
+            builder.addRow(row);
+            progress.addRows(1, rings.size() - ringCount, BoundaryChain.totalSize(rings, ringCount));
+        }
+        int ringCount = rings.size();
+        builder.finish();
+        progress.report(rings.size() - ringCount, BoundaryChain.totalSize(rings, ringCount));
+        
+        // start each boundary at the same position as the sequential algorithm
+        for (BoundaryChain ring : rings)
+        {
+            ring.rotateToFirstDown();
+        }
+        
+        // order boundaries as they are discovered by a raster scan
+        Collections.sort(rings, new Comparator<BoundaryChain>()
+        {
+            @Override
+            public int compare(BoundaryChain chain1, BoundaryChain chain2)
+            {
+                return Long.compare(chain1.first(), chain2.first());
+            }
+        });
+        return rings;
+    }
+}
@@ -0,0 +1,206 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import java.util.Arrays;
+
+/**
+ * A visit mask that stores the indices of the visited pixels within a hash
+ * set of primitive long integers.
+ * 
+ * The memory used by this mask depends on the number of visited positions
+ * rather than on the size of the image. It is adapted to very large images
+ * containing few boundaries. When the number of visited positions was
+ * underestimated, and the table would use more memory than a mask with one
+ * bit per pixel, the visited positions are moved into a bit mask.
+ * 
+ * @author dlegland
+ *
+ */
+class SparseVisitMask extends VisitMask
+{
+    /**
+     * The value used to indicate empty slots, as pixel indices are positive.
+     */
+    private static final long EMPTY = -1;
+    
+    /**
+     * The largest length of the hash table.
+     */
+    static final int MAX_CAPACITY = 1 << 30;
+    
+    /**
+     * The hash table, using open addressing with linear probing.
+     */
+    long[] keys;
+    
+    /**
+     * The number of visited positions within the table.
+     */
+    int size = 0;
+    
+    /**
+     * The bit mask used to compute slot indices, equal to the table length
+     * minus one.
+     */
+    int mask;
+    
+    /**
+     * The number of pixels within the image.
+     */
+    final long pixelCount;
+    
+    /**
+     * The bit mask that replaces the hash table once the table becomes too
+     * large, or null if the hash table is used.
+     */
+    BitVisitMask bits = null;
+    
+    /**
+     * Creates a new visit mask with an initial capacity.
+     * 
+     * @param expectedCount
+     *            the expected number of visited positions
+     * @param pixelCount
+     *            the number of pixels within the image
+     */
+    public SparseVisitMask(long expectedCount, long pixelCount)
+    {
+        this.pixelCount = pixelCount;
+        
+        // keep the load factor below one half
+        int capacity = 16;
+        while (capacity < 2 * expectedCount && capacity < MAX_CAPACITY)
+        {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+    
+    private void allocate(int capacity)
+    {
+        this.keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        this.mask = capacity - 1;
+    }
+    
+    private int slot(long index)
+    {
+        long h = index * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+    
+    @Override
+    public boolean isVisited(long index)
+    {
+        if (bits != null)
+        {
+            return bits.isVisited(index);
+        }
+        int i = slot(index);
+        while (keys[i] != EMPTY)
+        {
+            if (keys[i] == index)
+            {
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+    
+    @Override
+    public void setVisited(long index)
+    {
+        if (bits != null)
+        {
+            bits.setVisited(index);
+            return;
+        }
+        int i = slot(index);
+        while (keys[i] != EMPTY)
+        {
+            if (keys[i] == index)
+            {
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = index;
+        size++;
+        
+        if (2 * size > keys.length)
+        {
+            grow();
+        }
+    }
+    
+    /**
+     * Doubles the length of the hash table, or moves the visited positions
+     * into a bit mask if a larger table would use more memory.
+     */
+    private void grow()
+    {
+        long wordCount = (pixelCount + 63) >>> 6;
+        if (keys.length >= MAX_CAPACITY || 2L * keys.length > wordCount)
+        {
+            if (wordCount <= Integer.MAX_VALUE)
+            {
+                bits = new BitVisitMask(pixelCount);
+                for (long key : keys)
+                {
+                    if (key != EMPTY)
+                    {
+                        bits.setVisited(key);
+                    }
+                }
+                keys = null;
+                return;
+            }
+            if (keys.length >= MAX_CAPACITY)
+            {
+                // the table can not grow anymore, but it is not full yet
+                if (4L * size > 3L * keys.length)
+                {
+                    throw new IllegalStateException("Too many visited positions: " + size);
+                }
+                return;
+            }
+        }
+        
+        long[] oldKeys = keys;
+        allocate(oldKeys.length * 2);
+        for (long key : oldKeys)
+        {
+            if (key != EMPTY)
+            {
+                int i = slot(key);
+                while (keys[i] != EMPTY)
+                {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+            }
+        }
+    }
+    
+    /**
+     * @return the number of visited positions stored within the hash table,
+     *         before they were moved into a bit mask.
+     */
+    public int size()
+    {
+        return size;
+    }
+    
+    @Override
+    public long getMemoryUsage()
+    {
+        if (bits != null)
+        {
+            return bits.getMemoryUsage();
+        }
+        return 8L * keys.length;
+    }
+}
@@ -0,0 +1,220 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ij.IJ;
+import ij.ImageStack;
+import net.ijt.labels.BoundaryTracker.VertexLocation;
+
+/**
+ * Computes the boundaries of the regions within each slice of a stack of
+ * label images, processing several slices in parallel.
+ * 
+ * Each slice is processed by a single task, using a
+ * <code>BoundaryTracker</code>, so that the number of slices processed at the
+ * same time is bounded by the parallelism of the pool. The boundaries of each
+ * slice are returned in a separate container, in the order of the slices of
+ * the stack.
+ * 
+ * <pre>{@code
+ * StackBoundaryExtractor extractor = new StackBoundaryExtractor(4, VertexLocation.CORNER);
+ * RegionBoundaries[] boundaries = extractor.process(imagePlus.getStack());
+ * Roi[] rois = PolygonRois.createRois(boundaries, "r%03d", imagePlus);
+ * }</pre>
+ * 
+ * @author dlegland
+ *
+ */
+public class StackBoundaryExtractor
+{
+    /**
+     * The connectivity to use for tracking boundaries.
+     */
+    int conn = 4;
+    
+    /**
+     * The location of the polygon vertices.
+     */
+    VertexLocation vertexLocation = VertexLocation.CORNER;
+    
+    /**
+     * If true, only the corners of the boundaries are kept.
+     */
+    boolean removeCollinear = false;
+    
+    /**
+     * The simplifier applied to the polygons, or null.
+     */
+    PolygonSimplifier simplifier = null;
+    
+    /**
+     * The pool used to process the slices.
+     */
+    ForkJoinPool pool = ForkJoinPool.commonPool();
+    
+    /**
+     * The monitor notified after each row is scanned, or null.
+     */
+    ProgressMonitor monitor = null;
+    
+    /**
+     * The maximum duration of an extraction, in nanoseconds, or 0 if the
+     * duration is not limited.
+     */
+    long timeout = 0;
+    
+    /**
+     * Creates a new extractor using 4-connectivity and vertices located on
+     * pixel corners.
+     */
+    public StackBoundaryExtractor()
+    {
+    }
+    
+    /**
+     * Creates a new extractor with the specified connectivity and location
+     * of vertices.
+     * 
+     * @param conn
+     *            the connectivity to use (must be either 4 or 8)
+     * @param loc
+     *            the location of the vertices
+     */
+    public StackBoundaryExtractor(int conn, VertexLocation loc)
+    {
+        if (conn != 4 && conn != 8)
+        {
+            throw new IllegalArgumentException(
+                    "Connectivity must be either 4 or 8");
+        }
+        this.conn = conn;
+        this.vertexLocation = loc;
+    }
+    
+    /**
+     * @param removeCollinear
+     *            true if collinear vertices must be removed
+     */
+    public void setRemoveCollinearVertices(boolean removeCollinear)
+    {
+        this.removeCollinear = removeCollinear;
+    }
+    
+    /**
+     * @param simplifier
+     *            the simplifier to apply, or null to keep all the vertices
+     */
+    public void setSimplifier(PolygonSimplifier simplifier)
+    {
+        this.simplifier = simplifier;
+    }
+    
+    /**
+     * Changes the pool used to process the slices.
+     * 
+     * @param pool
+     *            the pool to use for running the slice tasks
+     */
+    public void setPool(ForkJoinPool pool)
+    {
+        this.pool = pool;
+    }
+    
+    /**
+     * Changes the monitor notified of the progress of the extractions. The
+     * rows of all the slices are counted together, and the monitor replaces
+     * the progress bar of ImageJ updated after each slice. The extraction is
+     * aborted with a <code>CancellationException</code> when the monitor
+     * returns false.
+     * 
+     * @param monitor
+     *            the monitor to notify after each row is scanned, or null
+     */
+    public void setProgressMonitor(ProgressMonitor monitor)
+    {
+        this.monitor = monitor;
+    }
+    
+    /**
+     * Limits the duration of the processing of the whole stack. When it
+     * runs longer than the timeout, it is aborted with a
+     * <code>CancellationException</code>.
+     * 
+     * @param timeout
+     *            the maximum duration of an extraction, or 0 for no limit
+     * @param unit
+     *            the unit of the timeout
+     */
+    public void setTimeout(long timeout, TimeUnit unit)
+    {
+        if (timeout < 0)
+        {
+            throw new IllegalArgumentException("Timeout must be positive or zero");
+        }
+        this.timeout = unit.toNanos(timeout);
+    }
+    
+    /**
+     * Computes the boundaries of the regions within each slice of a stack.
+     * 
+     * @param stack
+     *            the stack containing the labels
+     * @return the boundaries of each slice, in the order of the slices
+     */
+    public RegionBoundaries[] process(ImageStack stack)
+    {
+        int sliceCount = stack.getSize();
+        AtomicInteger finishedCount = new AtomicInteger(0);
+        ExtractionProgress progress = new ExtractionProgress(monitor, timeout, sliceCount * stack.getHeight());
+        
+        // create one task per slice
+        List<Callable<RegionBoundaries>> tasks = new ArrayList<Callable<RegionBoundaries>>(sliceCount);
+        for (int i = 1; i <= sliceCount; i++)
+        {
+            final int slice = i;
+            tasks.add(() -> {
+                BoundaryTracker tracker = new BoundaryTracker(conn, vertexLocation);
+                tracker.setRemoveCollinearVertices(removeCollinear);
+                tracker.setSimplifier(simplifier);
+                ImageProcessorLabelSource source = new ImageProcessorLabelSource(stack.getProcessor(slice));
+                RegionBoundaries boundaries = tracker.processBoundaries(source, progress);
+                if (monitor == null)
+                {
+                    IJ.showProgress(finishedCount.incrementAndGet(), sliceCount);
+                }
+                return boundaries;
+            });
+        }
+        
+        RegionBoundaries[] result = new RegionBoundaries[sliceCount];
+        try
+        {
+            int i = 0;
+            for (Future<RegionBoundaries> future : pool.invokeAll(tasks))
+            {
+                result[i++] = future.get();
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while processing slices", ex);
+        }
+        catch (ExecutionException ex)
+        {
+            ExtractionProgress.rethrowCancellation(ex);
+            throw new RuntimeException("Error while processing slices", ex.getCause());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes the boundary surface of each region into a binary STL file.
+ * 
+ * Each voxel face is written as two triangles, with the normal pointing to
+ * the outside of the region. The number of triangles is written into the
+ * header of the files when the writer is closed.
+ * 
+ * @author dlegland
+ *
+ */
+public class StlSurfaceWriter extends SurfaceWriter
+{
+    /**
+     * The size of the header of STL files, including the number of
+     * triangles.
+     */
+    static final int HEADER_SIZE = 84;
+    
+    /**
+     * The number of bytes of each triangle.
+     */
+    static final int TRIANGLE_SIZE = 50;
+    
+    /**
+     * The indices of the corners of the two triangles of a face.
+     */
+    static final int[][] TRIANGLES = new int[][] {{0, 1, 2}, {0, 2, 3}};
+    
+    /**
+     * Creates a new writer into the specified directory.
+     * 
+     * @param directory
+     *            the directory to write the files into, created if necessary
+     * @param pattern
+     *            the pattern used to create the name of the files from the
+     *            label, for example "r%03d", without extension
+     * @throws IOException
+     *             if the directory could not be created
+     */
+    public StlSurfaceWriter(File directory, String pattern) throws IOException
+    {
+        super(directory, pattern);
+    }
+    
+    @Override
+    LabelFile createLabelFile(int label, String name)
+    {
+        LabelFile file = new LabelFile(label, new File(directory, name + ".stl"));
+        
+        // header, and number of triangles written when the file is finished
+        ByteBuffer buffer = file.buffer(0, HEADER_SIZE);
+        byte[] text = ("label " + label).getBytes(StandardCharsets.US_ASCII);
+        buffer.put(text, 0, Math.min(text.length, 80));
+        buffer.position(HEADER_SIZE);
+        return file;
+    }
+    
+    @Override
+    void addFace(LabelFile file, int axis, int x, int y, int z, boolean reversed)
+    {
+        int[][] shifts = CORNER_SHIFTS[axis];
+        float normal = reversed ? -1 : 1;
+        
+        // split the face along the diagonal joining the first and third corners
+        ByteBuffer buffer = file.buffer(0, 2 * TRIANGLE_SIZE);
+        for (int t = 0; t < 2; t++)
+        {
+            buffer.putFloat(axis == 0 ? normal : 0);
+            buffer.putFloat(axis == 1 ? normal : 0);
+            buffer.putFloat(axis == 2 ? normal : 0);
+            
+            // the corners of the triangle, in reverse order if necessary
+            int[] corners = TRIANGLES[t];
+            for (int k = 0; k < 3; k++)
+            {
+                int[] shift = shifts[corners[reversed ? 2 - k : k]];
+                buffer.putFloat(x + shift[0]);
+                buffer.putFloat(y + shift[1]);
+                buffer.putFloat(z + shift[2]);
+            }
+            buffer.putShort((short) 0);
+        }
+        file.faceCount++;
+    }
+    
+    @Override
+    void finishFile(LabelFile file) throws IOException
+    {
+        ByteBuffer count = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        count.putInt(0, (int) (2 * file.faceCount));
+        try (FileChannel channel = FileChannel.open(file.files[0].toPath(), StandardOpenOption.WRITE))
+        {
+            channel.write(count, 80);
+        }
+    }
+}
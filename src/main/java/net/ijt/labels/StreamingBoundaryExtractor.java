@@ -0,0 +1,212 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import java.util.Iterator;
+
+import ij.process.ImageProcessor;
+import net.ijt.labels.BoundaryTracker.VertexLocation;
+
+/**
+ * Computes the boundaries of the regions within a label image whose rows are
+ * provided one after the other, for processing images that do not fit into
+ * memory.
+ * 
+ * Only the last two rows and the boundaries that are not yet complete are
+ * kept in memory. Each boundary is sent to a <code>BoundaryConsumer</code>
+ * as soon as it is closed, that is when the row containing its lowest pixels
+ * has been processed. Boundaries are therefore emitted in an order that
+ * depends on their lower extent, but the vertices of each boundary are the
+ * same as the ones computed by the <code>BoundaryTracker</code> class.
+ * 
+ * <pre>{@code
+ * StreamingBoundaryExtractor extractor = new StreamingBoundaryExtractor(
+ *         sizeX, 4, VertexLocation.CORNER,
+ *         (label, polygon) -> System.out.println(label));
+ * for (int[] row : rows)
+ * {
+ *     extractor.addRow(row);
+ * }
+ * extractor.finish();
+ * }</pre>
+ * 
+ * @see RunLengthBoundaryExtractor
+ * @see BoundaryConsumer
+ * 
+ * @author dlegland
+ *
+ */
+public class StreamingBoundaryExtractor
+{
+    /**
+     * The width of the image.
+     */
+    final int sizeX;
+    
+    /**
+     * Defines where the ROI vertices are located according to position of
+     * current pixel.
+     */
+    final VertexLocation vertexLocation;
+    
+    /**
+     * If true, only the corners of the boundaries are kept, and vertices
+     * located on a straight line between their neighbors are removed.
+     */
+    boolean removeCollinear = false;
+    
+    /**
+     * The consumer of the boundaries.
+     */
+    final BoundaryConsumer consumer;
+    
+    /**
+     * The builder of boundaries from image rows.
+     */
+    final RowChainBuilder builder;
+    
+    /**
+     * Indicates whether all the rows have been processed.
+     */
+    boolean finished = false;
+    
+    /**
+     * Creates a new extractor for images with the specified width.
+     * 
+     * @param sizeX
+     *            the width of the image, corresponding to the length of each
+     *            row
+     * @param conn
+     *            the connectivity to use (must be either 4 or 8)
+     * @param loc
+     *            the location of the vertices with respect to boundary pixels
+     * @param consumer
+     *            the consumer of the boundaries
+     */
+    public StreamingBoundaryExtractor(int sizeX, int conn, VertexLocation loc, BoundaryConsumer consumer)
+    {
+        if (conn != 4 && conn != 8)
+        {
+            throw new IllegalArgumentException(
+                    "Connectivity must be either 4 or 8");
+        }
+        this.sizeX = sizeX;
+        this.vertexLocation = loc;
+        this.consumer = consumer;
+        this.builder = new RowChainBuilder(sizeX, conn, ring -> emit(ring));
+    }
+    
+    /**
+     * Chooses whether the vertices located on a straight line between their
+     * neighbors are removed while boundaries are computed, keeping only the
+     * corners of the polygons.
+     * 
+     * @param removeCollinear
+     *            true if collinear vertices must be removed
+     */
+    public void setRemoveCollinearVertices(boolean removeCollinear)
+    {
+        this.removeCollinear = removeCollinear;
+    }
+    
+    /**
+     * Processes the next row of the label image. Boundaries closed by this
+     * row are sent to the consumer before the method returns.
+     * 
+     * @param labels
+     *            the labels of the row. Only the first <code>sizeX</code>
+     *            values are used, and the array can be reused by the caller.
+     */
+    public void addRow(int[] labels)
+    {
+        if (finished)
+        {
+            throw new IllegalStateException("Can not add rows after the extraction is finished");
+        }
+        if (labels.length < sizeX)
+        {
+            throw new IllegalArgumentException("Row must contain at least " + sizeX + " labels");
+        }
+        builder.addRow(labels);
+    }
+    
+    /**
+     * Indicates that all the rows have been added, and sends the remaining
+     * boundaries to the consumer.
+     */
+    public void finish()
+    {
+        if (finished)
+        {
+            return;
+        }
+        builder.finish();
+        finished = true;
+    }
+    
+    /**
+     * Processes all the rows provided by an iterator, then finishes the
+     * extraction.
+     * 
+     * @param rows
+     *            an iterator on the rows of the label image
+     */
+    public void process(Iterator<int[]> rows)
+    {
+        while (rows.hasNext())
+        {
+            addRow(rows.next());
+        }
+        finish();
+    }
+    
+    /**
+     * Processes all the rows of a label image, then finishes the extraction.
+     * 
+     * @param array
+     *            the label image, with a width equal to the width of this
+     *            extractor
+     */
+    public void process(ImageProcessor array)
+    {
+        process(new ImageProcessorLabelSource(array));
+    }
+    
+    /**
+     * Processes all the rows of a label source, then finishes the extraction.
+     * 
+     * @param source
+     *            the source of labels, with a width equal to the width of this
+     *            extractor
+     */
+    public void process(LabelSource source)
+    {
+        if (source.getWidth() != sizeX)
+        {
+            throw new IllegalArgumentException("Image width must be equal to " + sizeX);
+        }
+        int[] row = new int[sizeX];
+        for (int y = 0; y < source.getHeight(); y++)
+        {
+            source.readRow(y, row);
+            addRow(row);
+        }
+        finish();
+    }
+    
+    /**
+     * @return the number of rows processed so far.
+     */
+    public int getRowCount()
+    {
+        return builder.rowCount;
+    }
+    
+    private void emit(BoundaryChain ring)
+    {
+        // start at the same position as the sequential algorithm
+        ring.rotateToFirstDown();
+        consumer.boundaryClosed(ring.label, ring.toPolygon(sizeX, vertexLocation, removeCollinear));
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+/**
+ * Receives the voxel faces found at the boundaries between the regions of a
+ * 3D label image.
+ * 
+ * Each face is a unit square located between two voxels with different
+ * labels, and is received only once, together with the labels of the two
+ * voxels. Faces are identified by the axis orthogonal to the face, and by the
+ * coordinates of the corner of the face with the smallest coordinates.
+ * 
+ * @see VoxelSurfaceExtractor
+ * 
+ * @author dlegland
+ *
+ */
+@FunctionalInterface
+public interface SurfaceConsumer
+{
+    /**
+     * Called for each face between two voxels with different labels.
+     * 
+     * @param axis
+     *            the axis orthogonal to the face: 0 for x, 1 for y, 2 for z
+     * @param x
+     *            the x-coordinate of the corner of the face
+     * @param y
+     *            the y-coordinate of the corner of the face
+     * @param z
+     *            the z-coordinate of the corner of the face
+     * @param backLabel
+     *            the label of the voxel on the side of smaller coordinates,
+     *            or 0 for the background and the outside of the image
+     * @param frontLabel
+     *            the label of the voxel on the side of larger coordinates,
+     *            or 0 for the background and the outside of the image
+     */
+    public void faceFound(int axis, int x, int y, int z, int backLabel, int frontLabel);
+}
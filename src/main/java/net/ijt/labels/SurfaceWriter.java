@@ -0,0 +1,340 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+
+/**
+ * Base class for writers that save the boundary surface of each region of a
+ * 3D label image into a separate file.
+ * 
+ * Writers are surface consumers, that receive each voxel face once, and add
+ * it to the surfaces of the regions on both sides of the face, with opposite
+ * orientations. The vertices of each face are ordered counter-clockwise when
+ * seen from the outside of the region. The bytes of each file are
+ * accumulated in memory, and are appended to the files when the total
+ * capacity of the buffers exceeds a limit, so that the memory used does not
+ * depend on the size of the surfaces. Writers must be closed to complete the files.
+ * 
+ * @see StlSurfaceWriter
+ * @see PlySurfaceWriter
+ * 
+ * @author dlegland
+ *
+ */
+public abstract class SurfaceWriter implements SurfaceConsumer, Closeable
+{
+    /**
+     * The shifts of the four corners of a face with respect to its first
+     * corner, indexed by the axis orthogonal to the face, in counter-clockwise
+     * order when seen from the side of larger coordinates.
+     */
+    static final int[][][] CORNER_SHIFTS = new int[][][] {
+        {{0, 0, 0}, {0, 1, 0}, {0, 1, 1}, {0, 0, 1}}, 
+        {{0, 0, 0}, {0, 0, 1}, {1, 0, 1}, {1, 0, 0}}, 
+        {{0, 0, 0}, {1, 0, 0}, {1, 1, 0}, {0, 1, 0}}};
+    
+    /**
+     * The default maximum number of bytes kept in memory before writing into
+     * the files.
+     */
+    static final long DEFAULT_BUFFER_LIMIT = 64L << 20;
+    
+    /**
+     * The initial capacity of the buffer of each file, in bytes.
+     */
+    static final int INITIAL_CAPACITY = 4096;
+    
+    /**
+     * The content written for a region, made of one or several parts stored
+     * within different files.
+     */
+    static class LabelFile
+    {
+        /**
+         * The label of the region.
+         */
+        final int label;
+        
+        /**
+         * The file of each part.
+         */
+        final File[] files;
+        
+        /**
+         * The bytes of each part not yet written, or null.
+         */
+        final ByteBuffer[] buffers;
+        
+        /**
+         * Whether each file has been created during this run.
+         */
+        final boolean[] created;
+        
+        /**
+         * The number of faces and of vertices written for the region.
+         */
+        long faceCount = 0;
+        long vertexCount = 0;
+        
+        /**
+         * The total capacity of the buffers, in bytes.
+         */
+        long bufferCapacity = 0;
+        
+        LabelFile(int label, File... files)
+        {
+            this.label = label;
+            this.files = files;
+            this.buffers = new ByteBuffer[files.length];
+            this.created = new boolean[files.length];
+        }
+        
+        /**
+         * Returns the buffer of a part, with room for at least the specified
+         * number of bytes.
+         */
+        ByteBuffer buffer(int part, int byteCount)
+        {
+            ByteBuffer buffer = buffers[part];
+            if (buffer == null)
+            {
+                buffer = ByteBuffer.allocate(Math.max(INITIAL_CAPACITY, byteCount)).order(ByteOrder.LITTLE_ENDIAN);
+                buffers[part] = buffer;
+                bufferCapacity += buffer.capacity();
+            }
+            else if (buffer.remaining() < byteCount)
+            {
+                int capacity = Math.max(buffer.capacity() * 2, buffer.position() + byteCount);
+                ByteBuffer larger = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.flip();
+                larger.put(buffer);
+                bufferCapacity += capacity - buffer.capacity();
+                buffer = larger;
+                buffers[part] = buffer;
+            }
+            return buffer;
+        }
+        
+        /**
+         * Appends the content of the buffers to the files, creating or
+         * truncating the files the first time, and releases the buffers.
+         */
+        void flush() throws IOException
+        {
+            for (int part = 0; part < files.length; part++)
+            {
+                ByteBuffer buffer = buffers[part];
+                if (buffer == null && created[part])
+                {
+                    continue;
+                }
+                
+                StandardOpenOption mode = created[part] ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING;
+                try (FileChannel channel = FileChannel.open(files[part].toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, mode))
+                {
+                    if (buffer != null)
+                    {
+                        buffer.flip();
+                        while (buffer.hasRemaining())
+                        {
+                            channel.write(buffer);
+                        }
+                    }
+                }
+                created[part] = true;
+                buffers[part] = null;
+            }
+            bufferCapacity = 0;
+        }
+    }
+    
+    /**
+     * The directory containing the files.
+     */
+    final File directory;
+    
+    /**
+     * The pattern used to create the names of the files from the labels.
+     */
+    final String pattern;
+    
+    /**
+     * The content written for each region.
+     */
+    final HashMap<Integer, LabelFile> labelFiles = new HashMap<Integer, LabelFile>();
+    
+    /**
+     * The maximum number of bytes kept in memory, and the current total
+     * capacity of the buffers of all the regions, including their unused
+     * part.
+     */
+    long bufferLimit = DEFAULT_BUFFER_LIMIT;
+    long bufferedBytes = 0;
+    
+    /**
+     * Creates a new writer into the specified directory.
+     * 
+     * @param directory
+     *            the directory to write the files into, created if necessary
+     * @param pattern
+     *            the pattern used to create the name of the files from the
+     *            label, for example "r%03d", without extension
+     * @throws IOException
+     *             if the directory could not be created
+     */
+    SurfaceWriter(File directory, String pattern) throws IOException
+    {
+        if (!directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new IOException("Could not create directory: " + directory);
+        }
+        this.directory = directory;
+        this.pattern = pattern;
+    }
+    
+    /**
+     * Changes the maximum number of bytes kept in memory before they are
+     * written into the files.
+     * 
+     * @param bufferLimit
+     *            the maximum number of bytes
+     */
+    public void setBufferLimit(long bufferLimit)
+    {
+        this.bufferLimit = bufferLimit;
+    }
+    
+    /**
+     * Adds a face to the surfaces of the regions on both sides of the face.
+     * Exceptions thrown during writing are rethrown as unchecked exceptions.
+     */
+    @Override
+    public void faceFound(int axis, int x, int y, int z, int backLabel, int frontLabel)
+    {
+        // the outside of the back region is on the side of larger coordinates
+        if (backLabel != 0)
+        {
+            addFace(backLabel, axis, x, y, z, false);
+        }
+        if (frontLabel != 0)
+        {
+            addFace(frontLabel, axis, x, y, z, true);
+        }
+        
+        if (bufferedBytes > bufferLimit)
+        {
+            try
+            {
+                flush();
+            }
+            catch (IOException ex)
+            {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+    
+    /**
+     * Adds a face to the surface of a region, creating the content written
+     * for the region if necessary, and updates the capacity of the buffers.
+     */
+    private void addFace(int label, int axis, int x, int y, int z, boolean reversed)
+    {
+        LabelFile file = labelFiles.get(label);
+        long capacity = 0;
+        if (file == null)
+        {
+            file = createLabelFile(label, String.format(pattern, label));
+            labelFiles.put(label, file);
+        }
+        else
+        {
+            capacity = file.bufferCapacity;
+        }
+        addFace(file, axis, x, y, z, reversed);
+        bufferedBytes += file.bufferCapacity - capacity;
+    }
+    
+    /**
+     * Creates the content written for a new region.
+     * 
+     * @param label
+     *            the label of the region
+     * @param name
+     *            the name of the file of the region, without extension
+     * @return the content of the region
+     */
+    abstract LabelFile createLabelFile(int label, String name);
+    
+    /**
+     * Adds a face to the surface of a region.
+     * 
+     * @param file
+     *            the content written for the region
+     * @param axis
+     *            the axis orthogonal to the face
+     * @param x
+     *            the x-coordinate of the corner of the face
+     * @param y
+     *            the y-coordinate of the corner of the face
+     * @param z
+     *            the z-coordinate of the corner of the face
+     * @param reversed
+     *            false if the outside of the region is on the side of larger
+     *            coordinates, true otherwise
+     */
+    abstract void addFace(LabelFile file, int axis, int x, int y, int z, boolean reversed);
+    
+    /**
+     * Completes the file of a region, once all the faces have been written.
+     * 
+     * @param file
+     *            the content written for the region
+     */
+    abstract void finishFile(LabelFile file) throws IOException;
+    
+    /**
+     * Writes the content of all the buffers into the files.
+     */
+    private void flush() throws IOException
+    {
+        for (LabelFile file : labelFiles.values())
+        {
+            file.flush();
+        }
+        bufferedBytes = 0;
+    }
+    
+    /**
+     * @return the labels of the regions whose surface has been written.
+     */
+    public int[] getLabels()
+    {
+        return labelFiles.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+    }
+    
+    /**
+     * Writes the remaining faces, and completes the files of all the
+     * regions.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        flush();
+        for (LabelFile file : labelFiles.values())
+        {
+            finishFile(file);
+        }
+    }
+}
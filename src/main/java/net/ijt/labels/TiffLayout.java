@@ -0,0 +1,289 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import net.ijt.labels.MappedLabelSource.PixelType;
+
+/**
+ * Reads the layout of the pixels of the first image within a TIFF file:
+ * image size, data type, and position of the strips or tiles.
+ * 
+ * Only uncompressed single-channel images are supported. Both classic TIFF
+ * and BigTIFF files can be read.
+ * 
+ * Signed and unsigned 32-bit integer images are both read as
+ * <code>INT32</code> pixels. Unsigned labels greater than
+ * <code>Integer.MAX_VALUE</code> wrap around to negative labels: regions keep
+ * distinct labels, and their boundaries are not modified, but the labels
+ * reported in the results are the signed values of the 32-bit words.
+ * 
+ * @author dlegland
+ *
+ */
+class TiffLayout
+{
+    // tags used to describe the layout of image data
+    static final int IMAGE_WIDTH = 256;
+    static final int IMAGE_LENGTH = 257;
+    static final int BITS_PER_SAMPLE = 258;
+    static final int COMPRESSION = 259;
+    static final int STRIP_OFFSETS = 273;
+    static final int SAMPLES_PER_PIXEL = 277;
+    static final int ROWS_PER_STRIP = 278;
+    static final int TILE_WIDTH = 322;
+    static final int TILE_LENGTH = 323;
+    static final int TILE_OFFSETS = 324;
+    static final int SAMPLE_FORMAT = 339;
+    
+    int sizeX;
+    int sizeY;
+    PixelType pixelType;
+    ByteOrder order;
+    int blockWidth;
+    int blockHeight;
+    long[] blockOffsets;
+    
+    /**
+     * Reads the layout of the first image of a TIFF file.
+     * 
+     * @param channel
+     *            the channel to read from
+     * @return the layout of the image data
+     * @throws IOException
+     *             if the file can not be read, or if its format is not
+     *             supported
+     */
+    static TiffLayout read(FileChannel channel) throws IOException
+    {
+        TiffLayout layout = new TiffLayout();
+        
+        // read file header
+        ByteBuffer header = readBytes(channel, 0, 16, ByteOrder.BIG_ENDIAN);
+        short byteOrder = header.getShort(0);
+        if (byteOrder == 0x4949)
+        {
+            layout.order = ByteOrder.LITTLE_ENDIAN;
+        }
+        else if (byteOrder == 0x4D4D)
+        {
+            layout.order = ByteOrder.BIG_ENDIAN;
+        }
+        else
+        {
+            throw new IOException("Not a TIFF file");
+        }
+        header.order(layout.order);
+        
+        int magic = header.getShort(2);
+        boolean bigTiff;
+        long ifdOffset;
+        if (magic == 42)
+        {
+            bigTiff = false;
+            ifdOffset = header.getInt(4) & 0xFFFFFFFFL;
+        }
+        else if (magic == 43)
+        {
+            bigTiff = true;
+            ifdOffset = header.getLong(8);
+        }
+        else
+        {
+            throw new IOException("Not a TIFF file");
+        }
+        
+        // read the number of entries of the first image file directory
+        ByteBuffer buffer = readBytes(channel, ifdOffset, bigTiff ? 8 : 2, layout.order);
+        long entryCount = bigTiff ? buffer.getLong(0) : buffer.getShort(0) & 0x00FFFF;
+        int entrySize = bigTiff ? 20 : 12;
+        long entriesStart = ifdOffset + (bigTiff ? 8 : 2);
+        ByteBuffer entries = readBytes(channel, entriesStart, (int) (entryCount * entrySize), layout.order);
+        
+        // default values
+        int bitsPerSample = 1;
+        int sampleFormat = 1;
+        long rowsPerStrip = Long.MAX_VALUE;
+        long[] stripOffsets = null;
+        long[] tileOffsets = null;
+        int tileWidth = 0;
+        int tileLength = 0;
+        
+        for (int i = 0; i < entryCount; i++)
+        {
+            int pos = i * entrySize;
+            int tag = entries.getShort(pos) & 0x00FFFF;
+            int type = entries.getShort(pos + 2) & 0x00FFFF;
+            long count = bigTiff ? entries.getLong(pos + 4) : entries.getInt(pos + 4) & 0xFFFFFFFFL;
+            int valuePos = pos + (bigTiff ? 12 : 8);
+            
+            switch (tag)
+            {
+            case IMAGE_WIDTH:
+                layout.sizeX = (int) readValues(channel, entries, valuePos, type, count, bigTiff)[0];
+                break;
+            case IMAGE_LENGTH:
+                layout.sizeY = (int) readValues(channel, entries, valuePos, type, count, bigTiff)[0];
+                break;
+            case BITS_PER_SAMPLE:
+                bitsPerSample = (int) readValues(channel, entries, valuePos, type, count, bigTiff)[0];
+                break;
+            case COMPRESSION:
+                if (readValues(channel, entries, valuePos, type, count, bigTiff)[0] != 1)
+                {
+                    throw new IOException("Compressed TIFF files are not supported");
+                }
+                break;
+            case SAMPLES_PER_PIXEL:
+                if (readValues(channel, entries, valuePos, type, count, bigTiff)[0] != 1)
+                {
+                    throw new IOException("Requires TIFF files with a single sample per pixel");
+                }
+                break;
+            case ROWS_PER_STRIP:
+                rowsPerStrip = readValues(channel, entries, valuePos, type, count, bigTiff)[0];
+                break;
+            case STRIP_OFFSETS:
+                stripOffsets = readValues(channel, entries, valuePos, type, count, bigTiff);
+                break;
+            case TILE_WIDTH:
+                tileWidth = (int) readValues(channel, entries, valuePos, type, count, bigTiff)[0];
+                break;
+            case TILE_LENGTH:
+                tileLength = (int) readValues(channel, entries, valuePos, type, count, bigTiff)[0];
+                break;
+            case TILE_OFFSETS:
+                tileOffsets = readValues(channel, entries, valuePos, type, count, bigTiff);
+                break;
+            case SAMPLE_FORMAT:
+                sampleFormat = (int) readValues(channel, entries, valuePos, type, count, bigTiff)[0];
+                break;
+            default:
+                break;
+            }
+        }
+        
+        // determine data type
+        if (bitsPerSample == 8 && sampleFormat == 1)
+        {
+            layout.pixelType = PixelType.UINT8;
+        }
+        else if (bitsPerSample == 16 && sampleFormat == 1)
+        {
+            layout.pixelType = PixelType.UINT16;
+        }
+        else if (bitsPerSample == 32 && sampleFormat == 3)
+        {
+            layout.pixelType = PixelType.FLOAT32;
+        }
+        else if (bitsPerSample == 32)
+        {
+            // unsigned labels above Integer.MAX_VALUE become negative
+            layout.pixelType = PixelType.INT32;
+        }
+        else
+        {
+            throw new IOException("Unsupported TIFF data type: " + bitsPerSample + " bits, format " + sampleFormat);
+        }
+        
+        // determine block layout
+        if (tileOffsets != null)
+        {
+            layout.blockWidth = tileWidth;
+            layout.blockHeight = tileLength;
+            layout.blockOffsets = tileOffsets;
+        }
+        else if (stripOffsets != null)
+        {
+            layout.blockWidth = layout.sizeX;
+            layout.blockHeight = (int) Math.min(rowsPerStrip, layout.sizeY);
+            layout.blockOffsets = stripOffsets;
+        }
+        else
+        {
+            throw new IOException("Could not find the position of image data");
+        }
+        
+        return layout;
+    }
+    
+    /**
+     * Reads the values of a TIFF entry, either stored within the entry or at
+     * the position indicated by the entry.
+     */
+    private static long[] readValues(FileChannel channel, ByteBuffer entries, int valuePos, int type, long count,
+            boolean bigTiff) throws IOException
+    {
+        int typeSize;
+        switch (type)
+        {
+        case 1: // BYTE
+            typeSize = 1;
+            break;
+        case 3: // SHORT
+            typeSize = 2;
+            break;
+        case 4: // LONG
+        case 13: // IFD
+            typeSize = 4;
+            break;
+        case 16: // LONG8
+        case 18: // IFD8
+            typeSize = 8;
+            break;
+        default:
+            throw new IOException("Unsupported TIFF entry type: " + type);
+        }
+        
+        // identify the buffer containing the values
+        ByteBuffer buffer = entries;
+        int pos = valuePos;
+        long byteCount = count * typeSize;
+        if (byteCount > (bigTiff ? 8 : 4))
+        {
+            long offset = bigTiff ? entries.getLong(valuePos) : entries.getInt(valuePos) & 0xFFFFFFFFL;
+            buffer = readBytes(channel, offset, (int) byteCount, entries.order());
+            pos = 0;
+        }
+        
+        long[] values = new long[(int) count];
+        for (int i = 0; i < count; i++, pos += typeSize)
+        {
+            switch (typeSize)
+            {
+            case 1:
+                values[i] = buffer.get(pos) & 0x00FF;
+                break;
+            case 2:
+                values[i] = buffer.getShort(pos) & 0x00FFFF;
+                break;
+            case 4:
+                values[i] = buffer.getInt(pos) & 0xFFFFFFFFL;
+                break;
+            default:
+                values[i] = buffer.getLong(pos);
+                break;
+            }
+        }
+        return values;
+    }
+    
+    private static ByteBuffer readBytes(FileChannel channel, long position, int length, ByteOrder order)
+            throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(order);
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+            {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        return buffer;
+    }
+}
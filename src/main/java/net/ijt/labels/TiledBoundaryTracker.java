@@ -0,0 +1,568 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import static net.ijt.labels.BoundaryTracker.DIAG_DX;
+import static net.ijt.labels.BoundaryTracker.DIAG_DY;
+import static net.ijt.labels.BoundaryTracker.FORWARD;
+import static net.ijt.labels.BoundaryTracker.NEXT_DX;
+import static net.ijt.labels.BoundaryTracker.NEXT_DY;
+import static net.ijt.labels.BoundaryTracker.TURN_LEFT;
+import static net.ijt.labels.BoundaryTracker.TURN_RIGHT;
+import static net.ijt.labels.BoundaryTracker.contains;
+import static net.ijt.labels.BoundaryTracker.nextMove;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import ij.process.ImageProcessor;
+import inra.ijpb.geometry.Polygon2D;
+import net.ijt.labels.BoundaryTracker.VertexLocation;
+
+/**
+ * Computes the boundaries of the regions within a label image by splitting the
+ * image into horizontal strips processed in parallel.
+ * 
+ * Within each strip, boundaries that are fully contained in the strip are
+ * tracked as closed polygons. Boundaries that cross the limits of the strip
+ * are tracked as open chains, starting at the positions entering the strip and
+ * ending when they leave it. The open chains of all strips are then stitched
+ * together to form closed boundaries.
+ * 
+ * The result is the same as the one obtained with the
+ * <code>BoundaryTracker</code> class: each boundary starts at the same vertex,
+ * and the boundaries of each region are ordered the same way.
+ * 
+ * @see BoundaryTracker
+ * 
+ * @author dlegland
+ *
+ */
+public class TiledBoundaryTracker
+{
+    /**
+     * The connectivity to use for tracking boundary. Should be either 4 or 8.
+     * Default is 4.
+     */
+    int conn = 4;
+    
+    /**
+     * Defines where the ROI vertices are located according to position of
+     * current pixel.
+     */
+    VertexLocation vertexLocation = VertexLocation.EDGE_CENTER;
+    
+    /**
+     * If true, only the corners of the boundaries are kept, and vertices
+     * located on a straight line between their neighbors are removed.
+     */
+    boolean removeCollinear = false;
+    
+    /**
+     * The simplifier applied to the polygons, or null if polygons are not
+     * simplified.
+     */
+    PolygonSimplifier simplifier = null;
+    
+    /**
+     * The number of rows within each strip. If zero, the number of rows is
+     * computed from the image size and the number of threads.
+     */
+    int stripHeight = 0;
+    
+    /**
+     * The pool used to process the strips.
+     */
+    ForkJoinPool pool = ForkJoinPool.commonPool();
+    
+    /**
+     * The monitor notified after each row is scanned, or null.
+     */
+    ProgressMonitor monitor = null;
+    
+    /**
+     * The maximum duration of an extraction, in nanoseconds, or 0 if the
+     * duration is not limited.
+     */
+    long timeout = 0;
+    
+    /**
+     * Default empty constructor, using Connectivity 4.
+     */
+    public TiledBoundaryTracker()
+    {
+    }
+    
+    /**
+     * Constructor that allows to specify connectivity and location of vertices.
+     * 
+     * @param conn
+     *            the connectivity to use (must be either 4 or 8)
+     * @param loc
+     *            the location of the vertices with respect to boundary pixels
+     */
+    public TiledBoundaryTracker(int conn, VertexLocation loc)
+    {
+        if (conn != 4 && conn != 8)
+        {
+            throw new IllegalArgumentException(
+                    "Connectivity must be either 4 or 8");
+        }
+        this.conn = conn;
+        this.vertexLocation = loc;
+    }
+    
+    /**
+     * Chooses whether the vertices located on a straight line between their
+     * neighbors are removed while boundaries are computed, keeping only the
+     * corners of the polygons.
+     * 
+     * @param removeCollinear
+     *            true if collinear vertices must be removed
+     */
+    public void setRemoveCollinearVertices(boolean removeCollinear)
+    {
+        this.removeCollinear = removeCollinear;
+    }
+    
+    /**
+     * Changes the simplifier applied to the polygons. Simplification keeps the
+     * vertices at the junctions between regions, so that the boundaries
+     * shared by adjacent regions remain consistent.
+     * 
+     * @param simplifier
+     *            the simplifier to apply, or null to keep all the vertices
+     */
+    public void setSimplifier(PolygonSimplifier simplifier)
+    {
+        this.simplifier = simplifier;
+    }
+    
+    /**
+     * Changes the number of rows within each strip.
+     * 
+     * @param stripHeight
+     *            the number of rows within each strip, or 0 for automatic
+     *            choice.
+     */
+    public void setStripHeight(int stripHeight)
+    {
+        this.stripHeight = stripHeight;
+    }
+    
+    /**
+     * Changes the pool used to process the strips.
+     * 
+     * @param pool
+     *            the pool to use for running the strip tasks
+     */
+    public void setPool(ForkJoinPool pool)
+    {
+        this.pool = pool;
+    }
+    
+    /**
+     * Changes the monitor notified of the progress of the extractions. As
+     * strips are processed in parallel, the rows are reported in the order
+     * they are scanned by the strip tasks. The monitor is also called while
+     * open chains are stitched and polygons are simplified, after all the
+     * rows have been scanned. The extraction is aborted with a
+     * <code>CancellationException</code> when the monitor returns false.
+     * 
+     * @param monitor
+     *            the monitor to notify after each row is scanned, or null
+     */
+    public void setProgressMonitor(ProgressMonitor monitor)
+    {
+        this.monitor = monitor;
+    }
+    
+    /**
+     * Limits the duration of the extractions. When an extraction runs longer
+     * than the timeout, it is aborted with a
+     * <code>CancellationException</code>.
+     * 
+     * @param timeout
+     *            the maximum duration of an extraction, or 0 for no limit
+     * @param unit
+     *            the unit of the timeout
+     */
+    public void setTimeout(long timeout, TimeUnit unit)
+    {
+        if (timeout < 0)
+        {
+            throw new IllegalArgumentException("Timeout must be positive or zero");
+        }
+        this.timeout = unit.toNanos(timeout);
+    }
+    
+    public Map<Integer, ArrayList<Polygon2D>> process(ImageProcessor array)
+    {
+        // retrieve image size
+        int sizeY = array.getHeight();
+        
+        // choose strip height, using several strips by thread to balance load
+        int height = stripHeight;
+        if (height <= 0)
+        {
+            height = Math.max(32, sizeY / (4 * pool.getParallelism()) + 1);
+        }
+        
+        // create one task per strip
+        ExtractionProgress progress = new ExtractionProgress(monitor, timeout, sizeY);
+        List<Callable<Strip>> tasks = new ArrayList<Callable<Strip>>();
+        for (int y0 = 0; y0 < sizeY; y0 += height)
+        {
+            final int ys = y0;
+            final int ye = Math.min(y0 + height, sizeY);
+            tasks.add(() -> processStrip(array, ys, ye, progress));
+        }
+        
+        // process strips, and collect closed boundaries and open chains
+        ArrayList<BoundaryChain> rings = new ArrayList<BoundaryChain>();
+        ArrayList<BoundaryChain> chains = new ArrayList<BoundaryChain>();
+        HashMap<Long, BoundaryChain> chainsByEntry = new HashMap<Long, BoundaryChain>();
+        try
+        {
+            for (Future<Strip> future : pool.invokeAll(tasks))
+            {
+                Strip strip = future.get();
+                rings.addAll(strip.rings);
+                for (BoundaryChain chain : strip.chains)
+                {
+                    chains.add(chain);
+                    chainsByEntry.put(chain.first(), chain);
+                }
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while processing strips", ex);
+        }
+        catch (ExecutionException ex)
+        {
+            ExtractionProgress.rethrowCancellation(ex);
+            throw new RuntimeException("Error while processing strips", ex.getCause());
+        }
+        
+        // stitch open chains to form closed boundaries, and report the
+        // progress after each group of boundaries
+        int stitchedCount = 0;
+        long stitchedSize = 0;
+        for (BoundaryChain chain : chains)
+        {
+            if (chain.used)
+            {
+                continue;
+            }
+            chain.used = true;
+            
+            BoundaryChain ring = new BoundaryChain(chain.label, chain.size * 4);
+            ring.append(chain);
+            long entry = chain.first();
+            long exit = chain.exit;
+            while (exit != entry)
+            {
+                BoundaryChain next = chainsByEntry.get(exit);
+                if (next == null || next.used)
+                {
+                    throw new RuntimeException("Could not stitch boundary chains");
+                }
+                next.used = true;
+                ring.append(next);
+                exit = next.exit;
+            }
+            
+            // start at the same position as the sequential algorithm
+            ring.rotateToFirstDown();
+            rings.add(ring);
+            stitchedSize += ring.size;
+            if (++stitchedCount % ExtractionProgress.REPORT_INTERVAL == 0)
+            {
+                progress.report(ExtractionProgress.REPORT_INTERVAL, stitchedSize);
+                stitchedSize = 0;
+            }
+            else
+            {
+                progress.check();
+            }
+        }
+        progress.report(stitchedCount % ExtractionProgress.REPORT_INTERVAL, stitchedSize);
+        
+        // order boundaries as they are discovered by a raster scan
+        Collections.sort(rings, new Comparator<BoundaryChain>()
+        {
+            @Override
+            public int compare(BoundaryChain chain1, BoundaryChain chain2)
+            {
+                return Long.compare(chain1.first(), chain2.first());
+            }
+        });
+        
+        // convert to polygons
+        return BoundaryChain.toPolygons(rings, new ImageProcessorLabelSource(array), vertexLocation, removeCollinear,
+                simplifier, progress);
+    }
+    
+    /**
+     * Computes the boundaries and the boundary fragments within a strip.
+     * 
+     * @param array
+     *            the label image
+     * @param ys
+     *            the index of the first row of the strip
+     * @param ye
+     *            the index of the last row of the strip, plus one
+     * @param progress
+     *            the progress of the extraction, checked after each row and
+     *            reported at the end of the strip
+     * @return the boundaries and the open chains within the strip
+     */
+    private Strip processStrip(ImageProcessor array, int ys, int ye, ExtractionProgress progress)
+    {
+        int sizeX = array.getWidth();
+        int sizeY = array.getHeight();
+        
+        // read labels of the strip, with one additional row on each side
+        int[] labels = new int[(ye - ys + 2) * sizeX];
+        int[] row = new int[sizeX];
+        for (int y = Math.max(ys - 1, 0); y < Math.min(ye + 1, sizeY); y++)
+        {
+            BoundaryTracker.readRow(array, y, row);
+            System.arraycopy(row, 0, labels, (y - ys + 1) * sizeX, sizeX);
+        }
+        
+        // indicates the pixels of the strip whose DOWN position was visited
+        byte[] mask = new byte[(ye - ys) * sizeX];
+        
+        Strip strip = new Strip();
+        
+        // track the chains entering from the row above the strip
+        if (ys > 0)
+        {
+            int y = ys - 1;
+            for (int x = 0; x < sizeX; x++)
+            {
+                int label = labels[x];
+                if (label == 0)
+                {
+                    continue;
+                }
+                if (labels[sizeX + x] != label)
+                {
+                    // bottom edge of pixel
+                    trackEntry(labels, sizeX, sizeY, ys, ye, mask, x, y, 0, strip);
+                }
+                if (x == 0 || labels[x - 1] != label)
+                {
+                    // left edge of pixel
+                    trackEntry(labels, sizeX, sizeY, ys, ye, mask, x, y, 3, strip);
+                }
+            }
+        }
+        
+        // track the chains entering from the row below the strip
+        if (ye < sizeY)
+        {
+            int y = ye;
+            int offset = (ye - ys + 1) * sizeX;
+            for (int x = 0; x < sizeX; x++)
+            {
+                int label = labels[offset + x];
+                if (label == 0)
+                {
+                    continue;
+                }
+                if (x == sizeX - 1 || labels[offset + x + 1] != label)
+                {
+                    // right edge of pixel
+                    trackEntry(labels, sizeX, sizeY, ys, ye, mask, x, y, 1, strip);
+                }
+                if (labels[offset - sizeX + x] != label)
+                {
+                    // top edge of pixel
+                    trackEntry(labels, sizeX, sizeY, ys, ye, mask, x, y, 2, strip);
+                }
+            }
+        }
+        
+        // track the boundaries fully contained within the strip, checking
+        // for cancellation after each row
+        for (int y = ys; y < ye; y++)
+        {
+            int offset = (y - ys + 1) * sizeX;
+            int currentLabel = 0;
+            for (int x = 0; x < sizeX; x++)
+            {
+                int label = labels[offset + x];
+                
+                // first check if this is a transition between two labels
+                if (label == currentLabel)
+                {
+                    continue;
+                }
+                currentLabel = label;
+                
+                // do not process background values
+                if (label == 0)
+                {
+                    continue;
+                }
+                // if the boundary was already tracked, no need to work again
+                if (mask[(y - ys) * sizeX + x] != 0)
+                {
+                    continue;
+                }
+                
+                BoundaryChain ring = new BoundaryChain(label);
+                trackChain(labels, sizeX, sizeY, ys, ye, mask, x, y, BoundaryTracker.DIR_DOWN, ring);
+                strip.rings.add(ring);
+            }
+            progress.check();
+        }
+        
+        // report the progress once for the whole strip
+        progress.addRows(ye - ys, strip.rings.size(), BoundaryChain.totalSize(strip.rings, 0));
+        
+        return strip;
+    }
+    
+    /**
+     * Checks if the position outside of the strip is followed by a position
+     * within the strip, and in this case tracks the chain that starts at the
+     * next position.
+     */
+    private void trackEntry(int[] labels, int sizeX, int sizeY, int ys, int ye,
+            byte[] mask, int x, int y, int dir, Strip strip)
+    {
+        int label = labels[(y - ys + 1) * sizeX + x];
+        boolean b0 = isLabel(labels, sizeX, sizeY, ys, x + NEXT_DX[dir], y + NEXT_DY[dir], label);
+        boolean b1 = isLabel(labels, sizeX, sizeY, ys, x + DIAG_DX[dir], y + DIAG_DY[dir], label);
+        switch (nextMove(b0, b1, conn))
+        {
+            case TURN_LEFT:
+                return;
+            case FORWARD:
+                x += NEXT_DX[dir];
+                y += NEXT_DY[dir];
+                break;
+            case TURN_RIGHT:
+                x += DIAG_DX[dir];
+                y += DIAG_DY[dir];
+                dir = (dir + 3) & 0x03;
+                break;
+        }
+        
+        if (y >= ys && y < ye)
+        {
+            BoundaryChain chain = new BoundaryChain(label);
+            chain.exit = trackChain(labels, sizeX, sizeY, ys, ye, mask, x, y, dir, chain);
+            strip.chains.add(chain);
+        }
+    }
+    
+    private static final boolean isLabel(int[] labels, int sizeX, int sizeY, int ys, int x, int y, int label)
+    {
+        return contains(x, y, sizeX, sizeY) && labels[(y - ys + 1) * sizeX + x] == label;
+    }
+    
+    /**
+     * Tracks the boundary that starts at the specified position, until the
+     * boundary comes back to the initial position or leaves the strip.
+     * 
+     * @return the encoded position that left the strip, or -1 if the boundary
+     *         is closed.
+     */
+    private long trackChain(int[] labels, int sizeX, int sizeY, int ys, int ye,
+            byte[] mask, int x0, int y0, int dir0, BoundaryChain chain)
+    {
+        // shifts of linear index within label buffer
+        int[] nextOffsets = new int[4];
+        int[] diagOffsets = new int[4];
+        for (int d = 0; d < 4; d++)
+        {
+            nextOffsets[d] = NEXT_DY[d] * sizeX + NEXT_DX[d];
+            diagOffsets[d] = DIAG_DY[d] * sizeX + DIAG_DX[d];
+        }
+        int xmax = sizeX - 1;
+        int ymax = sizeY - 1;
+        
+        // initialize tracking algo state
+        int x = x0;
+        int y = y0;
+        int index = (y0 - ys + 1) * sizeX + x0;
+        int dir = dir0;
+        int value = labels[index];
+        
+        do
+        {
+            chain.add(BoundaryChain.encode((long) y * sizeX + x, dir));
+            if (dir == BoundaryTracker.DIR_DOWN)
+            {
+                mask[index - sizeX] = 1;
+            }
+            
+            // determine configuration of the two pixels in current direction,
+            // checking the image bounds only for positions on the image border
+            boolean interior = x > 0 && y > 0 && x < xmax && y < ymax;
+            boolean b0 = (interior || contains(x + NEXT_DX[dir], y + NEXT_DY[dir], sizeX, sizeY))
+                    && labels[index + nextOffsets[dir]] == value;
+            boolean b1 = (interior || contains(x + DIAG_DX[dir], y + DIAG_DY[dir], sizeX, sizeY))
+                    && labels[index + diagOffsets[dir]] == value;
+            
+            // update the current position
+            switch (nextMove(b0, b1, conn))
+            {
+                case TURN_LEFT:
+                    dir = (dir + 1) & 0x03;
+                    break;
+                case FORWARD:
+                    x += NEXT_DX[dir];
+                    y += NEXT_DY[dir];
+                    index += nextOffsets[dir];
+                    break;
+                case TURN_RIGHT:
+                    x += DIAG_DX[dir];
+                    y += DIAG_DY[dir];
+                    index += diagOffsets[dir];
+                    dir = (dir + 3) & 0x03;
+                    break;
+            }
+            
+            // check if the boundary leaves the strip
+            if (y < ys || y >= ye)
+            {
+                return BoundaryChain.encode((long) y * sizeX + x, dir);
+            }
+        } while (x != x0 || y != y0 || dir != dir0);
+        
+        return -1;
+    }
+    
+    /**
+     * The result of the processing of a strip.
+     */
+    private static final class Strip
+    {
+        /**
+         * The boundaries fully contained within the strip.
+         */
+        ArrayList<BoundaryChain> rings = new ArrayList<BoundaryChain>();
+        
+        /**
+         * The fragments of boundaries that cross the limits of the strip.
+         */
+        ArrayList<BoundaryChain> chains = new ArrayList<BoundaryChain>();
+    }
+}
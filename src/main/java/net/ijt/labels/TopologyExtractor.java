@@ -0,0 +1,727 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import ij.process.ImageProcessor;
+import net.ijt.labels.LabelTopology.Arc;
+import net.ijt.labels.LabelTopology.Ring;
+
+/**
+ * Computes the planar topology of a label image: the nodes located at the
+ * junctions between regions, the arcs between nodes, and the rings of arcs
+ * forming the boundary of each region.
+ * 
+ * Within a tessellated label image, most parts of boundaries are shared by
+ * two regions. Instead of tracking each shared part twice, once for each
+ * region, each arc is tracked only once and referenced by the rings of the
+ * two regions. This reduces both the computation time and the memory used
+ * by dense label maps, and ensures adjacent regions share exactly the same
+ * boundaries, even after simplification.
+ * 
+ * Nodes are the pixel corners shared by three or more regions, considering
+ * the outside of the image as a region, or by two regions in diagonal
+ * configuration. The corners of the image are also nodes. The rings of each
+ * region are the same as the boundaries computed by the
+ * <code>BoundaryTracker</code> class with vertices on pixel corners.
+ * 
+ * @see LabelTopology
+ * @see BoundaryTracker
+ * 
+ * @author dlegland
+ *
+ */
+public class TopologyExtractor
+{
+    /**
+     * The label used for representing the outside of the image.
+     */
+    static final long OUTSIDE = Long.MIN_VALUE;
+    
+    // indices of the pixels on the left and on the right side of a pixel edge,
+    // within the 2-by-2 configuration around the start corner of the edge
+    // (upper-left, upper-right, lower-left, lower-right), indexed by direction
+    static final int[] LEFT_PIXEL = new int[] {1, 0, 2, 3};
+    static final int[] RIGHT_PIXEL = new int[] {3, 1, 0, 2};
+    
+    /**
+     * The index of the UP direction.
+     */
+    static final int DIR_UP = 1;
+    
+    /**
+     * The connectivity used for linking arcs into rings. Should be either 4
+     * or 8. Default is 4.
+     */
+    int conn = 4;
+    
+    /**
+     * If true, only the corners of the arcs are kept, together with the
+     * nodes.
+     */
+    boolean removeCollinear = false;
+    
+    /**
+     * The simplifier applied to each arc, or null if arcs are not simplified.
+     */
+    PolygonSimplifier simplifier = null;
+    
+    /**
+     * The monitor notified after each row is scanned, or null.
+     */
+    ProgressMonitor monitor = null;
+    
+    /**
+     * The maximum duration of an extraction, in nanoseconds, or 0 if the
+     * duration is not limited.
+     */
+    long timeout = 0;
+    
+    /**
+     * The number of horizontal pixel edges tracked during the current call
+     * to the process method, used to check whether all boundaries were
+     * found.
+     */
+    long trackedEdgeCount = 0;
+    
+    /**
+     * Creates a new extractor using connectivity 4.
+     */
+    public TopologyExtractor()
+    {
+    }
+    
+    /**
+     * Creates a new extractor.
+     * 
+     * @param conn
+     *            the connectivity to use (must be either 4 or 8)
+     */
+    public TopologyExtractor(int conn)
+    {
+        if (conn != 4 && conn != 8)
+        {
+            throw new IllegalArgumentException(
+                    "Connectivity must be either 4 or 8");
+        }
+        this.conn = conn;
+    }
+    
+    /**
+     * Chooses whether the vertices located on a straight line between their
+     * neighbors are removed from the arcs. Nodes are always kept.
+     * 
+     * @param removeCollinear
+     *            true if collinear vertices must be removed
+     */
+    public void setRemoveCollinearVertices(boolean removeCollinear)
+    {
+        this.removeCollinear = removeCollinear;
+    }
+    
+    /**
+     * Sets up the simplifier applied to each arc. As each arc is simplified
+     * only once, the boundaries of adjacent regions remain consistent.
+     * 
+     * @param simplifier
+     *            the simplifier, or null to keep all the vertices
+     */
+    public void setSimplifier(PolygonSimplifier simplifier)
+    {
+        this.simplifier = simplifier;
+    }
+    
+    /**
+     * Changes the monitor notified of the progress of the extractions. The
+     * boundary count reported to the monitor is the number of arcs, that
+     * are simplified while they are tracked. The monitor is called again
+     * while the closed boundaries without nodes are tracked, with all the
+     * rows scanned. The extraction is aborted with a
+     * <code>CancellationException</code> when the monitor returns false.
+     * 
+     * @param monitor
+     *            the monitor to notify after each row is scanned, or null
+     */
+    public void setProgressMonitor(ProgressMonitor monitor)
+    {
+        this.monitor = monitor;
+    }
+    
+    /**
+     * Limits the duration of the extractions. When an extraction runs longer
+     * than the timeout, it is aborted with a
+     * <code>CancellationException</code>.
+     * 
+     * @param timeout
+     *            the maximum duration of an extraction, or 0 for no limit
+     * @param unit
+     *            the unit of the timeout
+     */
+    public void setTimeout(long timeout, TimeUnit unit)
+    {
+        if (timeout < 0)
+        {
+            throw new IllegalArgumentException("Timeout must be positive or zero");
+        }
+        this.timeout = unit.toNanos(timeout);
+    }
+    
+    /**
+     * Computes the topology of the regions within a label image.
+     * 
+     * @param array
+     *            the image containing the labels of the regions
+     * @return the topology of the label image
+     */
+    public LabelTopology process(ImageProcessor array)
+    {
+        return process(new ImageProcessorLabelSource(array));
+    }
+    
+    /**
+     * Computes the topology of the regions within a label source.
+     * 
+     * @param source
+     *            the source of labels
+     * @return the topology of the label image
+     */
+    public LabelTopology process(LabelSource source)
+    {
+        int sizeX = source.getWidth();
+        int sizeY = source.getHeight();
+        LabelTopology topology = new LabelTopology(sizeX, sizeY);
+        
+        // keep track of visited pixel edges, two edges for each corner
+        VisitMask visited = new BitVisitMask(2L * (sizeX + 1) * (sizeY + 1));
+        VertexBuffer vertices = new VertexBuffer();
+        
+        // buffers for the two rows of pixels around the current row of corners
+        int[] prevRow = new int[sizeX];
+        int[] currRow = new int[sizeX];
+        long[] labels = new long[4];
+        long[] buffer = new long[4];
+        
+        // the labels around each node, used for linking arcs into rings
+        int[] nodeLabels = new int[64];
+        
+        // first pass: identify nodes in raster order, and track their arcs
+        ExtractionProgress progress = new ExtractionProgress(monitor, timeout, sizeY);
+        long edgeCount = 0;
+        trackedEdgeCount = 0;
+        for (int y = 0; y <= sizeY; y++)
+        {
+            int arcCount = topology.arcs.size();
+            int[] tmp = prevRow;
+            prevRow = currRow;
+            currRow = tmp;
+            if (y < sizeY)
+            {
+                source.readRow(y, currRow);
+            }
+            
+            boolean interiorRow = y > 0 && y < sizeY;
+            for (int x = 0; x <= sizeX; x++)
+            {
+                // count the horizontal pixel edges on boundaries, and skip
+                // the corners located within a region
+                if (interiorRow && x > 0 && x < sizeX)
+                {
+                    int label = currRow[x];
+                    if (prevRow[x] != label)
+                    {
+                        edgeCount++;
+                    }
+                    else if (prevRow[x - 1] == label && currRow[x - 1] == label)
+                    {
+                        continue;
+                    }
+                }
+                else if (x < sizeX && (y > 0 ? prevRow[x] : 0) != (y < sizeY ? currRow[x] : 0))
+                {
+                    edgeCount++;
+                }
+                
+                cornerLabels(prevRow, currRow, x, y, sizeX, sizeY, labels);
+                if (!isNode(labels, x, y, sizeX, sizeY))
+                {
+                    continue;
+                }
+                
+                int node = topology.addNode(x, y);
+                nodeLabels = addNodeLabels(nodeLabels, node, labels);
+                for (int dir = 0; dir < 4; dir++)
+                {
+                    if (isBoundary(labels, dir) && !visited.isVisited(edgeIndex(x, y, dir, sizeX)))
+                    {
+                        Arc arc = trackArc(source, visited, x, y, dir, vertices, buffer);
+                        arc.startNode = node;
+                        topology.arcs.add(arc);
+                    }
+                }
+            }
+            
+            // the last row of corners is below the last row of pixels
+            if (y < sizeY)
+            {
+                progress.addRows(1, topology.arcs.size() - arcCount, vertexCount(topology.arcs, arcCount));
+            }
+            else
+            {
+                progress.report(topology.arcs.size() - arcCount, vertexCount(topology.arcs, arcCount));
+            }
+        }
+        
+        // retrieve end nodes, using the raster order of nodes
+        long[] nodeCorners = new long[topology.nodeCount];
+        for (int i = 0; i < nodeCorners.length; i++)
+        {
+            nodeCorners[i] = (long) topology.nodeY[i] * (sizeX + 1) + topology.nodeX[i];
+        }
+        for (Arc arc : topology.arcs)
+        {
+            int last = arc.vertexNumber() - 1;
+            long corner = (long) arc.yCoords[last] * (sizeX + 1) + (long) arc.xCoords[last];
+            arc.endNode = Arrays.binarySearch(nodeCorners, corner);
+        }
+        
+        // second pass: track the closed boundaries that do not contain any
+        // node, starting from their first corner in raster order
+        for (int y = 0; y < sizeY && trackedEdgeCount < edgeCount; y++)
+        {
+            int arcCount = topology.arcs.size();
+            int[] tmp = prevRow;
+            prevRow = currRow;
+            currRow = tmp;
+            source.readRow(y, currRow);
+            
+            for (int x = 0; x < sizeX; x++)
+            {
+                long upper = y > 0 ? prevRow[x] : 0;
+                if (upper == currRow[x] || visited.isVisited(edgeIndex(x, y, 0, sizeX)))
+                {
+                    continue;
+                }
+                
+                int node = topology.addNode(x, y);
+                cornerLabels(prevRow, currRow, x, y, sizeX, sizeY, labels);
+                nodeLabels = addNodeLabels(nodeLabels, node, labels);
+                Arc arc = trackArc(source, visited, x, y, 0, vertices, buffer);
+                arc.startNode = node;
+                arc.endNode = node;
+                topology.arcs.add(arc);
+            }
+            progress.report(topology.arcs.size() - arcCount, vertexCount(topology.arcs, arcCount));
+        }
+        
+        createRings(topology, nodeLabels);
+        return topology;
+    }
+    
+    /**
+     * Tracks the pixel edges from a start corner and an initial direction,
+     * until a node or the start corner is reached.
+     */
+    private Arc trackArc(LabelSource source, VisitMask visited, int x0, int y0, int dir0, VertexBuffer vertices,
+            long[] labels)
+    {
+        int sizeX = source.getWidth();
+        int sizeY = source.getHeight();
+        cornerLabels(source, x0, y0, labels);
+        Arc arc = new Arc((int) background(labels[LEFT_PIXEL[dir0]]), (int) background(labels[RIGHT_PIXEL[dir0]]));
+        arc.startDir = dir0;
+        
+        vertices.clear();
+        vertices.add(x0, y0);
+        int x = x0;
+        int y = y0;
+        int dir = dir0;
+        while (true)
+        {
+            visited.setVisited(edgeIndex(x, y, dir, sizeX));
+            if ((dir & 0x01) == 0)
+            {
+                trackedEdgeCount++;
+            }
+            
+            // keep the downward edge with smallest pixel index, for each side
+            if (dir == BoundaryTracker.DIR_DOWN)
+            {
+                long index = (long) y * sizeX + x;
+                if (arc.firstDown < 0 || index < arc.firstDown)
+                {
+                    arc.firstDown = index;
+                    arc.firstDownVertex = vertices.size() - 1;
+                }
+            }
+            else if (dir == DIR_UP)
+            {
+                long index = (long) (y - 1) * sizeX + x;
+                if (arc.firstDownReverse < 0 || index < arc.firstDownReverse)
+                {
+                    arc.firstDownReverse = index;
+                    arc.firstDownReverseVertex = vertices.size();
+                }
+            }
+            
+            x += BoundaryTracker.NEXT_DX[dir];
+            y += BoundaryTracker.NEXT_DY[dir];
+            vertices.add(x, y);
+            arc.endDir = dir;
+            if (x == x0 && y == y0)
+            {
+                break;
+            }
+            moveCorner(source, x, y, dir, labels);
+            if (isNode(labels, x, y, sizeX, sizeY))
+            {
+                break;
+            }
+            
+            // continue with the other edge of the corner
+            int back = (dir + 2) & 0x03;
+            for (int d = 0; d < 4; d++)
+            {
+                if (d != back && isBoundary(labels, d))
+                {
+                    dir = d;
+                    break;
+                }
+            }
+        }
+        
+        setVertices(arc, vertices);
+        return arc;
+    }
+    
+    /**
+     * Copies the vertices of an arc, after removing collinear vertices or
+     * simplification if necessary.
+     */
+    private void setVertices(Arc arc, VertexBuffer vertices)
+    {
+        int n = vertices.size();
+        double[] xs = Arrays.copyOf(vertices.xCoords, n);
+        double[] ys = Arrays.copyOf(vertices.yCoords, n);
+        
+        boolean[] keep = null;
+        if (simplifier != null)
+        {
+            keep = simplifier.polylineMask(xs, ys, n);
+        }
+        else if (removeCollinear)
+        {
+            keep = new boolean[n];
+            keep[0] = true;
+            keep[n - 1] = true;
+            for (int i = 1; i < n - 1; i++)
+            {
+                keep[i] = xs[i] - xs[i - 1] != xs[i + 1] - xs[i] || ys[i] - ys[i - 1] != ys[i + 1] - ys[i];
+            }
+        }
+        
+        if (keep == null)
+        {
+            arc.xCoords = xs;
+            arc.yCoords = ys;
+            return;
+        }
+        
+        // compute the new index of each vertex, and of the start vertices
+        int[] newIndices = new int[n];
+        int count = 0;
+        for (int i = 0; i < n; i++)
+        {
+            newIndices[i] = count;
+            if (keep[i])
+            {
+                xs[count] = xs[i];
+                ys[count] = ys[i];
+                count++;
+            }
+        }
+        int i = arc.firstDownVertex;
+        while (!keep[i])
+        {
+            i++;
+        }
+        arc.firstDownVertex = newIndices[i];
+        i = arc.firstDownReverseVertex;
+        while (!keep[i])
+        {
+            i--;
+        }
+        arc.firstDownReverseVertex = newIndices[i];
+        
+        arc.xCoords = Arrays.copyOf(xs, count);
+        arc.yCoords = Arrays.copyOf(ys, count);
+    }
+    
+    /**
+     * Links the arcs into rings, using the same rules as the boundary
+     * tracking algorithm at each node, and sorts the rings in the order the
+     * boundaries are found by BoundaryTracker.
+     */
+    private void createRings(LabelTopology topology, int[] nodeLabels)
+    {
+        ArrayList<Arc> arcs = topology.arcs;
+        
+        // the references to the arcs leaving each node, indexed by direction
+        int[] outgoing = new int[4 * topology.nodeCount];
+        Arrays.fill(outgoing, Integer.MIN_VALUE);
+        for (int a = 0; a < arcs.size(); a++)
+        {
+            Arc arc = arcs.get(a);
+            outgoing[4 * arc.startNode + arc.startDir] = a;
+            outgoing[4 * arc.endNode + ((arc.endDir + 2) & 0x03)] = ~a;
+        }
+        
+        boolean[] used = new boolean[2 * arcs.size()];
+        ArrayList<Ring> rings = new ArrayList<Ring>();
+        long[] ringStarts = new long[16];
+        int[] refs = new int[16];
+        for (int a = 0; a < arcs.size(); a++)
+        {
+            for (int side = 0; side < 2; side++)
+            {
+                Arc arc0 = arcs.get(a);
+                int label = side == 0 ? arc0.leftLabel : arc0.rightLabel;
+                if (label == 0 || used[2 * a + side])
+                {
+                    continue;
+                }
+                
+                int ref0 = side == 0 ? a : ~a;
+                int ref = ref0;
+                int count = 0;
+                long firstDown = Long.MAX_VALUE;
+                int startPos = 0;
+                int startVertex = 0;
+                do
+                {
+                    int index = LabelTopology.arcIndex(ref);
+                    boolean reversed = LabelTopology.isReversed(ref);
+                    Arc arc = arcs.get(index);
+                    used[2 * index + (reversed ? 1 : 0)] = true;
+                    if (count == refs.length)
+                    {
+                        refs = Arrays.copyOf(refs, count * 2);
+                    }
+                    
+                    // the ring starts at the downward edge with smallest index
+                    long down = reversed ? arc.firstDownReverse : arc.firstDown;
+                    if (down >= 0 && down < firstDown)
+                    {
+                        firstDown = down;
+                        startPos = count;
+                        startVertex = reversed ? arc.vertexNumber() - 1 - arc.firstDownReverseVertex
+                                : arc.firstDownVertex;
+                    }
+                    refs[count++] = ref;
+                    
+                    // choose the next arc according to the configuration of
+                    // the pixels in front of the node
+                    int node = reversed ? arc.startNode : arc.endNode;
+                    int dir = reversed ? (arc.startDir + 2) & 0x03 : arc.endDir;
+                    boolean b0 = nodeLabels[4 * node + LEFT_PIXEL[dir]] == label;
+                    boolean b1 = nodeLabels[4 * node + RIGHT_PIXEL[dir]] == label;
+                    switch (BoundaryTracker.nextMove(b0, b1, conn))
+                    {
+                        case BoundaryTracker.TURN_LEFT:
+                            dir = (dir + 1) & 0x03;
+                            break;
+                        case BoundaryTracker.TURN_RIGHT:
+                            dir = (dir + 3) & 0x03;
+                            break;
+                    }
+                    ref = outgoing[4 * node + dir];
+                } while (ref != ref0);
+                
+                // if the start vertex ends an arc, start at the next arc
+                Arc startArc = arcs.get(LabelTopology.arcIndex(refs[startPos]));
+                if (startVertex == startArc.vertexNumber() - 1)
+                {
+                    startPos = (startPos + 1) % count;
+                    startVertex = 0;
+                }
+                int[] ringRefs = new int[count];
+                for (int k = 0; k < count; k++)
+                {
+                    ringRefs[k] = refs[(startPos + k) % count];
+                }
+                if (rings.size() == ringStarts.length)
+                {
+                    ringStarts = Arrays.copyOf(ringStarts, rings.size() * 2);
+                }
+                ringStarts[rings.size()] = firstDown;
+                rings.add(new Ring(label, ringRefs, startVertex));
+            }
+        }
+        
+        // add rings in the order of their first downward edge, that is unique
+        int ringCount = rings.size();
+        long[] sortedStarts = Arrays.copyOf(ringStarts, ringCount);
+        Arrays.sort(sortedStarts);
+        Ring[] sortedRings = new Ring[ringCount];
+        for (int i = 0; i < ringCount; i++)
+        {
+            sortedRings[Arrays.binarySearch(sortedStarts, ringStarts[i])] = rings.get(i);
+        }
+        for (Ring ring : sortedRings)
+        {
+            topology.addRing(ring);
+        }
+    }
+    
+    /**
+     * Returns the total number of vertices of the arcs from the specified index.
+     */
+    private static final long vertexCount(ArrayList<Arc> arcs, int from)
+    {
+        long count = 0;
+        for (int i = from; i < arcs.size(); i++)
+        {
+            count += arcs.get(i).vertexNumber();
+        }
+        return count;
+    }
+    
+    /**
+     * Stores the labels around a node, using zero for the outside of the
+     * image, and returns the possibly reallocated array.
+     */
+    private static final int[] addNodeLabels(int[] nodeLabels, int node, long[] labels)
+    {
+        if (4 * node + 4 > nodeLabels.length)
+        {
+            nodeLabels = Arrays.copyOf(nodeLabels, nodeLabels.length * 2);
+        }
+        for (int i = 0; i < 4; i++)
+        {
+            nodeLabels[4 * node + i] = (int) background(labels[i]);
+        }
+        return nodeLabels;
+    }
+    
+    /**
+     * Returns the label of a pixel, considering the outside of the image as
+     * background.
+     */
+    private static final long background(long label)
+    {
+        return label == OUTSIDE ? 0 : label;
+    }
+    
+    /**
+     * Checks if the pixel edge starting from the corner in the specified
+     * direction separates two different regions.
+     */
+    private static final boolean isBoundary(long[] labels, int dir)
+    {
+        return background(labels[LEFT_PIXEL[dir]]) != background(labels[RIGHT_PIXEL[dir]]);
+    }
+    
+    /**
+     * Checks if a corner is a node, i.e. a corner on a boundary that is
+     * either a junction or a corner of the image.
+     */
+    private static final boolean isNode(long[] labels, int x, int y, int sizeX, int sizeY)
+    {
+        long a = background(labels[0]);
+        if (a == background(labels[1]) && a == background(labels[2]) && a == background(labels[3]))
+        {
+            return false;
+        }
+        if ((x == 0 || x == sizeX) && (y == 0 || y == sizeY))
+        {
+            return true;
+        }
+        return PolygonSimplifier.isJunction(labels[0], labels[1], labels[2], labels[3]);
+    }
+    
+    /**
+     * Returns the index of the pixel edge starting from the specified corner
+     * in the specified direction. Each corner stores the edges on its right
+     * and below it.
+     */
+    private static final long edgeIndex(int x, int y, int dir, int sizeX)
+    {
+        long width = sizeX + 1;
+        switch (dir)
+        {
+            case 0:
+                return 2 * (y * width + x);
+            case 1:
+                return 2 * ((y - 1) * width + x) + 1;
+            case 2:
+                return 2 * (y * width + x - 1);
+            default:
+                return 2 * (y * width + x) + 1;
+        }
+    }
+    
+    /**
+     * Retrieves the labels of the four pixels around a corner.
+     */
+    private static final void cornerLabels(LabelSource source, int x, int y, long[] labels)
+    {
+        labels[0] = PolygonSimplifier.labelOrOutside(source, x - 1, y - 1);
+        labels[1] = PolygonSimplifier.labelOrOutside(source, x, y - 1);
+        labels[2] = PolygonSimplifier.labelOrOutside(source, x - 1, y);
+        labels[3] = PolygonSimplifier.labelOrOutside(source, x, y);
+    }
+    
+    /**
+     * Updates the labels of the four pixels around a corner after a move in
+     * the specified direction. Only the two pixels in front of the move are
+     * read from the label source.
+     */
+    private static final void moveCorner(LabelSource source, int x, int y, int dir, long[] labels)
+    {
+        switch (dir)
+        {
+            case 0:
+                labels[0] = labels[1];
+                labels[2] = labels[3];
+                labels[1] = PolygonSimplifier.labelOrOutside(source, x, y - 1);
+                labels[3] = PolygonSimplifier.labelOrOutside(source, x, y);
+                break;
+            case 1:
+                labels[2] = labels[0];
+                labels[3] = labels[1];
+                labels[0] = PolygonSimplifier.labelOrOutside(source, x - 1, y - 1);
+                labels[1] = PolygonSimplifier.labelOrOutside(source, x, y - 1);
+                break;
+            case 2:
+                labels[1] = labels[0];
+                labels[3] = labels[2];
+                labels[0] = PolygonSimplifier.labelOrOutside(source, x - 1, y - 1);
+                labels[2] = PolygonSimplifier.labelOrOutside(source, x - 1, y);
+                break;
+            default:
+                labels[0] = labels[2];
+                labels[1] = labels[3];
+                labels[2] = PolygonSimplifier.labelOrOutside(source, x - 1, y);
+                labels[3] = PolygonSimplifier.labelOrOutside(source, x, y);
+                break;
+        }
+    }
+    
+    /**
+     * Retrieves the labels of the four pixels around a corner from the rows
+     * of pixels above and below the corner.
+     */
+    private static final void cornerLabels(int[] prevRow, int[] currRow, int x, int y, int sizeX, int sizeY,
+            long[] labels)
+    {
+        boolean hasPrev = y > 0;
+        boolean hasCurr = y < sizeY;
+        labels[0] = hasPrev && x > 0 ? prevRow[x - 1] : OUTSIDE;
+        labels[1] = hasPrev && x < sizeX ? prevRow[x] : OUTSIDE;
+        labels[2] = hasCurr && x > 0 ? currRow[x - 1] : OUTSIDE;
+        labels[3] = hasCurr && x < sizeX ? currRow[x] : OUTSIDE;
+    }
+}
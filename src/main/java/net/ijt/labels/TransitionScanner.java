@@ -0,0 +1,234 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+/**
+ * Finds the transitions between labels within the rows of a label image,
+ * that is the positions where the label differs from the label of the
+ * previous pixel.
+ * 
+ * For 8-bit images, the pixel array is read eight pixels at a time, as long
+ * integers, so that uniform spans of pixels (mostly background) are skipped
+ * with a single comparison for eight pixels. For 16-bit images, the pixel
+ * array is read directly, without converting labels to integers. Other
+ * label sources are read row by row into a buffer.
+ * 
+ * @author dlegland
+ *
+ */
+abstract class TransitionScanner
+{
+    /**
+     * Creates the scanner best suited to a label source.
+     * 
+     * @param source
+     *            the source of labels
+     * @return a new scanner for the source
+     */
+    static TransitionScanner create(LabelSource source)
+    {
+        if (source instanceof ImageProcessorLabelSource)
+        {
+            ImageProcessor array = ((ImageProcessorLabelSource) source).getProcessor();
+            if (array instanceof ByteProcessor)
+            {
+                return new ByteScanner(array.getWidth(), (byte[]) array.getPixels());
+            }
+            if (array instanceof ShortProcessor)
+            {
+                return new ShortScanner(array.getWidth(), (short[]) array.getPixels());
+            }
+        }
+        return new RowScanner(source);
+    }
+    
+    /**
+     * The number of pixels within each row.
+     */
+    final int sizeX;
+    
+    TransitionScanner(int sizeX)
+    {
+        this.sizeX = sizeX;
+    }
+    
+    /**
+     * Changes the row to scan.
+     * 
+     * @param y
+     *            the index of the row
+     */
+    abstract void setRow(int y);
+    
+    /**
+     * @param x
+     *            the position within the current row
+     * @return the label of the pixel
+     */
+    abstract int getLabel(int x);
+    
+    /**
+     * Returns the first position, starting from x, whose label is different
+     * from the specified label.
+     * 
+     * @param x
+     *            the position to start from
+     * @param label
+     *            the label of the current span of pixels
+     * @return the position of the next transition, or the number of pixels
+     *         within the row if there is no transition
+     */
+    abstract int nextTransition(int x, int label);
+    
+    /**
+     * Scans 8-bit labels by words of eight pixels.
+     */
+    static final class ByteScanner extends TransitionScanner
+    {
+        /**
+         * The pixel array, and a view used to read eight pixels at a time.
+         */
+        final byte[] pixels;
+        final ByteBuffer words;
+        
+        /**
+         * The offset of the current row within the pixel array.
+         */
+        int offset;
+        
+        ByteScanner(int sizeX, byte[] pixels)
+        {
+            super(sizeX);
+            this.pixels = pixels;
+            this.words = ByteBuffer.wrap(pixels).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        
+        @Override
+        void setRow(int y)
+        {
+            offset = y * sizeX;
+        }
+        
+        @Override
+        int getLabel(int x)
+        {
+            return pixels[offset + x] & 0x00FF;
+        }
+        
+        @Override
+        int nextTransition(int x, int label)
+        {
+            // the label repeated within each byte of a word
+            long pattern = (label & 0x00FFL) * 0x0101010101010101L;
+            int end = offset + sizeX;
+            int i = offset + x;
+            for (; i + 8 <= end; i += 8)
+            {
+                long diff = words.getLong(i) ^ pattern;
+                if (diff != 0)
+                {
+                    // the lowest byte corresponds to the first pixel
+                    return i + (Long.numberOfTrailingZeros(diff) >>> 3) - offset;
+                }
+            }
+            for (; i < end; i++)
+            {
+                if ((pixels[i] & 0x00FF) != label)
+                {
+                    break;
+                }
+            }
+            return i - offset;
+        }
+    }
+    
+    /**
+     * Scans 16-bit labels directly within the pixel array, one pixel at a
+     * time. Short arrays can not be read as long words with the Java 8 API,
+     * and packing four pixels into a long word with shifts is slower than
+     * comparing the pixels one by one, whose speed is close to the memory
+     * bandwidth.
+     */
+    static final class ShortScanner extends TransitionScanner
+    {
+        final short[] pixels;
+        int offset;
+        
+        ShortScanner(int sizeX, short[] pixels)
+        {
+            super(sizeX);
+            this.pixels = pixels;
+        }
+        
+        @Override
+        void setRow(int y)
+        {
+            offset = y * sizeX;
+        }
+        
+        @Override
+        int getLabel(int x)
+        {
+            return pixels[offset + x] & 0x00FFFF;
+        }
+        
+        @Override
+        int nextTransition(int x, int label)
+        {
+            short value = (short) label;
+            int end = offset + sizeX;
+            int i = offset + x;
+            while (i < end && pixels[i] == value)
+            {
+                i++;
+            }
+            return i - offset;
+        }
+    }
+    
+    /**
+     * Scans the labels of any source, read row by row into a buffer.
+     */
+    static final class RowScanner extends TransitionScanner
+    {
+        final LabelSource source;
+        final int[] labels;
+        
+        RowScanner(LabelSource source)
+        {
+            super(source.getWidth());
+            this.source = source;
+            this.labels = new int[sizeX];
+        }
+        
+        @Override
+        void setRow(int y)
+        {
+            source.readRow(y, labels);
+        }
+        
+        @Override
+        int getLabel(int x)
+        {
+            return labels[x];
+        }
+        
+        @Override
+        int nextTransition(int x, int label)
+        {
+            while (x < sizeX && labels[x] == label)
+            {
+                x++;
+            }
+            return x;
+        }
+    }
+}
@@ -0,0 +1,309 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import inra.ijpb.geometry.Polygon2D;
+
+/**
+ * A growable buffer of vertex coordinates, stored within primitive arrays.
+ * 
+ * Used by the boundary tracking algorithms to collect the vertices of a
+ * boundary without allocating one object per vertex. A single buffer can be
+ * reused for tracking several boundaries, by clearing it between two
+ * boundaries.
+ * 
+ * @author dlegland
+ *
+ */
+class VertexBuffer
+{
+    /**
+     * The x-coordinates of the vertices. Only the first <code>size</code>
+     * elements are valid.
+     */
+    double[] xCoords;
+    
+    /**
+     * The y-coordinates of the vertices. Only the first <code>size</code>
+     * elements are valid.
+     */
+    double[] yCoords;
+    
+    /**
+     * The number of vertices within the buffer.
+     */
+    int size = 0;
+    
+    /**
+     * If true, vertices located on a straight line between their neighbors
+     * are not kept, so that only the corners of the polygon are stored.
+     */
+    boolean removeCollinear = false;
+    
+    /**
+     * If true, the area, the perimeter, the first moments and the bounds of
+     * the boundary are accumulated while vertices are added. Measures are
+     * computed from all the vertices, including the collinear ones, and are
+     * reset when the buffer is cleared.
+     */
+    boolean measure = false;
+    
+    /**
+     * The first and the last vertices added since the buffer was cleared.
+     */
+    double firstX;
+    double firstY;
+    double lastX;
+    double lastY;
+    
+    /**
+     * The sum of the cross products of successive vertices, equal to twice
+     * the signed area of the boundary, without the edge closing the ring.
+     */
+    double area2;
+    
+    /**
+     * The sums of the first moments of the edges, weighted by the cross
+     * products of successive vertices, without the edge closing the ring.
+     */
+    double momentX;
+    double momentY;
+    
+    /**
+     * The length of the boundary, without the edge closing the ring.
+     */
+    double perimeter;
+    
+    /**
+     * The bounds of the vertices.
+     */
+    double xMin;
+    double xMax;
+    double yMin;
+    double yMax;
+    
+    /**
+     * Creates a new buffer with a default initial capacity.
+     */
+    public VertexBuffer()
+    {
+        this(64);
+    }
+    
+    /**
+     * Creates a new buffer with the specified initial capacity.
+     * 
+     * @param capacity
+     *            the initial number of vertices that can be stored without
+     *            reallocation.
+     */
+    public VertexBuffer(int capacity)
+    {
+        capacity = Math.max(capacity, 4);
+        this.xCoords = new double[capacity];
+        this.yCoords = new double[capacity];
+    }
+    
+    /**
+     * Adds a new vertex at the end of the buffer.
+     * 
+     * @param x
+     *            the x-coordinate of the vertex
+     * @param y
+     *            the y-coordinate of the vertex
+     */
+    public void add(double x, double y)
+    {
+        if (measure)
+        {
+            accumulate(x, y);
+        }
+        
+        // replace the last vertex if it lies on the segment to the new vertex
+        if (removeCollinear && size > 1 && isCollinear(size - 1, x, y))
+        {
+            xCoords[size - 1] = x;
+            yCoords[size - 1] = y;
+            return;
+        }
+        
+        if (size == xCoords.length)
+        {
+            grow();
+        }
+        xCoords[size] = x;
+        yCoords[size] = y;
+        size++;
+    }
+    
+    /**
+     * Updates the measures with the edge from the last vertex to the new
+     * vertex.
+     */
+    private void accumulate(double x, double y)
+    {
+        if (size == 0)
+        {
+            firstX = lastX = xMin = xMax = x;
+            firstY = lastY = yMin = yMax = y;
+            area2 = momentX = momentY = perimeter = 0;
+            return;
+        }
+        
+        double cross = lastX * y - x * lastY;
+        area2 += cross;
+        momentX += (lastX + x) * cross;
+        momentY += (lastY + y) * cross;
+        double dx = x - lastX;
+        double dy = y - lastY;
+        perimeter += Math.sqrt(dx * dx + dy * dy);
+        xMin = Math.min(xMin, x);
+        xMax = Math.max(xMax, x);
+        yMin = Math.min(yMin, y);
+        yMax = Math.max(yMax, y);
+        lastX = x;
+        lastY = y;
+    }
+    
+    /**
+     * @return twice the signed area of the closed boundary, when measures
+     *         are accumulated.
+     */
+    public double closedArea2()
+    {
+        return area2 + lastX * firstY - firstX * lastY;
+    }
+    
+    /**
+     * @return the first moment along the x-axis of the closed boundary,
+     *         multiplied by six, when measures are accumulated.
+     */
+    public double closedMomentX()
+    {
+        return momentX + (lastX + firstX) * (lastX * firstY - firstX * lastY);
+    }
+    
+    /**
+     * @return the first moment along the y-axis of the closed boundary,
+     *         multiplied by six, when measures are accumulated.
+     */
+    public double closedMomentY()
+    {
+        return momentY + (lastY + firstY) * (lastX * firstY - firstX * lastY);
+    }
+    
+    /**
+     * @return the length of the closed boundary, when measures are
+     *         accumulated.
+     */
+    public double closedPerimeter()
+    {
+        double dx = firstX - lastX;
+        double dy = firstY - lastY;
+        return perimeter + Math.sqrt(dx * dx + dy * dy);
+    }
+    
+    /**
+     * Checks if the vertex at the specified index lies on a straight line
+     * between the vertex before it and the specified position, and can be
+     * removed without changing the polygon. Vertices that are identical to
+     * their predecessor are also considered as collinear. Vertices where the
+     * boundary goes back are kept.
+     */
+    private boolean isCollinear(int index, double x, double y)
+    {
+        double dx1 = xCoords[index] - xCoords[index - 1];
+        double dy1 = yCoords[index] - yCoords[index - 1];
+        double dx2 = x - xCoords[index];
+        double dy2 = y - yCoords[index];
+        return dx1 * dy2 - dy1 * dx2 == 0 && dx1 * dx2 + dy1 * dy2 >= 0;
+    }
+    
+    /**
+     * Removes the last vertices that lie on the segment between the vertex
+     * before them and the first vertex, as the polygon is closed.
+     */
+    void closeRing()
+    {
+        if (!removeCollinear)
+        {
+            return;
+        }
+        while (size > 2 && isCollinear(size - 1, xCoords[0], yCoords[0]))
+        {
+            size--;
+        }
+    }
+    
+    private void grow()
+    {
+        int capacity = xCoords.length + (xCoords.length >> 1);
+        xCoords = Arrays.copyOf(xCoords, capacity);
+        yCoords = Arrays.copyOf(yCoords, capacity);
+    }
+    
+    /**
+     * @return the number of vertices within this buffer.
+     */
+    public int size()
+    {
+        return size;
+    }
+    
+    /**
+     * Removes all the vertices, keeping allocated memory.
+     */
+    public void clear()
+    {
+        size = 0;
+    }
+    
+    /**
+     * Creates a copy of this buffer, with a capacity equal to the number of
+     * vertices.
+     * 
+     * @return a new buffer containing the same vertices.
+     */
+    public VertexBuffer copy()
+    {
+        VertexBuffer res = new VertexBuffer(size);
+        System.arraycopy(xCoords, 0, res.xCoords, 0, size);
+        System.arraycopy(yCoords, 0, res.yCoords, 0, size);
+        res.size = size;
+        res.removeCollinear = removeCollinear;
+        return res;
+    }
+    
+    /**
+     * Creates a new polygon from the vertices within this buffer. The buffer
+     * can be cleared and reused afterwards.
+     * 
+     * @return a new polygon containing the vertices of this buffer.
+     */
+    public Polygon2D toPolygon()
+    {
+        closeRing();
+        return new Polygon2D(Arrays.copyOf(xCoords, size), Arrays.copyOf(yCoords, size));
+    }
+    
+    /**
+     * Converts the content of this buffer into a list of points.
+     * 
+     * @return a new list of points containing the vertices of this buffer.
+     */
+    public ArrayList<Point2D> toPointList()
+    {
+        closeRing();
+        ArrayList<Point2D> points = new ArrayList<Point2D>(size);
+        for (int i = 0; i < size; i++)
+        {
+            points.add(new Point2D.Double(xCoords[i], yCoords[i]));
+        }
+        return points;
+    }
+}
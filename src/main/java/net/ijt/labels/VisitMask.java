@@ -0,0 +1,141 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+/**
+ * Keeps track of the positions visited by a boundary tracking algorithm.
+ * 
+ * Boundaries are discovered by scanning the image, starting from positions
+ * with DOWN direction that correspond to the left side of the pixels. Only
+ * these positions need to be marked, to avoid tracking the same boundary
+ * several times.
+ * 
+ * @author dlegland
+ *
+ */
+abstract class VisitMask
+{
+    /**
+     * The largest number of pixels for which a mask using one byte per pixel
+     * is created. Larger images use more compact structures.
+     */
+    static final long BYTE_MASK_MAX_SIZE = 1L << 24;
+    
+    /**
+     * The approximate number of bytes used by a sparse mask for each visited
+     * position.
+     */
+    static final int SPARSE_BYTES_PER_POSITION = 16;
+    
+    /**
+     * Creates a visit mask adapted to a label source. For large images, the
+     * number of visited positions is estimated from a sample of rows.
+     * 
+     * @param source
+     *            the source of labels
+     * @return a new visit mask
+     */
+    static VisitMask create(LabelSource source)
+    {
+        long pixelCount = (long) source.getWidth() * source.getHeight();
+        if (pixelCount <= BYTE_MASK_MAX_SIZE)
+        {
+            return new ByteVisitMask((int) pixelCount);
+        }
+        return create(pixelCount, estimateStartDensity(source));
+    }
+    
+    /**
+     * Creates a visit mask adapted to the size of an image and to the
+     * expected number of visited positions.
+     * 
+     * Small images use one byte per pixel, for fastest access. For larger
+     * images, a mask using one bit per pixel is created, unless boundaries
+     * are sparse enough for a hash set of visited positions to require less
+     * memory. If the density was underestimated, the hash set switches to a
+     * bit mask when it becomes larger.
+     * 
+     * @param pixelCount
+     *            the number of pixels within the image
+     * @param density
+     *            the expected fraction of pixels with a visited position
+     * @return a new visit mask
+     */
+    static VisitMask create(long pixelCount, double density)
+    {
+        if (pixelCount <= BYTE_MASK_MAX_SIZE)
+        {
+            return new ByteVisitMask((int) pixelCount);
+        }
+        
+        // compare memory footprints, keeping a margin for the sparse mask
+        double expectedCount = density * pixelCount;
+        if (2 * SPARSE_BYTES_PER_POSITION * expectedCount < pixelCount / 8.0)
+        {
+            return new SparseVisitMask((long) (expectedCount * 1.5), pixelCount);
+        }
+        return new BitVisitMask(pixelCount);
+    }
+    
+    /**
+     * Estimates the fraction of pixels that can be used to start a boundary,
+     * by counting the label transitions within a sample of rows.
+     * 
+     * @param source
+     *            the source of labels
+     * @return the estimated fraction of pixels with a start position
+     */
+    static double estimateStartDensity(LabelSource source)
+    {
+        int sizeX = source.getWidth();
+        int sizeY = source.getHeight();
+        if (sizeX == 0 || sizeY == 0)
+        {
+            return 0.0;
+        }
+        
+        int sampleCount = Math.min(sizeY, 64);
+        int[] labels = new int[sizeX];
+        long count = 0;
+        for (int i = 0; i < sampleCount; i++)
+        {
+            source.readRow((int) ((long) i * sizeY / sampleCount), labels);
+            int currentLabel = 0;
+            for (int x = 0; x < sizeX; x++)
+            {
+                int label = labels[x];
+                if (label != currentLabel && label != 0)
+                {
+                    count++;
+                }
+                currentLabel = label;
+            }
+        }
+        return ((double) count) / ((long) sampleCount * sizeX);
+    }
+    
+    /**
+     * Checks if the position with DOWN direction at the specified pixel was
+     * already visited.
+     * 
+     * @param index
+     *            the linear index of the pixel
+     * @return true if the position was already visited
+     */
+    public abstract boolean isVisited(long index);
+    
+    /**
+     * Marks the position with DOWN direction at the specified pixel as
+     * visited.
+     * 
+     * @param index
+     *            the linear index of the pixel
+     */
+    public abstract void setVisited(long index);
+    
+    /**
+     * @return the approximate number of bytes used by this mask.
+     */
+    public abstract long getMemoryUsage();
+}
@@ -0,0 +1,532 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
+import ij.ImageStack;
+
+/**
+ * Computes the boundary surfaces of the regions within a 3D label image, as
+ * the sets of voxel faces located between voxels with different labels.
+ * 
+ * The stack is processed by slabs of consecutive slices, in parallel. Each
+ * slab keeps only the labels of two slices in memory: the current slice and
+ * the previous one. Each face is found only once, and is sent to a
+ * <code>SurfaceConsumer</code> together with the labels on both sides, so
+ * that the faces shared by two regions are processed once. Faces are sent on
+ * the calling thread, by increasing z-coordinate of their corner: for each
+ * slice, the faces between the slice and the previous one are sent first,
+ * then the faces orthogonal to the x axis, and the faces orthogonal to the y
+ * axis. The outside of the image is considered as background.
+ * 
+ * At most two slabs per thread of the pool are processed ahead of the slab
+ * whose faces are being sent. Faces are stored by chunks of at most 4096
+ * faces, that are sent as soon as they are complete for the slab being sent.
+ * The other slabs stop computing faces while the number of faces waiting to
+ * be sent exceeds a limit, so that the memory used depends neither on the
+ * number of slices nor on the number of faces.
+ * 
+ * <pre>{@code
+ * try (StlSurfaceWriter writer = new StlSurfaceWriter(new File("surfaces"), "r%03d"))
+ * {
+ *     new VoxelSurfaceExtractor().process(imagePlus.getStack(), writer);
+ * }
+ * }</pre>
+ * 
+ * @see SurfaceWriter
+ * 
+ * @author dlegland
+ *
+ */
+public class VoxelSurfaceExtractor
+{
+    /**
+     * The maximum number of faces within a chunk.
+     */
+    static final int CHUNK_FACES = 4096;
+    
+    /**
+     * The default maximum number of faces waiting to be sent, that use 24
+     * bytes each.
+     */
+    static final long DEFAULT_MAX_BUFFERED_FACES = 1L << 21;
+    
+    /**
+     * The number of slices within each slab.
+     */
+    int slabThickness = 4;
+    
+    /**
+     * The maximum number of faces computed by the slabs waiting to be sent.
+     */
+    long maxBufferedFaces = DEFAULT_MAX_BUFFERED_FACES;
+    
+    /**
+     * The pool used to process the slabs.
+     */
+    ForkJoinPool pool = ForkJoinPool.commonPool();
+    
+    /**
+     * Creates a new surface extractor.
+     */
+    public VoxelSurfaceExtractor()
+    {
+    }
+    
+    /**
+     * Changes the number of slices processed by each task.
+     * 
+     * @param slabThickness
+     *            the number of slices within each slab
+     */
+    public void setSlabThickness(int slabThickness)
+    {
+        this.slabThickness = Math.max(slabThickness, 1);
+    }
+    
+    /**
+     * Changes the maximum number of faces that are computed in advance and
+     * wait to be sent to the consumer. Slabs stop computing faces when the
+     * limit is reached, except the slab whose faces are being sent, that
+     * keeps at most two chunks in advance. The memory used by the faces is
+     * therefore bounded by the limit plus two chunks per running slab.
+     * 
+     * @param maxBufferedFaces
+     *            the maximum number of faces waiting to be sent
+     */
+    public void setMaxBufferedFaces(long maxBufferedFaces)
+    {
+        this.maxBufferedFaces = Math.max(maxBufferedFaces, 1);
+    }
+    
+    /**
+     * Changes the pool used to process the slabs.
+     * 
+     * @param pool
+     *            the pool to use for running the slab tasks
+     */
+    public void setPool(ForkJoinPool pool)
+    {
+        this.pool = pool;
+    }
+    
+    /**
+     * Computes the faces between voxels with different labels within a
+     * stack, and sends them to a consumer.
+     * 
+     * @param stack
+     *            the stack containing the labels
+     * @param consumer
+     *            the consumer of the faces
+     */
+    public void process(ImageStack stack, SurfaceConsumer consumer)
+    {
+        int sizeZ = stack.getSize();
+        int slabCount = (sizeZ + slabThickness - 1) / slabThickness;
+        int window = 2 * pool.getParallelism();
+        int chunkFaces = (int) Math.min(CHUNK_FACES, maxBufferedFaces);
+        FaceTransfer transfer = new FaceTransfer(slabCount, maxBufferedFaces);
+        
+        // submit slabs ahead, and send the faces of each slab in order
+        ArrayDeque<Future<?>> pending = new ArrayDeque<Future<?>>();
+        int next = 0;
+        try
+        {
+            for (int slab = 0; slab < slabCount; slab++)
+            {
+                while (next < slabCount && next < slab + window)
+                {
+                    final int index = next;
+                    final int z0 = index * slabThickness;
+                    final int z1 = Math.min(z0 + slabThickness, sizeZ);
+                    pending.add(pool.submit(() -> processSlab(stack, z0, z1, new SlabFaces(transfer, index, chunkFaces))));
+                    next++;
+                }
+                pending.poll();
+                
+                transfer.setHead(slab);
+                FaceBuffer chunk;
+                while ((chunk = transfer.take(slab)) != null)
+                {
+                    chunk.sendTo(consumer);
+                }
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while processing slabs", ex);
+        }
+        finally
+        {
+            // stop the slabs waiting for room, if any
+            transfer.abort();
+            for (Future<?> future : pending)
+            {
+                future.cancel(true);
+            }
+        }
+    }
+    
+    /**
+     * Computes the faces of the slices between z0 (inclusive) and z1
+     * (exclusive), including the faces between slice z0 and the previous
+     * one. The last slab also contains the faces on the upper side of the
+     * last slice.
+     */
+    private static final void processSlab(ImageStack stack, int z0, int z1, SlabFaces faces)
+    {
+        try
+        {
+            computeFaces(stack, z0, z1, faces);
+            faces.finish(null);
+        }
+        catch (Throwable ex)
+        {
+            faces.finish(ex);
+        }
+    }
+    
+    private static final void computeFaces(ImageStack stack, int z0, int z1, SlabFaces faces)
+    {
+        int sizeX = stack.getWidth();
+        int sizeY = stack.getHeight();
+        int sizeZ = stack.getSize();
+        
+        // the labels of the previous and of the current slices
+        int[] previous = new int[sizeX * sizeY];
+        int[] current = new int[sizeX * sizeY];
+        if (z0 > 0)
+        {
+            readSlice(stack, z0 - 1, previous);
+        }
+        
+        for (int z = z0; z < z1; z++)
+        {
+            readSlice(stack, z, current);
+            
+            // faces between the previous slice and the current one
+            addSliceFaces(faces, previous, current, sizeX, sizeY, z);
+            
+            // faces orthogonal to the x axis
+            for (int y = 0; y < sizeY; y++)
+            {
+                int offset = y * sizeX;
+                int back = 0;
+                for (int x = 0; x < sizeX; x++)
+                {
+                    int front = current[offset + x];
+                    if (front != back)
+                    {
+                        faces.add(0, x, y, z, back, front);
+                    }
+                    back = front;
+                }
+                if (back != 0)
+                {
+                    faces.add(0, sizeX, y, z, back, 0);
+                }
+            }
+            
+            // faces orthogonal to the y axis
+            for (int y = 0; y <= sizeY; y++)
+            {
+                for (int x = 0; x < sizeX; x++)
+                {
+                    int back = y > 0 ? current[(y - 1) * sizeX + x] : 0;
+                    int front = y < sizeY ? current[y * sizeX + x] : 0;
+                    if (front != back)
+                    {
+                        faces.add(1, x, y, z, back, front);
+                    }
+                }
+            }
+            
+            int[] tmp = previous;
+            previous = current;
+            current = tmp;
+        }
+        
+        // faces on the upper side of the last slice
+        if (z1 == sizeZ)
+        {
+            Arrays.fill(current, 0);
+            addSliceFaces(faces, previous, current, sizeX, sizeY, sizeZ);
+        }
+    }
+    
+    /**
+     * Adds the faces between two consecutive slices, orthogonal to the z
+     * axis.
+     */
+    private static final void addSliceFaces(SlabFaces faces, int[] back, int[] front, int sizeX, int sizeY, int z)
+    {
+        for (int y = 0; y < sizeY; y++)
+        {
+            int offset = y * sizeX;
+            for (int x = 0; x < sizeX; x++)
+            {
+                if (back[offset + x] != front[offset + x])
+                {
+                    faces.add(2, x, y, z, back[offset + x], front[offset + x]);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Reads the labels of a slice into an array.
+     */
+    private static final void readSlice(ImageStack stack, int z, int[] labels)
+    {
+        ImageProcessorLabelSource source = new ImageProcessorLabelSource(stack.getProcessor(z + 1));
+        int sizeX = source.getWidth();
+        int[] row = new int[sizeX];
+        for (int y = 0; y < source.getHeight(); y++)
+        {
+            source.readRow(y, row);
+            System.arraycopy(row, 0, labels, y * sizeX, sizeX);
+        }
+    }
+    
+    /**
+     * Stores a chunk of the faces found within a slab, using six integers for
+     * each face.
+     */
+    static final class FaceBuffer
+    {
+        final int[] data;
+        int size = 0;
+        
+        FaceBuffer(int capacity)
+        {
+            this.data = new int[6 * capacity];
+        }
+        
+        void add(int axis, int x, int y, int z, int back, int front)
+        {
+            data[size++] = axis;
+            data[size++] = x;
+            data[size++] = y;
+            data[size++] = z;
+            data[size++] = back;
+            data[size++] = front;
+        }
+        
+        boolean isFull()
+        {
+            return size == data.length;
+        }
+        
+        int faceCount()
+        {
+            return size / 6;
+        }
+        
+        void sendTo(SurfaceConsumer consumer)
+        {
+            for (int i = 0; i < size; i += 6)
+            {
+                consumer.faceFound(data[i], data[i + 1], data[i + 2], data[i + 3], data[i + 4], data[i + 5]);
+            }
+        }
+    }
+    
+    /**
+     * Accumulates the faces of a slab into chunks, and transfers each chunk
+     * once it is full.
+     */
+    static final class SlabFaces
+    {
+        final FaceTransfer transfer;
+        final int slab;
+        final int chunkFaces;
+        FaceBuffer chunk;
+        
+        SlabFaces(FaceTransfer transfer, int slab, int chunkFaces)
+        {
+            this.transfer = transfer;
+            this.slab = slab;
+            this.chunkFaces = chunkFaces;
+            this.chunk = new FaceBuffer(chunkFaces);
+        }
+        
+        void add(int axis, int x, int y, int z, int back, int front)
+        {
+            chunk.add(axis, x, y, z, back, front);
+            if (chunk.isFull())
+            {
+                transfer.publish(slab, chunk);
+                chunk = new FaceBuffer(chunkFaces);
+            }
+        }
+        
+        /**
+         * Transfers the last chunk, and signals the end of the slab, with
+         * the error that stopped the computation of the faces, if any.
+         */
+        void finish(Throwable error)
+        {
+            if (error == null && chunk.size > 0)
+            {
+                transfer.publish(slab, chunk);
+            }
+            transfer.finish(slab, error);
+        }
+    }
+    
+    /**
+     * Transfers the chunks of faces from the slabs to the thread that sends
+     * them to the consumer, slab after slab, and bounds the number of faces
+     * waiting to be sent.
+     * 
+     * The slab whose faces are being sent (the head slab) waits only when two
+     * of its chunks are waiting, as they are being sent. The other slabs wait
+     * while the number of faces waiting to be sent exceeds the limit. Waiting
+     * threads of a fork-join pool are managed by the pool, that can start
+     * other threads to compute the head slab.
+     */
+    static final class FaceTransfer
+    {
+        /**
+         * The maximum number of chunks of the head slab waiting to be sent.
+         */
+        static final int MAX_HEAD_CHUNKS = 2;
+        
+        final ArrayDeque<FaceBuffer>[] chunks;
+        final boolean[] finished;
+        final Throwable[] errors;
+        final long maxBufferedFaces;
+        
+        long bufferedFaces = 0;
+        int head = 0;
+        boolean aborted = false;
+        
+        @SuppressWarnings("unchecked")
+        FaceTransfer(int slabCount, long maxBufferedFaces)
+        {
+            this.chunks = new ArrayDeque[slabCount];
+            for (int i = 0; i < slabCount; i++)
+            {
+                chunks[i] = new ArrayDeque<FaceBuffer>();
+            }
+            this.finished = new boolean[slabCount];
+            this.errors = new Throwable[slabCount];
+            this.maxBufferedFaces = maxBufferedFaces;
+        }
+        
+        /**
+         * Adds a chunk of faces computed by a slab, and waits until there is
+         * room for another chunk.
+         */
+        void publish(int slab, FaceBuffer chunk)
+        {
+            synchronized (this)
+            {
+                chunks[slab].add(chunk);
+                bufferedFaces += chunk.faceCount();
+                notifyAll();
+            }
+            
+            try
+            {
+                await(() -> aborted || (slab == head ? chunks[slab].size() < MAX_HEAD_CHUNKS
+                        : bufferedFaces < maxBufferedFaces));
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for room");
+            }
+            synchronized (this)
+            {
+                if (aborted)
+                {
+                    throw new CancellationException("Processing of slabs was aborted");
+                }
+            }
+        }
+        
+        synchronized void finish(int slab, Throwable error)
+        {
+            finished[slab] = true;
+            errors[slab] = error;
+            notifyAll();
+        }
+        
+        synchronized void setHead(int slab)
+        {
+            head = slab;
+            notifyAll();
+        }
+        
+        /**
+         * Returns the next chunk of faces of a slab, waiting for it if
+         * necessary, or null if all the chunks of the slab were returned.
+         */
+        FaceBuffer take(int slab) throws InterruptedException
+        {
+            await(() -> !chunks[slab].isEmpty() || finished[slab]);
+            synchronized (this)
+            {
+                FaceBuffer chunk = chunks[slab].poll();
+                if (chunk == null)
+                {
+                    if (errors[slab] != null)
+                    {
+                        throw new RuntimeException("Error while processing slabs", errors[slab]);
+                    }
+                    return null;
+                }
+                bufferedFaces -= chunk.faceCount();
+                notifyAll();
+                return chunk;
+            }
+        }
+        
+        synchronized void abort()
+        {
+            aborted = true;
+            notifyAll();
+        }
+        
+        /**
+         * Waits until a condition on the state of this transfer, evaluated
+         * while holding its lock, becomes true.
+         */
+        private void await(BooleanSupplier condition) throws InterruptedException
+        {
+            ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker()
+            {
+                @Override
+                public boolean block() throws InterruptedException
+                {
+                    synchronized (FaceTransfer.this)
+                    {
+                        while (!condition.getAsBoolean())
+                        {
+                            FaceTransfer.this.wait();
+                        }
+                    }
+                    return true;
+                }
+                
+                @Override
+                public boolean isReleasable()
+                {
+                    synchronized (FaceTransfer.this)
+                    {
+                        return condition.getAsBoolean();
+                    }
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import java.awt.geom.Point2D;
+import java.io.File;
+import java.io.IOException;
+
+import inra.ijpb.geometry.Polygon2D;
+
+/**
+ * Writes polygons into a file as a sequence of records in the Well-Known
+ * Binary (WKB) format.
+ * 
+ * Each record is made of the label of the region, as a little-endian 32-bit
+ * integer, followed by the WKB representation of a polygon, in little-endian
+ * byte order: a polygon geometry made of closed rings of vertices with double
+ * precision coordinates. Region parts written with the
+ * <code>writeRegion</code> method are made of the outer boundary followed by
+ * the boundaries of the holes. Polygons received as a boundary consumer are
+ * made of a single ring, so that holes are written as filled polygons: use
+ * the <code>processRegions</code> method of <code>BoundaryTracker</code> and
+ * the <code>writeAllRegions</code> method to keep the holes. Regions with
+ * several parts are written as several records with the same label.
+ * 
+ * Coordinates are pixel coordinates, with the y-axis oriented downwards. As
+ * for the GeoJSON writer, outer boundaries have a positive signed area
+ * (counter-clockwise), and holes have a negative one (clockwise).
+ * 
+ * @author dlegland
+ *
+ */
+public class WkbPolygonWriter extends PolygonWriter
+{
+    /**
+     * The byte order flag for little-endian order.
+     */
+    static final byte WKB_NDR = 1;
+    
+    /**
+     * The WKB type code of polygons.
+     */
+    static final int WKB_POLYGON = 3;
+    
+    /**
+     * Creates a new writer into the specified file.
+     * 
+     * @param file
+     *            the file to write into
+     * @throws IOException
+     *             if the file could not be opened
+     */
+    public WkbPolygonWriter(File file) throws IOException
+    {
+        super(file);
+    }
+    
+    @Override
+    public void writePolygon(int label, Polygon2D polygon) throws IOException
+    {
+        ensureRemaining(13);
+        buffer.putInt(label);
+        buffer.put(WKB_NDR);
+        buffer.putInt(WKB_POLYGON);
+        buffer.putInt(1);
+        putRing(polygon, true);
+    }
+    
+    @Override
+    public void writeRegion(int label, RegionPolygon region) throws IOException
+    {
+        ensureRemaining(13);
+        buffer.putInt(label);
+        buffer.put(WKB_NDR);
+        buffer.putInt(WKB_POLYGON);
+        buffer.putInt(1 + region.holeNumber());
+        putRing(region.getOuterBoundary(), true);
+        for (Polygon2D hole : region.getHoles())
+        {
+            putRing(hole, false);
+        }
+    }
+    
+    /**
+     * Puts the number of points and the coordinates of a ring into the
+     * buffer, closed by repeating the first vertex, and with the specified
+     * orientation.
+     */
+    private void putRing(Polygon2D polygon, boolean counterClockwise) throws IOException
+    {
+        int n = polygon.vertexNumber();
+        int pointCount = n > 0 ? n + 1 : 0;
+        boolean reverse = n > 2 && isCounterClockwise(polygon) != counterClockwise;
+        
+        ensureRemaining(4);
+        buffer.putInt(pointCount);
+        for (int i = 0; i < pointCount; i++)
+        {
+            Point2D p = polygon.getVertex(reverse ? (n - i) % n : i % n);
+            ensureRemaining(16);
+            buffer.putDouble(p.getX());
+            buffer.putDouble(p.getY());
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import static net.ijt.labels.LabelImages.assertSameBoundaries;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Map;
+
+import org.junit.Test;
+
+import ij.process.ByteProcessor;
+import inra.ijpb.data.image.ImageUtils;
+import inra.ijpb.geometry.Polygon2D;
+import net.ijt.labels.BoundaryTracker.VertexLocation;
+
+/**
+ * @author dlegland
+ *
+ */
+public class BinaryPolygonWriterTest
+{
+    /**
+     * Writes the polygons computed by a boundary tracker, and reads them
+     * back with a BinaryPolygonReader.
+     * 
+     * @throws IOException
+     *             if the file could not be written
+     */
+    @Test
+    public final void test_writePolygon_corners() throws IOException
+    {
+        ByteProcessor array = createLabelImage();
+        Map<Integer, ArrayList<Polygon2D>> expected = new BoundaryTracker(4, VertexLocation.CORNER).process(array);
+        
+        File file = File.createTempFile("polygons", ".bin");
+        file.deleteOnExit();
+        try (BinaryPolygonWriter writer = new BinaryPolygonWriter(file))
+        {
+            new BoundaryTracker(4, VertexLocation.CORNER).process(new ImageProcessorLabelSource(array), writer);
+        }
+        
+        try (BinaryPolygonReader reader = new BinaryPolygonReader(file))
+        {
+            assertEquals(5, reader.polygonNumber());
+            assertArrayEquals(new int[] {3, 4, 12}, reader.getLabels());
+            assertSameBoundaries(expected, reader.readAll());
+            assertEquals(0, reader.readPolygons(5).size());
+        }
+        file.delete();
+    }
+    
+    /**
+     * Checks polygons with vertices located on half-integer coordinates.
+     * 
+     * @throws IOException
+     *             if the file could not be written
+     */
+    @Test
+    public final void test_writePolygon_edgeCenters() throws IOException
+    {
+        ByteProcessor array = createLabelImage();
+        BoundaryTracker tracker = new BoundaryTracker(8, VertexLocation.EDGE_CENTER);
+        Map<Integer, ArrayList<Polygon2D>> expected = tracker.process(array);
+        
+        File file = File.createTempFile("polygons", ".bin");
+        file.deleteOnExit();
+        try (BinaryPolygonWriter writer = new BinaryPolygonWriter(file, VertexLocation.EDGE_CENTER))
+        {
+            writer.writeAll(expected);
+        }
+        
+        try (BinaryPolygonReader reader = new BinaryPolygonReader(file))
+        {
+            assertSameBoundaries(expected, reader.readAll());
+        }
+        file.delete();
+    }
+    
+    private static final ByteProcessor createLabelImage()
+    {
+        // label 12 has two disconnected parts, label 4 has a hole
+        ByteProcessor array = new ByteProcessor(12, 10);
+        ImageUtils.fillRect(array, 5, 1, 2, 2, 12);
+        ImageUtils.fillRect(array, 5, 5, 2, 2, 12);
+        ImageUtils.fillRect(array, 1, 5, 3, 3, 3);
+        ImageUtils.fillRect(array, 8, 1, 4, 4, 4);
+        array.set(9, 2, 0);
+        return array;
+    }
+    
+    
+}
@@ -0,0 +1,117 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import ij.process.ByteProcessor;
+import ij.process.ShortProcessor;
+import inra.ijpb.data.image.ImageUtils;
+import net.ijt.labels.BoundaryTracker.VertexLocation;
+
+/**
+ * @author dlegland
+ *
+ */
+public class BoundaryCacheTest
+{
+    /**
+     * Test method for {@link net.ijt.labels.BoundaryCache#put(java.lang.String, java.util.List)}.
+     */
+    @Test
+    public final void test_put_evictLeastRecentlyUsed()
+    {
+        List<BoundaryChain> chains = createChains();
+        BoundaryCache cache = new BoundaryCache(2, 1000);
+        
+        cache.put("a", chains);
+        cache.put("b", chains);
+        assertSame(chains, cache.get("a"));
+        
+        // "b" is the least recently used entry
+        cache.put("c", chains);
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.BoundaryCache#put(java.lang.String, java.util.List)}.
+     */
+    @Test
+    public final void test_put_maxPositions()
+    {
+        List<BoundaryChain> chains = createChains();
+        int count = 0;
+        for (BoundaryChain chain : chains)
+        {
+            count += chain.size;
+        }
+        BoundaryCache cache = new BoundaryCache(8, 2 * count);
+        
+        cache.put("a", chains);
+        cache.put("b", chains);
+        cache.put("c", chains);
+        assertEquals(2, cache.size());
+        assertNull(cache.get("a"));
+        
+        // too large chains are not stored
+        cache = new BoundaryCache(8, count - 1);
+        cache.put("a", chains);
+        assertEquals(0, cache.size());
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.BoundaryCache#checksum(ij.process.ImageProcessor)}.
+     */
+    @Test
+    public final void test_checksum()
+    {
+        ByteProcessor array = new ByteProcessor(8, 6);
+        ImageUtils.fillRect(array, 1, 1, 4, 3, 2);
+        String checksum = BoundaryCache.checksum(array);
+        
+        ByteProcessor array2 = new ByteProcessor(8, 6);
+        ImageUtils.fillRect(array2, 1, 1, 4, 3, 2);
+        assertEquals(checksum, BoundaryCache.checksum(array2));
+        array.set(5, 5, 3);
+        assertNotEquals(checksum, BoundaryCache.checksum(array));
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.BoundaryCache#checksum(ij.process.ImageProcessor)}.
+     */
+    @Test
+    public final void test_checksum_compensatedValues()
+    {
+        // modifications that do not change the hash code of the pixel array
+        ShortProcessor array = new ShortProcessor(8, 6);
+        ImageUtils.fillRect(array, 1, 1, 4, 3, 200);
+        ShortProcessor array2 = new ShortProcessor(8, 6);
+        ImageUtils.fillRect(array2, 1, 1, 4, 3, 200);
+        array2.set(2, 2, 201);
+        array2.set(3, 2, 200 - 31);
+        assertEquals(Arrays.hashCode((short[]) array.getPixels()), Arrays.hashCode((short[]) array2.getPixels()));
+        
+        assertNotEquals(BoundaryCache.checksum(array), BoundaryCache.checksum(array2));
+    }
+    
+    private static final List<BoundaryChain> createChains()
+    {
+        ByteProcessor array = new ByteProcessor(8, 6);
+        ImageUtils.fillRect(array, 1, 1, 4, 3, 2);
+        ImageUtils.fillRect(array, 5, 2, 2, 3, 3);
+        return new RunLengthBoundaryExtractor(4, VertexLocation.CORNER).computeChains(new ImageProcessorLabelSource(array));
+    }
+}
@@ -3,16 +3,25 @@
  */
 package net.ijt.labels;
 
+import static net.ijt.labels.LabelImages.assertSamePolygon;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
+import java.awt.Rectangle;
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 
 import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
 import inra.ijpb.data.image.ImageUtils;
 import inra.ijpb.geometry.Polygon2D;
 import net.ijt.labels.BoundaryTracker.Direction;
@@ -302,4 +311,510 @@ public class BoundaryTrackerTest
         assertEquals(12, polygons.get(0).vertexNumber());
         assertEquals(4, polygons.get(1).vertexNumber());
     }
+    
+    /**
+     * Test method for {@link net.ijt.labels.BoundaryTracker#setRemoveCollinearVertices(boolean)}.
+     */
+    @Test
+    public final void test_process_removeCollinearVertices()
+    {
+        ByteProcessor array = new ByteProcessor(6, 6);
+        ImageUtils.fillRect(array, 1, 1, 4, 3, 255);
+        array.set(2, 2, 0);
+        
+        // corners: only the four corners of the rectangle, and of the hole
+        BoundaryTracker tracker = new BoundaryTracker(4, BoundaryTracker.VertexLocation.CORNER);
+        tracker.setRemoveCollinearVertices(true);
+        ArrayList<Polygon2D> polygons = tracker.process(array).get(255);
+        assertEquals(2, polygons.size());
+        assertEquals(4, polygons.get(0).vertexNumber());
+        assertEquals(4, polygons.get(1).vertexNumber());
+        
+        // first vertex is the same as without reduction
+        assertEquals(1.0, polygons.get(0).getVertex(0).getX(), 1e-10);
+        assertEquals(1.0, polygons.get(0).getVertex(0).getY(), 1e-10);
+        
+        // edge middles: two vertices on each side of the rectangle
+        tracker = new BoundaryTracker(4, BoundaryTracker.VertexLocation.EDGE_CENTER);
+        tracker.setRemoveCollinearVertices(true);
+        polygons = tracker.process(array).get(255);
+        assertEquals(8, polygons.get(0).vertexNumber());
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.BoundaryTracker#process(ij.process.ImageProcessor)}.
+     */
+    @Test
+    public final void test_process_sameResultForAllProcessorTypes()
+    {
+        ImageProcessor array = new ByteProcessor(8, 6);
+        ImageUtils.fillRect(array, 0, 0, 3, 3, 3);
+        ImageUtils.fillRect(array, 3, 1, 5, 2, 5);
+        ImageUtils.fillRect(array, 1, 3, 6, 3, 7);
+        array.set(3, 4, 0);
+        array.set(7, 5, 5);
+        Map<Integer,ArrayList<Polygon2D>> expected = new BoundaryTracker(8).process(array);
+        
+        ImageProcessor[] arrays = new ImageProcessor[] {
+                new ShortProcessor(8, 6), 
+                new FloatProcessor(8, 6), 
+                new ColorProcessor(8, 6)};
+        for (ImageProcessor array2 : arrays)
+        {
+            for (int y = 0; y < 6; y++)
+            {
+                for (int x = 0; x < 8; x++)
+                {
+                    array2.setf(x, y, array.getf(x, y));
+                }
+            }
+        }
+        
+        for (ImageProcessor array2 : arrays)
+        {
+            Map<Integer,ArrayList<Polygon2D>> boundaries = new BoundaryTracker(8).process(array2);
+            assertEquals(expected.keySet(), boundaries.keySet());
+            for (int label : expected.keySet())
+            {
+                ArrayList<Polygon2D> polygons = expected.get(label);
+                ArrayList<Polygon2D> polygons2 = boundaries.get(label);
+                assertEquals(polygons.size(), polygons2.size());
+                for (int i = 0; i < polygons.size(); i++)
+                {
+                    assertSamePolygon(polygons.get(i), polygons2.get(i));
+                }
+            }
+        }
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.BoundaryTracker#processRegions(ij.process.ImageProcessor)}.
+     */
+    @Test
+    public final void test_processRegions_nestedRegions()
+    {
+        // a ring of label 2 with an island of label 2 in its hole, and a
+        // second ring of label 2 with two holes
+        ByteProcessor array = new ByteProcessor(16, 9);
+        ImageUtils.fillRect(array, 1, 1, 7, 7, 2);
+        ImageUtils.fillRect(array, 2, 2, 5, 5, 0);
+        ImageUtils.fillRect(array, 4, 4, 1, 1, 2);
+        ImageUtils.fillRect(array, 9, 1, 6, 4, 2);
+        array.set(10, 2, 3);
+        array.set(13, 3, 0);
+        
+        for (int conn : new int[] {4, 8})
+        {
+            BoundaryTracker tracker = new BoundaryTracker(conn, BoundaryTracker.VertexLocation.CORNER);
+            Map<Integer,ArrayList<RegionPolygon>> regions = tracker.processRegions(array);
+            
+            assertEquals(2, regions.size());
+            ArrayList<RegionPolygon> parts = regions.get(2);
+            assertEquals(3, parts.size());
+            
+            // parts are ordered by the position of their first pixel
+            assertEquals(1, parts.get(0).holeNumber());
+            assertEquals(2, parts.get(1).holeNumber());
+            assertEquals(0, parts.get(2).holeNumber());
+            assertEquals(9, parts.get(1).getOuterBoundary().getVertex(0).getX(), 1e-10);
+            assertEquals(4, parts.get(2).getOuterBoundary().getVertex(0).getX(), 1e-10);
+            
+            // the hole of the first part surrounds the island
+            assertEquals(20, parts.get(0).getHoles().get(0).vertexNumber());
+            assertEquals(1, regions.get(3).size());
+        }
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.BoundaryTracker#processRegions(ij.process.ImageProcessor)}.
+     */
+    @Test
+    public final void test_processRegions_sameAsProcess()
+    {
+        ByteProcessor array = new ByteProcessor(10, 10);
+        ImageUtils.fillRect(array, 0, 0, 10, 10, 2);
+        ImageUtils.fillRect(array, 2, 1, 6, 7, 3);
+        ImageUtils.fillRect(array, 3, 3, 2, 3, 0);
+        ImageUtils.fillRect(array, 5, 2, 1, 7, 4);
+        ImageUtils.fillRect(array, 0, 8, 3, 2, 5);
+        array.set(7, 8, 3);
+        array.set(8, 9, 3);
+        
+        for (int conn : new int[] {4, 8})
+        {
+            BoundaryTracker tracker = new BoundaryTracker(conn);
+            tracker.setSimplifier(new PolygonSimplifier(1.0));
+            Map<Integer,ArrayList<Polygon2D>> expected = tracker.process(array);
+            Map<Integer,ArrayList<RegionPolygon>> regions = tracker.processRegions(array);
+            
+            assertEquals(expected.keySet(), regions.keySet());
+            for (int label : expected.keySet())
+            {
+                // collect the outer boundaries and the holes of each part
+                ArrayList<Polygon2D> polygons = new ArrayList<Polygon2D>();
+                for (RegionPolygon part : regions.get(label))
+                {
+                    polygons.add(part.getOuterBoundary());
+                    polygons.addAll(part.getHoles());
+                }
+                assertEquals(expected.get(label).size(), polygons.size());
+                for (Polygon2D poly : expected.get(label))
+                {
+                    int count = 0;
+                    for (Polygon2D poly2 : polygons)
+                    {
+                        if (sameVertices(poly, poly2))
+                        {
+                            count++;
+                        }
+                    }
+                    assertEquals(1, count);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.BoundaryTracker#setComputeMeasures(boolean)}.
+     */
+    @Test
+    public final void test_setComputeMeasures()
+    {
+        // a square with a hole, and a rectangle
+        ByteProcessor array = new ByteProcessor(12, 8);
+        ImageUtils.fillRect(array, 1, 1, 5, 5, 3);
+        array.set(3, 3, 0);
+        ImageUtils.fillRect(array, 7, 2, 4, 6, 5);
+        
+        BoundaryTracker tracker = new BoundaryTracker(4, BoundaryTracker.VertexLocation.CORNER);
+        tracker.setRemoveCollinearVertices(true);
+        tracker.setComputeMeasures(true);
+        tracker.process(array);
+        RegionMeasures measures = tracker.getMeasures();
+        
+        assertEquals(2, measures.size());
+        assertEquals(3, measures.getLabels()[0]);
+        assertEquals(5, measures.getLabels()[1]);
+        
+        int i = measures.indexOf(3);
+        assertEquals(24, measures.getAreas()[i], 1e-10);
+        assertEquals(24, measures.getPerimeters()[i], 1e-10);
+        assertEquals(3.5, measures.getCentroidX()[i], 1e-10);
+        assertEquals(3.5, measures.getCentroidY()[i], 1e-10);
+        assertEquals(1, measures.getXMin()[i], 1e-10);
+        assertEquals(6, measures.getXMax()[i], 1e-10);
+        assertEquals(8, measures.getVertexCounts()[i]);
+        
+        i = measures.indexOf(5);
+        assertEquals(24, measures.getAreas()[i], 1e-10);
+        assertEquals(20, measures.getPerimeters()[i], 1e-10);
+        assertEquals(9, measures.getCentroidX()[i], 1e-10);
+        assertEquals(5, measures.getCentroidY()[i], 1e-10);
+        assertEquals(2, measures.getYMin()[i], 1e-10);
+        assertEquals(8, measures.getYMax()[i], 1e-10);
+        assertEquals(4, measures.getVertexCounts()[i]);
+        
+        assertTrue(measures.indexOf(4) < 0);
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.BoundaryTracker#setProgressMonitor(ProgressMonitor)}.
+     */
+    @Test
+    public final void test_setProgressMonitor()
+    {
+        // a square with a hole, and a rectangle
+        ByteProcessor array = new ByteProcessor(12, 8);
+        ImageUtils.fillRect(array, 1, 1, 5, 5, 3);
+        array.set(3, 3, 0);
+        ImageUtils.fillRect(array, 7, 2, 4, 6, 5);
+        
+        BoundaryTracker tracker = new BoundaryTracker(4, BoundaryTracker.VertexLocation.CORNER);
+        tracker.setRemoveCollinearVertices(true);
+        long[] progress = new long[4];
+        tracker.setProgressMonitor((rowsScanned, rowCount, boundaryCount, vertexCount) -> {
+            assertEquals(progress[0] + 1, rowsScanned);
+            progress[0] = rowsScanned;
+            progress[1] = rowCount;
+            progress[2] = boundaryCount;
+            progress[3] = vertexCount;
+            return true;
+        });
+        tracker.process(array);
+        
+        assertEquals(8, progress[0]);
+        assertEquals(8, progress[1]);
+        assertEquals(3, progress[2]);
+        assertEquals(12, progress[3]);
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.BoundaryTracker#setProgressMonitor(ProgressMonitor)}.
+     */
+    @Test
+    public final void test_setProgressMonitor_cancel()
+    {
+        ByteProcessor array = new ByteProcessor(12, 8);
+        ImageUtils.fillRect(array, 1, 1, 5, 5, 3);
+        ImageUtils.fillRect(array, 7, 2, 4, 6, 5);
+        
+        // cancel after the third row
+        BoundaryTracker tracker = new BoundaryTracker(4);
+        tracker.setProgressMonitor((rowsScanned, rowCount, boundaryCount, vertexCount) -> rowsScanned < 3);
+        boolean canceled = false;
+        try
+        {
+            tracker.processBoundaries(array);
+        }
+        catch (CancellationException ex)
+        {
+            canceled = true;
+        }
+        assertTrue(canceled);
+        
+        // the tracker can be used again
+        tracker.setProgressMonitor(null);
+        assertEquals(2, tracker.processBoundaries(array).size());
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.BoundaryTracker#setTimeout(long, TimeUnit)}.
+     */
+    @Test
+    public final void test_setTimeout()
+    {
+        ByteProcessor array = new ByteProcessor(12, 8);
+        ImageUtils.fillRect(array, 1, 1, 5, 5, 3);
+        
+        BoundaryTracker tracker = new BoundaryTracker(4);
+        tracker.setTimeout(1, TimeUnit.NANOSECONDS);
+        boolean canceled = false;
+        try
+        {
+            tracker.processRegions(array);
+        }
+        catch (CancellationException ex)
+        {
+            canceled = true;
+        }
+        assertTrue(canceled);
+        
+        tracker.setTimeout(1, TimeUnit.MINUTES);
+        assertEquals(1, tracker.processRegions(array).size());
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.BoundaryTracker#setProgressMonitor(ProgressMonitor)}.
+     */
+    @Test
+    public final void test_setProgressMonitor_simplification()
+    {
+        // a grid of 10x10 squares, giving more boundaries than the number of
+        // checks between two notifications
+        ByteProcessor array = new ByteProcessor(30, 30);
+        for (int i = 0; i < 100; i++)
+        {
+            ImageUtils.fillRect(array, 3 * (i % 10), 3 * (i / 10), 2, 2, i + 1);
+        }
+        
+        // cancel when the monitor is called after the last row
+        BoundaryTracker tracker = new BoundaryTracker(4, BoundaryTracker.VertexLocation.CORNER);
+        tracker.setSimplifier(new PolygonSimplifier(1.0));
+        int[] lastRowCalls = new int[1];
+        tracker.setProgressMonitor((rowsScanned, rowCount, boundaryCount, vertexCount) -> {
+            if (rowsScanned == rowCount)
+            {
+                lastRowCalls[0]++;
+            }
+            return lastRowCalls[0] < 2;
+        });
+        boolean canceled = false;
+        try
+        {
+            tracker.processBoundaries(array);
+        }
+        catch (CancellationException ex)
+        {
+            canceled = true;
+        }
+        assertTrue(canceled);
+        assertEquals(2, lastRowCalls[0]);
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.BoundaryTracker#setProgressMonitor(ProgressMonitor)}.
+     */
+    @Test
+    public final void test_setProgressMonitor_labelSubset()
+    {
+        ByteProcessor array = new ByteProcessor(10, 10);
+        ImageUtils.fillRect(array, 0, 0, 10, 10, 2);
+        ImageUtils.fillRect(array, 2, 1, 6, 7, 3);
+        ImageUtils.fillRect(array, 0, 8, 3, 2, 5);
+        LabelIndex index = new LabelIndex(array);
+        
+        // the rows of the bounding boxes of labels 3 and 5 are reported
+        BoundaryTracker tracker = new BoundaryTracker(4);
+        int[] progress = new int[2];
+        tracker.setProgressMonitor((rowsScanned, rowCount, boundaryCount, vertexCount) -> {
+            progress[0] = rowsScanned;
+            progress[1] = rowCount;
+            return true;
+        });
+        tracker.process(array, index, new int[] {3, 5, 3});
+        assertEquals(9, progress[0]);
+        assertEquals(9, progress[1]);
+        
+        // updates are canceled as well
+        Map<Integer,ArrayList<Polygon2D>> previous = tracker.process(array);
+        tracker.setProgressMonitor((rowsScanned, rowCount, boundaryCount, vertexCount) -> rowsScanned < 3);
+        boolean canceled = false;
+        try
+        {
+            tracker.update(previous, new ImageProcessorLabelSource(array), index, new int[] {2});
+        }
+        catch (CancellationException ex)
+        {
+            canceled = true;
+        }
+        assertTrue(canceled);
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.BoundaryTracker#process(ij.process.ImageProcessor, LabelIndex, int[])}.
+     */
+    @Test
+    public final void test_process_labelSubset()
+    {
+        ByteProcessor array = new ByteProcessor(10, 10);
+        ImageUtils.fillRect(array, 0, 0, 10, 10, 2);
+        ImageUtils.fillRect(array, 2, 1, 6, 7, 3);
+        ImageUtils.fillRect(array, 3, 3, 2, 3, 0);
+        ImageUtils.fillRect(array, 5, 2, 1, 7, 4);
+        ImageUtils.fillRect(array, 0, 8, 3, 2, 5);
+        array.set(7, 8, 3);
+        array.set(8, 9, 3);
+        LabelIndex index = new LabelIndex(array);
+        
+        for (int conn : new int[] {4, 8})
+        {
+            BoundaryTracker tracker = new BoundaryTracker(conn);
+            Map<Integer,ArrayList<Polygon2D>> expected = tracker.process(array);
+            
+            // labels not in the image are ignored
+            Map<Integer,ArrayList<Polygon2D>> boundaries = tracker.process(array, index, new int[] {3, 5, 9});
+            assertEquals(2, boundaries.size());
+            for (int label : new int[] {3, 5})
+            {
+                ArrayList<Polygon2D> polygons = expected.get(label);
+                ArrayList<Polygon2D> polygons2 = boundaries.get(label);
+                assertEquals(polygons.size(), polygons2.size());
+                for (int i = 0; i < polygons.size(); i++)
+                {
+                    assertSamePolygon(polygons.get(i), polygons2.get(i));
+                }
+            }
+            
+            // the rectangle contains pixels of labels 2 and 4
+            boundaries = tracker.process(array, index, new Rectangle(5, 8, 2, 1));
+            assertEquals(2, boundaries.size());
+            assertEquals(expected.get(2).size(), boundaries.get(2).size());
+            assertEquals(expected.get(4).size(), boundaries.get(4).size());
+        }
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.BoundaryTracker#update(Map, LabelSource, LabelIndex, Rectangle)}.
+     */
+    @Test
+    public final void test_update_dirtyRectangle()
+    {
+        ByteProcessor array = new ByteProcessor(12, 10);
+        ImageUtils.fillRect(array, 1, 1, 4, 4, 2);
+        ImageUtils.fillRect(array, 5, 1, 4, 4, 3);
+        ImageUtils.fillRect(array, 1, 6, 10, 3, 4);
+        
+        BoundaryTracker tracker = new BoundaryTracker(4, BoundaryTracker.VertexLocation.CORNER);
+        LabelIndex index = new LabelIndex(array);
+        Map<Integer,ArrayList<Polygon2D>> boundaries = tracker.process(array);
+        
+        // move the boundary between labels 2 and 3, and remove label 4
+        ImageUtils.fillRect(array, 5, 1, 2, 4, 2);
+        ImageUtils.fillRect(array, 1, 6, 10, 3, 0);
+        Rectangle dirty = new Rectangle(1, 1, 10, 8);
+        Map<Integer,ArrayList<Polygon2D>> updated = tracker.update(boundaries, new ImageProcessorLabelSource(array), index, dirty);
+        
+        Map<Integer,ArrayList<Polygon2D>> expected = tracker.process(array);
+        assertEquals(expected.keySet(), updated.keySet());
+        for (int label : expected.keySet())
+        {
+            ArrayList<Polygon2D> polygons = expected.get(label);
+            ArrayList<Polygon2D> polygons2 = updated.get(label);
+            assertEquals(polygons.size(), polygons2.size());
+            for (int i = 0; i < polygons.size(); i++)
+            {
+                assertSamePolygon(polygons.get(i), polygons2.get(i));
+            }
+        }
+        
+        // the previous result is not modified
+        assertEquals(3, boundaries.size());
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.BoundaryTracker#update(Map, LabelSource, LabelIndex, Rectangle)}.
+     */
+    @Test
+    public final void test_update_measures()
+    {
+        ByteProcessor array = new ByteProcessor(16, 10);
+        ImageUtils.fillRect(array, 1, 1, 4, 4, 2);
+        ImageUtils.fillRect(array, 5, 1, 4, 4, 3);
+        ImageUtils.fillRect(array, 1, 6, 10, 3, 4);
+        ImageUtils.fillRect(array, 13, 1, 2, 2, 6);
+        
+        BoundaryTracker tracker = new BoundaryTracker(4, BoundaryTracker.VertexLocation.CORNER);
+        tracker.setComputeMeasures(true);
+        LabelIndex index = new LabelIndex(array);
+        Map<Integer,ArrayList<Polygon2D>> boundaries = tracker.process(array);
+        
+        // move the boundary between labels 2 and 3, remove label 4, and add
+        // label 5. Label 6 is not computed again.
+        ImageUtils.fillRect(array, 5, 1, 2, 4, 2);
+        ImageUtils.fillRect(array, 1, 6, 10, 3, 0);
+        ImageUtils.fillRect(array, 1, 8, 2, 2, 5);
+        Rectangle dirty = new Rectangle(1, 1, 10, 9);
+        tracker.update(boundaries, new ImageProcessorLabelSource(array), index, dirty);
+        RegionMeasures measures = tracker.getMeasures();
+        
+        tracker.process(array);
+        RegionMeasures expected = tracker.getMeasures();
+        assertEquals(4, expected.size());
+        assertEquals(expected.size(), measures.size());
+        for (int i = 0; i < expected.size(); i++)
+        {
+            assertEquals(expected.getLabels()[i], measures.getLabels()[i]);
+            assertEquals(expected.getAreas()[i], measures.getAreas()[i], 1e-10);
+            assertEquals(expected.getPerimeters()[i], measures.getPerimeters()[i], 1e-10);
+            assertEquals(expected.getCentroidX()[i], measures.getCentroidX()[i], 1e-10);
+            assertEquals(expected.getXMax()[i], measures.getXMax()[i], 1e-10);
+            assertEquals(expected.getVertexCounts()[i], measures.getVertexCounts()[i]);
+        }
+    }
+    
+    private static final boolean sameVertices(Polygon2D poly1, Polygon2D poly2)
+    {
+        if (poly1.vertexNumber() != poly2.vertexNumber())
+        {
+            return false;
+        }
+        for (int i = 0; i < poly1.vertexNumber(); i++)
+        {
+            if (!poly1.getVertex(i).equals(poly2.getVertex(i)))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
 }
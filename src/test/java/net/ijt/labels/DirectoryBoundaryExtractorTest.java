@@ -0,0 +1,109 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import ij.process.ShortProcessor;
+
+/**
+ * @author dlegland
+ *
+ */
+public class DirectoryBoundaryExtractorTest
+{
+    /**
+     * Test method for {@link net.ijt.labels.DirectoryBoundaryExtractor#process(java.io.File, java.io.File)}.
+     * 
+     * @throws IOException
+     *             if the files could not be written
+     */
+    @Test
+    public final void test_process() throws IOException
+    {
+        File inputDir = Files.createTempDirectory("labels").toFile();
+        File outputDir = new File(inputDir, "rois");
+        ShortProcessor array = MappedLabelSourceTest.createLabelImage();
+        writeFile(new File(inputDir, "image1.tif"), MappedLabelSourceTest.createTiff(array, 10, 10));
+        writeFile(new File(inputDir, "image2.tif"), MappedLabelSourceTest.createTiff(array, 4, 4));
+        writeFile(new File(inputDir, "notes.txt"), new byte[] {'a'});
+        
+        DirectoryBoundaryExtractor extractor = new DirectoryBoundaryExtractor();
+        extractor.setThreadCount(2);
+        extractor.setMemoryLimit(1 << 20);
+        int count = extractor.process(inputDir, outputDir);
+        
+        assertEquals(2, count);
+        File[] outputs = outputDir.listFiles();
+        assertEquals(2, outputs.length);
+        assertTrue(new File(outputDir, "image1-RoiSet.zip").isFile());
+        assertTrue(new File(outputDir, "image2-RoiSet.zip").isFile());
+        assertFalse(new File(outputDir, "notes-RoiSet.zip").exists());
+        
+        for (File file : outputs)
+        {
+            file.delete();
+        }
+        outputDir.delete();
+        for (File file : inputDir.listFiles())
+        {
+            file.delete();
+        }
+        inputDir.delete();
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.DirectoryBoundaryExtractor#estimateMemory(java.io.File)}.
+     * 
+     * @throws IOException
+     *             if the file could not be written
+     */
+    @Test
+    public final void test_estimateMemory_compressedFile() throws IOException
+    {
+        // a 16-bit PNG image with few regions is much smaller than its pixels
+        BufferedImage image = new BufferedImage(200, 100, BufferedImage.TYPE_USHORT_GRAY);
+        image.getRaster().setSample(10, 10, 0, 3);
+        File file = File.createTempFile("labels", ".png");
+        file.deleteOnExit();
+        ImageIO.write(image, "png", file);
+        assertTrue(file.length() < 2000);
+        
+        assertEquals(200 * 100 * 2, DirectoryBoundaryExtractor.readPixelBytes(file));
+        assertEquals(3 * 200 * 100 * 2, DirectoryBoundaryExtractor.estimateMemory(file));
+        file.delete();
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.DirectoryBoundaryExtractor#isImageFile(java.io.File)}.
+     */
+    @Test
+    public final void test_isImageFile()
+    {
+        assertTrue(DirectoryBoundaryExtractor.isImageFile(new File("labels.tif")));
+        assertTrue(DirectoryBoundaryExtractor.isImageFile(new File("labels.TIFF")));
+        assertTrue(DirectoryBoundaryExtractor.isImageFile(new File("labels.png")));
+        assertFalse(DirectoryBoundaryExtractor.isImageFile(new File("labels.zip")));
+    }
+    
+    private static final void writeFile(File file, byte[] data) throws IOException
+    {
+        try (FileOutputStream out = new FileOutputStream(file))
+        {
+            out.write(data);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+import inra.ijpb.geometry.Polygon2D;
+
+/**
+ * @author dlegland
+ *
+ */
+public class GeoJsonPolygonWriterTest
+{
+    /**
+     * Test method for {@link net.ijt.labels.GeoJsonPolygonWriter#writePolygon(int, inra.ijpb.geometry.Polygon2D)}.
+     * 
+     * @throws IOException
+     *             if the file could not be written
+     */
+    @Test
+    public final void test_writePolygon() throws IOException
+    {
+        File file = File.createTempFile("polygons", ".geojson");
+        file.deleteOnExit();
+        try (GeoJsonPolygonWriter writer = new GeoJsonPolygonWriter(file))
+        {
+            writer.writePolygon(3, new Polygon2D(new double[] {1, 1, 3}, new double[] {2, 4, 4}));
+            writer.writePolygon(-12, new Polygon2D(new double[] {0.5, 10.5}, new double[] {0, 120}));
+        }
+        
+        String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.US_ASCII);
+        // the first polygon is clockwise, and is reversed
+        String expected = "{\"type\":\"FeatureCollection\",\"yAxisDirection\":\"down\",\"features\":[\n"
+                + "{\"type\":\"Feature\",\"properties\":{\"label\":3},"
+                + "\"geometry\":{\"type\":\"Polygon\",\"coordinates\":[[[1,2],[3,4],[1,4],[1,2]]]}},\n"
+                + "{\"type\":\"Feature\",\"properties\":{\"label\":-12},"
+                + "\"geometry\":{\"type\":\"Polygon\",\"coordinates\":[[[0.5,0],[10.5,120],[0.5,0]]]}}"
+                + "\n]}\n";
+        assertEquals(expected, text);
+        file.delete();
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.GeoJsonPolygonWriter#writeRegion(int, RegionPolygon)}.
+     * 
+     * @throws IOException
+     *             if the file could not be written
+     */
+    @Test
+    public final void test_writeRegion() throws IOException
+    {
+        // a clockwise outer boundary, and a counter-clockwise hole
+        RegionPolygon region = new RegionPolygon(new Polygon2D(new double[] {1, 1, 4, 4}, new double[] {1, 4, 4, 1}));
+        region.addHole(new Polygon2D(new double[] {2, 3, 3, 2}, new double[] {2, 2, 3, 3}));
+        
+        File file = File.createTempFile("polygons", ".geojson");
+        file.deleteOnExit();
+        try (GeoJsonPolygonWriter writer = new GeoJsonPolygonWriter(file))
+        {
+            writer.writeRegion(7, region);
+        }
+        
+        String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.US_ASCII);
+        String expected = "{\"type\":\"FeatureCollection\",\"yAxisDirection\":\"down\",\"features\":[\n"
+                + "{\"type\":\"Feature\",\"properties\":{\"label\":7},"
+                + "\"geometry\":{\"type\":\"Polygon\",\"coordinates\":["
+                + "[[1,1],[4,1],[4,4],[1,4],[1,1]],"
+                + "[[2,2],[2,3],[3,3],[3,2],[2,2]]]}}"
+                + "\n]}\n";
+        assertEquals(expected, text);
+        file.delete();
+    }
+}
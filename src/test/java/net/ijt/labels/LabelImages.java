@@ -0,0 +1,217 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Random;
+
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+import inra.ijpb.data.image.ImageUtils;
+import inra.ijpb.geometry.Polygon2D;
+
+/**
+ * Label images and assertions shared by the tests of the boundary
+ * extraction algorithms.
+ * 
+ * @author dlegland
+ *
+ */
+final class LabelImages
+{
+    /**
+     * The sizes of the random images, including images with a single row or
+     * a single column.
+     */
+    static final int[][] SIZES = new int[][] {{1, 1}, {9, 1}, {1, 9}, {13, 7}, {40, 25}, {97, 64}};
+    
+    private LabelImages()
+    {
+    }
+    
+    /**
+     * @return a 5-by-5 image containing a 3-by-3 square with label 255 and a
+     *         one-pixel hole.
+     */
+    static final ByteProcessor createSquareWithHole()
+    {
+        ByteProcessor array = new ByteProcessor(5, 5);
+        ImageUtils.fillRect(array, 1, 1, 3, 3, 255);
+        array.set(2, 2, 0);
+        return array;
+    }
+    
+    /**
+     * @return a 10-by-10 image with adjacent regions, a hole, regions
+     *         touching the image borders, and pixels connected only by their
+     *         corners.
+     */
+    static final ByteProcessor createAdjacentRegions()
+    {
+        ByteProcessor array = new ByteProcessor(10, 10);
+        ImageUtils.fillRect(array, 0, 0, 10, 10, 2);
+        ImageUtils.fillRect(array, 2, 1, 6, 7, 3);
+        ImageUtils.fillRect(array, 3, 3, 2, 3, 0);
+        ImageUtils.fillRect(array, 5, 2, 1, 7, 4);
+        ImageUtils.fillRect(array, 0, 8, 3, 2, 5);
+        array.set(7, 8, 3);
+        array.set(8, 9, 3);
+        return array;
+    }
+    
+    /**
+     * Creates an image where each pixel has a random label, including the
+     * background. Regions are small and have many holes and junctions.
+     * 
+     * @param sizeX
+     *            the width of the image
+     * @param sizeY
+     *            the height of the image
+     * @param labelCount
+     *            the number of labels, including the background
+     * @param seed
+     *            the seed of the random generator
+     * @return a new 16-bit label image
+     */
+    static final ShortProcessor createNoise(int sizeX, int sizeY, int labelCount, long seed)
+    {
+        Random random = new Random(seed);
+        ShortProcessor array = new ShortProcessor(sizeX, sizeY);
+        for (int y = 0; y < sizeY; y++)
+        {
+            for (int x = 0; x < sizeX; x++)
+            {
+                array.set(x, y, random.nextInt(labelCount));
+            }
+        }
+        return array;
+    }
+    
+    /**
+     * Creates an image where each pixel has the label of the nearest of a
+     * set of random germs. Several germs share the same label, so regions
+     * can have several disconnected parts, and some germs have the
+     * background label.
+     * 
+     * @param sizeX
+     *            the width of the image
+     * @param sizeY
+     *            the height of the image
+     * @param germCount
+     *            the number of germs
+     * @param seed
+     *            the seed of the random generator
+     * @return a new 16-bit label image
+     */
+    static final ShortProcessor createVoronoi(int sizeX, int sizeY, int germCount, long seed)
+    {
+        Random random = new Random(seed);
+        int[] germX = new int[germCount];
+        int[] germY = new int[germCount];
+        for (int i = 0; i < germCount; i++)
+        {
+            germX[i] = random.nextInt(sizeX);
+            germY[i] = random.nextInt(sizeY);
+        }
+        
+        int labelCount = Math.max(germCount / 2, 2);
+        ShortProcessor array = new ShortProcessor(sizeX, sizeY);
+        for (int y = 0; y < sizeY; y++)
+        {
+            for (int x = 0; x < sizeX; x++)
+            {
+                int nearest = 0;
+                int minDist = Integer.MAX_VALUE;
+                for (int i = 0; i < germCount; i++)
+                {
+                    int dx = x - germX[i];
+                    int dy = y - germY[i];
+                    int dist = dx * dx + dy * dy;
+                    if (dist < minDist)
+                    {
+                        minDist = dist;
+                        nearest = i;
+                    }
+                }
+                array.set(x, y, (nearest * 7) % labelCount);
+            }
+        }
+        return array;
+    }
+    
+    /**
+     * Creates a noise image and a Voronoi image for each of the sizes
+     * within {@link #SIZES}.
+     * 
+     * @return a list of random label images
+     */
+    static final ArrayList<ImageProcessor> createRandomImages()
+    {
+        ArrayList<ImageProcessor> images = new ArrayList<ImageProcessor>();
+        long seed = 0;
+        for (int[] size : SIZES)
+        {
+            images.add(createNoise(size[0], size[1], 4, seed++));
+            images.add(createVoronoi(size[0], size[1], 12, seed++));
+        }
+        return images;
+    }
+    
+    /**
+     * Checks that two sets of boundaries contain the same labels, and the
+     * same polygons in the same order for each label.
+     * 
+     * @param expected
+     *            the expected boundaries
+     * @param boundaries
+     *            the boundaries to check
+     */
+    static final void assertSameBoundaries(Map<Integer, ? extends ArrayList<Polygon2D>> expected, Map<Integer, ? extends ArrayList<Polygon2D>> boundaries)
+    {
+        assertEquals(expected.keySet(), boundaries.keySet());
+        for (int label : expected.keySet())
+        {
+            assertSamePolygons(expected.get(label), boundaries.get(label));
+        }
+    }
+    
+    /**
+     * Checks that two lists contain the same polygons, in the same order.
+     * 
+     * @param polygons1
+     *            the expected polygons
+     * @param polygons2
+     *            the polygons to check
+     */
+    static final void assertSamePolygons(ArrayList<Polygon2D> polygons1, ArrayList<Polygon2D> polygons2)
+    {
+        assertEquals(polygons1.size(), polygons2.size());
+        for (int i = 0; i < polygons1.size(); i++)
+        {
+            assertSamePolygon(polygons1.get(i), polygons2.get(i));
+        }
+    }
+    
+    /**
+     * Checks that two polygons have the same vertices, in the same order.
+     * 
+     * @param poly1
+     *            the expected polygon
+     * @param poly2
+     *            the polygon to check
+     */
+    static final void assertSamePolygon(Polygon2D poly1, Polygon2D poly2)
+    {
+        assertEquals(poly1.vertexNumber(), poly2.vertexNumber());
+        for (int i = 0; i < poly1.vertexNumber(); i++)
+        {
+            assertEquals(poly1.getVertex(i).getX(), poly2.getVertex(i).getX(), 1e-10);
+            assertEquals(poly1.getVertex(i).getY(), poly2.getVertex(i).getY(), 1e-10);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.awt.Rectangle;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import ij.process.ByteProcessor;
+import ij.process.ShortProcessor;
+import inra.ijpb.data.image.ImageUtils;
+
+/**
+ * @author dlegland
+ *
+ */
+public class LabelIndexTest
+{
+    /**
+     * Test method for {@link net.ijt.labels.LabelIndex#getBounds(int)}.
+     */
+    @Test
+    public final void test_getBounds()
+    {
+        ByteProcessor array = new ByteProcessor(10, 8);
+        ImageUtils.fillRect(array, 1, 2, 3, 4, 7);
+        ImageUtils.fillRect(array, 5, 1, 4, 2, 3);
+        array.set(9, 7, 3);
+        
+        LabelIndex index = new LabelIndex(array);
+        
+        assertEquals(2, index.size());
+        assertEquals(3, index.getLabels()[0]);
+        assertEquals(7, index.getLabels()[1]);
+        assertEquals(new Rectangle(1, 2, 3, 4), index.getBounds(7));
+        assertEquals(new Rectangle(5, 1, 5, 7), index.getBounds(3));
+        assertNull(index.getBounds(0));
+        assertNull(index.getBounds(4));
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.LabelIndex#update(LabelSource, Rectangle)}.
+     */
+    @Test
+    public final void test_update()
+    {
+        ByteProcessor array = new ByteProcessor(10, 8);
+        ImageUtils.fillRect(array, 1, 2, 3, 4, 7);
+        LabelIndex index = new LabelIndex(array);
+        
+        // extend label 7, and add label 5
+        ImageUtils.fillRect(array, 4, 1, 2, 2, 7);
+        array.set(8, 6, 5);
+        index.update(new ImageProcessorLabelSource(array), new Rectangle(4, 1, 5, 6));
+        
+        assertEquals(2, index.size());
+        assertEquals(5, index.getLabels()[0]);
+        assertEquals(new Rectangle(1, 1, 5, 5), index.getBounds(7));
+        assertEquals(new Rectangle(8, 6, 1, 1), index.getBounds(5));
+        
+        int[] labels = index.labelsIntersecting(new Rectangle(6, 4, 3, 3));
+        assertEquals(1, labels.length);
+        assertEquals(5, labels[0]);
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.LabelIndex#LabelIndex(LabelSource)}.
+     */
+    @Test
+    public final void test_create_manyLabels()
+    {
+        // enough labels for the table of labels to grow several times
+        ShortProcessor array = LabelImages.createNoise(97, 64, 3000, 42);
+        LabelIndex index = new LabelIndex(array);
+        
+        // compare with the bounds computed pixel by pixel
+        Map<Integer, Rectangle> expected = new HashMap<>();
+        for (int y = 0; y < array.getHeight(); y++)
+        {
+            for (int x = 0; x < array.getWidth(); x++)
+            {
+                int label = array.get(x, y);
+                if (label == 0)
+                {
+                    continue;
+                }
+                Rectangle pixel = new Rectangle(x, y, 1, 1);
+                expected.merge(label, pixel, (r1, r2) -> r1.union(r2));
+            }
+        }
+        
+        assertEquals(expected.size(), index.size());
+        for (int label : expected.keySet())
+        {
+            assertEquals(expected.get(label), index.getBounds(label));
+        }
+    }
+}
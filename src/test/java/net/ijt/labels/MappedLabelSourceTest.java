@@ -0,0 +1,348 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import static net.ijt.labels.LabelImages.assertSameBoundaries;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Test;
+
+import ij.process.ShortProcessor;
+import inra.ijpb.data.image.ImageUtils;
+import inra.ijpb.geometry.Polygon2D;
+import net.ijt.labels.BoundaryTracker.VertexLocation;
+import net.ijt.labels.MappedLabelSource.PixelType;
+
+/**
+ * @author dlegland
+ *
+ */
+public class MappedLabelSourceTest
+{
+    /**
+     * Test method for {@link net.ijt.labels.MappedLabelSource#openRaw(java.io.File, int, int, net.ijt.labels.MappedLabelSource.PixelType, java.nio.ByteOrder, long)}.
+     * @throws IOException 
+     */
+    @Test
+    public final void test_openRaw_uint16() throws IOException
+    {
+        ShortProcessor array = createLabelImage();
+        
+        // write labels after a header of 10 bytes
+        ByteBuffer buffer = ByteBuffer.allocate(10 + 2 * 10 * 10).order(ByteOrder.BIG_ENDIAN);
+        buffer.position(10);
+        for (int y = 0; y < 10; y++)
+        {
+            for (int x = 0; x < 10; x++)
+            {
+                buffer.putShort((short) array.get(x, y));
+            }
+        }
+        File file = writeTempFile(buffer.array());
+        
+        MappedLabelSource source = MappedLabelSource.openRaw(file, 10, 10, PixelType.UINT16, ByteOrder.BIG_ENDIAN, 10);
+        assertSameLabels(array, source);
+        assertSameTrackedBoundaries(array, source);
+        file.delete();
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.MappedLabelSource#openRaw(File, int, int, PixelType, ByteOrder, long)}.
+     * @throws IOException 
+     */
+    @Test
+    public final void test_openRaw_truncatedFile() throws IOException
+    {
+        // the last label is missing
+        File file = writeTempFile(new byte[10 + 2 * 10 * 10 - 2]);
+        
+        boolean failed = false;
+        try
+        {
+            MappedLabelSource.openRaw(file, 10, 10, PixelType.UINT16, ByteOrder.BIG_ENDIAN, 10);
+        }
+        catch (IOException ex)
+        {
+            failed = true;
+        }
+        assertTrue(failed);
+        
+        // a TIFF file whose last strip is missing
+        byte[] data = createTiff(createLabelImage(), 10, 3);
+        File file2 = writeTempFile(Arrays.copyOf(data, data.length - 10 * 3 * 2));
+        failed = false;
+        try
+        {
+            MappedLabelSource.openTiff(file2);
+        }
+        catch (IOException ex)
+        {
+            failed = true;
+        }
+        assertTrue(failed);
+        file.delete();
+        file2.delete();
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.MappedLabelSource#getLabel(int, int)}.
+     * @throws IOException 
+     */
+    @Test
+    public final void test_getLabel_smallChunks() throws IOException
+    {
+        ShortProcessor array = createLabelImage();
+        
+        ByteBuffer buffer = ByteBuffer.allocate(4 * 10 * 10).order(ByteOrder.LITTLE_ENDIAN);
+        for (int y = 0; y < 10; y++)
+        {
+            for (int x = 0; x < 10; x++)
+            {
+                buffer.putInt(array.get(x, y));
+            }
+        }
+        File file = writeTempFile(buffer.array());
+        
+        // use chunks that do not contain a whole number of rows
+        MappedLabelSource source = new MappedLabelSource(file, 10, 10, PixelType.INT32, ByteOrder.LITTLE_ENDIAN,
+                10, 10, new long[] { 0 }, 26);
+        assertSameLabels(array, source);
+        assertSameTrackedBoundaries(array, source);
+        file.delete();
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.MappedLabelSource#openTiff(java.io.File)}.
+     * @throws IOException 
+     */
+    @Test
+    public final void test_openTiff_strips() throws IOException
+    {
+        ShortProcessor array = createLabelImage();
+        File file = writeTempFile(createTiff(array, 10, 3));
+        
+        MappedLabelSource source = MappedLabelSource.openTiff(file);
+        assertEquals(10, source.getWidth());
+        assertEquals(10, source.getHeight());
+        assertEquals(PixelType.UINT16, source.getPixelType());
+        assertSameLabels(array, source);
+        assertSameTrackedBoundaries(array, source);
+        file.delete();
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.MappedLabelSource#openTiff(java.io.File)}.
+     * @throws IOException 
+     */
+    @Test
+    public final void test_openTiff_tiles() throws IOException
+    {
+        ShortProcessor array = createLabelImage();
+        File file = writeTempFile(createTiff(array, 4, 4));
+        
+        MappedLabelSource source = MappedLabelSource.openTiff(file);
+        assertSameLabels(array, source);
+        assertSameTrackedBoundaries(array, source);
+        file.delete();
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.MappedLabelSource#openTiff(java.io.File)}.
+     * @throws IOException 
+     */
+    @Test
+    public final void test_openTiff_uint32() throws IOException
+    {
+        // labels above Integer.MAX_VALUE, stored as unsigned 32-bit integers
+        long label1 = 3000000000L;
+        long label2 = 0xFFFFFFFFL;
+        long[] labels = new long[6 * 4];
+        for (int y = 1; y < 3; y++)
+        {
+            labels[y * 6 + 1] = label1;
+            labels[y * 6 + 2] = label1;
+            labels[y * 6 + 4] = label2;
+            labels[y * 6 + 5] = 7;
+        }
+        File file = writeTempFile(createTiffUint32(labels, 6, 4));
+        
+        // labels wrap around to negative values, and regions remain distinct
+        MappedLabelSource source = MappedLabelSource.openTiff(file);
+        assertEquals(PixelType.INT32, source.getPixelType());
+        assertEquals(-1294967296, source.getLabel(1, 1));
+        assertEquals(-1, source.getLabel(4, 2));
+        assertEquals(7, source.getLabel(5, 2));
+        
+        Map<Integer, ArrayList<Polygon2D>> boundaries = new BoundaryTracker(4, VertexLocation.CORNER).process(source);
+        assertEquals(3, boundaries.size());
+        assertEquals(8, boundaries.get(-1294967296).get(0).vertexNumber());
+        assertEquals(6, boundaries.get(-1).get(0).vertexNumber());
+        assertEquals(6, boundaries.get(7).get(0).vertexNumber());
+        file.delete();
+    }
+    
+    static final ShortProcessor createLabelImage()
+    {
+        ShortProcessor array = new ShortProcessor(10, 10);
+        ImageUtils.fillRect(array, 0, 0, 10, 10, 2);
+        ImageUtils.fillRect(array, 2, 1, 6, 7, 3);
+        ImageUtils.fillRect(array, 3, 3, 2, 3, 0);
+        ImageUtils.fillRect(array, 5, 2, 1, 7, 4000);
+        ImageUtils.fillRect(array, 0, 8, 3, 2, 5);
+        array.set(7, 8, 3);
+        array.set(8, 9, 3);
+        return array;
+    }
+    
+    /**
+     * Creates the content of a little-endian TIFF file containing 16-bit
+     * labels, organized in strips if the block width equals the image width,
+     * and in tiles otherwise.
+     */
+    static final byte[] createTiff(ShortProcessor array, int blockWidth, int blockHeight)
+    {
+        int sizeX = array.getWidth();
+        int sizeY = array.getHeight();
+        boolean tiled = blockWidth != sizeX;
+        int blocksAcross = (sizeX + blockWidth - 1) / blockWidth;
+        int blocksDown = (sizeY + blockHeight - 1) / blockHeight;
+        int blockCount = blocksAcross * blocksDown;
+        int blockBytes = blockWidth * blockHeight * 2;
+        
+        int entryCount = tiled ? 8 : 7;
+        int ifdOffset = 8;
+        int offsetsPos = ifdOffset + 2 + 12 * entryCount + 4;
+        int dataPos = offsetsPos + 4 * blockCount;
+        ByteBuffer buffer = ByteBuffer.allocate(dataPos + blockCount * blockBytes).order(ByteOrder.LITTLE_ENDIAN);
+        
+        // header
+        buffer.putShort((short) 0x4949).putShort((short) 42).putInt(ifdOffset);
+        
+        // image file directory
+        buffer.putShort((short) entryCount);
+        putEntry(buffer, 256, 3, 1, sizeX);
+        putEntry(buffer, 257, 3, 1, sizeY);
+        putEntry(buffer, 258, 3, 1, 16);
+        putEntry(buffer, 259, 3, 1, 1);
+        if (tiled)
+        {
+            putEntry(buffer, 322, 3, 1, blockWidth);
+            putEntry(buffer, 323, 3, 1, blockHeight);
+            putEntry(buffer, 324, 4, blockCount, offsetsPos);
+        }
+        else
+        {
+            putEntry(buffer, 273, 4, blockCount, offsetsPos);
+            putEntry(buffer, 277, 3, 1, 1);
+        }
+        putEntry(buffer, tiled ? 277 : 278, 3, 1, tiled ? 1 : blockHeight);
+        buffer.putInt(0);
+        
+        // block offsets and block data
+        for (int i = 0; i < blockCount; i++)
+        {
+            buffer.putInt(dataPos + i * blockBytes);
+        }
+        for (int by = 0; by < blocksDown; by++)
+        {
+            for (int bx = 0; bx < blocksAcross; bx++)
+            {
+                for (int y = by * blockHeight; y < (by + 1) * blockHeight; y++)
+                {
+                    for (int x = bx * blockWidth; x < (bx + 1) * blockWidth; x++)
+                    {
+                        boolean inside = x < sizeX && y < sizeY;
+                        buffer.putShort((short) (inside ? array.get(x, y) : 0));
+                    }
+                }
+            }
+        }
+        return buffer.array();
+    }
+    
+    /**
+     * Creates the content of a little-endian TIFF file containing unsigned
+     * 32-bit labels within a single strip.
+     */
+    static final byte[] createTiffUint32(long[] labels, int sizeX, int sizeY)
+    {
+        int entryCount = 8;
+        int ifdOffset = 8;
+        int dataPos = ifdOffset + 2 + 12 * entryCount + 4;
+        ByteBuffer buffer = ByteBuffer.allocate(dataPos + 4 * sizeX * sizeY).order(ByteOrder.LITTLE_ENDIAN);
+        
+        buffer.putShort((short) 0x4949).putShort((short) 42).putInt(ifdOffset);
+        buffer.putShort((short) entryCount);
+        putEntry(buffer, 256, 3, 1, sizeX);
+        putEntry(buffer, 257, 3, 1, sizeY);
+        putEntry(buffer, 258, 3, 1, 32);
+        putEntry(buffer, 259, 3, 1, 1);
+        putEntry(buffer, 273, 4, 1, dataPos);
+        putEntry(buffer, 277, 3, 1, 1);
+        putEntry(buffer, 278, 3, 1, sizeY);
+        putEntry(buffer, 339, 3, 1, 1);
+        buffer.putInt(0);
+        
+        for (long label : labels)
+        {
+            buffer.putInt((int) label);
+        }
+        return buffer.array();
+    }
+    
+    private static final void putEntry(ByteBuffer buffer, int tag, int type, int count, int value)
+    {
+        buffer.putShort((short) tag).putShort((short) type).putInt(count);
+        if (type == 3)
+        {
+            buffer.putShort((short) value).putShort((short) 0);
+        }
+        else
+        {
+            buffer.putInt(value);
+        }
+    }
+    
+    private static final File writeTempFile(byte[] data) throws IOException
+    {
+        File file = File.createTempFile("labels", ".tif");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file))
+        {
+            out.write(data);
+        }
+        return file;
+    }
+    
+    private static final void assertSameLabels(ShortProcessor array, LabelSource source)
+    {
+        int[] row = new int[array.getWidth()];
+        for (int y = 0; y < array.getHeight(); y++)
+        {
+            source.readRow(y, row);
+            for (int x = 0; x < array.getWidth(); x++)
+            {
+                assertEquals(array.get(x, y), source.getLabel(x, y));
+                assertEquals(array.get(x, y), row[x]);
+            }
+        }
+    }
+    
+    private static final void assertSameTrackedBoundaries(ShortProcessor array, LabelSource source)
+    {
+        BoundaryTracker tracker = new BoundaryTracker(4, VertexLocation.EDGE_CENTER);
+        Map<Integer,ArrayList<Polygon2D>> expected = tracker.process(array);
+        assertSameBoundaries(expected, tracker.process(source));
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import static net.ijt.labels.LabelImages.assertSameBoundaries;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+import org.junit.Test;
+
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import inra.ijpb.geometry.Polygon2D;
+import net.ijt.labels.BoundaryTracker.VertexLocation;
+
+/**
+ * @author dlegland
+ *
+ */
+public class PerLabelBoundaryTrackerTest
+{
+    /**
+     * Test method for {@link net.ijt.labels.PerLabelBoundaryTracker#process(ij.process.ImageProcessor)}.
+     */
+    @Test
+    public final void test_process_squareWithHole()
+    {
+        ByteProcessor array = LabelImages.createSquareWithHole();
+        
+        PerLabelBoundaryTracker tracker = new PerLabelBoundaryTracker(4, VertexLocation.EDGE_CENTER);
+        Map<Integer,ArrayList<Polygon2D>> boundaries = tracker.process(array);
+        
+        assertFalse(boundaries.isEmpty());
+        assertEquals(1, boundaries.size());
+        
+        ArrayList<Polygon2D> polygons = boundaries.get(255);
+        assertEquals(2, polygons.size());
+        
+        assertEquals(12, polygons.get(0).vertexNumber());
+        assertEquals(4, polygons.get(1).vertexNumber());
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.PerLabelBoundaryTracker#process(ij.process.ImageProcessor)}.
+     */
+    @Test
+    public final void test_process_sameAsSequential()
+    {
+        ByteProcessor array = LabelImages.createAdjacentRegions();
+        
+        for (int conn : new int[] {4, 8})
+        {
+            Map<Integer,ArrayList<Polygon2D>> expected = new BoundaryTracker(conn, VertexLocation.CORNER).process(array);
+            PerLabelBoundaryTracker tracker = new PerLabelBoundaryTracker(conn, VertexLocation.CORNER);
+            assertSameBoundaries(expected, tracker.process(array));
+        }
+    }
+    
+    /**
+     * Checks that the boundaries of each label are returned in the order of
+     * their start positions on random images, with labels made of several
+     * disconnected parts and holes.
+     */
+    @Test
+    public final void test_process_randomImages()
+    {
+        for (ImageProcessor array : LabelImages.createRandomImages())
+        {
+            for (int conn : new int[] {4, 8})
+            {
+                for (VertexLocation loc : VertexLocation.values())
+                {
+                    Map<Integer,ArrayList<Polygon2D>> expected = new BoundaryTracker(conn, loc).process(array);
+                    PerLabelBoundaryTracker tracker = new PerLabelBoundaryTracker(conn, loc);
+                    assertSameBoundaries(expected, tracker.process(array));
+                }
+            }
+        }
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.PerLabelBoundaryTracker#setProgressMonitor(ProgressMonitor)}.
+     */
+    @Test
+    public final void test_setProgressMonitor()
+    {
+        ImageProcessor array = LabelImages.createNoise(64, 64, 50, 7);
+        PerLabelBoundaryTracker tracker = new PerLabelBoundaryTracker(4, VertexLocation.CORNER);
+        
+        // cancel while the boundaries of the labels are tracked, once all
+        // the rows have been scanned
+        tracker.setProgressMonitor((rowsScanned, rowCount, boundaryCount, vertexCount) -> {
+            assertTrue(boundaryCount == 0 || rowsScanned == rowCount);
+            return boundaryCount == 0;
+        });
+        boolean canceled = false;
+        try
+        {
+            tracker.process(array);
+        }
+        catch (CancellationException ex)
+        {
+            canceled = true;
+        }
+        assertTrue(canceled);
+    }
+}
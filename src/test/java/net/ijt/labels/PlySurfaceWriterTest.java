@@ -0,0 +1,88 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+import ij.ImageStack;
+
+/**
+ * @author dlegland
+ *
+ */
+public class PlySurfaceWriterTest
+{
+    /**
+     * Test method for {@link net.ijt.labels.PlySurfaceWriter#setWeldVertices(boolean)}.
+     * 
+     * @throws IOException
+     *             if the files could not be written
+     */
+    @Test
+    public final void test_writeSurfaces_weld() throws IOException
+    {
+        // a 2x1x3 box: 2*(2 + 3 + 6) = 22 faces, 2*(3*4) = 24 vertices
+        ImageStack stack = VoxelSurfaceExtractorTest.createStack(4, 3, 5);
+        VoxelSurfaceExtractorTest.fillBox(stack, 1, 1, 1, 2, 1, 3, 5);
+        
+        File directory = Files.createTempDirectory("surfaces").toFile();
+        try (PlySurfaceWriter writer = new PlySurfaceWriter(directory, "r%03d"))
+        {
+            writer.setBufferLimit(100);
+            new VoxelSurfaceExtractor().process(stack, writer);
+        }
+        
+        File file = new File(directory, "r005.ply");
+        String header = readHeader(file);
+        assertTrue(header.contains("element vertex 24\n"));
+        assertTrue(header.contains("element face 22\n"));
+        assertEquals(header.length() + 24 * 12 + 22 * 17, file.length());
+        assertEquals(1, directory.listFiles().length);
+        
+        file.delete();
+        directory.delete();
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.PlySurfaceWriter#setWeldVertices(boolean)}.
+     * 
+     * @throws IOException
+     *             if the files could not be written
+     */
+    @Test
+    public final void test_writeSurfaces_noWeld() throws IOException
+    {
+        ImageStack stack = VoxelSurfaceExtractorTest.createStack(4, 3, 5);
+        VoxelSurfaceExtractorTest.fillBox(stack, 1, 1, 1, 2, 1, 3, 5);
+        
+        File directory = Files.createTempDirectory("surfaces").toFile();
+        try (PlySurfaceWriter writer = new PlySurfaceWriter(directory, "r%03d"))
+        {
+            writer.setWeldVertices(false);
+            new VoxelSurfaceExtractor().process(stack, writer);
+        }
+        
+        File file = new File(directory, "r005.ply");
+        String header = readHeader(file);
+        assertTrue(header.contains("element vertex 88\n"));
+        assertTrue(header.contains("element face 22\n"));
+        
+        file.delete();
+        directory.delete();
+    }
+    
+    private static final String readHeader(File file) throws IOException
+    {
+        String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.ISO_8859_1);
+        return text.substring(0, text.indexOf("end_header\n") + "end_header\n".length());
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.Test;
+
+import ij.gui.Roi;
+import ij.process.ByteProcessor;
+import inra.ijpb.data.image.ImageUtils;
+import inra.ijpb.geometry.Polygon2D;
+
+/**
+ * @author dlegland
+ *
+ */
+public class PolygonRoisTest
+{
+    /**
+     * Test method for {@link net.ijt.labels.PolygonRois#createRois(java.util.Map, java.lang.String)}.
+     */
+    @Test
+    public final void test_createRois()
+    {
+        Roi[] rois = PolygonRois.createRois(createBoundaries(), "r%03d");
+        
+        assertEquals(4, rois.length);
+        assertEquals("r003", rois[0].getName());
+        assertEquals("r012-0", rois[1].getName());
+        assertEquals("r012-1", rois[2].getName());
+        assertEquals("r020", rois[3].getName());
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.PolygonRois#saveRoiSet(ij.gui.Roi[], java.io.File)}.
+     * 
+     * @throws IOException
+     *             if the file could not be written
+     */
+    @Test
+    public final void test_saveRoiSet() throws IOException
+    {
+        Roi[] rois = PolygonRois.createRois(createBoundaries(), "r%03d");
+        File file = File.createTempFile("RoiSet", ".zip");
+        file.deleteOnExit();
+        
+        PolygonRois.saveRoiSet(rois, file);
+        
+        try (ZipFile zip = new ZipFile(file))
+        {
+            assertEquals(4, zip.size());
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            assertEquals("r003.roi", entries.nextElement().getName());
+            assertEquals("r012-0.roi", entries.nextElement().getName());
+        }
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.PolygonRois#saveRoiSet(ij.gui.Roi[], java.io.File)}.
+     * 
+     * @throws IOException
+     *             if the file could not be written
+     */
+    @Test
+    public final void test_saveRoiSet_duplicateNames() throws IOException
+    {
+        // a name pattern without the label creates duplicate names
+        Roi[] rois = PolygonRois.createRois(createBoundaries(), "roi");
+        File file = File.createTempFile("RoiSet", ".zip");
+        file.deleteOnExit();
+        
+        PolygonRois.saveRoiSet(rois, file);
+        
+        try (ZipFile zip = new ZipFile(file))
+        {
+            assertEquals(4, zip.size());
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            assertEquals("roi.roi", entries.nextElement().getName());
+            assertEquals("roi-0.roi", entries.nextElement().getName());
+            assertEquals("roi-1.roi", entries.nextElement().getName());
+            assertEquals("roi-2.roi", entries.nextElement().getName());
+        }
+    }
+    
+    private static final Map<Integer, ArrayList<Polygon2D>> createBoundaries()
+    {
+        // label 12 has two disconnected parts
+        ByteProcessor array = new ByteProcessor(10, 8);
+        ImageUtils.fillRect(array, 1, 1, 3, 3, 20);
+        ImageUtils.fillRect(array, 5, 1, 2, 2, 12);
+        ImageUtils.fillRect(array, 5, 5, 2, 2, 12);
+        ImageUtils.fillRect(array, 1, 5, 2, 2, 3);
+        return new BoundaryTracker(4).process(array);
+    }
+}
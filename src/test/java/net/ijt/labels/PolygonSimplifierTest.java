@@ -0,0 +1,141 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import ij.process.ByteProcessor;
+import inra.ijpb.data.image.ImageUtils;
+import inra.ijpb.geometry.Polygon2D;
+import net.ijt.labels.BoundaryTracker.VertexLocation;
+import net.ijt.labels.PolygonSimplifier.Method;
+
+/**
+ * @author dlegland
+ *
+ */
+public class PolygonSimplifierTest
+{
+    /**
+     * Test method for {@link net.ijt.labels.PolygonSimplifier#simplify(double[], double[], int, boolean[])}.
+     */
+    @Test
+    public final void test_simplify_rectangle()
+    {
+        // a 3-by-2 rectangle, with one vertex on each unit edge
+        double[] xs = new double[] { 0, 0, 0, 1, 2, 3, 3, 3, 2, 1 };
+        double[] ys = new double[] { 0, 1, 2, 2, 2, 2, 1, 0, 0, 0 };
+        
+        for (Method method : Method.values())
+        {
+            double[] xs2 = xs.clone();
+            double[] ys2 = ys.clone();
+            PolygonSimplifier simplifier = new PolygonSimplifier(0.1, method);
+            int n = simplifier.simplify(xs2, ys2, xs.length, null);
+            
+            assertEquals(4, n);
+            assertEquals(0, xs2[0], 1e-10);
+            assertEquals(0, ys2[0], 1e-10);
+            assertEquals(3, xs2[2], 1e-10);
+            assertEquals(2, ys2[2], 1e-10);
+        }
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.PolygonSimplifier#simplify(double[], double[], int, boolean[])}.
+     */
+    @Test
+    public final void test_simplify_keepsTriangle()
+    {
+        ByteProcessor array = new ByteProcessor(6, 6);
+        ImageUtils.fillRect(array, 2, 2, 2, 2, 1);
+        
+        BoundaryTracker tracker = new BoundaryTracker(4, VertexLocation.CORNER);
+        tracker.setSimplifier(new PolygonSimplifier(10.0));
+        Polygon2D poly = tracker.process(array).get(1).get(0);
+        
+        assertTrue(poly.vertexNumber() >= 3);
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.BoundaryTracker#setSimplifier(net.ijt.labels.PolygonSimplifier)}.
+     */
+    @Test
+    public final void test_process_sharedBoundaries()
+    {
+        // two regions separated by a staircase boundary
+        ByteProcessor array = new ByteProcessor(30, 20);
+        for (int y = 0; y < 20; y++)
+        {
+            int x0 = 5 + (y * 2) / 3;
+            ImageUtils.fillRect(array, 0, y, x0, 1, 1);
+            ImageUtils.fillRect(array, x0, y, 30 - x0, 1, 2);
+        }
+        
+        for (Method method : Method.values())
+        {
+            for (VertexLocation loc : new VertexLocation[] { VertexLocation.CORNER, VertexLocation.EDGE_CENTER })
+            {
+                BoundaryTracker tracker = new BoundaryTracker(4, loc);
+                tracker.setSimplifier(new PolygonSimplifier(1.0, method));
+                Map<Integer, ArrayList<Polygon2D>> boundaries = tracker.process(array);
+                
+                Polygon2D poly1 = boundaries.get(1).get(0);
+                Polygon2D poly2 = boundaries.get(2).get(0);
+                assertTrue(poly1.vertexNumber() < 20);
+                
+                // vertices within the image are located on the shared boundary
+                assertEquals(innerVertices(poly1, 30, 20), innerVertices(poly2, 30, 20));
+            }
+        }
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.BoundaryTracker#setSimplifier(net.ijt.labels.PolygonSimplifier)}.
+     */
+    @Test
+    public final void test_process_islandTouchingJunction()
+    {
+        // a single pixel region, touching a diagonal pixel of a third label
+        ByteProcessor array = new ByteProcessor(8, 8);
+        ImageUtils.fillRect(array, 0, 0, 8, 8, 1);
+        array.set(4, 4, 2);
+        array.set(3, 3, 3);
+        
+        BoundaryTracker tracker = new BoundaryTracker(4, VertexLocation.CORNER);
+        tracker.setSimplifier(new PolygonSimplifier(2.0));
+        Map<Integer, ArrayList<Polygon2D>> boundaries = tracker.process(array);
+        
+        // the boundaries of the surrounding region still contain the islands
+        TreeSet<String> vertices = new TreeSet<String>();
+        for (Polygon2D poly : boundaries.get(1))
+        {
+            vertices.addAll(innerVertices(poly, 8, 8));
+        }
+        assertTrue(vertices.containsAll(innerVertices(boundaries.get(2).get(0), 8, 8)));
+        assertTrue(vertices.containsAll(innerVertices(boundaries.get(3).get(0), 8, 8)));
+    }
+    
+    private static final TreeSet<String> innerVertices(Polygon2D poly, int sizeX, int sizeY)
+    {
+        TreeSet<String> vertices = new TreeSet<String>();
+        for (int i = 0; i < poly.vertexNumber(); i++)
+        {
+            double x = poly.getVertex(i).getX();
+            double y = poly.getVertex(i).getY();
+            if (x > 0.5 && y > 0.5 && x < sizeX - 0.5 && y < sizeY - 0.5)
+            {
+                vertices.add(x + "," + y);
+            }
+        }
+        return vertices;
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import static net.ijt.labels.LabelImages.assertSamePolygons;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.Test;
+
+import ij.gui.Roi;
+import ij.process.ByteProcessor;
+import inra.ijpb.data.image.ImageUtils;
+import inra.ijpb.geometry.Polygon2D;
+import net.ijt.labels.BoundaryTracker.VertexLocation;
+
+/**
+ * @author dlegland
+ *
+ */
+public class RegionBoundariesTest
+{
+    /**
+     * Test method for {@link net.ijt.labels.BoundaryTracker#processBoundaries(ij.process.ImageProcessor)}.
+     */
+    @Test
+    public final void test_processBoundaries()
+    {
+        ByteProcessor array = createLabelImage();
+        BoundaryTracker tracker = new BoundaryTracker(4, VertexLocation.CORNER);
+        Map<Integer, ArrayList<Polygon2D>> expected = tracker.process(array);
+        
+        RegionBoundaries boundaries = tracker.processBoundaries(array);
+        
+        assertArrayEquals(new int[] {3, 4, 12, 20}, boundaries.getLabels());
+        assertEquals(6, boundaries.polygonNumber());
+        assertEquals(2, boundaries.polygonNumber(boundaries.indexOf(12)));
+        assertTrue(boundaries.indexOf(5) < 0);
+        for (int label : expected.keySet())
+        {
+            assertSamePolygons(expected.get(label), boundaries.getPolygons(label));
+        }
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.RegionBoundaries#asMap()}.
+     */
+    @Test
+    public final void test_asMap()
+    {
+        ByteProcessor array = createLabelImage();
+        BoundaryTracker tracker = new BoundaryTracker(8, VertexLocation.EDGE_CENTER);
+        Map<Integer, ArrayList<Polygon2D>> expected = tracker.process(array);
+        
+        Map<Integer, ArrayList<Polygon2D>> map = tracker.processBoundaries(array).asMap();
+        
+        assertEquals(expected.size(), map.size());
+        assertTrue(map.containsKey(20));
+        assertFalse(map.containsKey(5));
+        assertNull(map.get(5));
+        
+        // entries are iterated by increasing label
+        Iterator<Integer> iter = map.keySet().iterator();
+        assertEquals(3, (int) iter.next());
+        assertEquals(4, (int) iter.next());
+        assertEquals(12, (int) iter.next());
+        assertEquals(20, (int) iter.next());
+        assertFalse(iter.hasNext());
+        for (Map.Entry<Integer, ArrayList<Polygon2D>> entry : map.entrySet())
+        {
+            assertSamePolygons(expected.get(entry.getKey()), entry.getValue());
+        }
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.RegionBoundaries#fromMap(java.util.Map)}.
+     */
+    @Test
+    public final void test_fromMap()
+    {
+        ByteProcessor array = createLabelImage();
+        Map<Integer, ArrayList<Polygon2D>> expected = new BoundaryTracker(4).process(array);
+        
+        RegionBoundaries boundaries = RegionBoundaries.fromMap(expected);
+        
+        assertEquals(4, boundaries.size());
+        for (int label : expected.keySet())
+        {
+            assertSamePolygons(expected.get(label), boundaries.getPolygons(label));
+        }
+        
+        // ROIs are the same as the ones created from the map
+        Roi[] rois1 = PolygonRois.createRois(expected, "r%03d");
+        Roi[] rois2 = PolygonRois.createRois(boundaries, "r%03d");
+        assertEquals(rois1.length, rois2.length);
+        for (int i = 0; i < rois1.length; i++)
+        {
+            assertEquals(rois1[i].getName(), rois2[i].getName());
+        }
+    }
+    
+    private static final ByteProcessor createLabelImage()
+    {
+        // label 12 has two disconnected parts, label 4 has a hole
+        ByteProcessor array = new ByteProcessor(12, 10);
+        ImageUtils.fillRect(array, 5, 1, 2, 2, 12);
+        ImageUtils.fillRect(array, 5, 5, 2, 2, 12);
+        ImageUtils.fillRect(array, 1, 5, 3, 3, 3);
+        ImageUtils.fillRect(array, 8, 1, 4, 4, 20);
+        ImageUtils.fillRect(array, 1, 1, 2, 2, 4);
+        array.set(9, 2, 0);
+        return array;
+    }
+}
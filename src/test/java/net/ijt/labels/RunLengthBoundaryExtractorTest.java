@@ -0,0 +1,130 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import static net.ijt.labels.LabelImages.assertSameBoundaries;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+import org.junit.Test;
+
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import inra.ijpb.geometry.Polygon2D;
+import net.ijt.labels.BoundaryTracker.VertexLocation;
+
+/**
+ * @author dlegland
+ *
+ */
+public class RunLengthBoundaryExtractorTest
+{
+    /**
+     * Test method for {@link net.ijt.labels.RunLengthBoundaryExtractor#process(ij.process.ImageProcessor)}.
+     */
+    @Test
+    public final void test_process_squareWithHole()
+    {
+        ByteProcessor array = LabelImages.createSquareWithHole();
+        
+        RunLengthBoundaryExtractor extractor = new RunLengthBoundaryExtractor(4, VertexLocation.CORNER);
+        Map<Integer,ArrayList<Polygon2D>> boundaries = extractor.process(array);
+        
+        assertFalse(boundaries.isEmpty());
+        assertEquals(1, boundaries.size());
+        
+        ArrayList<Polygon2D> polygons = boundaries.get(255);
+        assertEquals(2, polygons.size());
+        
+        assertEquals(12, polygons.get(0).vertexNumber());
+        assertEquals(4, polygons.get(1).vertexNumber());
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.RunLengthBoundaryExtractor#process(ij.process.ImageProcessor)}.
+     */
+    @Test
+    public final void test_process_sameAsSequential()
+    {
+        ByteProcessor array = LabelImages.createAdjacentRegions();
+        
+        for (int conn : new int[] {4, 8})
+        {
+            for (VertexLocation loc : VertexLocation.values())
+            {
+                Map<Integer,ArrayList<Polygon2D>> expected = new BoundaryTracker(conn, loc).process(array);
+                RunLengthBoundaryExtractor extractor = new RunLengthBoundaryExtractor(conn, loc);
+                assertSameBoundaries(expected, extractor.process(array));
+            }
+        }
+    }
+    
+    /**
+     * Checks that the chains of edges are merged into the same boundaries on
+     * random images, with many regions merging and splitting between rows.
+     */
+    @Test
+    public final void test_process_randomImages()
+    {
+        for (ImageProcessor array : LabelImages.createRandomImages())
+        {
+            for (int conn : new int[] {4, 8})
+            {
+                for (VertexLocation loc : VertexLocation.values())
+                {
+                    for (boolean removeCollinear : new boolean[] {false, true})
+                    {
+                        BoundaryTracker reference = new BoundaryTracker(conn, loc);
+                        reference.setRemoveCollinearVertices(removeCollinear);
+                        RunLengthBoundaryExtractor extractor = new RunLengthBoundaryExtractor(conn, loc);
+                        extractor.setRemoveCollinearVertices(removeCollinear);
+                        assertSameBoundaries(reference.process(array), extractor.process(array));
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.RunLengthBoundaryExtractor#setProgressMonitor(ProgressMonitor)}.
+     */
+    @Test
+    public final void test_setProgressMonitor()
+    {
+        ImageProcessor array = LabelImages.createNoise(64, 64, 50, 7);
+        LabelSource source = new ImageProcessorLabelSource(array);
+        RunLengthBoundaryExtractor extractor = new RunLengthBoundaryExtractor(4, VertexLocation.CORNER);
+        extractor.setProgressMonitor((rowsScanned, rowCount, boundaryCount, vertexCount) -> rowsScanned < 20);
+        boolean canceled = false;
+        try
+        {
+            extractor.process(array);
+        }
+        catch (CancellationException ex)
+        {
+            canceled = true;
+        }
+        assertTrue(canceled);
+        
+        // the conversion of chains computed before can be canceled as well
+        List<BoundaryChain> chains = new RunLengthBoundaryExtractor(4, VertexLocation.CORNER).computeChains(source);
+        extractor.setProgressMonitor((rowsScanned, rowCount, boundaryCount, vertexCount) -> false);
+        canceled = false;
+        try
+        {
+            extractor.toPolygons(chains, source);
+        }
+        catch (CancellationException ex)
+        {
+            canceled = true;
+        }
+        assertTrue(canceled);
+    }
+}
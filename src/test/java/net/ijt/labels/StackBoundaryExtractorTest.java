@@ -0,0 +1,142 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CancellationException;
+
+import org.junit.Test;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.gui.Roi;
+import ij.process.ByteProcessor;
+import inra.ijpb.data.image.ImageUtils;
+import net.ijt.labels.BoundaryTracker.VertexLocation;
+
+/**
+ * @author dlegland
+ *
+ */
+public class StackBoundaryExtractorTest
+{
+    /**
+     * Test method for {@link net.ijt.labels.StackBoundaryExtractor#process(ij.ImageStack)}.
+     */
+    @Test
+    public final void test_process()
+    {
+        ImageStack stack = createLabelStack(6);
+        
+        StackBoundaryExtractor extractor = new StackBoundaryExtractor(4, VertexLocation.CORNER);
+        RegionBoundaries[] boundaries = extractor.process(stack);
+        
+        assertEquals(6, boundaries.length);
+        BoundaryTracker tracker = new BoundaryTracker(4, VertexLocation.CORNER);
+        for (int i = 0; i < 6; i++)
+        {
+            RegionBoundaries expected = tracker.processBoundaries(stack.getProcessor(i + 1));
+            assertArrayEquals(expected.getLabels(), boundaries[i].getLabels());
+            assertEquals(expected.polygonNumber(), boundaries[i].polygonNumber());
+        }
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.PolygonRois#createRois(net.ijt.labels.RegionBoundaries[], java.lang.String, ij.ImagePlus)}.
+     */
+    @Test
+    public final void test_createRois_stack()
+    {
+        ImageStack stack = createLabelStack(3);
+        ImagePlus imagePlus = new ImagePlus("labels", stack);
+        RegionBoundaries[] boundaries = new StackBoundaryExtractor().process(stack);
+        
+        Roi[] rois = PolygonRois.createRois(boundaries, "r%03d", imagePlus);
+        
+        // one region in the first slice, two regions in the other slices
+        assertEquals(5, rois.length);
+        assertEquals("0001-r001", rois[0].getName());
+        assertEquals(1, rois[0].getPosition());
+        assertEquals("0003-r004", rois[4].getName());
+        assertEquals(3, rois[4].getPosition());
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.PolygonRois#createRois(net.ijt.labels.RegionBoundaries[], java.lang.String, ij.ImagePlus)}.
+     */
+    @Test
+    public final void test_createRois_hyperStack()
+    {
+        ImageStack stack = createLabelStack(6);
+        ImagePlus imagePlus = new ImagePlus("labels", stack);
+        imagePlus.setDimensions(2, 1, 3);
+        imagePlus.setOpenAsHyperStack(true);
+        RegionBoundaries[] boundaries = new StackBoundaryExtractor().process(stack);
+        
+        Roi[] rois = PolygonRois.createRois(boundaries, "r%03d", imagePlus);
+        
+        // last ROI belongs to the second channel of the third frame
+        Roi roi = rois[rois.length - 1];
+        assertEquals("0006-r007", roi.getName());
+        assertEquals(2, roi.getCPosition());
+        assertEquals(1, roi.getZPosition());
+        assertEquals(3, roi.getTPosition());
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.StackBoundaryExtractor#setProgressMonitor(ProgressMonitor)}.
+     */
+    @Test
+    public final void test_setProgressMonitor()
+    {
+        ImageStack stack = createLabelStack(6);
+        StackBoundaryExtractor extractor = new StackBoundaryExtractor();
+        
+        // the rows of all the slices are counted together
+        int[] rows = new int[2];
+        extractor.setProgressMonitor((rowsScanned, rowCount, boundaryCount, vertexCount) -> {
+            rows[0] = Math.max(rows[0], rowsScanned);
+            rows[1] = rowCount;
+            return true;
+        });
+        extractor.process(stack);
+        assertEquals(48, rows[0]);
+        assertEquals(48, rows[1]);
+        
+        extractor.setProgressMonitor((rowsScanned, rowCount, boundaryCount, vertexCount) -> rowsScanned < 10);
+        boolean canceled = false;
+        try
+        {
+            extractor.process(stack);
+        }
+        catch (CancellationException ex)
+        {
+            canceled = true;
+        }
+        assertTrue(canceled);
+    }
+    
+    /**
+     * Creates a stack whose slice i contains a region with label i, and a
+     * region with label i+1 for all slices but the first one.
+     */
+    private static final ImageStack createLabelStack(int sliceCount)
+    {
+        ImageStack stack = new ImageStack(10, 8);
+        for (int i = 0; i < sliceCount; i++)
+        {
+            ByteProcessor array = new ByteProcessor(10, 8);
+            ImageUtils.fillRect(array, 1, 1, 3, 2 + i, i + 1);
+            if (i > 0)
+            {
+                ImageUtils.fillRect(array, 5, 2, 4, 4, i + 2);
+            }
+            stack.addSlice(array);
+        }
+        return stack;
+    }
+}
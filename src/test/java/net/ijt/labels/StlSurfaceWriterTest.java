@@ -0,0 +1,118 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+import ij.ImageStack;
+
+/**
+ * @author dlegland
+ *
+ */
+public class StlSurfaceWriterTest
+{
+    /**
+     * Test method for {@link net.ijt.labels.StlSurfaceWriter#faceFound(int, int, int, int, int, int)}.
+     * 
+     * @throws IOException
+     *             if the files could not be written
+     */
+    @Test
+    public final void test_writeSurfaces() throws IOException
+    {
+        ImageStack stack = VoxelSurfaceExtractorTest.createStack(4, 3, 3);
+        VoxelSurfaceExtractorTest.fillBox(stack, 0, 0, 0, 1, 1, 1, 3);
+        VoxelSurfaceExtractorTest.fillBox(stack, 1, 1, 1, 2, 2, 2, 12);
+        
+        File directory = Files.createTempDirectory("surfaces").toFile();
+        try (StlSurfaceWriter writer = new StlSurfaceWriter(directory, "r%03d"))
+        {
+            // use a small buffer to write files several times
+            writer.setBufferLimit(200);
+            new VoxelSurfaceExtractor().process(stack, writer);
+            assertArrayEquals(new int[] {3, 12}, writer.getLabels());
+        }
+        
+        // a single voxel has 6 faces, that is 12 triangles
+        File file = new File(directory, "r003.stl");
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(84 + 12 * 50, buffer.capacity());
+        assertEquals(12, buffer.getInt(80));
+        
+        // the normal of each triangle points to the outside of the region
+        for (int t = 0; t < 12; t++)
+        {
+            int offset = 84 + t * 50;
+            float[] normal = new float[3];
+            float[] center = new float[3];
+            for (int i = 0; i < 3; i++)
+            {
+                normal[i] = buffer.getFloat(offset + 4 * i);
+                for (int k = 0; k < 3; k++)
+                {
+                    center[i] += buffer.getFloat(offset + 12 + 12 * k + 4 * i) / 3;
+                }
+            }
+            double dot = 0;
+            for (int i = 0; i < 3; i++)
+            {
+                dot += normal[i] * (center[i] - 0.5);
+            }
+            assertEquals(0.5, dot, 1e-6);
+        }
+        
+        File file2 = new File(directory, "r012.stl");
+        assertEquals(84 + 24 * 2 * 50, file2.length());
+        
+        file.delete();
+        file2.delete();
+        directory.delete();
+    }
+    
+    /**
+     * Checks that the memory used by the buffers includes their unused
+     * capacity.
+     * 
+     * @throws IOException
+     *             if the files could not be written
+     */
+    @Test
+    public final void test_bufferedBytes() throws IOException
+    {
+        File directory = Files.createTempDirectory("surfaces").toFile();
+        try (StlSurfaceWriter writer = new StlSurfaceWriter(directory, "r%03d"))
+        {
+            // a face between two regions fills a buffer for each region
+            writer.faceFound(0, 1, 0, 0, 3, 5);
+            assertEquals(2 * SurfaceWriter.INITIAL_CAPACITY, writer.bufferedBytes);
+            
+            // faces that exceed the initial capacity double the buffer
+            for (int i = 0; i < 40; i++)
+            {
+                writer.faceFound(0, 1, i, 0, 3, 0);
+            }
+            assertEquals(3 * SurfaceWriter.INITIAL_CAPACITY, writer.bufferedBytes);
+            
+            // the buffers are released once written into the files
+            writer.setBufferLimit(3 * SurfaceWriter.INITIAL_CAPACITY - 1);
+            writer.faceFound(0, 2, 0, 0, 5, 0);
+            assertEquals(0, writer.bufferedBytes);
+        }
+        for (File file : directory.listFiles())
+        {
+            file.delete();
+        }
+        directory.delete();
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import static net.ijt.labels.LabelImages.assertSameBoundaries;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import inra.ijpb.geometry.Polygon2D;
+import net.ijt.labels.BoundaryTracker.VertexLocation;
+
+/**
+ * @author dlegland
+ *
+ */
+public class StreamingBoundaryExtractorTest
+{
+    /**
+     * Test method for {@link net.ijt.labels.StreamingBoundaryExtractor#addRow(int[])}.
+     */
+    @Test
+    public final void test_addRow_squareWithHole()
+    {
+        ByteProcessor array = LabelImages.createSquareWithHole();
+        
+        final ArrayList<Polygon2D> polygons = new ArrayList<Polygon2D>();
+        StreamingBoundaryExtractor extractor = new StreamingBoundaryExtractor(5, 4, VertexLocation.CORNER,
+                (label, polygon) -> polygons.add(polygon));
+        
+        int[] row = new int[5];
+        for (int y = 0; y < 4; y++)
+        {
+            BoundaryTracker.readRow(array, y, row);
+            extractor.addRow(row);
+        }
+        // the hole is closed by the row below it
+        assertEquals(1, polygons.size());
+        assertEquals(4, polygons.get(0).vertexNumber());
+        
+        for (int y = 4; y < 5; y++)
+        {
+            BoundaryTracker.readRow(array, y, row);
+            extractor.addRow(row);
+        }
+        extractor.finish();
+        assertEquals(2, polygons.size());
+        assertEquals(12, polygons.get(1).vertexNumber());
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.StreamingBoundaryExtractor#process(ij.process.ImageProcessor)}.
+     */
+    @Test
+    public final void test_process_sameAsSequential()
+    {
+        ByteProcessor array = LabelImages.createAdjacentRegions();
+        
+        for (int conn : new int[] {4, 8})
+        {
+            Map<Integer,ArrayList<Polygon2D>> expected = new BoundaryTracker(conn, VertexLocation.CORNER).process(array);
+            assertSameBoundaries(expected, processStreaming(array, conn, false));
+        }
+    }
+    
+    /**
+     * Checks that the boundaries closed while rows are added are the same as
+     * the ones of the sequential algorithm, on random images where many
+     * boundaries remain open over several rows.
+     */
+    @Test
+    public final void test_process_randomImages()
+    {
+        for (ImageProcessor array : LabelImages.createRandomImages())
+        {
+            for (int conn : new int[] {4, 8})
+            {
+                for (boolean removeCollinear : new boolean[] {false, true})
+                {
+                    BoundaryTracker reference = new BoundaryTracker(conn, VertexLocation.CORNER);
+                    reference.setRemoveCollinearVertices(removeCollinear);
+                    assertSameBoundaries(reference.process(array), processStreaming(array, conn, removeCollinear));
+                }
+            }
+        }
+    }
+    
+    /**
+     * Computes the boundaries with the streaming algorithm, and sorts the
+     * boundaries of each label in raster order, as they are emitted when
+     * closed.
+     */
+    private static final Map<Integer,ArrayList<Polygon2D>> processStreaming(ImageProcessor array, int conn, boolean removeCollinear)
+    {
+        final Map<Integer,ArrayList<Polygon2D>> boundaries = new HashMap<>();
+        StreamingBoundaryExtractor extractor = new StreamingBoundaryExtractor(array.getWidth(), conn, VertexLocation.CORNER,
+                (label, polygon) -> boundaries.computeIfAbsent(label, k -> new ArrayList<Polygon2D>()).add(polygon));
+        extractor.setRemoveCollinearVertices(removeCollinear);
+        extractor.process(array);
+        
+        for (ArrayList<Polygon2D> polygons : boundaries.values())
+        {
+            polygons.sort(Comparator.comparingDouble((Polygon2D p) -> p.getVertex(0).getY())
+                    .thenComparingDouble(p -> p.getVertex(0).getX()));
+        }
+        return boundaries;
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import static net.ijt.labels.LabelImages.assertSameBoundaries;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+import org.junit.Test;
+
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import inra.ijpb.geometry.Polygon2D;
+import net.ijt.labels.BoundaryTracker.VertexLocation;
+
+/**
+ * @author dlegland
+ *
+ */
+public class TiledBoundaryTrackerTest
+{
+    /**
+     * Test method for {@link net.ijt.labels.TiledBoundaryTracker#process(ij.process.ImageProcessor)}.
+     */
+    @Test
+    public final void test_process_squareWithHole()
+    {
+        ByteProcessor array = LabelImages.createSquareWithHole();
+        
+        TiledBoundaryTracker tracker = new TiledBoundaryTracker(4, VertexLocation.EDGE_CENTER);
+        tracker.setStripHeight(1);
+        Map<Integer,ArrayList<Polygon2D>> boundaries = tracker.process(array);
+        
+        assertFalse(boundaries.isEmpty());
+        assertEquals(1, boundaries.size());
+        
+        ArrayList<Polygon2D> polygons = boundaries.get(255);
+        assertEquals(2, polygons.size());
+        
+        assertEquals(12, polygons.get(0).vertexNumber());
+        assertEquals(4, polygons.get(1).vertexNumber());
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.TiledBoundaryTracker#process(ij.process.ImageProcessor)}.
+     */
+    @Test
+    public final void test_process_sameAsSequential()
+    {
+        ByteProcessor array = LabelImages.createAdjacentRegions();
+        
+        for (int conn : new int[] {4, 8})
+        {
+            Map<Integer,ArrayList<Polygon2D>> expected = new BoundaryTracker(conn, VertexLocation.CORNER).process(array);
+            for (int stripHeight = 1; stripHeight < 5; stripHeight++)
+            {
+                TiledBoundaryTracker tracker = new TiledBoundaryTracker(conn, VertexLocation.CORNER);
+                tracker.setStripHeight(stripHeight);
+                assertSameBoundaries(expected, tracker.process(array));
+            }
+        }
+    }
+    
+    /**
+     * Checks that fragments are stitched across strip seams on random images,
+     * with many regions crossing several strips.
+     */
+    @Test
+    public final void test_process_randomImages()
+    {
+        for (ImageProcessor array : LabelImages.createRandomImages())
+        {
+            for (int conn : new int[] {4, 8})
+            {
+                for (boolean removeCollinear : new boolean[] {false, true})
+                {
+                    BoundaryTracker reference = new BoundaryTracker(conn, VertexLocation.EDGE_CENTER);
+                    reference.setRemoveCollinearVertices(removeCollinear);
+                    Map<Integer,ArrayList<Polygon2D>> expected = reference.process(array);
+                    for (int stripHeight : new int[] {1, 2, 5, 16})
+                    {
+                        TiledBoundaryTracker tracker = new TiledBoundaryTracker(conn, VertexLocation.EDGE_CENTER);
+                        tracker.setRemoveCollinearVertices(removeCollinear);
+                        tracker.setStripHeight(stripHeight);
+                        assertSameBoundaries(expected, tracker.process(array));
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.TiledBoundaryTracker#setProgressMonitor(ProgressMonitor)}.
+     */
+    @Test
+    public final void test_setProgressMonitor()
+    {
+        ImageProcessor array = LabelImages.createNoise(64, 64, 50, 7);
+        TiledBoundaryTracker tracker = new TiledBoundaryTracker(4, VertexLocation.CORNER);
+        tracker.setStripHeight(8);
+        
+        // all the rows of all the strips are reported
+        int[] rows = new int[1];
+        tracker.setProgressMonitor((rowsScanned, rowCount, boundaryCount, vertexCount) -> {
+            rows[0] = Math.max(rows[0], rowsScanned);
+            return true;
+        });
+        tracker.process(array);
+        assertEquals(64, rows[0]);
+        
+        // the cancellation of a strip aborts the extraction
+        tracker.setProgressMonitor((rowsScanned, rowCount, boundaryCount, vertexCount) -> rowsScanned < 20);
+        boolean canceled = false;
+        try
+        {
+            tracker.process(array);
+        }
+        catch (CancellationException ex)
+        {
+            canceled = true;
+        }
+        assertTrue(canceled);
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import static net.ijt.labels.LabelImages.assertSameBoundaries;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+import org.junit.Test;
+
+import ij.process.ByteProcessor;
+import ij.process.ShortProcessor;
+import inra.ijpb.data.image.ImageUtils;
+import inra.ijpb.geometry.Polygon2D;
+import net.ijt.labels.BoundaryTracker.VertexLocation;
+import net.ijt.labels.LabelTopology.Arc;
+import net.ijt.labels.LabelTopology.Ring;
+
+/**
+ * @author dlegland
+ *
+ */
+public class TopologyExtractorTest
+{
+    /**
+     * Test method for {@link net.ijt.labels.TopologyExtractor#process(ij.process.ImageProcessor)}.
+     */
+    @Test
+    public final void test_process_twoAdjacentRegions()
+    {
+        ByteProcessor array = new ByteProcessor(6, 4);
+        ImageUtils.fillRect(array, 0, 0, 3, 4, 3);
+        ImageUtils.fillRect(array, 3, 0, 3, 4, 5);
+        
+        LabelTopology topology = new TopologyExtractor(4).process(array);
+        
+        // the two image corners on the common boundary, and two image corners
+        assertEquals(6, topology.nodeNumber());
+        // the common boundary, and three arcs along the image border
+        assertEquals(7, topology.arcNumber());
+        
+        // the common boundary is stored once
+        int shared = 0;
+        for (int i = 0; i < topology.arcNumber(); i++)
+        {
+            Arc arc = topology.getArc(i);
+            if (arc.getLeftLabel() != 0 && arc.getRightLabel() != 0)
+            {
+                shared++;
+                assertEquals(5, arc.vertexNumber());
+                for (int j = 0; j < 5; j++)
+                {
+                    assertEquals(3, arc.getX(j), .01);
+                }
+            }
+        }
+        assertEquals(1, shared);
+        
+        // each region references the shared arc
+        for (int label : new int[] {3, 5})
+        {
+            List<Ring> rings = topology.getRings(label);
+            assertEquals(1, rings.size());
+            int count = 0;
+            Ring ring = rings.get(0);
+            for (int i = 0; i < ring.arcNumber(); i++)
+            {
+                Arc arc = topology.getArc(LabelTopology.arcIndex(ring.getArc(i)));
+                if (arc.getLeftLabel() != 0 && arc.getRightLabel() != 0)
+                {
+                    count++;
+                }
+            }
+            assertEquals(1, count);
+        }
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.TopologyExtractor#process(ij.process.ImageProcessor)}.
+     */
+    @Test
+    public final void test_process_regionWithIsland()
+    {
+        ByteProcessor array = new ByteProcessor(5, 5);
+        ImageUtils.fillRect(array, 1, 1, 3, 3, 255);
+        array.set(2, 2, 0);
+        
+        LabelTopology topology = new TopologyExtractor(4).process(array);
+        
+        // no junction: each boundary is a closed arc
+        assertEquals(2, topology.arcNumber());
+        List<Ring> rings = topology.getRings(255);
+        assertEquals(2, rings.size());
+        assertEquals(1, rings.get(0).arcNumber());
+        assertEquals(1, rings.get(1).arcNumber());
+        
+        Map<Integer, ArrayList<Polygon2D>> boundaries = topology.toPolygons();
+        assertEquals(1, boundaries.size());
+        assertEquals(12, boundaries.get(255).get(0).vertexNumber());
+        assertEquals(4, boundaries.get(255).get(1).vertexNumber());
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.LabelTopology#toPolygons()}.
+     */
+    @Test
+    public final void test_toPolygons_sameAsSequential()
+    {
+        ByteProcessor array = LabelImages.createAdjacentRegions();
+        
+        for (int conn : new int[] {4, 8})
+        {
+            Map<Integer,ArrayList<Polygon2D>> expected = new BoundaryTracker(conn, VertexLocation.CORNER).process(array);
+            Map<Integer,ArrayList<Polygon2D>> boundaries = new TopologyExtractor(conn).process(array).toPolygons();
+            assertSameBoundaries(expected, boundaries);
+        }
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.TopologyExtractor#setSimplifier(PolygonSimplifier)}.
+     */
+    @Test
+    public final void test_setSimplifier_sameAsSequential()
+    {
+        ByteProcessor array = LabelImages.createAdjacentRegions();
+        PolygonSimplifier simplifier = new PolygonSimplifier(1.5);
+        
+        for (int conn : new int[] {4, 8})
+        {
+            BoundaryTracker tracker = new BoundaryTracker(conn, VertexLocation.CORNER);
+            tracker.setSimplifier(simplifier);
+            Map<Integer,ArrayList<Polygon2D>> expected = tracker.process(array);
+            
+            TopologyExtractor extractor = new TopologyExtractor(conn);
+            extractor.setSimplifier(simplifier);
+            Map<Integer,ArrayList<Polygon2D>> boundaries = extractor.process(array).toPolygons();
+            assertSameBoundaries(expected, boundaries);
+        }
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.TopologyExtractor#setProgressMonitor(ProgressMonitor)}.
+     */
+    @Test
+    public final void test_setProgressMonitor()
+    {
+        ShortProcessor array = LabelImages.createNoise(64, 64, 50, 7);
+        TopologyExtractor extractor = new TopologyExtractor(4);
+        extractor.setProgressMonitor((rowsScanned, rowCount, boundaryCount, vertexCount) -> rowsScanned < 20);
+        boolean canceled = false;
+        try
+        {
+            extractor.process(array);
+        }
+        catch (CancellationException ex)
+        {
+            canceled = true;
+        }
+        assertTrue(canceled);
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import static net.ijt.labels.LabelImages.assertSameBoundaries;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+import inra.ijpb.geometry.Polygon2D;
+import net.ijt.labels.BoundaryTracker.VertexLocation;
+
+/**
+ * @author dlegland
+ *
+ */
+public class TransitionScannerTest
+{
+    /**
+     * Test method for {@link net.ijt.labels.TransitionScanner#nextTransition(int, int)}.
+     */
+    @Test
+    public final void test_nextTransition_Byte()
+    {
+        ImageProcessor array = createSparseImage(new ByteProcessor(37, 20), 255);
+        TransitionScanner scanner = TransitionScanner.create(new ImageProcessorLabelSource(array));
+        assertTrue(scanner instanceof TransitionScanner.ByteScanner);
+        
+        checkTransitions(array, scanner);
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.TransitionScanner#nextTransition(int, int)}.
+     */
+    @Test
+    public final void test_nextTransition_Short()
+    {
+        ImageProcessor array = createSparseImage(new ShortProcessor(37, 20), 65535);
+        TransitionScanner scanner = TransitionScanner.create(new ImageProcessorLabelSource(array));
+        assertTrue(scanner instanceof TransitionScanner.ShortScanner);
+        
+        checkTransitions(array, scanner);
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.TransitionScanner#nextTransition(int, int)}.
+     */
+    @Test
+    public final void test_nextTransition_Float()
+    {
+        ImageProcessor array = createSparseImage(new FloatProcessor(37, 20), 1000);
+        TransitionScanner scanner = TransitionScanner.create(new ImageProcessorLabelSource(array));
+        assertTrue(scanner instanceof TransitionScanner.RowScanner);
+        
+        checkTransitions(array, scanner);
+    }
+    
+    /**
+     * Checks that the boundaries computed from the pixel arrays of 8-bit and
+     * 16-bit images are the same as the ones computed from a 32-bit image.
+     */
+    @Test
+    public final void test_process_SameResults()
+    {
+        BoundaryTracker tracker = new BoundaryTracker(4, VertexLocation.CORNER);
+        Map<Integer, ArrayList<Polygon2D>> expected = tracker.process(createSparseImage(new FloatProcessor(61, 45), 255));
+        
+        assertSameBoundaries(expected, tracker.process(createSparseImage(new ByteProcessor(61, 45), 255)));
+        assertSameBoundaries(expected, tracker.process(createSparseImage(new ShortProcessor(61, 45), 255)));
+    }
+    
+    /**
+     * Compares the transitions found by the scanner with the transitions
+     * found by comparing each pixel with the previous one.
+     */
+    private static final void checkTransitions(ImageProcessor array, TransitionScanner scanner)
+    {
+        int sizeX = array.getWidth();
+        for (int y = 0; y < array.getHeight(); y++)
+        {
+            scanner.setRow(y);
+            int currentLabel = 0;
+            int x = scanner.nextTransition(0, currentLabel);
+            for (int x0 = 0; x0 < sizeX; x0++)
+            {
+                int label = (int) array.getf(x0, y);
+                if (label == currentLabel)
+                {
+                    continue;
+                }
+                assertEquals(x0, x);
+                assertEquals(label, scanner.getLabel(x));
+                currentLabel = label;
+                x = scanner.nextTransition(x + 1, currentLabel);
+            }
+            assertEquals(sizeX, x);
+        }
+    }
+    
+    
+    /**
+     * Fills an image with a background of zeros, containing a few runs of
+     * labels with various lengths and positions, including the largest
+     * label and the image borders.
+     */
+    private static final ImageProcessor createSparseImage(ImageProcessor array, int maxLabel)
+    {
+        int sizeX = array.getWidth();
+        Random random = new Random(42);
+        for (int y = 0; y < array.getHeight(); y++)
+        {
+            int runs = random.nextInt(4);
+            for (int r = 0; r < runs; r++)
+            {
+                int x0 = random.nextInt(sizeX);
+                int length = 1 + random.nextInt(12);
+                int label = r == 0 ? maxLabel : 1 + random.nextInt(maxLabel);
+                for (int x = x0; x < Math.min(x0 + length, sizeX); x++)
+                {
+                    array.setf(x, y, label);
+                }
+            }
+        }
+        array.setf(0, 0, 3);
+        array.setf(sizeX - 1, 0, 3);
+        return array;
+    }
+}
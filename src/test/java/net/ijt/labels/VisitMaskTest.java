@@ -0,0 +1,98 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author dlegland
+ *
+ */
+public class VisitMaskTest
+{
+    /**
+     * Test method for {@link net.ijt.labels.VisitMask#create(long, double)}.
+     */
+    @Test
+    public final void test_create()
+    {
+        assertTrue(VisitMask.create(1000, 0.1) instanceof ByteVisitMask);
+        assertTrue(VisitMask.create(1L << 26, 0.1) instanceof BitVisitMask);
+        assertTrue(VisitMask.create(1L << 26, 0.0001) instanceof SparseVisitMask);
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.BitVisitMask#setVisited(long)}.
+     */
+    @Test
+    public final void test_setVisited_bitMask()
+    {
+        checkMask(new BitVisitMask(10000), 10000);
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.SparseVisitMask#setVisited(long)}.
+     */
+    @Test
+    public final void test_setVisited_sparseMask()
+    {
+        // a large image, where a bit mask would use more memory
+        SparseVisitMask mask = new SparseVisitMask(10, 1L << 32);
+        checkMask(mask, 10000);
+        
+        // table grew to keep load factor below one half
+        assertNull(mask.bits);
+        assertTrue(2 * mask.size() <= mask.keys.length);
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.SparseVisitMask#setVisited(long)}.
+     */
+    @Test
+    public final void test_setVisited_sparseMaskUnderestimated()
+    {
+        // many more positions than expected: the positions are moved into a
+        // bit mask, that uses less memory than a larger table
+        SparseVisitMask mask = new SparseVisitMask(10, 10000);
+        checkMask(mask, 10000);
+        
+        assertNotNull(mask.bits);
+        assertEquals(new BitVisitMask(10000).getMemoryUsage(), mask.getMemoryUsage());
+    }
+    
+    /**
+     * Marks random positions, and compares with the result of a byte mask.
+     */
+    private static final void checkMask(VisitMask mask, int pixelCount)
+    {
+        ByteVisitMask ref = new ByteVisitMask(pixelCount);
+        Random random = new Random(42);
+        for (int i = 0; i < pixelCount / 5; i++)
+        {
+            long index = random.nextInt(pixelCount);
+            mask.setVisited(index);
+            ref.setVisited(index);
+        }
+        
+        int count = 0;
+        for (long index = 0; index < pixelCount; index++)
+        {
+            assertEquals(ref.isVisited(index), mask.isVisited(index));
+            if (mask.isVisited(index))
+            {
+                count++;
+            }
+        }
+        assertTrue(count > 0);
+        assertFalse(mask.getMemoryUsage() <= 0);
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import inra.ijpb.data.image.ImageUtils;
+
+/**
+ * @author dlegland
+ *
+ */
+public class VoxelSurfaceExtractorTest
+{
+    /**
+     * Test method for {@link net.ijt.labels.VoxelSurfaceExtractor#process(ij.ImageStack, net.ijt.labels.SurfaceConsumer)}.
+     */
+    @Test
+    public final void test_process_cube()
+    {
+        // a 3x3x3 cube within a 5x5x5 image
+        ImageStack stack = createStack(5, 5, 5);
+        fillBox(stack, 1, 1, 1, 3, 3, 3, 7);
+        
+        ArrayList<int[]> faces = collectFaces(new VoxelSurfaceExtractor(), stack);
+        
+        assertEquals(6 * 9, faces.size());
+        int[] axisCounts = new int[3];
+        for (int[] face : faces)
+        {
+            axisCounts[face[0]]++;
+            assertTrue(face[4] == 7 ^ face[5] == 7);
+        }
+        assertArrayEquals(new int[] {18, 18, 18}, axisCounts);
+    }
+    
+    /**
+     * Checks that the faces shared by two regions are found once, and that
+     * the faces on the border of the image are found.
+     */
+    @Test
+    public final void test_process_sharedFaces()
+    {
+        // two adjacent 2x2x2 boxes touching the border of the image
+        ImageStack stack = createStack(4, 2, 2);
+        fillBox(stack, 0, 0, 0, 2, 2, 2, 3);
+        fillBox(stack, 2, 0, 0, 2, 2, 2, 5);
+        
+        ArrayList<int[]> faces = collectFaces(new VoxelSurfaceExtractor(), stack);
+        
+        // 4 shared faces, and 20 faces on the border for each box
+        int shared = 0;
+        for (int[] face : faces)
+        {
+            if (face[4] == 3 && face[5] == 5)
+            {
+                assertEquals(0, face[0]);
+                assertEquals(2, face[1]);
+                shared++;
+            }
+        }
+        assertEquals(4, shared);
+        assertEquals(4 + 2 * 20, faces.size());
+    }
+    
+    /**
+     * Checks that the faces are received in the same order whatever the slab
+     * thickness and the number of threads.
+     */
+    @Test
+    public final void test_process_slabs()
+    {
+        ImageStack stack = createStack(6, 5, 9);
+        fillBox(stack, 1, 1, 1, 3, 3, 6, 2);
+        fillBox(stack, 2, 0, 3, 4, 4, 6, 4);
+        fillBox(stack, 0, 2, 5, 2, 2, 4, 9);
+        
+        VoxelSurfaceExtractor extractor = new VoxelSurfaceExtractor();
+        extractor.setSlabThickness(100);
+        ArrayList<int[]> expected = collectFaces(extractor, stack);
+        
+        extractor.setSlabThickness(2);
+        extractor.setPool(new ForkJoinPool(3));
+        ArrayList<int[]> faces = collectFaces(extractor, stack);
+        
+        assertEquals(expected.size(), faces.size());
+        for (int i = 0; i < faces.size(); i++)
+        {
+            assertArrayEquals(expected.get(i), faces.get(i));
+        }
+        for (int i = 1; i < faces.size(); i++)
+        {
+            assertTrue(faces.get(i - 1)[3] <= faces.get(i)[3]);
+        }
+    }
+    
+    /**
+     * Checks that the faces are received in the same order when the slabs
+     * wait for the faces of the previous slabs to be sent.
+     */
+    @Test
+    public final void test_setMaxBufferedFaces()
+    {
+        ImageStack stack = createStack(6, 5, 9);
+        fillBox(stack, 1, 1, 1, 3, 3, 6, 2);
+        fillBox(stack, 2, 0, 3, 4, 4, 6, 4);
+        fillBox(stack, 0, 2, 5, 2, 2, 4, 9);
+        
+        VoxelSurfaceExtractor extractor = new VoxelSurfaceExtractor();
+        extractor.setSlabThickness(100);
+        ArrayList<int[]> expected = collectFaces(extractor, stack);
+        
+        // chunks of 5 faces, with a single thread or several ones
+        extractor.setSlabThickness(1);
+        extractor.setMaxBufferedFaces(5);
+        for (int threadCount : new int[] {1, 3})
+        {
+            extractor.setPool(new ForkJoinPool(threadCount));
+            ArrayList<int[]> faces = collectFaces(extractor, stack);
+            
+            assertEquals(expected.size(), faces.size());
+            for (int i = 0; i < faces.size(); i++)
+            {
+                assertArrayEquals(expected.get(i), faces.get(i));
+            }
+        }
+    }
+    
+    private static final ArrayList<int[]> collectFaces(VoxelSurfaceExtractor extractor, ImageStack stack)
+    {
+        ArrayList<int[]> faces = new ArrayList<int[]>();
+        extractor.process(stack, (axis, x, y, z, back, front) -> faces.add(new int[] {axis, x, y, z, back, front}));
+        return faces;
+    }
+    
+    static final ImageStack createStack(int sizeX, int sizeY, int sizeZ)
+    {
+        ImageStack stack = new ImageStack(sizeX, sizeY);
+        for (int z = 0; z < sizeZ; z++)
+        {
+            stack.addSlice(new ByteProcessor(sizeX, sizeY));
+        }
+        return stack;
+    }
+    
+    static final void fillBox(ImageStack stack, int x0, int y0, int z0, int sizeX, int sizeY, int sizeZ, int label)
+    {
+        for (int z = z0; z < z0 + sizeZ; z++)
+        {
+            ImageUtils.fillRect(stack.getProcessor(z + 1), x0, y0, sizeX, sizeY, label);
+        }
+    }
+}
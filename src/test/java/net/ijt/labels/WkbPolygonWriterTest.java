@@ -0,0 +1,119 @@
+/**
+ * 
+ */
+package net.ijt.labels;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Map;
+
+import org.junit.Test;
+
+import inra.ijpb.geometry.Polygon2D;
+
+/**
+ * @author dlegland
+ *
+ */
+public class WkbPolygonWriterTest
+{
+    /**
+     * Test method for {@link net.ijt.labels.WkbPolygonWriter#writePolygon(int, inra.ijpb.geometry.Polygon2D)}.
+     * 
+     * @throws IOException
+     *             if the file could not be written
+     */
+    @Test
+    public final void test_writePolygon() throws IOException
+    {
+        File file = File.createTempFile("polygons", ".wkb");
+        file.deleteOnExit();
+        try (WkbPolygonWriter writer = new WkbPolygonWriter(file))
+        {
+            writer.writePolygon(3, new Polygon2D(new double[] {1, 1, 3}, new double[] {2, 4, 4}));
+            writer.writePolygon(5, new Polygon2D(new double[] {0, 1, 1, 0}, new double[] {0, 0, 1, 1}));
+        }
+        
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(2 * 17 + 16 * (4 + 5), buffer.capacity());
+        
+        // first record
+        assertEquals(3, buffer.getInt());
+        assertEquals(1, buffer.get());
+        assertEquals(3, buffer.getInt());
+        assertEquals(1, buffer.getInt());
+        assertEquals(4, buffer.getInt());
+        assertEquals(1.0, buffer.getDouble(), 0.0);
+        assertEquals(2.0, buffer.getDouble(), 0.0);
+        buffer.position(buffer.position() + 2 * 16);
+        assertEquals(1.0, buffer.getDouble(), 0.0);
+        assertEquals(2.0, buffer.getDouble(), 0.0);
+        
+        // second record
+        assertEquals(5, buffer.getInt());
+        assertEquals(1, buffer.get());
+        assertEquals(3, buffer.getInt());
+        assertEquals(1, buffer.getInt());
+        assertEquals(5, buffer.getInt());
+        file.delete();
+    }
+    
+    /**
+     * Test method for {@link net.ijt.labels.PolygonWriter#writeAllRegions(java.util.Map)}.
+     * 
+     * @throws IOException
+     *             if the file could not be written
+     */
+    @Test
+    public final void test_writeAllRegions() throws IOException
+    {
+        BoundaryTracker tracker = new BoundaryTracker(4, BoundaryTracker.VertexLocation.CORNER);
+        tracker.setRemoveCollinearVertices(true);
+        Map<Integer, ArrayList<RegionPolygon>> regions = tracker.processRegions(LabelImages.createSquareWithHole());
+        
+        File file = File.createTempFile("polygons", ".wkb");
+        file.deleteOnExit();
+        try (WkbPolygonWriter writer = new WkbPolygonWriter(file))
+        {
+            writer.writeAllRegions(regions);
+        }
+        
+        // a single polygon, with the outer boundary and the hole
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(17 + 4 + 16 * (5 + 5), buffer.capacity());
+        assertEquals(255, buffer.getInt());
+        assertEquals(1, buffer.get());
+        assertEquals(3, buffer.getInt());
+        assertEquals(2, buffer.getInt());
+        assertEquals(9.0, signedArea(buffer), 0.0);
+        assertEquals(-1.0, signedArea(buffer), 0.0);
+        file.delete();
+    }
+    
+    /**
+     * Reads a ring from the buffer, and computes its signed area.
+     */
+    private static final double signedArea(ByteBuffer buffer)
+    {
+        int n = buffer.getInt();
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++)
+        {
+            xs[i] = buffer.getDouble();
+            ys[i] = buffer.getDouble();
+        }
+        double area2 = 0;
+        for (int i = 0; i < n - 1; i++)
+        {
+            area2 += xs[i] * ys[i + 1] - xs[i + 1] * ys[i];
+        }
+        return area2 / 2;
+    }
+}